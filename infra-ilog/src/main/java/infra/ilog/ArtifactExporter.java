@@ -0,0 +1,439 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog;
+
+import static infra.exception.Assert.Argument;
+import infra.slf4j.LoggerFactory;
+import infra.slf4j.Meter;
+import infra.slf4j.MeterFactory;
+import infra.slf4j.OperationFactory;
+import infra.slf4j.RegisteredOperation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+
+/**
+ * Writes debug artifacts (models, settings, data and solutions) to disk on a dedicated I/O thread, so that the solver
+ * does not wait on disk.
+ * <p>
+ * The caller takes a {@link Snapshot} of the artifact while it still owns the solver, which only copies bytes in
+ * memory, and hands it to {@link #export(String, File, Snapshot, boolean)}. Solvers that can only write to a file by
+ * name write to a temporary file instead, which {@link #export(String, File, File, boolean)} moves or compresses in
+ * background.
+ * <p>
+ * Files are written through a buffer, optionally compressed with gzip, to a temporary file that is renamed when
+ * complete. Each export is reported by a {@link Meter} (on logger <code>ilog.export.perf</code>) that carries the file
+ * name and the number of bytes. A failed export is logged as a warning and never interrupts the solver.
+ * <p>
+ * At most {@link #DEFAULT_QUEUE_CAPACITY} exports wait for the I/O thread; further exports are written by the caller,
+ * which bounds how many snapshots are held in memory. Clients keep their own exports in an {@link Exports} and wait
+ * for them before they finish. The {@link #getDefault() default exporter} finishes pending exports in a shutdown
+ * hook; other exporters must be {@link #shutdown()} by their owner.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class ArtifactExporter {
+	public final Logger logger;
+	public final Logger loggerMeter;
+
+	private static final RegisteredOperation ExportArtifact = OperationFactory.getOperation(ArtifactExporter.class, "exportArtifact", "Export artifact.");
+
+	/** Size of the buffer between the exporter and the file. */
+	public static final int BUFFER_SIZE = 64 * 1024;
+	/** Suffix of compressed artifacts. */
+	public static final String GZIP_SUFFIX = ".gz";
+	/** How many exports may wait for the I/O thread. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 8;
+	/** How long the shutdown hook of the default exporter waits for pending exports (seconds). */
+	public static final long SHUTDOWN_TIMEOUT = 60;
+
+	private static ArtifactExporter defaultExporter = null;
+
+	private final ExecutorService executor;
+
+	/** Exports submitted and not finished yet. Guarded by this. */
+	private int pendingCount = 0;
+	private final AtomicLong exportedCount = new AtomicLong(0);
+	private final AtomicLong failedCount = new AtomicLong(0);
+	private final AtomicLong bytesWritten = new AtomicLong(0);
+
+	/** Creates an exporter with its own I/O thread and a queue of {@link #DEFAULT_QUEUE_CAPACITY} exports. */
+	public ArtifactExporter(String name) {
+		this(name, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Creates an exporter with its own I/O thread.
+	 * @param queueCapacity How many exports may wait for the I/O thread. When full, the caller writes the file.
+	 */
+	public ArtifactExporter(String name, int queueCapacity) {
+		this(name, ArtifactExporter.boundedExecutor(name + "-export", queueCapacity));
+	}
+
+	/** Creates an exporter that writes files on the given executor. */
+	public ArtifactExporter(String name, ExecutorService executor) {
+		super();
+		Argument.notNull(name, executor);
+		this.executor = executor;
+		this.logger = LoggerFactory.getLogger(LoggerFactory.getLogger("ilog.export"), name);
+		this.loggerMeter = LoggerFactory.getLogger(logger, "perf");
+	}
+
+	/**
+	 * @return Exporter shared by all commands that were not given one. Pending exports are finished by a shutdown hook
+	 *         when the JVM exits.
+	 */
+	public static synchronized ArtifactExporter getDefault() {
+		if (ArtifactExporter.defaultExporter == null) {
+			final ArtifactExporter exporter = new ArtifactExporter("default");
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					exporter.shutdown();
+					try {
+						if (! exporter.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+							exporter.logger.warn("Exports still pending at exit: {}.", Integer.toString(exporter.getPendingCount()));
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "default-export-shutdown"));
+			ArtifactExporter.defaultExporter = exporter;
+		}
+		return ArtifactExporter.defaultExporter;
+	}
+
+	/**
+	 * Single thread executor with a bounded queue. When the queue is full, the task runs on the caller. After shutdown,
+	 * tasks are rejected instead of being silently discarded, so that no {@link Future} is left unfinished.
+	 */
+	private static ExecutorService boundedExecutor(String name, int queueCapacity) {
+		Argument.positive(queueCapacity);
+		return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+				ArtifactExporter.daemonThreadFactory(name), new RejectedExecutionHandler() {
+					@Override
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						if (executor.isShutdown()) throw new RejectedExecutionException("Exporter was shut down.");
+						r.run();
+					}
+				});
+	}
+
+	private static ThreadFactory daemonThreadFactory(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/** @return The file the artifact is written to, with suffix {@link #GZIP_SUFFIX} if compressed. */
+	public static File destination(File file, boolean compress) {
+		Argument.notNull(file);
+		if (! compress || file.getName().endsWith(GZIP_SUFFIX)) return file;
+		return new File(file.getPath() + GZIP_SUFFIX);
+	}
+
+	/**
+	 * @return A temporary file, in the same directory and with the same extension as the artifact, for solvers that
+	 *         choose the file format by the extension.
+	 */
+	public static File temporary(File file) throws IOException {
+		Argument.notNull(file);
+		File directory = file.getAbsoluteFile().getParentFile();
+		ArtifactExporter.assureDirectory(directory);
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		String extension = dot < 0 ? null : name.substring(dot);
+		return File.createTempFile("export-", extension, directory);
+	}
+
+	private static void assureDirectory(File directory) throws IOException {
+		if (! directory.exists()) {
+			if (! directory.mkdirs() && ! directory.isDirectory()) {
+				throw new IOException(String.format("Failed to create directory '%s'.", directory.getAbsolutePath()));
+			}
+		}
+	}
+
+	/**
+	 * In memory copy of an artifact. Its content is handed to the exporter without copying again.
+	 */
+	public static class Snapshot extends ByteArrayOutputStream {
+		public Snapshot() { super(BUFFER_SIZE); }
+
+		void writeContentTo(OutputStream os) throws IOException {
+			os.write(this.buf, 0, this.count);
+		}
+	}
+
+	/**
+	 * Writes the snapshot to the file in background.
+	 * @param description Short description of the artifact, for the log.
+	 * @param file Absolute path of the artifact. If compressed, {@link #GZIP_SUFFIX} is appended.
+	 * @param snapshot Content of the artifact. Must not be changed after this call.
+	 * @param compress If the artifact is compressed with gzip.
+	 * @return The file that was written, or the failure that prevented it.
+	 */
+	public Future<File> export(final String description, File file, final Snapshot snapshot, final boolean compress) {
+		Argument.notNull(description, file, snapshot);
+		Argument.check(file.isAbsolute());
+		final File destination = ArtifactExporter.destination(file, compress);
+		return submit(description, destination, new Content() {
+			@Override
+			public void writeTo(OutputStream os) throws IOException {
+				snapshot.writeContentTo(os);
+			}
+			@Override
+			public void dispose() {
+				/* The snapshot is released with the finished task. */
+			}
+		});
+	}
+
+	/**
+	 * Moves (or compresses) a file already written by the solver to the artifact file in background.
+	 * @param description Short description of the artifact, for the log.
+	 * @param source Temporary file, as given by {@link #temporary(File)}. Deleted when the export finishes.
+	 * @param file Absolute path of the artifact. If compressed, {@link #GZIP_SUFFIX} is appended.
+	 * @param compress If the artifact is compressed with gzip.
+	 * @return The file that was written, or the failure that prevented it.
+	 */
+	public Future<File> export(final String description, final File source, File file, final boolean compress) {
+		Argument.notNull(description, source, file);
+		Argument.check(file.isAbsolute());
+		final File destination = ArtifactExporter.destination(file, compress);
+		if (! compress) {
+			return submit(description, destination, null, source);
+		}
+		return submit(description, destination, new Content() {
+			@Override
+			public void writeTo(OutputStream os) throws IOException {
+				InputStream is = new BufferedInputStream(new FileInputStream(source), BUFFER_SIZE);
+				try {
+					byte[] buffer = new byte[BUFFER_SIZE];
+					int n;
+					while ((n = is.read(buffer)) >= 0) {
+						os.write(buffer, 0, n);
+					}
+				} finally {
+					is.close();
+				}
+			}
+			@Override
+			public void dispose() {
+				if (source.exists() && ! source.delete()) {
+					logger.warn("Failed to delete temporary file {}.", source.getAbsolutePath());
+				}
+			}
+		});
+	}
+
+	/** Content written by an export. */
+	private interface Content {
+		void writeTo(OutputStream os) throws IOException;
+		void dispose();
+	}
+
+	private Future<File> submit(String description, File destination, Content content) {
+		return submit(description, destination, content, null);
+	}
+
+	/** Either writes the content to a temporary file, or takes the source file, and then renames it to the destination. */
+	private Future<File> submit(final String description, final File destination, final Content content, final File source) {
+		synchronized (this) {
+			pendingCount++;
+		}
+		try {
+			return executor.submit(new Callable<File>() {
+				@Override
+				public File call() throws Exception {
+					try {
+						write(description, destination, content, source);
+						return destination;
+					} finally {
+						if (content != null) content.dispose();
+						ArtifactExporter.this.finished();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			finished();
+			if (content != null) content.dispose();
+			throw e;
+		}
+	}
+
+	private void write(String description, File destination, Content content, File source) throws IOException {
+		File part = new File(destination.getPath() + ".part");
+		Meter op = MeterFactory.getMeter(loggerMeter, ExportArtifact).put("file", destination.getName()).start();
+		try {
+			ArtifactExporter.assureDirectory(destination.getAbsoluteFile().getParentFile());
+			File written = source;
+			if (content != null) {
+				written = part;
+				OutputStream os = new BufferedOutputStream(new FileOutputStream(written), BUFFER_SIZE);
+				try {
+					if (destination.getName().endsWith(GZIP_SUFFIX)) {
+						GZIPOutputStream gos = new GZIPOutputStream(os, BUFFER_SIZE);
+						content.writeTo(gos);
+						gos.finish();
+					} else {
+						content.writeTo(os);
+					}
+				} finally {
+					os.close();
+				}
+			}
+			long length = written.length();
+			if (destination.exists() && ! destination.delete()) {
+				throw new IOException(String.format("Failed to replace file '%s'.", destination.getAbsolutePath()));
+			}
+			if (! written.renameTo(destination)) {
+				throw new IOException(String.format("Failed to rename file '%s' to '%s'.", written.getAbsolutePath(), destination.getAbsolutePath()));
+			}
+			bytesWritten.addAndGet(length);
+			exportedCount.incrementAndGet();
+			op.put("bytes", Long.toString(length));
+			logger.info("A copy of the {} was saved to file {}.", description, destination.getAbsolutePath());
+			op.ok();
+		} catch (IOException e) {
+			failedCount.incrementAndGet();
+			if (content != null) part.delete();
+			/* Do not interrupt execution. Considered a minor failure. */
+			logger.warn("Failed to save a copy of the {} to file {}.", description, destination.getAbsolutePath(), e);
+			op.fail(e);
+			throw e;
+		} catch (RuntimeException e) {
+			failedCount.incrementAndGet();
+			if (content != null) part.delete();
+			logger.warn("Failed to save a copy of the {} to file {}.", description, destination.getAbsolutePath(), e);
+			op.fail(e);
+			throw e;
+		}
+	}
+
+	private synchronized void finished() {
+		pendingCount--;
+		if (pendingCount == 0) notifyAll();
+	}
+
+	/**
+	 * Waits until all exports submitted so far are finished.
+	 * @return false if the timeout elapsed before.
+	 */
+	public synchronized boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (pendingCount > 0) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) return false;
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return true;
+	}
+
+	/**
+	 * Exports handed over by one client (a command), so that the client waits for its own exports before it finishes,
+	 * without waiting for exports of other clients that share the exporter.
+	 */
+	public static class Exports {
+		private final List<Future<File>> futures = new ArrayList<Future<File>>();
+
+		/** @return The export, for convenience. */
+		public synchronized Future<File> add(Future<File> export) {
+			Argument.notNull(export);
+			futures.add(export);
+			return export;
+		}
+
+		/** @return Exports added and not awaited yet. */
+		public synchronized int size() { return futures.size(); }
+
+		/**
+		 * Waits until all exports added so far are finished. Failures were already logged by the exporter. An
+		 * interruption does not shorten the wait; it is restored before returning.
+		 */
+		public void await() {
+			List<Future<File>> pending;
+			synchronized (this) {
+				pending = new ArrayList<Future<File>>(futures);
+				futures.clear();
+			}
+			boolean interrupted = false;
+			for (Future<File> future : pending) {
+				while (true) {
+					try {
+						future.get();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					} catch (ExecutionException e) {
+						break;
+					} catch (CancellationException e) {
+						break;
+					}
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Finishes pending exports and releases the I/O thread. No more exports are accepted. */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	// ========================================================================
+
+	/** @return Exports submitted and not finished yet. */
+	public synchronized int getPendingCount() { return pendingCount; }
+	public long getExportedCount() { return exportedCount.get(); }
+	public long getFailedCount() { return failedCount.get(); }
+	/** @return Sum of the size of exported files, after compression (bytes). */
+	public long getBytesWritten() { return bytesWritten.get(); }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog;
+
+import static infra.exception.Assert.Argument;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link SolverCommand} submitted to a {@link SolverJobScheduler}, with its scheduling attributes and the outcome of
+ * its execution.
+ * <p>
+ * Jobs with higher priority start first; among jobs with the same priority, the earliest deadline starts first, then
+ * the earliest submitted. The deadline is an absolute time (as {@link System#currentTimeMillis()}): a job that did not
+ * finish until its deadline is cancelled. The number of threads is the share of the scheduler's thread budget reserved
+ * for the solver while the job runs.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class SolverJob {
+	/** Deadline of jobs that may run for as long as required. */
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	public static enum State {
+		/** Waiting for the scheduler to start it. */
+		QUEUED,
+		/** The solver is executing. */
+		RUNNING,
+		/** The solver finished normally. */
+		SUCCEEDED,
+		/** The solver finished with an exception, see {@link SolverJob#getFailure()}. */
+		FAILED,
+		/** Cancelled by {@link SolverJob#cancel()} or by closing the scheduler. */
+		CANCELLED,
+		/** Cancelled because the deadline passed. */
+		EXPIRED;
+
+		public boolean isDone() {
+			return this != QUEUED && this != RUNNING;
+		}
+	}
+
+	private final String name;
+	private final SolverCommand command;
+	private final int priority;
+	private final long deadline;
+	private final int threads;
+	/** Order of submission, to break ties. Assigned by the scheduler. */
+	long sequence;
+
+	/** Scheduler that accepted the job, or null if not submitted yet. Guarded by this. */
+	SolverJobScheduler scheduler;
+	/** Timer task that cancels the job when its deadline passes, or null. Guarded by this. */
+	SolverJobScheduler.Expiration expiration;
+	private State state = State.QUEUED;
+	/** Reason of the cancellation requested while running. Guarded by this. */
+	private State cancelReason;
+	private Throwable failure;
+	/** Thread executing the solver, while running. Guarded by this. */
+	private Thread runner;
+	private long submitTime;
+	private long startTime;
+	private long endTime;
+
+	/** Creates a job with normal priority, no deadline and one thread. */
+	public SolverJob(String name, SolverCommand command) {
+		this(name, command, 0, NO_DEADLINE, 1);
+	}
+
+	/**
+	 * @param priority Jobs with higher priority start first.
+	 * @param deadline Absolute time (milliseconds, as {@link System#currentTimeMillis()}) until which the job must
+	 *            finish, or {@link #NO_DEADLINE}.
+	 * @param threads Number of solver threads the job is allowed to use.
+	 */
+	public SolverJob(String name, SolverCommand command, int priority, long deadline, int threads) {
+		super();
+		Argument.notNull(name);
+		Argument.notNull(command);
+		Argument.positive(threads);
+		this.name = name;
+		this.command = command;
+		this.priority = priority;
+		this.deadline = deadline;
+		this.threads = threads;
+	}
+
+	public String getName() { return name; }
+	public SolverCommand getCommand() { return command; }
+	public int getPriority() { return priority; }
+	public long getDeadline() { return deadline; }
+	public boolean hasDeadline() { return deadline != NO_DEADLINE; }
+	public int getThreads() { return threads; }
+
+	public synchronized State getState() { return state; }
+	public synchronized boolean isDone() { return state.isDone(); }
+	/** @return Exception thrown by the solver, or null. */
+	public synchronized Throwable getFailure() { return failure; }
+
+	/** @return How long the job waited in the queue (nanoseconds), up to now if still waiting. */
+	public synchronized long getQueueWaitTime() {
+		if (submitTime == 0) return 0;
+		if (startTime != 0) return startTime - submitTime;
+		return (state == State.QUEUED ? System.nanoTime() : endTime) - submitTime;
+	}
+
+	/** @return How long the solver ran (nanoseconds), up to now if still running. */
+	public synchronized long getRunTime() {
+		if (startTime == 0) return 0;
+		return (endTime == 0 ? System.nanoTime() : endTime) - startTime;
+	}
+
+	/**
+	 * Cancels the job. A queued job is removed from the queue. A running job has its thread interrupted; the
+	 * {@link SolverCommand} is expected to check the interruption between solver iterations, as
+	 * {@link infra.ilog.cplex.CommandCplex} does.
+	 *
+	 * @return false if the job had already finished.
+	 */
+	public boolean cancel() {
+		SolverJobScheduler s;
+		synchronized (this) {
+			s = this.scheduler;
+		}
+		if (s == null) return false;
+		return s.cancel(this, State.CANCELLED);
+	}
+
+	/**
+	 * Waits until the job finishes.
+	 *
+	 * @throws NoSolutionException The solver did not find a solution.
+	 * @throws CancellationException The job was cancelled or expired.
+	 * @throws RuntimeException The solver failed.
+	 */
+	public void await() throws InterruptedException, NoSolutionException {
+		synchronized (this) {
+			while (! state.isDone()) {
+				wait();
+			}
+		}
+		rethrow();
+	}
+
+	/**
+	 * Waits until the job finishes or the timeout elapses.
+	 * @return false if the timeout elapsed before the job finished.
+	 * @see #await()
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException, NoSolutionException {
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (this) {
+			while (! state.isDone()) {
+				long remaining = end - System.nanoTime();
+				if (remaining <= 0) return false;
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+		}
+		rethrow();
+		return true;
+	}
+
+	private void rethrow() throws NoSolutionException {
+		State s;
+		Throwable f;
+		synchronized (this) {
+			s = this.state;
+			f = this.failure;
+		}
+		if (s == State.CANCELLED || s == State.EXPIRED) {
+			CancellationException e = new CancellationException(name + ": " + s);
+			if (f != null) e.initCause(f);
+			throw e;
+		}
+		if (f instanceof NoSolutionException) throw (NoSolutionException) f;
+		if (f instanceof RuntimeException) throw (RuntimeException) f;
+		if (f instanceof Error) throw (Error) f;
+	}
+
+	// ========================================================================
+
+	synchronized void submitted(SolverJobScheduler s, long seq) {
+		this.scheduler = s;
+		this.sequence = seq;
+		this.submitTime = System.nanoTime();
+	}
+
+	/** @return false if the job was cancelled meanwhile. */
+	synchronized boolean started(Thread thread) {
+		if (state != State.QUEUED) return false;
+		this.state = State.RUNNING;
+		this.runner = thread;
+		this.startTime = System.nanoTime();
+		return true;
+	}
+
+	synchronized void finished(Throwable failure) {
+		this.runner = null;
+		this.failure = failure;
+		this.endTime = System.nanoTime();
+		if (cancelReason != null) {
+			this.state = cancelReason;
+		} else {
+			this.state = failure == null ? State.SUCCEEDED : State.FAILED;
+		}
+		scheduler.finished(this, state);
+		notifyAll();
+	}
+
+	/**
+	 * Marks a queued job as cancelled or interrupts a running job.
+	 * @return The previous state.
+	 */
+	synchronized State cancelled(State reason) {
+		State previous = this.state;
+		if (previous == State.QUEUED) {
+			this.state = reason;
+			this.endTime = System.nanoTime();
+			scheduler.finished(this, state);
+			notifyAll();
+		} else if (previous == State.RUNNING && cancelReason == null) {
+			this.cancelReason = reason;
+			if (runner != null) runner.interrupt();
+		}
+		return previous;
+	}
+
+	@Override
+	public String toString() {
+		return name + ":" + getState();
+	}
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog;
+
+import static infra.exception.Assert.Argument;
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+import infra.exception.controlstate.design.UnsupportedException;
+import infra.ilog.cplex.CommandCplex;
+import infra.slf4j.LoggerFactory;
+import infra.slf4j.Meter;
+import infra.slf4j.MeterExecutors;
+import infra.slf4j.MeterFactory;
+import infra.slf4j.OperationFactory;
+import infra.slf4j.RegisteredOperation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * Runs {@link SolverJob}s in background threads, within a budget of concurrent solves and a budget of solver threads
+ * for the whole host. Replaces running several solvers from ad-hoc threads, which oversubscribes the cores.
+ * <p>
+ * Jobs wait in a queue ordered by priority, deadline and submission. The job at the head of the queue starts as soon as
+ * both budgets allow; jobs behind it wait even if they would fit, so that jobs that require many threads are not
+ * starved by smaller ones. Jobs whose deadline passes are cancelled, either while queued or while running.
+ * <p>
+ * Cancelling a running job interrupts its thread. {@link CommandCplex} checks the interruption between iterations, so
+ * the current call to {@link IloCplex#solve()} still runs until it returns.
+ * <p>
+ * Each execution is reported by a {@link Meter} (on logger <code>ilog.scheduler.perf</code>) that carries the job
+ * name and the time it waited in the queue. Aggregated queue wait and run times are available from the getters.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class SolverJobScheduler {
+	public final Logger logger;
+	public final Logger loggerMeter;
+
+	private static final RegisteredOperation RunJob = OperationFactory.getOperation(SolverJobScheduler.class, "runJob", "Run solver job.");
+
+	private final int maxSolves;
+	private final int maxThreads;
+
+	/** Jobs waiting to start. Guarded by this. */
+	private final PriorityQueue<SolverJob> queue = new PriorityQueue<SolverJob>(16, new Comparator<SolverJob>() {
+		@Override
+		public int compare(SolverJob o1, SolverJob o2) {
+			if (o1.getPriority() != o2.getPriority()) return o1.getPriority() > o2.getPriority() ? -1 : 1;
+			if (o1.getDeadline() != o2.getDeadline()) return o1.getDeadline() < o2.getDeadline() ? -1 : 1;
+			return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+		}
+	});
+	/** Jobs started and not finished yet. Guarded by this. */
+	private final Set<SolverJob> running = new HashSet<SolverJob>();
+	/** Threads reserved by running jobs. Guarded by this. */
+	private int usedThreads = 0;
+	private long sequence = 0;
+	private boolean shutdown = false;
+
+	private final ExecutorService executor;
+	private final ScheduledExecutorService timer;
+
+	private final AtomicLong submittedCount = new AtomicLong(0);
+	private final AtomicLong succeededCount = new AtomicLong(0);
+	private final AtomicLong failedCount = new AtomicLong(0);
+	private final AtomicLong cancelledCount = new AtomicLong(0);
+	private final AtomicLong expiredCount = new AtomicLong(0);
+	private final AtomicLong startedCount = new AtomicLong(0);
+	private final AtomicLong totalQueueWaitTime = new AtomicLong(0);
+	private final AtomicLong maxQueueWaitTime = new AtomicLong(0);
+	private final AtomicLong totalRunTime = new AtomicLong(0);
+
+	/** Creates a scheduler with one concurrent solve per available processor, sharing all available processors. */
+	public SolverJobScheduler(String name) {
+		this(name, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param maxSolves Maximum number of jobs running at the same time.
+	 * @param maxThreads Maximum sum of {@link SolverJob#getThreads()} of the jobs running at the same time.
+	 */
+	public SolverJobScheduler(String name, int maxSolves, int maxThreads) {
+		super();
+		Argument.notNull(name);
+		Argument.positive(maxSolves);
+		Argument.positive(maxThreads);
+		this.maxSolves = maxSolves;
+		this.maxThreads = maxThreads;
+		this.logger = LoggerFactory.getLogger(LoggerFactory.getLogger("ilog.scheduler"), name);
+		this.loggerMeter = LoggerFactory.getLogger(logger, "perf");
+		this.executor = Executors.newCachedThreadPool(SolverJobScheduler.daemonThreadFactory(name + "-solver-"));
+		this.timer = Executors.newSingleThreadScheduledExecutor(SolverJobScheduler.daemonThreadFactory(name + "-deadline-"));
+	}
+
+	private static ThreadFactory daemonThreadFactory(final String prefix) {
+		final AtomicInteger counter = new AtomicInteger(0);
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Queues the job. It starts as soon as allowed by its priority and by the budgets.
+	 * @return The same job, to wait for or cancel.
+	 */
+	public SolverJob submit(SolverJob job) {
+		Argument.notNull(job);
+		Argument.check(job.getThreads() <= maxThreads);
+		synchronized (job) {
+			Argument.check(job.scheduler == null);
+		}
+		synchronized (this) {
+			if (shutdown) throw new IllegalStateException("Scheduler was shut down.");
+			job.submitted(this, sequence++);
+			queue.add(job);
+		}
+		submittedCount.incrementAndGet();
+		logger.debug("Queue job '{}' (priority={}, threads={}).", new Object[] { job.getName(), Integer.toString(job.getPriority()), Integer.toString(job.getThreads()) });
+		if (job.hasDeadline()) {
+			scheduleDeadline(job);
+		}
+		dispatch();
+		return job;
+	}
+
+	/**
+	 * Cancels a job when its deadline passes. Discarded when the job finishes before: the timer task is cancelled and
+	 * forgets the job, so that the timer queue does not retain finished jobs until their deadline.
+	 */
+	final class Expiration implements Runnable {
+		private volatile SolverJob job;
+		private volatile ScheduledFuture<?> future;
+
+		Expiration(SolverJob job) {
+			this.job = job;
+		}
+
+		@Override
+		public void run() {
+			SolverJob j = job;
+			if (j != null && cancel(j, SolverJob.State.EXPIRED)) {
+				logger.info("Job '{}' expired.", j.getName());
+			}
+		}
+
+		void discard() {
+			job = null;
+			ScheduledFuture<?> f = future;
+			if (f != null) f.cancel(false);
+		}
+	}
+
+	private void scheduleDeadline(SolverJob job) {
+		long delay = job.getDeadline() - System.currentTimeMillis();
+		Expiration expiration = new Expiration(job);
+		if (delay <= 0) {
+			expiration.run();
+			return;
+		}
+		synchronized (job) {
+			job.expiration = expiration;
+		}
+		expiration.future = timer.schedule(expiration, delay, TimeUnit.MILLISECONDS);
+		/* O job pode ter terminado antes do agendamento; finished() não encontrou a tarefa para cancelar. */
+		if (job.isDone()) expiration.discard();
+	}
+
+	/** Starts queued jobs while the head of the queue fits in both budgets. */
+	private void dispatch() {
+		List<SolverJob> starting = new ArrayList<SolverJob>();
+		synchronized (this) {
+			while (! queue.isEmpty()) {
+				SolverJob head = queue.peek();
+				if (head.isDone()) {
+					queue.poll();
+					continue;
+				}
+				if (running.size() >= maxSolves || usedThreads + head.getThreads() > maxThreads) break;
+				queue.poll();
+				running.add(head);
+				usedThreads += head.getThreads();
+				starting.add(head);
+			}
+		}
+		for (SolverJob job : starting) {
+			executor.execute(MeterExecutors.wrap(new Worker(job)));
+		}
+	}
+
+	private class Worker implements Runnable {
+		private final SolverJob job;
+
+		Worker(SolverJob job) {
+			this.job = job;
+		}
+
+		@Override
+		public void run() {
+			Thread.interrupted();
+			Throwable failure = null;
+			boolean started = job.started(Thread.currentThread());
+			try {
+				if (started) {
+					long wait = job.getQueueWaitTime();
+					recordQueueWait(wait);
+					Meter op = MeterFactory.getMeter(loggerMeter, RunJob).put("job", job.getName()).put("wait", Long.toString(TimeUnit.NANOSECONDS.toMillis(wait))).start();
+					try {
+						configureThreads(job.getCommand(), job.getThreads());
+						job.getCommand().execute();
+						op.ok();
+					} catch (NoSolutionException e) {
+						op.put("reason", e.reason.toString()).fail(e);
+						failure = e;
+					} catch (RuntimeException e) {
+						op.fail(e);
+						failure = e;
+					} catch (Error e) {
+						op.fail(e);
+						failure = e;
+					}
+				}
+			} finally {
+				if (started) {
+					job.finished(failure);
+				}
+				Thread.interrupted();
+				synchronized (SolverJobScheduler.this) {
+					running.remove(job);
+					usedThreads -= job.getThreads();
+				}
+				dispatch();
+			}
+		}
+	}
+
+	/**
+	 * Limits the number of threads the solver may use. By default, sets the thread count parameter of
+	 * {@link CommandCplex}. Override to support other commands.
+	 */
+	protected void configureThreads(SolverCommand command, int threads) {
+		if (command instanceof CommandCplex) {
+			try {
+				((CommandCplex) command).getCplex().setParam(IloCplex.IntParam.Threads, threads);
+			} catch (IloException e) {
+				/* IloCplex.setParam() is not known to actually throw IloException. */
+				throw new UnsupportedException(e);
+			}
+		}
+	}
+
+	/** @return true if the job was queued or running and was cancelled. */
+	boolean cancel(SolverJob job, SolverJob.State reason) {
+		SolverJob.State previous = job.cancelled(reason);
+		if (previous == SolverJob.State.QUEUED) {
+			synchronized (this) {
+				queue.remove(job);
+			}
+			dispatch();
+			return true;
+		}
+		return previous == SolverJob.State.RUNNING;
+	}
+
+	/**
+	 * Called by the job when it finishes, before threads waiting for it are notified, holding the lock of the job.
+	 * Cancels the deadline of the job.
+	 */
+	void finished(SolverJob job, SolverJob.State state) {
+		Expiration expiration = job.expiration;
+		if (expiration != null) {
+			job.expiration = null;
+			expiration.discard();
+		}
+		totalRunTime.addAndGet(job.getRunTime());
+		switch (state) {
+		case SUCCEEDED: succeededCount.incrementAndGet(); break;
+		case FAILED: failedCount.incrementAndGet(); break;
+		case CANCELLED: cancelledCount.incrementAndGet(); break;
+		case EXPIRED: expiredCount.incrementAndGet(); break;
+		default: break;
+		}
+	}
+
+	private void recordQueueWait(long wait) {
+		startedCount.incrementAndGet();
+		totalQueueWaitTime.addAndGet(wait);
+		long max = maxQueueWaitTime.get();
+		while (wait > max) {
+			if (maxQueueWaitTime.compareAndSet(max, wait)) break;
+			max = maxQueueWaitTime.get();
+		}
+	}
+
+	/**
+	 * Stops accepting jobs and cancels all queued and running jobs.
+	 */
+	public void shutdown() {
+		List<SolverJob> jobs;
+		synchronized (this) {
+			shutdown = true;
+			jobs = new ArrayList<SolverJob>(queue);
+			jobs.addAll(running);
+		}
+		for (SolverJob job : jobs) {
+			cancel(job, SolverJob.State.CANCELLED);
+		}
+		timer.shutdownNow();
+		executor.shutdown();
+	}
+
+	/** Waits until all running jobs finished after {@link #shutdown()}. */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	// ========================================================================
+
+	public int getMaxSolves() { return maxSolves; }
+	public int getMaxThreads() { return maxThreads; }
+	public synchronized int getQueuedCount() { return queue.size(); }
+	public synchronized int getRunningCount() { return running.size(); }
+	/** @return Threads reserved by running jobs. */
+	public synchronized int getUsedThreads() { return usedThreads; }
+	public long getSubmittedCount() { return submittedCount.get(); }
+	public long getSucceededCount() { return succeededCount.get(); }
+	public long getFailedCount() { return failedCount.get(); }
+	public long getCancelledCount() { return cancelledCount.get(); }
+	public long getExpiredCount() { return expiredCount.get(); }
+	/** @return Sum of the time started jobs waited in the queue (nanoseconds). */
+	public long getTotalQueueWaitTime() { return totalQueueWaitTime.get(); }
+	/** @return Longest time a started job waited in the queue (nanoseconds). */
+	public long getMaxQueueWaitTime() { return maxQueueWaitTime.get(); }
+	/** @return Mean time started jobs waited in the queue (nanoseconds). */
+	public long getMeanQueueWaitTime() {
+		long count = startedCount.get();
+		return count == 0 ? 0 : totalQueueWaitTime.get() / count;
+	}
+	/** @return Sum of the run time of finished jobs (nanoseconds). */
+	public long getTotalRunTime() { return totalRunTime.get(); }
+}
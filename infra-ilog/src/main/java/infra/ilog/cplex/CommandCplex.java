@@ -30,17 +30,20 @@ import infra.exception.controlstate.bug.ImpossibleException;
 import infra.exception.controlstate.design.UnsupportedException;
 import infra.exception.controlstate.design.UnsupportedMethodException;
 import infra.exception.controlstate.unimplemented.UnimplementedConditionException;
+import infra.ilog.ArtifactExporter;
 import infra.ilog.NoSolutionException;
 import infra.ilog.SolverCommand;
 import infra.slf4j.LoggerFactory;
 import infra.slf4j.Meter;
 import infra.slf4j.MeterFactory;
-import infra.slf4j.Operation;
 import infra.slf4j.OperationFactory;
+import infra.slf4j.RegisteredOperation;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 
 import org.slf4j.Logger;
 
@@ -86,6 +89,14 @@ public class CommandCplex implements SolverCommand {
 	/** @return CPLEX instance being guided. */
 	public final IloCplex getCplex() { return cplex; }
 
+	/** Convergence of the current (or last) execution, recorded by the callbacks. */
+	private volatile ConvergenceSeries convergenceSeries = null;
+	/** @return Convergence of the current (or last) execution, or null if not executed yet. */
+	public ConvergenceSeries getConvergenceSeries() { return convergenceSeries; }
+
+	/** Artifacts handed over to the exporter by this command. */
+	private final ArtifactExporter.Exports exports = new ArtifactExporter.Exports();
+
 	/** Delegate implementation that decided if CPLEX shall continue to run. */
 	private final Delegate delegate; /* TODO: really necessary to hold a local copy from the settings? */
 
@@ -107,10 +118,10 @@ public class CommandCplex implements SolverCommand {
 		this.loggerData = LoggerFactory.getLogger(logger, "data");
 	}
 
-	private final Operation ExecuteCplex = OperationFactory.getOperation("executeCplex", "Execute CPLEX");
-	private final Operation IterateCplex = OperationFactory.getOperation("iterateCplex", "Iterate CPLEX");
+	private static final RegisteredOperation ExecuteCplex = OperationFactory.getOperation(CommandCplex.class, "executeCplex", "Execute CPLEX");
+	private static final RegisteredOperation IterateCplex = OperationFactory.getOperation(CommandCplex.class, "iterateCplex", "Iterate CPLEX");
 
-	/** Executes the CPLEX solver. */
+	/** Executes the CPLEX solver. Returns only after the artifacts handed over to the exporter were written. */
 	@Override
 	public void execute() throws NoSolutionException {
 		Attribute.notNull(this.cplex);
@@ -125,6 +136,7 @@ public class CommandCplex implements SolverCommand {
 			throw new UnsupportedException(e);
 		}
 
+		this.convergenceSeries = new ConvergenceSeries(configuration.getCapacidadeSerieConvergencia());
 		Meter op = MeterFactory.getMeter(loggerMeter, ExecuteCplex).start();
 		try {
 			/*
@@ -160,7 +172,10 @@ public class CommandCplex implements SolverCommand {
 						loggerExecucao.debug("Call Delegate.before(iteration={})...", Integer.toString(iterationCounter));
 						boolean continuationAllowance = delegate.antesExecucao(cplex, iterationCounter, configuration);
 						loggerExecucao.debug("Returned Delegate.before(iteration={}): continue={}.", Integer.toString(iterationCounter), Boolean.toString(continuationAllowance));
-						if (! continuationAllowance) break;
+						if (! continuationAllowance) {
+							stopped(op, opI, StopPolicy.reasonOf(delegate));
+							break;
+						}
 					} else {
 						/* Por padrão, se não existe delegate, realiza a execução. */
 					}
@@ -173,10 +188,13 @@ public class CommandCplex implements SolverCommand {
 					if (Thread.interrupted()) {
 						loggerExecucao.debug("Solver thread interrupted. Cancel execution.");
 						CommandCplex.validarEstadoFinalCplex(cplex, loggerExecucao);
+						stopped(op, opI, "interrupted");
 						break;
 					}
 
+					int points = convergenceSeries.size();
 					executeIteration(iterationCounter);
+					describeConvergence(opI, points);
 
 					/*
 					 * O delegate pode decidir por continuar ou parar a busca por soluções.
@@ -185,9 +203,13 @@ public class CommandCplex implements SolverCommand {
 						loggerExecucao.debug("Call Delegate.after(iteration={})...", Integer.toString(iterationCounter));
 						boolean continuar = delegate.depoisExecucao(cplex, iterationCounter, configuration);
 						loggerExecucao.debug("Returned Delegate.after(iteration={}): repeat={}.", Integer.toString(iterationCounter), Boolean.toString(continuar));
-						if (! continuar) break;
+						if (! continuar) {
+							stopped(op, opI, StopPolicy.reasonOf(delegate));
+							break;
+						}
 					} else {
 						/* Por padrão, se não existe delegate, interrompe a execução. */
+						opI.ok();
 						break;
 					}
 
@@ -215,9 +237,32 @@ public class CommandCplex implements SolverCommand {
 			/* Handle any other unforeseen exception. */
 			op.fail(e);
 			throw RichRuntimeException.enrich(e, ExecuteCplex).data(op.getContext());
+		} finally {
+			/* The convergence is also of interest when no solution was found. */
+			if (this.configuration.temCaminhoSerieConvergencia()) {
+				saveConvergenceSeries(this.configuration.getCaminhoAbsolutoSerieConvergencia());
+			}
+			exports.await();
 		}
 	}
 
+	/** Attaches a summary of the convergence recorded during the iteration to its meter. */
+	private void describeConvergence(Meter opI, int pointsBefore) {
+		ConvergenceSeries series = this.convergenceSeries;
+		opI.put("points", Integer.toString(Math.max(0, series.size() - pointsBefore)));
+		double objective = series.getLastObjective();
+		if (! Double.isNaN(objective)) opI.put("objective", Double.toString(objective));
+		double gap = series.getLastGap();
+		if (! Double.isNaN(gap)) opI.put("gap", Double.toString(gap));
+	}
+
+	/** Records why the execution stops into the context of both meters and finishes the meter of the iteration. */
+	private void stopped(Meter op, Meter opI, String reason) {
+		loggerExecucao.info("Stop execution: {}.", reason);
+		op.put("stop", reason);
+		opI.put("stop", reason).ok();
+	}
+
 	protected void executeIteration(int iterationCounter) {
 		Attribute.notNull(this.cplex);
 		Attribute.notNull(this.configuration);
@@ -249,8 +294,9 @@ public class CommandCplex implements SolverCommand {
 			/*
 			 * TODO O uso do callback precisa ser melhor estudado para não impedir multi-threading.
 			 */
-			cplex.use(new PresolveCallback(loggerExecucao, configuration.getNumeroPassosEntreProgresso()));
-			cplex.use(new ContinuousCallback(loggerExecucao, configuration.getNumeroPassosEntreProgresso()));
+			cplex.use(new PresolveCallback(loggerExecucao, configuration.getIntervaloEntreProgresso(), convergenceSeries));
+			cplex.use(new ContinuousCallback(loggerExecucao, configuration.getIntervaloEntreProgresso(), convergenceSeries));
+			cplex.use(new MipInfoCallback(loggerExecucao, configuration.getIntervaloEntreProgresso(), convergenceSeries));
 		} catch (IloException e) {
 			/* IloCplex.use() is not known to actually throw IloException. */
 			throw new UnsupportedException(e);
@@ -572,50 +618,90 @@ public class CommandCplex implements SolverCommand {
 
 	protected void saveModel(File file) {
 		Attribute.notNull(cplex);
-		Argument.notNull(file);
-		Argument.check(file.isAbsolute());
-
-		try {
-			CommandCplex.assureDiretoryForFile(file);
-			this.cplex.exportModel(file.getAbsolutePath());
-			Poscondition.check(file.exists());
-			loggerExecucao.info("A copy of the model was saved to file {}.", file.getAbsolutePath());
-		} catch (Exception e) {
-			/* Do not interrupt execution. Considered a minor failure. */
-			loggerExecucao.warn("Failed to save a copy of the model to file {}.", file.getAbsolutePath(), e);
-		}
+		exportArtifact("model", file, new ArtifactWriter() {
+			@Override
+			public void write(String path) throws IloException {
+				cplex.exportModel(path);
+			}
+		});
 	}
 
-
 	protected void saveSettings(File file) {
 		Attribute.notNull(cplex);
+		exportArtifact("configuration", file, new ArtifactWriter() {
+			@Override
+			public void write(String path) throws IloException {
+				cplex.writeParam(path);
+			}
+		});
+	}
+
+	protected void saveSolution(File file) {
+		Attribute.notNull(cplex);
+		exportArtifact("solution", file, new ArtifactWriter() {
+			@Override
+			public void write(String path) throws IloException {
+				cplex.writeSolution(path);
+			}
+		});
+	}
+
+	/**
+	 * Saves the convergence series as CSV (if the file name ends with '.csv') or binary. The series is copied to memory
+	 * and written in background by the {@link ArtifactExporter}.
+	 */
+	protected void saveConvergenceSeries(File file) {
 		Argument.notNull(file);
 		Argument.check(file.isAbsolute());
+		ConvergenceSeries series = this.convergenceSeries;
+		if (series == null) return;
 
 		try {
-			CommandCplex.assureDiretoryForFile(file);
-			this.cplex.writeParam(file.getAbsolutePath());
-			Poscondition.check(file.exists());
-			loggerExecucao.info("A copy of the configuration was saved to file {}.", file.getAbsolutePath());
+			ArtifactExporter.Snapshot snapshot = new ArtifactExporter.Snapshot();
+			if (file.getName().toLowerCase().endsWith(".csv")) {
+				Writer writer = new OutputStreamWriter(snapshot, "US-ASCII");
+				series.writeCsv(writer);
+				writer.close();
+			} else {
+				series.writeBinary(snapshot);
+			}
+			exports.add(this.configuration.getExportador().export("convergence series", file, snapshot, this.configuration.getCompactarArtefatos()));
 		} catch (Exception e) {
 			/* Do not interrupt execution. Considered a minor failure. */
-			loggerExecucao.warn("Failed to save a copy of the configuration to file {}.", file.getAbsolutePath(), e);
+			loggerExecucao.warn("Failed to save a copy of the convergence series to file {}.", file.getAbsolutePath(), e);
 		}
 	}
 
-	protected void saveSolution(File file) {
-		Attribute.notNull(cplex);
+	/** One of the CPLEX writers, which only write to a file given by name and choose the format by its extension. */
+	private interface ArtifactWriter {
+		void write(String path) throws IloException;
+	}
+
+	/**
+	 * CPLEX cannot write to a stream, so the artifact cannot be copied to memory. If compression is configured, CPLEX
+	 * writes a temporary file that is compressed to the artifact file in background. Otherwise, CPLEX writes the
+	 * artifact file directly.
+	 */
+	private void exportArtifact(String description, File file, ArtifactWriter writer) {
 		Argument.notNull(file);
 		Argument.check(file.isAbsolute());
 
 		try {
-			CommandCplex.assureDiretoryForFile(file);
-			this.cplex.writeSolution(file.getAbsolutePath());
-			Poscondition.check(file.exists());
-			loggerExecucao.info("A copy of the solution was saved to file {}.", file.getAbsolutePath());
+			if (this.configuration.getCompactarArtefatos()) {
+				File temporary = ArtifactExporter.temporary(file);
+				writer.write(temporary.getAbsolutePath());
+				Poscondition.check(temporary.exists());
+				exports.add(this.configuration.getExportador().export(description, temporary, file, true));
+				loggerExecucao.debug("A copy of the {} was handed over to be saved to file {}.", description, file.getAbsolutePath());
+			} else {
+				CommandCplex.assureDiretoryForFile(file);
+				writer.write(file.getAbsolutePath());
+				Poscondition.check(file.exists());
+				loggerExecucao.info("A copy of the {} was saved to file {}.", description, file.getAbsolutePath());
+			}
 		} catch (Exception e) {
 			/* Do not interrupt execution. Considered a minor failure. */
-			loggerExecucao.warn("Failed to save a copy of the solution to file {}.", file.getAbsolutePath(), e);
+			loggerExecucao.warn("Failed to save a copy of the {} to file {}.", description, file.getAbsolutePath(), e);
 		}
 	}
 
@@ -18,6 +18,7 @@ package infra.ilog.cplex;
 import static infra.exception.Assert.Argument;
 import static infra.exception.Assert.Attribute;
 import infra.exception.controlstate.design.UnsupportedMethodException;
+import infra.ilog.ArtifactExporter;
 
 import java.io.File;
 
@@ -58,9 +59,14 @@ public class ConfigurationCplex {
 		this.caminhoParametrosExportado = configuracao.caminhoParametrosExportado;
 		this.caminhoSolucaoExportado = configuracao.caminhoSolucaoExportado;
 		this.numeroPassosEntreProgresso = configuracao.numeroPassosEntreProgresso;
+		this.intervaloEntreProgresso = configuracao.intervaloEntreProgresso;
 		this.delegate = configuracao.delegate;
 		this.simplexLimiteDeIteracoes = configuracao.simplexLimiteDeIteracoes;
 		this.simplexLimiteDeTempo = configuracao.simplexLimiteDeTempo;
+		this.compactarArtefatos = configuracao.compactarArtefatos;
+		this.exportador = configuracao.exportador;
+		this.caminhoSerieConvergencia = configuracao.caminhoSerieConvergencia;
+		this.capacidadeSerieConvergencia = configuracao.capacidadeSerieConvergencia;
 	}
 
 	private String nome;
@@ -130,16 +136,79 @@ public class ConfigurationCplex {
 		return new File (caminhoBase, caminhoSolucaoExportado.getPath());
 	}
 
-	/** Número de interações executadas para reportar progresso. */
+	/**
+	 * O caminho do arquivo no qual será salva a série de convergência do Cplex (ou null para não salvar). Se terminar
+	 * com '.csv', salva como CSV; senão, no formato binário de {@link ConvergenceSeries#writeBinary(java.io.OutputStream)}.
+	 */
+	private File caminhoSerieConvergencia = null;
+	/** @return O caminho do arquivo no qual será salva a série de convergência do Cplex (ou null para não salvar). */
+	public File getCaminhoSerieConvergencia() { return this.caminhoSerieConvergencia; }
+	/** @param caminho O caminho do arquivo no qual será salva a série de convergência do Cplex (ou null para não salvar). */
+	public ConfigurationCplex setCaminhoSerieConvergencia(File caminho) { this.caminhoSerieConvergencia = caminho; return this; }
+	/** @return Se foi atribuido um caminho para o arquivo no qual será salva a série de convergência do Cplex. */
+	public boolean temCaminhoSerieConvergencia() { return this.caminhoSerieConvergencia != null; }
+	/** @return Caminho do absoluto do arquivo no qual será salva a série de convergência do Cplex. */
+	public File getCaminhoAbsolutoSerieConvergencia() {
+		if (caminhoSerieConvergencia.isAbsolute()) return caminhoSerieConvergencia;
+		Attribute.notNull(this.caminhoBase);
+		Attribute.check(this.caminhoBase.isAbsolute());
+		return new File (caminhoBase, caminhoSerieConvergencia.getPath());
+	}
+
+	/** Número máximo de pontos mantidos na série de convergência. */
+	private int capacidadeSerieConvergencia = ConvergenceSeries.DEFAULT_CAPACITY;
+	/** @return Número máximo de pontos mantidos na série de convergência. */
+	public int getCapacidadeSerieConvergencia() { return capacidadeSerieConvergencia; }
+	/** @param capacidade Número máximo de pontos mantidos na série de convergência. */
+	public ConfigurationCplex setCapacidadeSerieConvergencia(int capacidade) {
+		Argument.check(capacidade >= 2);
+		this.capacidadeSerieConvergencia = capacidade;
+		return this;
+	}
+
+	/** Se os arquivos exportados (modelo, parâmetros e solução) são compactados com gzip. */
+	private boolean compactarArtefatos = false;
+	/** @return Se os arquivos exportados (modelo, parâmetros e solução) são compactados com gzip. */
+	public boolean getCompactarArtefatos() { return compactarArtefatos; }
+	/** @param compactar Se os arquivos exportados (modelo, parâmetros e solução) são compactados com gzip, acrescentando '.gz' ao nome. */
+	public ConfigurationCplex setCompactarArtefatos(boolean compactar) { this.compactarArtefatos = compactar; return this; }
+
+	/** Serviço que grava os arquivos exportados fora da execução do Cplex (ou <code>null</code> para usar o serviço padrão). */
+	private ArtifactExporter exportador = null;
+	/** @return Serviço que grava os arquivos exportados fora da execução do Cplex. */
+	public ArtifactExporter getExportador() { return exportador != null ? exportador : ArtifactExporter.getDefault(); }
+	/** @param exportador Serviço que grava os arquivos exportados fora da execução do Cplex (ou <code>null</code> para usar o serviço padrão). */
+	public ConfigurationCplex setExportador(ArtifactExporter exportador) { this.exportador = exportador; return this; }
+
+	/**
+	 * Número de interações executadas para reportar progresso. Não é mais usado pelos callbacks, que reportam
+	 * progresso conforme {@link #getIntervaloEntreProgresso()}, pois a velocidade das iterações varia demais para um
+	 * número fixo de passos.
+	 */
 	private int numeroPassosEntreProgresso = 10;
-	/** @param numero Número de interações executadas para reportar progresso. */
+	/** @param numero Número de interações executadas para reportar progresso.
+	 * @deprecated Substituído por {@link #setIntervaloEntreProgresso(double)}. */
+	@Deprecated
 	public void setNumeroPassosEntreProgresso(int numero) {
 		Argument.positive(numero);
 		this.numeroPassosEntreProgresso = numero;
 	}
-	/** @return Número de interações executadas para reportar progresso.  */
+	/** @return Número de interações executadas para reportar progresso.
+	 * @deprecated Substituído por {@link #getIntervaloEntreProgresso()}. */
+	@Deprecated
 	public int getNumeroPassosEntreProgresso() { return numeroPassosEntreProgresso; }
 
+	/** Intervalo mínimo (segundos) entre duas linhas de progresso no log. */
+	private double intervaloEntreProgresso = 1.0;
+	/** @param intervalo Intervalo mínimo (segundos) entre duas linhas de progresso no log. Zero reporta todos os passos. */
+	public ConfigurationCplex setIntervaloEntreProgresso(double intervalo) {
+		Argument.check(intervalo >= 0);
+		this.intervaloEntreProgresso = intervalo;
+		return this;
+	}
+	/** @return Intervalo mínimo (segundos) entre duas linhas de progresso no log. */
+	public double getIntervaloEntreProgresso() { return intervaloEntreProgresso; }
+
 	@Override
 	public int hashCode() { throw new UnsupportedMethodException(); }
 	@Override
@@ -19,48 +19,58 @@ import static infra.exception.Assert.Argument;
 import static infra.exception.Assert.Attribute;
 import ilog.concert.IloException;
 import infra.exception.controlstate.design.UnsupportedMethodException;
+import infra.slf4j.Parser;
 
 import org.slf4j.Logger;
 
 
 /**
- * Callback que registra o progresso do CPLEX no log.
+ * Callback que registra o progresso do CPLEX no log, no máximo uma linha por intervalo de tempo, e na série de
+ * convergência (se existir), no máximo um ponto por intervalo da série. Os valores só são lidos do CPLEX se algum dos
+ * dois for registrado.
  * @author Daniel Felix Ferber
  */
 class ContinuousCallback extends ilog.cplex.IloCplex.ContinuousCallback {
 	private final Logger logger;
-	private final int numeroPassosEntreLogs;
-	private int contadorPassos = 0;
+	private final ProgressThrottle throttle;
+	private final ConvergenceSeries serie;
 
-	public ContinuousCallback(Logger logger, int numeroPassosEntreLogs) {
+	public ContinuousCallback(Logger logger, double intervaloEntreLogs, ConvergenceSeries serie) {
 		super();
 		Argument.notNull(logger);
-		Argument.positive(numeroPassosEntreLogs);
 
 		this.logger = logger;
-		this.numeroPassosEntreLogs = numeroPassosEntreLogs;
+		this.throttle = new ProgressThrottle(intervaloEntreLogs);
+		this.serie = serie;
 	}
 
 	@Override
 	protected void main() throws IloException {
 		Attribute.notNull(logger);
 
+		if (serie != null && serie.reserve()) {
+			serie.add(ConvergenceSeries.CONTINUOUS, getNiterations(), getObjValue(), getInfeasibility(), Double.NaN, Double.NaN);
+		}
+
 		if (! logger.isInfoEnabled()) return;
-		if (contadorPassos-- > 0)  return;
-		contadorPassos = numeroPassosEntreLogs;
+		if (! throttle.liberado()) return;
 
-		contadorPassos  = numeroPassosEntreLogs;
-		this.logger.info(
-				String.format(
-						"Simplex: nIter=%d; inf=%.1f; dualInf=%.1f; objVal=%.1f; nCol=%d; nRow=%d; nQC=%d",
-						Integer.valueOf(getNiterations()),
-						Double.valueOf(getInfeasibility()),
-						Double.valueOf(getDualInfeasibility()),
-						Double.valueOf(getObjValue()),
-						Integer.valueOf(getNcols()),
-						Integer.valueOf(getNrows()),
-						Integer.valueOf(getNQCs())
-				));
+		String linha;
+		synchronized (throttle) {
+			StringBuilder sb = throttle.buffer();
+			sb.append("Simplex: nIter=").append(getNiterations());
+			sb.append("; inf=");
+			Parser.appendFixedPoint(sb, getInfeasibility(), 1);
+			sb.append("; dualInf=");
+			Parser.appendFixedPoint(sb, getDualInfeasibility(), 1);
+			sb.append("; objVal=");
+			Parser.appendFixedPoint(sb, getObjValue(), 1);
+			sb.append("; nCol=").append(getNcols());
+			sb.append("; nRow=").append(getNrows());
+			sb.append("; nQC=").append(getNQCs());
+			linha = sb.toString();
+		}
+		this.logger.info(linha);
 	}
 
 	@Override
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.cplex;
+
+import static infra.exception.Assert.Argument;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time series of the convergence of one execution of {@link CommandCplex}, recorded by its callbacks: iterations,
+ * objective, infeasibility, best bound and relative gap against the elapsed time. Allows comparing convergence curves
+ * of different parameters without scraping the log.
+ * <p>
+ * Points are kept in growable primitive arrays. Values that the phase does not know are {@link Double#NaN}. To bound
+ * memory, once the series reaches its capacity, every other point is discarded and only every second point offered
+ * afterwards is kept (and so on), so the series always covers the whole execution with a uniform resolution.
+ * <p>
+ * Callbacks call {@link #reserve()} before reading the values of a point from CPLEX, so that iterations faster than
+ * the minimum interval between points cost only a read of the clock. {@link #reserve()} is lock free; the other
+ * methods are synchronized, as callbacks may run on several CPLEX threads.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class ConvergenceSeries {
+	public static final byte PRESOLVE = 0;
+	public static final byte CONTINUOUS = 1;
+	public static final byte MIP = 2;
+	private static final String[] PHASE_NAMES = new String[] { "presolve", "continuous", "mip" };
+
+	/** Identifies the binary format ("CVS1"). */
+	public static final int BINARY_MAGIC = 0x43565331;
+	public static final int DEFAULT_CAPACITY = 100000;
+	/** Default minimum interval between two points reserved by callbacks (seconds). */
+	public static final double DEFAULT_INTERVAL = 0.01;
+
+	private final int capacity;
+	private final long start = System.nanoTime();
+	/** Minimum interval between two reserved points (nanoseconds). */
+	private final long interval;
+	/** Instant (nanoseconds) from which the next point may be reserved. */
+	private final AtomicLong next = new AtomicLong(start);
+
+	private int size = 0;
+	/** Only one of each <code>stride</code> points offered is kept. */
+	private int stride = 1;
+	private long offered = 0;
+
+	private double[] time = new double[64];
+	private byte[] phase = new byte[64];
+	private long[] iterations = new long[64];
+	private double[] objective = new double[64];
+	private double[] infeasibility = new double[64];
+	private double[] bestBound = new double[64];
+	private double[] gap = new double[64];
+
+	public ConvergenceSeries() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/** @param capacity Maximum number of points kept. */
+	public ConvergenceSeries(int capacity) {
+		this(capacity, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * @param capacity Maximum number of points kept.
+	 * @param intervalSeconds Minimum interval between two points reserved by {@link #reserve()} (seconds).
+	 */
+	public ConvergenceSeries(int capacity, double intervalSeconds) {
+		Argument.check(capacity >= 2);
+		Argument.check(intervalSeconds >= 0);
+		this.capacity = capacity;
+		this.interval = (long) (intervalSeconds * 1000000000.0);
+	}
+
+	/**
+	 * @return If the caller may offer a point now, because the minimum interval elapsed since the last reserved point.
+	 *         Only one thread obtains each point. Only reads the clock, so callbacks call it before reading the values
+	 *         of the point from CPLEX.
+	 */
+	public boolean reserve() {
+		long now = System.nanoTime();
+		long n = next.get();
+		if (now - n < 0) return false;
+		return next.compareAndSet(n, now + interval);
+	}
+
+	/** @return Seconds since the series was created. */
+	public double elapsed() {
+		return (System.nanoTime() - start) / 1000000000.0;
+	}
+
+	/** Offers a point measured now. */
+	public void add(byte phase, long iterations, double objective, double infeasibility, double bestBound, double gap) {
+		add(elapsed(), phase, iterations, objective, infeasibility, bestBound, gap);
+	}
+
+	/** Offers a point. It is kept or discarded according to the current resolution of the series. */
+	public synchronized void add(double time, byte phase, long iterations, double objective, double infeasibility, double bestBound, double gap) {
+		if (offered++ % stride != 0) return;
+		if (size == capacity) {
+			decimate();
+			/* The point is kept only if it falls on the new, coarser, resolution. */
+			if ((offered - 1) % stride != 0) return;
+		}
+		if (size == this.time.length) grow(Math.min(capacity, size * 2));
+		this.time[size] = time;
+		this.phase[size] = phase;
+		this.iterations[size] = iterations;
+		this.objective[size] = objective;
+		this.infeasibility[size] = infeasibility;
+		this.bestBound[size] = bestBound;
+		this.gap[size] = gap;
+		size++;
+	}
+
+	private void grow(int length) {
+		time = Arrays.copyOf(time, length);
+		phase = Arrays.copyOf(phase, length);
+		iterations = Arrays.copyOf(iterations, length);
+		objective = Arrays.copyOf(objective, length);
+		infeasibility = Arrays.copyOf(infeasibility, length);
+		bestBound = Arrays.copyOf(bestBound, length);
+		gap = Arrays.copyOf(gap, length);
+	}
+
+	/** Keeps every other point and halves the resolution. */
+	private void decimate() {
+		int j = 0;
+		for (int i = 0; i < size; i += 2, j++) {
+			time[j] = time[i];
+			phase[j] = phase[i];
+			iterations[j] = iterations[i];
+			objective[j] = objective[i];
+			infeasibility[j] = infeasibility[i];
+			bestBound[j] = bestBound[i];
+			gap[j] = gap[i];
+		}
+		size = j;
+		stride *= 2;
+	}
+
+	// ========================================================================
+
+	public synchronized int size() { return size; }
+	public int getCapacity() { return capacity; }
+	/** @return Seconds since the series was created. */
+	public synchronized double getTime(int i) { check(i); return time[i]; }
+	public synchronized byte getPhase(int i) { check(i); return phase[i]; }
+	public synchronized long getIterations(int i) { check(i); return iterations[i]; }
+	public synchronized double getObjective(int i) { check(i); return objective[i]; }
+	public synchronized double getInfeasibility(int i) { check(i); return infeasibility[i]; }
+	public synchronized double getBestBound(int i) { check(i); return bestBound[i]; }
+	public synchronized double getGap(int i) { check(i); return gap[i]; }
+
+	/** @return Objective of the most recent point that knows it, or NaN. */
+	public synchronized double getLastObjective() {
+		for (int i = size - 1; i >= 0; i--) {
+			if (! Double.isNaN(objective[i])) return objective[i];
+		}
+		return Double.NaN;
+	}
+
+	/** @return Gap of the most recent point that knows it, or NaN. */
+	public synchronized double getLastGap() {
+		for (int i = size - 1; i >= 0; i--) {
+			if (! Double.isNaN(gap[i])) return gap[i];
+		}
+		return Double.NaN;
+	}
+
+	private void check(int i) {
+		if (i < 0 || i >= size) throw new IndexOutOfBoundsException(Integer.toString(i));
+	}
+
+	// ========================================================================
+
+	/** Writes the series as CSV, with a header line. Unknown values are left empty. */
+	public synchronized void writeCsv(Writer writer) throws IOException {
+		StringBuilder sb = new StringBuilder(128);
+		writer.write("time,phase,iterations,objective,infeasibility,bestBound,gap\n");
+		for (int i = 0; i < size; i++) {
+			sb.setLength(0);
+			sb.append(time[i]).append(',');
+			sb.append(PHASE_NAMES[phase[i]]).append(',');
+			sb.append(iterations[i]).append(',');
+			csv(sb, objective[i]).append(',');
+			csv(sb, infeasibility[i]).append(',');
+			csv(sb, bestBound[i]).append(',');
+			csv(sb, gap[i]).append('\n');
+			writer.write(sb.toString());
+		}
+		writer.flush();
+	}
+
+	private static StringBuilder csv(StringBuilder sb, double value) {
+		if (! Double.isNaN(value)) sb.append(value);
+		return sb;
+	}
+
+	/**
+	 * Writes the series in a compact binary format: {@link #BINARY_MAGIC}, the number of points and then, for each
+	 * point, time, phase, iterations, objective, infeasibility, best bound and gap, as written by
+	 * {@link DataOutputStream}.
+	 */
+	public synchronized void writeBinary(OutputStream os) throws IOException {
+		DataOutputStream dos = new DataOutputStream(os);
+		dos.writeInt(BINARY_MAGIC);
+		dos.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			dos.writeDouble(time[i]);
+			dos.writeByte(phase[i]);
+			dos.writeLong(iterations[i]);
+			dos.writeDouble(objective[i]);
+			dos.writeDouble(infeasibility[i]);
+			dos.writeDouble(bestBound[i]);
+			dos.writeDouble(gap[i]);
+		}
+		dos.flush();
+	}
+
+	/** Reads a series written by {@link #writeBinary(OutputStream)}. */
+	public static ConvergenceSeries readBinary(InputStream is) throws IOException {
+		DataInputStream dis = new DataInputStream(is);
+		if (dis.readInt() != BINARY_MAGIC) throw new IOException("Not a convergence series.");
+		int n = dis.readInt();
+		if (n < 0) throw new IOException("Corrupted convergence series.");
+		ConvergenceSeries series = new ConvergenceSeries(Math.max(2, n));
+		for (int i = 0; i < n; i++) {
+			double t = dis.readDouble();
+			byte p = dis.readByte();
+			if (p < 0 || p >= PHASE_NAMES.length) throw new IOException("Corrupted convergence series: phase " + p + ".");
+			long it = dis.readLong();
+			double obj = dis.readDouble();
+			double inf = dis.readDouble();
+			double bound = dis.readDouble();
+			double g = dis.readDouble();
+			series.add(t, p, it, obj, inf, bound, g);
+		}
+		return series;
+	}
+}
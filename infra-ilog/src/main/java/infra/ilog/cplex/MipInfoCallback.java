@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.cplex;
+
+import static infra.exception.Assert.Argument;
+import static infra.exception.Assert.Attribute;
+import ilog.concert.IloException;
+import infra.exception.controlstate.design.UnsupportedMethodException;
+import infra.slf4j.Parser;
+
+import org.slf4j.Logger;
+
+
+/**
+ * Callback que registra o progresso do branch and cut no log, no máximo uma linha por intervalo de tempo, e na série de
+ * convergência (se existir), no máximo um ponto por intervalo da série. Os valores só são lidos do CPLEX se algum dos
+ * dois for registrado.
+ * @author Daniel Felix Ferber
+ */
+class MipInfoCallback extends ilog.cplex.IloCplex.MIPInfoCallback {
+	private final Logger logger;
+	private final ProgressThrottle throttle;
+	private final ConvergenceSeries serie;
+
+	public MipInfoCallback(Logger logger, double intervaloEntreLogs, ConvergenceSeries serie) {
+		super();
+		Argument.notNull(logger);
+
+		this.logger = logger;
+		this.throttle = new ProgressThrottle(intervaloEntreLogs);
+		this.serie = serie;
+	}
+
+	@Override
+	protected void main() throws IloException {
+		Attribute.notNull(logger);
+
+		boolean registrar = serie != null && serie.reserve();
+		boolean logar = logger.isInfoEnabled() && throttle.liberado();
+		if (! registrar && ! logar) return;
+
+		boolean temIncumbente = hasIncumbent();
+		double objetivo = temIncumbente ? getIncumbentObjValue() : Double.NaN;
+		double gap = temIncumbente ? getMIPRelativeGap() : Double.NaN;
+		double limitante = getBestObjValue();
+
+		if (registrar) {
+			serie.add(ConvergenceSeries.MIP, getNiterations64(), objetivo, Double.NaN, limitante, gap);
+		}
+		if (! logar) return;
+
+		String linha;
+		synchronized (throttle) {
+			StringBuilder sb = throttle.buffer();
+			sb.append("MIP: nIter=").append(getNiterations64());
+			sb.append("; nNodes=").append(getNnodes64());
+			sb.append("; nRemNodes=").append(getNremainingNodes64());
+			sb.append("; objVal=");
+			appendValor(sb, objetivo, 1);
+			sb.append("; bestObj=");
+			appendValor(sb, limitante, 1);
+			sb.append("; gap=");
+			appendValor(sb, gap, 4);
+			linha = sb.toString();
+		}
+		this.logger.info(linha);
+	}
+
+	/** Escreve NaN (sem incumbente) diretamente, sem passar pelo {@link String#format(String, Object...)} do {@link Parser}. */
+	private static void appendValor(StringBuilder sb, double valor, int casas) {
+		if (Double.isNaN(valor)) {
+			sb.append("NaN");
+		} else {
+			Parser.appendFixedPoint(sb, valor, casas);
+		}
+	}
+
+	@Override
+	public int hashCode() { throw new UnsupportedMethodException(); }
+	@Override
+	public boolean equals(Object obj) { throw new UnsupportedMethodException(); }
+
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.cplex;
+
+import static infra.exception.Assert.Argument;
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+import infra.exception.RichRuntimeException;
+import infra.exception.controlstate.design.UnsupportedException;
+import infra.ilog.NoSolutionException;
+import infra.ilog.SolverCommand;
+import infra.slf4j.LoggerFactory;
+import infra.slf4j.Meter;
+import infra.slf4j.MeterExecutors;
+import infra.slf4j.MeterFactory;
+import infra.slf4j.OperationFactory;
+import infra.slf4j.RegisteredOperation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+
+/**
+ * Races several variants of a {@link SolverCommand} for the same problem, each one on its own thread, and returns as
+ * soon as one of them finds a solution accepted by the {@link AcceptancePolicy}. Variants usually differ only by their
+ * {@link ConfigurationCplex} (limits, algorithm), and each one must own its own model and {@link IloCplex} instance.
+ * On multi-core hosts, racing often beats a single tuned configuration for hard instances.
+ * <p>
+ * When the race is decided, the remaining variants are cancelled: their threads are interrupted, the
+ * {@link IloCplex.Aborter} attached to each {@link CommandCplex} aborts the running {@link IloCplex#solve()} and, for
+ * variants created from a {@link ConfigurationCplex}, the {@link Delegate#antesExecucao(IloCplex, int, ConfigurationCplex)}
+ * hook refuses further iterations. {@link #execute()} returns only after all variant threads have finished. If a
+ * variant was accepted, the results of the cancelled variants are discarded. Otherwise, for instance when the time
+ * limit elapses, the incumbents of the cancelled variants (see {@link #evaluateIncumbent(Result)}) compete with the
+ * variants that finished.
+ * <p>
+ * The model, {@link IloCplex} and factory of the variants must not be ended before {@link #execute()} returns. After
+ * that, no variant uses them anymore and they may be ended safely.
+ * <p>
+ * The solution is read from the command of the {@link #getWinner() winner}.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class PortfolioSolverCommand implements SolverCommand {
+	public final Logger logger;
+	public final Logger loggerExecucao;
+	public final Logger loggerMeter;
+
+	private static final RegisteredOperation ExecutePortfolio = OperationFactory.getOperation(PortfolioSolverCommand.class, "executePortfolio", "Execute solver portfolio");
+
+	/** Creates the command of one variant from its configuration. */
+	public static interface VariantFactory {
+		SolverCommand create(ConfigurationCplex configuration);
+	}
+
+	/** Outcome of one variant. */
+	public static class Result {
+		private final int index;
+		private final SolverCommand command;
+		private Throwable failure;
+		private boolean solution;
+		private boolean optimal;
+		private double objective = Double.NaN;
+		private long runTime;
+
+		Result(int index, SolverCommand command) {
+			this.index = index;
+			this.command = command;
+		}
+
+		/** @return Position of the variant, in the order given to the constructor. */
+		public int getIndex() { return index; }
+		public SolverCommand getCommand() { return command; }
+		/** @return {@link NoSolutionException} or other exception thrown by the variant, or null. */
+		public Throwable getFailure() { return failure; }
+		public boolean hasSolution() { return solution; }
+		public void setSolution(boolean solution) { this.solution = solution; }
+		public boolean isOptimal() { return optimal; }
+		public void setOptimal(boolean optimal) { this.optimal = optimal; }
+		/** @return Objective value of the solution, or NaN if unknown. */
+		public double getObjective() { return objective; }
+		public void setObjective(double objective) { this.objective = objective; }
+		/** @return Execution time of the variant (nanoseconds). */
+		public long getRunTime() { return runTime; }
+
+		@Override
+		public String toString() {
+			return "variant " + index + (solution ? (optimal ? " optimal " : " feasible ") + objective : " no solution");
+		}
+	}
+
+	/**
+	 * Decides when the race ends and which finished variant wins.
+	 */
+	public static abstract class AcceptancePolicy {
+		private final boolean minimize;
+		private final long timeLimit;
+
+		/**
+		 * @param minimize If lower objective values are better.
+		 * @param timeLimit Maximum duration of the race (milliseconds), or 0 for no limit.
+		 */
+		protected AcceptancePolicy(boolean minimize, long timeLimit) {
+			Argument.check(timeLimit >= 0);
+			this.minimize = minimize;
+			this.timeLimit = timeLimit;
+		}
+
+		public boolean isMinimize() { return minimize; }
+		public long getTimeLimit() { return timeLimit; }
+
+		/** @return If the race ends as soon as this variant finishes. */
+		public abstract boolean accept(Result result);
+
+		/**
+		 * Orders finished variants when no variant was accepted: solutions before no solution, optimal before feasible,
+		 * then by objective value.
+		 * @return Negative if the first one is better.
+		 */
+		public int compare(Result a, Result b) {
+			if (a.hasSolution() != b.hasSolution()) return a.hasSolution() ? -1 : 1;
+			if (a.isOptimal() != b.isOptimal()) return a.isOptimal() ? -1 : 1;
+			double oa = a.getObjective();
+			double ob = b.getObjective();
+			if (Double.isNaN(oa) || Double.isNaN(ob)) return Double.isNaN(oa) ? (Double.isNaN(ob) ? 0 : 1) : -1;
+			int c = Double.compare(oa, ob);
+			return minimize ? c : -c;
+		}
+	}
+
+	/** Ends the race with the first optimal solution. If no variant proves optimality, the best solution wins. */
+	public static AcceptancePolicy firstOptimal(boolean minimize) {
+		return new AcceptancePolicy(minimize, 0) {
+			@Override
+			public boolean accept(Result result) {
+				return result.isOptimal();
+			}
+		};
+	}
+
+	/** Ends the race with the first solution, optimal or not. */
+	public static AcceptancePolicy firstSolution(boolean minimize) {
+		return new AcceptancePolicy(minimize, 0) {
+			@Override
+			public boolean accept(Result result) {
+				return result.hasSolution();
+			}
+		};
+	}
+
+	/**
+	 * Ends the race with the first optimal solution or when the time limit elapses, choosing the best solution
+	 * found until then.
+	 */
+	public static AcceptancePolicy bestWithin(long timeLimit, boolean minimize) {
+		Argument.positive(timeLimit);
+		return new AcceptancePolicy(minimize, timeLimit) {
+			@Override
+			public boolean accept(Result result) {
+				return result.isOptimal();
+			}
+		};
+	}
+
+	private final String nome;
+	private final List<SolverCommand> variants = new ArrayList<SolverCommand>();
+	private final AcceptancePolicy policy;
+	/** Set when the race was decided, to cancel the remaining variants. */
+	private final AtomicBoolean cancelled = new AtomicBoolean(false);
+	private volatile Result winner;
+	private final List<Result> results = Collections.synchronizedList(new ArrayList<Result>());
+
+	/**
+	 * Races commands that were already created. Cancellation relies only on interruption of their threads.
+	 */
+	public PortfolioSolverCommand(String nome, List<? extends SolverCommand> variants, AcceptancePolicy policy) {
+		this(nome, policy);
+		Argument.notNull(variants);
+		Argument.check(! variants.isEmpty());
+		for (SolverCommand command : variants) {
+			Argument.notNull(command);
+			this.variants.add(command);
+		}
+	}
+
+	/**
+	 * Races one command per configuration, created by the factory. The {@link Delegate} of each configuration is
+	 * wrapped so that cancelled variants do not start further iterations.
+	 */
+	public PortfolioSolverCommand(String nome, List<ConfigurationCplex> configurations, VariantFactory factory, AcceptancePolicy policy) {
+		this(nome, policy);
+		Argument.notNull(configurations);
+		Argument.notNull(factory);
+		Argument.check(! configurations.isEmpty());
+		for (ConfigurationCplex configuration : configurations) {
+			ConfigurationCplex copy = new ConfigurationCplex(configuration);
+			copy.setDelegate(new CancellationDelegate(cancelled, configuration.getDelegate()));
+			SolverCommand command = factory.create(copy);
+			Argument.notNull(command);
+			this.variants.add(command);
+		}
+	}
+
+	private PortfolioSolverCommand(String nome, AcceptancePolicy policy) {
+		super();
+		Argument.notNull(nome);
+		Argument.notNull(policy);
+		this.nome = nome;
+		this.policy = policy;
+		this.logger = LoggerFactory.getLogger(LoggerFactory.getLogger("ilog.cplex"), nome);
+		this.loggerExecucao = LoggerFactory.getLogger(logger, "exec");
+		this.loggerMeter = LoggerFactory.getLogger(logger, "perf");
+	}
+
+	/** Refuses further iterations once the race was decided, otherwise asks the original delegate. */
+	private static class CancellationDelegate extends StopPolicy {
+		private final AtomicBoolean cancelled;
+		private final Delegate delegate;
+
+		static final String REASON_CANCELLED = "cancelled";
+		static final String REASON_SINGLE_ITERATION = "singleIteration";
+
+		CancellationDelegate(AtomicBoolean cancelled, Delegate delegate) {
+			this.cancelled = cancelled;
+			this.delegate = delegate;
+		}
+
+		@Override
+		protected String beforeIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+			if (cancelled.get()) return REASON_CANCELLED;
+			if (delegate != null && ! delegate.antesExecucao(cplex, numeroIteracao, configuracao)) return StopPolicy.reasonOf(delegate);
+			return null;
+		}
+
+		@Override
+		protected String afterIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+			if (cancelled.get()) return REASON_CANCELLED;
+			/* Sem delegate, o CommandCplex executa uma única iteração. */
+			if (delegate == null) return REASON_SINGLE_ITERATION;
+			if (! delegate.depoisExecucao(cplex, numeroIteracao, configuracao)) return StopPolicy.reasonOf(delegate);
+			return null;
+		}
+	}
+
+	public String getNome() { return nome; }
+	public List<SolverCommand> getVariants() { return Collections.unmodifiableList(variants); }
+	public AcceptancePolicy getPolicy() { return policy; }
+	/** @return The variant whose solution was chosen, or null if none (yet). */
+	public Result getWinner() { return winner; }
+	/**
+	 * @return Outcome of the variants that finished before the race was decided and, if no variant was accepted, of
+	 *         the cancelled variants.
+	 */
+	public List<Result> getResults() {
+		synchronized (results) {
+			return new ArrayList<Result>(results);
+		}
+	}
+	public boolean isCancelled() { return cancelled.get(); }
+
+	/**
+	 * Runs all variants and waits until the race is decided and the cancelled variants have finished.
+	 *
+	 * @throws NoSolutionException No variant found a solution; the reason is {@link NoSolutionException.Reason#INCOMPLETE} if
+	 *             the time limit elapsed, {@link NoSolutionException.Reason#INTERRUPTED} if the calling thread was interrupted,
+	 *             or otherwise the reason reported by the first variant.
+	 */
+	@Override
+	public void execute() throws NoSolutionException {
+		Argument.check(winner == null && ! cancelled.get());
+		Meter op = MeterFactory.getMeter(loggerMeter, ExecutePortfolio).put("variants", Integer.toString(variants.size())).start();
+		final BlockingQueue<Result> finished = new LinkedBlockingQueue<Result>();
+		List<Thread> threads = new ArrayList<Thread>();
+		List<IloCplex.Aborter> aborters = new ArrayList<IloCplex.Aborter>();
+		try {
+			for (int i = 0; i < variants.size(); i++) {
+				aborters.add(attachAborter(variants.get(i)));
+				final Result result = new Result(i, variants.get(i));
+				Thread thread = new Thread(MeterExecutors.wrap(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							runVariant(result);
+						} finally {
+							finished.add(result);
+						}
+					}
+				}), nome + "-variant-" + i);
+				thread.setDaemon(true);
+				threads.add(thread);
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+
+			long deadline = policy.getTimeLimit() == 0 ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getTimeLimit());
+			int pending = variants.size();
+			Result accepted = null;
+			boolean timeout = false;
+			while (pending > 0 && accepted == null) {
+				Result result;
+				if (deadline == 0) {
+					result = finished.take();
+				} else {
+					long remaining = deadline - System.nanoTime();
+					result = remaining > 0 ? finished.poll(remaining, TimeUnit.NANOSECONDS) : null;
+					if (result == null) {
+						timeout = true;
+						break;
+					}
+				}
+				pending--;
+				results.add(result);
+				loggerExecucao.debug("Variant {} finished: {}.", Integer.toString(result.getIndex()), result);
+				if (result.hasSolution() && policy.accept(result)) accepted = result;
+			}
+			cancel(threads, aborters);
+			if (accepted == null) {
+				/* Variantes canceladas podem ter encontrado uma solução viável antes de serem abortadas. */
+				Result result;
+				while ((result = finished.poll()) != null) {
+					if (! result.hasSolution() && ! (result.getFailure() instanceof Error)) evaluateIncumbent(result);
+					results.add(result);
+					loggerExecucao.debug("Variant {} cancelled: {}.", Integer.toString(result.getIndex()), result);
+				}
+			}
+
+			Result best = accepted != null ? accepted : choose();
+			if (best == null || ! best.hasSolution()) {
+				NoSolutionException e = noSolution(timeout);
+				op.put("reason", e.reason.toString()).fail(e);
+				throw e;
+			}
+			this.winner = best;
+			loggerExecucao.info("Variant {} wins: {}.", Integer.toString(best.getIndex()), best);
+			op.put("winner", Integer.toString(best.getIndex())).ok();
+		} catch (InterruptedException e) {
+			cancel(threads, aborters);
+			op.fail(e);
+			throw new NoSolutionException(NoSolutionException.Reason.INTERRUPTED).operation(ExecutePortfolio);
+		} catch (NoSolutionException e) {
+			throw e.operation(ExecutePortfolio);
+		} catch (RuntimeException e) {
+			cancel(threads, aborters);
+			op.fail(e);
+			throw RichRuntimeException.enrich(e, ExecutePortfolio).data(op.getContext());
+		}
+	}
+
+	private void runVariant(Result result) {
+		long start = System.nanoTime();
+		try {
+			result.getCommand().execute();
+			evaluate(result);
+		} catch (NoSolutionException e) {
+			result.failure = e;
+		} catch (RuntimeException e) {
+			loggerExecucao.warn("Variant " + result.getIndex() + " failed.", e);
+			result.failure = e;
+		} catch (Error e) {
+			result.failure = e;
+			throw e;
+		} finally {
+			result.runTime = System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Describes the solution of a variant that finished without exception. By default, reads status and objective
+	 * value of {@link CommandCplex}; other commands are assumed to have a feasible solution with unknown objective.
+	 */
+	protected void evaluate(Result result) {
+		result.setSolution(true);
+		if (result.getCommand() instanceof CommandCplex) {
+			IloCplex cplex = ((CommandCplex) result.getCommand()).getCplex();
+			try {
+				IloCplex.Status status = cplex.getStatus();
+				result.setOptimal(IloCplex.Status.Optimal.equals(status));
+				result.setSolution(IloCplex.Status.Optimal.equals(status) || IloCplex.Status.Feasible.equals(status));
+				if (result.hasSolution()) result.setObjective(cplex.getObjValue());
+			} catch (IloException e) {
+				/* IloCplex.get<*>() is not known to actually throw IloException. */
+				throw new UnsupportedException(e);
+			}
+		}
+	}
+
+	/**
+	 * Describes the incumbent of a variant that was cancelled before it finished. By default, reads status and
+	 * objective value of {@link CommandCplex}, which keeps the incumbent found before it was aborted; other commands
+	 * have no solution.
+	 */
+	protected void evaluateIncumbent(Result result) {
+		if (! (result.getCommand() instanceof CommandCplex)) return;
+		try {
+			evaluate(result);
+		} catch (RuntimeException e) {
+			loggerExecucao.warn("Variant " + result.getIndex() + " has no readable incumbent.", e);
+			result.setSolution(false);
+		}
+	}
+
+	/** @return Best variant that finished, according to the policy, or null if none finished. */
+	private Result choose() {
+		Result best = null;
+		synchronized (results) {
+			for (Result result : results) {
+				if (best == null || policy.compare(result, best) < 0) best = result;
+			}
+		}
+		return best;
+	}
+
+	private NoSolutionException noSolution(boolean timeout) {
+		if (timeout) return new NoSolutionException(NoSolutionException.Reason.INCOMPLETE);
+		synchronized (results) {
+			for (Result result : results) {
+				if (result.getFailure() instanceof NoSolutionException) {
+					return new NoSolutionException(((NoSolutionException) result.getFailure()).reason);
+				}
+			}
+			for (Result result : results) {
+				if (result.getFailure() instanceof RuntimeException) throw (RuntimeException) result.getFailure();
+			}
+		}
+		return new NoSolutionException(NoSolutionException.Reason.INCOMPLETE);
+	}
+
+	/** @return Aborter attached to the {@link IloCplex} of the command, or null if the command is not a {@link CommandCplex}. */
+	private static IloCplex.Aborter attachAborter(SolverCommand command) {
+		if (! (command instanceof CommandCplex)) return null;
+		try {
+			return ((CommandCplex) command).getCplex().use(new IloCplex.Aborter());
+		} catch (IloException e) {
+			/* IloCplex.use() is not known to actually throw IloException. */
+			throw new UnsupportedException(e);
+		}
+	}
+
+	/**
+	 * Signals the remaining variants to stop and waits until all variant threads have finished. An interruption of the
+	 * calling thread does not shorten the wait; it is restored before returning.
+	 */
+	private void cancel(List<Thread> threads, List<IloCplex.Aborter> aborters) {
+		cancelled.set(true);
+		for (int i = 0; i < threads.size(); i++) {
+			Thread thread = threads.get(i);
+			if (! thread.isAlive()) continue;
+			IloCplex.Aborter aborter = i < aborters.size() ? aborters.get(i) : null;
+			if (aborter != null) aborter.abort();
+			thread.interrupt();
+		}
+		boolean interrupted = false;
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		/* Lets the IloCplex of the winner solve again. */
+		for (IloCplex.Aborter aborter : aborters) {
+			if (aborter != null) aborter.clear();
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+}
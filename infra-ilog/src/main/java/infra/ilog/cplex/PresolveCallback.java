@@ -25,41 +25,48 @@ import org.slf4j.Logger;
 
 
 /**
- * Callback que registra o progresso da fase de presolve.
+ * Callback que registra o progresso da fase de presolve, no máximo uma linha por intervalo de tempo. Na série de convergência (se existir), marca somente a duração
+ * do presolve.
  * @author Daniel Felix Ferber
  */
 class PresolveCallback extends ilog.cplex.IloCplex.PresolveCallback {
 	private final Logger logger;
-	private final int numeroPassosEntreLogs;
-	private int contadorPassos = 0;
+	private final ProgressThrottle throttle;
+	private final ConvergenceSeries serie;
 
-	public PresolveCallback(Logger logger, int numeroPassosEntreLogs) {
+	public PresolveCallback(Logger logger, double intervaloEntreLogs, ConvergenceSeries serie) {
 		super();
 		Argument.notNull(logger);
-		Argument.positive(numeroPassosEntreLogs);
 
 		this.logger = logger;
-		this.numeroPassosEntreLogs = numeroPassosEntreLogs;
+		this.throttle = new ProgressThrottle(intervaloEntreLogs);
+		this.serie = serie;
 	}
 
 	@Override
 	protected void main() throws IloException {
 		Attribute.notNull(logger);
 
+		if (serie != null && serie.reserve()) {
+			serie.add(ConvergenceSeries.PRESOLVE, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+		}
+
 		if (! logger.isInfoEnabled()) return;
-		if (contadorPassos-- > 0)  return;
-		contadorPassos = numeroPassosEntreLogs;
+		if (! throttle.liberado()) return;
 
-		this.logger.info(
-				String.format("Presolve: nAggr=%d; nmodCoef=%d; nRemCol=%d; nremRow=%d; nCol=%d; nRow=%d; nQC=%d",
-						Integer.valueOf(getNaggregations()),
-						Integer.valueOf(getNmodifiedCoeffs()),
-						Integer.valueOf(getNremovedCols()),
-						Integer.valueOf(getNremovedRows()),
-						Integer.valueOf(getNcols()),
-						Integer.valueOf(getNrows()),
-						Integer.valueOf(getNQCs()))
-		);
+		String linha;
+		synchronized (throttle) {
+			StringBuilder sb = throttle.buffer();
+			sb.append("Presolve: nAggr=").append(getNaggregations());
+			sb.append("; nmodCoef=").append(getNmodifiedCoeffs());
+			sb.append("; nRemCol=").append(getNremovedCols());
+			sb.append("; nremRow=").append(getNremovedRows());
+			sb.append("; nCol=").append(getNcols());
+			sb.append("; nRow=").append(getNrows());
+			sb.append("; nQC=").append(getNQCs());
+			linha = sb.toString();
+		}
+		this.logger.info(linha);
 	}
 
 	@Override
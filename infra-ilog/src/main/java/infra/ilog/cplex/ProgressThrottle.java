@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.cplex;
+
+import static infra.exception.Assert.Argument;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limita a frequência com que os callbacks reportam progresso no log: no máximo uma linha a cada intervalo de tempo,
+ * independente da velocidade das iterações. A verificação é somente uma leitura do relógio, para não atrasar as
+ * iterações do CPLEX.
+ * <p>
+ * A linha é montada num {@link StringBuilder} reaproveitado, sem boxing. Como o CPLEX pode chamar o callback em
+ * várias threads, somente a thread que obteve a vez (por {@link #liberado()}) deve usar o buffer, dentro de um bloco
+ * sincronizado no próprio {@link ProgressThrottle}.
+ * @author Daniel Felix Ferber
+ */
+class ProgressThrottle {
+	private final long intervalo;
+	/** Instante (nanosegundos) a partir do qual a próxima linha é permitida. */
+	private final AtomicLong proximo;
+	private final StringBuilder buffer = new StringBuilder(160);
+
+	/** @param intervaloSegundos Intervalo mínimo entre duas linhas no log (segundos). */
+	public ProgressThrottle(double intervaloSegundos) {
+		Argument.check(intervaloSegundos >= 0);
+		this.intervalo = (long) (intervaloSegundos * 1000000000.0);
+		/* A primeira chamada sempre é reportada. */
+		this.proximo = new AtomicLong(System.nanoTime());
+	}
+
+	/** @return Se passou o intervalo desde a última linha. Somente uma thread obtém a vez em cada intervalo. */
+	public boolean liberado() {
+		long agora = System.nanoTime();
+		long p = proximo.get();
+		if (agora - p < 0) return false;
+		return proximo.compareAndSet(p, agora + intervalo);
+	}
+
+	/** @return O buffer reaproveitado, vazio. */
+	public StringBuilder buffer() {
+		buffer.setLength(0);
+		return buffer;
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.cplex;
+
+import static infra.exception.Assert.Argument;
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+import ilog.cplex.IloCplex.Status;
+import infra.exception.controlstate.design.UnsupportedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link Delegate} that decides when {@link CommandCplex} stops iterating and remembers why. The reason is recorded
+ * by {@link CommandCplex} into the context of its meters (key <code>stop</code>).
+ * <p>
+ * {@link CommandCplex} repeats {@link IloCplex#solve()} while the delegate allows, and each call continues the search
+ * from where the previous one stopped (typically limited by {@link ConfigurationCplex#getSimplexLimiteDeTempo()}).
+ * These policies stop the search when it is no longer worth continuing, instead of hand writing a delegate for each
+ * job:
+ * <ul>
+ * <li>{@link #stagnation(int, double, double)}: the objective improved less than epsilon over the last iterations or
+ * seconds.
+ * <li>{@link #timeBudget(double)}: the wall-clock time since the first iteration exceeds the budget.
+ * <li>{@link #mipGap(double)}: the relative MIP gap is below the threshold.
+ * <li>{@link #anyOf(Delegate...)}: stops as soon as one of the policies stops.
+ * </ul>
+ * Every policy also stops once CPLEX reports an optimal solution, as further iterations would not change it.
+ * <p>
+ * Policies keep state about the execution and are reset at the first iteration. An instance must not be shared by
+ * commands that run at the same time.
+ *
+ * @author Daniel Felix Ferber
+ */
+public abstract class StopPolicy implements Delegate {
+	public static final String REASON_OPTIMAL = "optimal";
+	public static final String REASON_STAGNATION = "stagnation";
+	public static final String REASON_TIME_BUDGET = "timeBudget";
+	public static final String REASON_MIP_GAP = "mipGap";
+	/** Reason recorded for a delegate that is not a {@link StopPolicy}. */
+	public static final String REASON_DELEGATE = "delegate";
+
+	/** Why the policy stopped the execution, or null while it allows further iterations. */
+	private String reason = null;
+
+	/** @return Why the policy stopped the execution, or null while it allows further iterations. */
+	public String getReason() { return reason; }
+
+	/** @return Why the delegate stopped the execution, or {@link #REASON_DELEGATE} if it does not tell. */
+	public static String reasonOf(Delegate delegate) {
+		if (delegate instanceof StopPolicy) {
+			String reason = ((StopPolicy) delegate).getReason();
+			if (reason != null) return reason;
+		}
+		return REASON_DELEGATE;
+	}
+
+	@Override
+	public boolean antesExecucao(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+		if (numeroIteracao == 1) {
+			this.reason = null;
+			reset();
+		}
+		if (this.reason != null) return false;
+		return decide(beforeIteration(cplex, numeroIteracao, configuracao));
+	}
+
+	@Override
+	public boolean depoisExecucao(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+		if (this.reason != null) return false;
+		String r = afterIteration(cplex, numeroIteracao, configuracao);
+		if (r == null && StopPolicy.isOptimal(cplex)) r = REASON_OPTIMAL;
+		return decide(r);
+	}
+
+	private boolean decide(String r) {
+		if (r == null) return true;
+		this.reason = r;
+		return false;
+	}
+
+	/** Clears the state of a previous execution. Called before the first iteration. */
+	protected void reset() {
+		/* No state by default. */
+	}
+
+	/** @return Why the execution must stop before the iteration, or null to continue. */
+	protected String beforeIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+		return null;
+	}
+
+	/** @return Why the execution must stop after the iteration, or null to run another one. */
+	protected String afterIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+		return null;
+	}
+
+	protected static boolean isOptimal(IloCplex cplex) {
+		try {
+			return Status.Optimal.equals(cplex.getStatus());
+		} catch (IloException e) {
+			/* IloCplex.getStatus() is not known to actually throw IloException. */
+			throw new UnsupportedException(e);
+		}
+	}
+
+	/** @return Objective value of the incumbent solution, or null if there is none yet. */
+	protected static Double objective(IloCplex cplex) {
+		try {
+			return Double.valueOf(cplex.getObjValue());
+		} catch (IloException e) {
+			/* CPLEX throws if there is no solution. */
+			return null;
+		}
+	}
+
+	// ========================================================================
+
+	/**
+	 * Stops when the objective improved less than epsilon (relative to the objective) over the last iterations or over
+	 * the last seconds, whichever window is available first.
+	 * @param iterations Window in iterations, or 0 to disable.
+	 * @param seconds Window in seconds, or 0 to disable.
+	 * @param epsilon Smallest relative improvement worth continuing, like 0.001 for 0.1%.
+	 */
+	public static StopPolicy stagnation(int iterations, double seconds, double epsilon) {
+		return new Stagnation(iterations, seconds, epsilon);
+	}
+
+	/** Stops when the wall-clock time since the first iteration exceeds the budget (seconds). */
+	public static StopPolicy timeBudget(double seconds) {
+		Argument.positive(seconds);
+		final long budget = (long) (seconds * 1000000000.0);
+		return new StopPolicy() {
+			private long start;
+
+			@Override
+			protected void reset() {
+				start = System.nanoTime();
+			}
+
+			@Override
+			protected String beforeIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+				return System.nanoTime() - start >= budget ? REASON_TIME_BUDGET : null;
+			}
+
+			@Override
+			protected String afterIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+				return System.nanoTime() - start >= budget ? REASON_TIME_BUDGET : null;
+			}
+		};
+	}
+
+	/** Stops when the relative MIP gap of the incumbent solution is not above the threshold. */
+	public static StopPolicy mipGap(final double gap) {
+		Argument.check(gap >= 0);
+		return new StopPolicy() {
+			@Override
+			protected String afterIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+				if (! cplex.isMIP()) return null;
+				try {
+					return cplex.getMIPRelativeGap() <= gap ? REASON_MIP_GAP : null;
+				} catch (IloException e) {
+					/* CPLEX throws if there is no solution. */
+					return null;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Stops as soon as one of the delegates stops, with its reason. All delegates are called at each iteration, so
+	 * that they keep track of the execution.
+	 */
+	public static StopPolicy anyOf(Delegate... delegates) {
+		Argument.notNull((Object) delegates);
+		final List<Delegate> list = new ArrayList<Delegate>(Arrays.asList(delegates));
+		for (Delegate d : list) Argument.notNull(d);
+		return new StopPolicy() {
+			@Override
+			protected String beforeIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+				String r = null;
+				for (Delegate d : list) {
+					if (! d.antesExecucao(cplex, numeroIteracao, configuracao) && r == null) r = StopPolicy.reasonOf(d);
+				}
+				return r;
+			}
+
+			@Override
+			protected String afterIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+				String r = null;
+				for (Delegate d : list) {
+					if (! d.depoisExecucao(cplex, numeroIteracao, configuracao) && r == null) r = StopPolicy.reasonOf(d);
+				}
+				return r;
+			}
+		};
+	}
+
+	private static class Stagnation extends StopPolicy {
+		private final int iterations;
+		private final long window;
+		private final double epsilon;
+		/** Time (nanoseconds) and objective of the incumbent solution after each recent iteration that had one. */
+		private final List<Long> times = new ArrayList<Long>();
+		private final List<Double> objectives = new ArrayList<Double>();
+
+		Stagnation(int iterations, double seconds, double epsilon) {
+			Argument.check(iterations >= 0, seconds >= 0, epsilon >= 0);
+			Argument.check(iterations > 0 || seconds > 0);
+			this.iterations = iterations;
+			this.window = (long) (seconds * 1000000000.0);
+			this.epsilon = epsilon;
+		}
+
+		@Override
+		protected void reset() {
+			times.clear();
+			objectives.clear();
+		}
+
+		@Override
+		protected String afterIteration(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) {
+			Double objective = StopPolicy.objective(cplex);
+			if (objective == null) return null;
+			long now = System.nanoTime();
+			times.add(Long.valueOf(now));
+			objectives.add(objective);
+
+			int last = objectives.size() - 1;
+			/* Oldest sample still required by the next iteration. */
+			int keep = last;
+			if (iterations > 0) {
+				if (last >= iterations && ! improved(objectives.get(last - iterations), objective.doubleValue())) return REASON_STAGNATION;
+				keep = Math.min(keep, Math.max(0, last + 1 - iterations));
+			}
+			if (window > 0) {
+				/* The most recent sample that is at least as old as the window. */
+				int reference = -1;
+				for (int i = last; i >= 0; i--) {
+					if (now - times.get(i).longValue() >= window) {
+						reference = i;
+						break;
+					}
+				}
+				if (reference >= 0 && ! improved(objectives.get(reference), objective.doubleValue())) return REASON_STAGNATION;
+				keep = Math.min(keep, Math.max(0, reference));
+			}
+			times.subList(0, keep).clear();
+			objectives.subList(0, keep).clear();
+			return null;
+		}
+
+		private boolean improved(double before, double after) {
+			double scale = Math.max(Math.abs(before), 1e-10);
+			return Math.abs(after - before) / scale >= epsilon;
+		}
+	}
+}
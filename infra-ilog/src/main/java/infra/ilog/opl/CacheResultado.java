@@ -0,0 +1,302 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.opl;
+
+import static infra.exception.Assert.Argument;
+import infra.ilog.cplex.ConfigurationCplex;
+import infra.ilog.cplex.Delegate;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache em disco local do resultado de execuções do {@link FacadeOPL}. Evita resolver novamente uma instância idêntica
+ * a outra já resolvida, por exemplo, quando um processo é repetido após uma falha em outra etapa.
+ * <p>
+ * O resultado é identificado por uma {@link Fingerprint} do texto 'definitivo' do modelo, do conteúdo de todas as
+ * fontes de dados, dos filtros dos consumidores de dados e das opções de configuração que alteram a solução. Somente
+ * execuções em que todas as fontes são {@link FingerprintableDataSource} (com conteúdo conhecido) e todos os
+ * consumidores são {@link ReplayableDataSink} podem ser reaproveitadas. Se a configuração do CPLEX tem um delegate, ele
+ * precisa ser um {@link FingerprintableDelegate}. Apenas execuções em que o CPLEX terminou por conta própria (solução
+ * ótima) são guardadas; resultados interrompidos por limite de tempo, de iterações ou pelo delegate não são.
+ * <p>
+ * Cada entrada é um diretório com um arquivo por consumidor. Uma entrada é gravada num diretório temporário e renomeada
+ * somente quando completa, de forma que uma entrada incompleta nunca é reproduzida. Quando o tamanho total excede o
+ * limite, são descartadas as entradas usadas há mais tempo (segundo a data de modificação, atualizada a cada uso).
+ *
+ * @author Daniel Felix Ferber
+ */
+public class CacheResultado {
+	private static final String TEMPORARIO = ".tmp";
+	private static final String EXTENSAO = ".dat";
+
+	private final File diretorio;
+	private long tamanhoMaximo;
+	private final AtomicLong acertos = new AtomicLong(0);
+	private final AtomicLong falhas = new AtomicLong(0);
+
+	/**
+	 * @param diretorio Diretório onde guardar as entradas; é criado se não existir.
+	 * @param tamanhoMaximo Tamanho máximo (bytes) da soma de todas as entradas.
+	 */
+	public CacheResultado(File diretorio, long tamanhoMaximo) {
+		Argument.notNull(diretorio);
+		Argument.check(tamanhoMaximo >= 0);
+		this.diretorio = diretorio;
+		this.tamanhoMaximo = tamanhoMaximo;
+	}
+
+	/**
+	 * Calcula a chave que identifica o resultado da execução.
+	 * @return A chave, ou null se alguma fonte ou consumidor de dados não permite reaproveitar o resultado.
+	 */
+	public static String chave(ConfiguracaoOPL configuracaoOpl, ConfigurationCplex configuracaoCplex, ProvedorModelo provedor, Collection<DataSource> fontes, Collection<DataSink> consumidores) throws IOException {
+		Fingerprint f = new Fingerprint();
+		f.add(provedor.getNome());
+		f.add(provedor.getConteudo());
+		f.add(configuracaoOpl.getUsarValidacao() ? 1 : 0);
+		if (configuracaoCplex != null) {
+			f.add(configuracaoCplex.getSimplexLimiteDeIteracoes() == null ? -1 : configuracaoCplex.getSimplexLimiteDeIteracoes().longValue());
+			f.add(configuracaoCplex.getSimplexLimiteDeTempo() == null ? "" : configuracaoCplex.getSimplexLimiteDeTempo().toString());
+			Delegate delegate = configuracaoCplex.getDelegate();
+			if (delegate == null) {
+				f.add("");
+			} else if (delegate instanceof FingerprintableDelegate) {
+				f.add(delegate.getClass().getName());
+				((FingerprintableDelegate) delegate).addFingerprint(f);
+			} else {
+				/* Não há como saber se outro delegate da mesma classe tem os mesmos parâmetros. */
+				return null;
+			}
+		}
+		f.add(fontes.size());
+		for (DataSource fonte : fontes) {
+			if (! (fonte instanceof FingerprintableDataSource)) return null;
+			f.add(fonte.getName());
+			if (! ((FingerprintableDataSource) fonte).addFingerprint(f)) return null;
+		}
+		f.add(consumidores.size());
+		for (DataSink consumidor : consumidores) {
+			if (! (consumidor instanceof ReplayableDataSink)) return null;
+			f.add(consumidor.getNome());
+			((ReplayableDataSink) consumidor).addFingerprint(f);
+		}
+		return f.toString();
+	}
+
+	private File arquivo(File entrada, int indice) {
+		return new File(entrada, Integer.toString(indice) + EXTENSAO);
+	}
+
+	/** @return Se existe uma entrada completa para a chave. */
+	public synchronized boolean contem(String chave) {
+		return new File(diretorio, chave).isDirectory();
+	}
+
+	/**
+	 * Entrega novamente aos consumidores os dados registrados para a chave.
+	 * @return false se não existe entrada para a chave.
+	 */
+	public boolean reproduzir(String chave, List<ReplayableDataSink> consumidores) throws IOException {
+		Argument.notNull(chave);
+		Argument.notNull(consumidores);
+		File entrada = new File(diretorio, chave);
+		List<InputStream> registros = new ArrayList<InputStream>(consumidores.size());
+		try {
+			synchronized (this) {
+				/* Abre todos os registros antes de entregar, para não entregar parcialmente uma entrada descartada. */
+				if (! entrada.isDirectory()) {
+					falhas.incrementAndGet();
+					return false;
+				}
+				try {
+					for (int i = 0; i < consumidores.size(); i++) {
+						registros.add(new FileInputStream(arquivo(entrada, i)));
+					}
+				} catch (FileNotFoundException e) {
+					falhas.incrementAndGet();
+					return false;
+				}
+				entrada.setLastModified(System.currentTimeMillis());
+			}
+			acertos.incrementAndGet();
+			for (int i = 0; i < consumidores.size(); i++) {
+				consumidores.get(i).replay(registros.get(i));
+			}
+			return true;
+		} finally {
+			for (InputStream is : registros) {
+				is.close();
+			}
+		}
+	}
+
+	/**
+	 * Inicia a gravação de uma entrada.
+	 * @param consumidores Número de consumidores de dados.
+	 */
+	public Gravacao gravar(String chave, int consumidores) throws IOException {
+		Argument.notNull(chave);
+		File temporario = new File(diretorio, chave + TEMPORARIO + System.nanoTime());
+		FacadeOPL.assureDiretory(temporario);
+		return new Gravacao(chave, temporario, consumidores);
+	}
+
+	/**
+	 * Gravação de uma entrada, um registro por consumidor de dados.
+	 */
+	public class Gravacao {
+		private final String chave;
+		private final File temporario;
+		private final OutputStream[] registros;
+
+		Gravacao(String chave, File temporario, int consumidores) {
+			this.chave = chave;
+			this.temporario = temporario;
+			this.registros = new OutputStream[consumidores];
+		}
+
+		/** @return Stream para o registro do consumidor de dados, na mesma ordem de {@link CacheResultado#chave}. */
+		public OutputStream abrir(int indice) throws IOException {
+			Argument.check(registros[indice] == null);
+			registros[indice] = new FileOutputStream(arquivo(temporario, indice));
+			return registros[indice];
+		}
+
+		/** Torna a entrada disponível e descarta entradas antigas se o limite de tamanho foi excedido. */
+		public void concluir() throws IOException {
+			try {
+				for (int i = 0; i < registros.length; i++) {
+					if (registros[i] == null) abrir(i);
+					registros[i].close();
+				}
+			} catch (IOException e) {
+				descartar();
+				throw e;
+			}
+			synchronized (CacheResultado.this) {
+				File entrada = new File(diretorio, chave);
+				if (entrada.exists() || ! temporario.renameTo(entrada)) {
+					/* Outra execução gravou a mesma entrada. */
+					CacheResultado.apagar(temporario);
+				}
+				ajustarTamanho();
+			}
+		}
+
+		/** Descarta a entrada incompleta. */
+		public void descartar() {
+			for (OutputStream os : registros) {
+				if (os == null) continue;
+				try {
+					os.close();
+				} catch (IOException e) {
+					// Ignora, o arquivo será apagado.
+				}
+			}
+			CacheResultado.apagar(temporario);
+		}
+	}
+
+	private static long tamanho(File arquivo) {
+		if (! arquivo.isDirectory()) return arquivo.length();
+		long total = 0;
+		File[] filhos = arquivo.listFiles();
+		if (filhos != null) {
+			for (File filho : filhos) total += tamanho(filho);
+		}
+		return total;
+	}
+
+	private static void apagar(File arquivo) {
+		File[] filhos = arquivo.listFiles();
+		if (filhos != null) {
+			for (File filho : filhos) apagar(filho);
+		}
+		arquivo.delete();
+	}
+
+	/** @return Entradas completas, da usada há mais tempo para a mais recente. */
+	private File[] entradas() {
+		File[] entradas = diretorio.listFiles();
+		if (entradas == null) return new File[0];
+		List<File> lista = new ArrayList<File>(entradas.length);
+		for (File entrada : entradas) {
+			if (entrada.isDirectory() && entrada.getName().indexOf(TEMPORARIO) < 0) lista.add(entrada);
+		}
+		File[] resultado = lista.toArray(new File[lista.size()]);
+		Arrays.sort(resultado, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				long m1 = o1.lastModified();
+				long m2 = o2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+		return resultado;
+	}
+
+	private void ajustarTamanho() {
+		File[] entradas = entradas();
+		long[] tamanhos = new long[entradas.length];
+		long total = 0;
+		for (int i = 0; i < entradas.length; i++) {
+			tamanhos[i] = tamanho(entradas[i]);
+			total += tamanhos[i];
+		}
+		for (int i = 0; i < entradas.length && total > tamanhoMaximo; i++) {
+			CacheResultado.apagar(entradas[i]);
+			total -= tamanhos[i];
+		}
+	}
+
+	/** Descarta todas as entradas. */
+	public synchronized void limpar() {
+		for (File entrada : entradas()) {
+			CacheResultado.apagar(entrada);
+		}
+	}
+
+	public synchronized void setTamanhoMaximo(long tamanhoMaximo) {
+		Argument.check(tamanhoMaximo >= 0);
+		this.tamanhoMaximo = tamanhoMaximo;
+		ajustarTamanho();
+	}
+
+	public File getDiretorio() { return diretorio; }
+	public synchronized long getTamanhoMaximo() { return tamanhoMaximo; }
+	/** @return Soma do tamanho (bytes) de todas as entradas completas. */
+	public synchronized long getTamanho() {
+		long total = 0;
+		for (File entrada : entradas()) total += tamanho(entrada);
+		return total;
+	}
+	/** @return Quantas vezes um resultado foi reproduzido. */
+	public long getAcertos() { return acertos.get(); }
+	/** @return Quantas vezes não havia resultado para reproduzir. */
+	public long getFalhas() { return falhas.get(); }
+}
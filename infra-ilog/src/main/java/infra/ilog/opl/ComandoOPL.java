@@ -21,18 +21,18 @@ import ilog.opl.IloOplModel;
 import ilog.opl.IloOplModelDefinition;
 import infra.exception.RichRuntimeException;
 import infra.exception.controlstate.design.UnsupportedMethodException;
+import infra.ilog.ArtifactExporter;
 import infra.ilog.NoSolutionException;
 import infra.ilog.SolverCommand;
+import infra.slf4j.Level;
 import infra.slf4j.LoggerFactory;
 import infra.slf4j.Meter;
 import infra.slf4j.MeterFactory;
-import infra.slf4j.Operation;
 import infra.slf4j.OperationFactory;
+import infra.slf4j.RegisteredOperation;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.PrintStream;
 
 import org.slf4j.Logger;
@@ -48,6 +48,8 @@ import org.slf4j.Logger;
  * <li>Registrar propriedades e status do modelo OPL em log.
  * <li>Opcionalmente, salvar modelo, dados internos e dados externos em arquivo para depurar com CPLEX Studio.
  * <li>Opcionalmente, salvar a solução em arquivo para revisão manual.
+ * <li>Os arquivos são gravados em segundo plano pelo {@link ArtifactExporter} da configuração, para que a execução não
+ * aguarde o disco. O comando aguarda a gravação dos seus arquivos antes de terminar.
  * </ul>
  * A fazer
  * <ul>
@@ -80,6 +82,9 @@ public class ComandoOPL {
 	/** @return Solver command that guides the execution of the CPLEX or CP instance. */
 	protected SolverCommand getComandoResolvedor() { return solverCommand; }
 
+	/** Arquivos entregues ao exportador por este comando. */
+	private final ArtifactExporter.Exports exportacoes = new ArtifactExporter.Exports();
+
 	/** Cria o comando executor a partir de uma instância CPLEX existente. */
 	public ComandoOPL(IloOplModel oplModel, ConfiguracaoOPL configuracao, SolverCommand comandoResolvedor) {
 		super();
@@ -99,9 +104,9 @@ public class ComandoOPL {
 		this.loggerInternalData = LoggerFactory.getLogger(this.loggerData, "internal");
 	}
 
-	private final Operation ExecuteOpl = OperationFactory.getOperation("executeOpl", "Execute OPL");
+	private static final RegisteredOperation ExecuteOpl = OperationFactory.getOperation(ComandoOPL.class, "executeOpl", "Execute OPL");
 
-	/** Executa o resolvedor OPL.
+	/** Executa o resolvedor OPL. Termina somente depois de gravados os arquivos entregues ao exportador.
 	 * @throws NoSolutionException */
 	public void executar() throws NoSolutionException {
 		Attribute.check(this.configuracao != null);
@@ -157,6 +162,8 @@ public class ComandoOPL {
 		} catch (RuntimeException e) {
 			op.fail(e);
 			throw RichRuntimeException.enrich(e, ExecuteOpl);
+		} finally {
+			exportacoes.await();
 		}
 	}
 
@@ -178,11 +185,11 @@ public class ComandoOPL {
 		Attribute.check(this.oplModel != null);
 
 		try {
-			ComandoOPL.assureDiretoryForFile(caminho);
-			OutputStream os = new FileOutputStream(caminho);
-			this.oplModel.printExternalData(os);
-			os.close();
-			loggerExecution.info("Cópia dos dados externos salva em {}.", caminho.getAbsolutePath());
+			/* Somente copia em memória; o arquivo é gravado em segundo plano. */
+			ArtifactExporter.Snapshot snapshot = new ArtifactExporter.Snapshot();
+			this.oplModel.printExternalData(snapshot);
+			exportacoes.add(this.configuracao.getExportador().export("external data", caminho, snapshot, this.configuracao.getCompactarArtefatos()));
+			loggerExecution.debug("Cópia dos dados externos entregue para gravação em {}.", caminho.getAbsolutePath());
 		} catch (Exception e) {
 			/* Do not interrupt execution. Considered a minor failure. */
 			loggerExecution.warn("Falha ao salvar cópia dos dados externos em {}.", caminho.getAbsolutePath(), e);
@@ -199,11 +206,11 @@ public class ComandoOPL {
 		Attribute.check(this.oplModel != null);
 
 		try {
-			ComandoOPL.assureDiretoryForFile(caminho);
-			OutputStream os = new FileOutputStream(caminho);
-			this.oplModel.printSolution(os);
-			os.close();
-			loggerExecution.info("Cópia da solução salva em {}.", caminho.getAbsolutePath());
+			/* Somente copia em memória; o arquivo é gravado em segundo plano. */
+			ArtifactExporter.Snapshot snapshot = new ArtifactExporter.Snapshot();
+			this.oplModel.printSolution(snapshot);
+			exportacoes.add(this.configuracao.getExportador().export("solution", caminho, snapshot, this.configuracao.getCompactarArtefatos()));
+			loggerExecution.debug("Cópia da solução entregue para gravação em {}.", caminho.getAbsolutePath());
 		} catch (Exception e) {
 			/* Do not interrupt execution. Considered a minor failure. */
 			loggerExecution.warn("Falha ao salvar cópia da solução em {}.", caminho.getAbsolutePath(), e);
@@ -220,11 +227,11 @@ public class ComandoOPL {
 		Attribute.check(this.oplModel != null);
 
 		try {
-			ComandoOPL.assureDiretoryForFile(caminho);
-			OutputStream os = new FileOutputStream(caminho);
-			this.oplModel.printInternalData(os);
-			os.close();
-			loggerExecution.info("Cópia dos dados internos salva em {}.", caminho.getAbsolutePath());
+			/* Somente copia em memória; o arquivo é gravado em segundo plano. */
+			ArtifactExporter.Snapshot snapshot = new ArtifactExporter.Snapshot();
+			this.oplModel.printInternalData(snapshot);
+			exportacoes.add(this.configuracao.getExportador().export("internal data", caminho, snapshot, this.configuracao.getCompactarArtefatos()));
+			loggerExecution.debug("Cópia dos dados internos entregue para gravação em {}.", caminho.getAbsolutePath());
 		} catch (Exception e) {
 			/* Do not interrupt execution. Considered a minor failure. */
 			loggerExecution.warn("Falha ao salvar cópia dos dados internos em {}.", caminho.getAbsolutePath(), e);
@@ -254,7 +261,7 @@ public class ComandoOPL {
 	/** Registra no log uma cópia dos dados da solução. */
 	protected void logSolutionData() {
 		if(! loggerSolution.isInfoEnabled()) return;
-		PrintStream ps = LoggerFactory.getInfoPrintStream(loggerSolution);
+		PrintStream ps = LoggerFactory.getStreamingPrintStream(loggerSolution, Level.INFO);
 		ps.println();
 		this.oplModel.printSolution(ps);
 		ps.close();
@@ -262,16 +269,16 @@ public class ComandoOPL {
 
 	/** Registra no log uma cópia dos dados 'internos', que são dados calculados pelo modelo OPL usado dados 'externos' ou dados da solução. */
 	protected void logInternalData() {
-		if(! loggerExternalData.isInfoEnabled()) return;
-		PrintStream ps = LoggerFactory.getInfoPrintStream(loggerInternalData);
+		if(! loggerInternalData.isInfoEnabled()) return;
+		PrintStream ps = LoggerFactory.getStreamingPrintStream(loggerInternalData, Level.INFO);
 		this.oplModel.printInternalData(ps);
 		ps.close();
 	}
 
 	/** Registra no log uma cópia dos dados 'externos', que são os dados passados como entrada para o modelo OPL, tipicamente por um arquivo .DAT ou pelos datasources Java. */
 	protected void logExternalData() {
-		if(! loggerInternalData.isInfoEnabled()) return;
-		PrintStream ps = LoggerFactory.getInfoPrintStream(loggerExternalData);
+		if(! loggerExternalData.isInfoEnabled()) return;
+		PrintStream ps = LoggerFactory.getStreamingPrintStream(loggerExternalData, Level.INFO);
 		this.oplModel.printExternalData(ps);
 		ps.close();
 	}
@@ -17,6 +17,7 @@ package infra.ilog.opl;
 
 import static infra.exception.Assert.Argument;
 import infra.exception.controlstate.design.UnsupportedMethodException;
+import infra.ilog.ArtifactExporter;
 
 import java.io.File;
 
@@ -55,6 +56,13 @@ import java.io.File;
  * <li><b>caminhoDadosSolucao</b>: Caminho do arquivo no qual será salva a solução obtida para o modelo pelo OPL (ou
  * <code>null</code> para não salvar). Este arquivo pode ser comparado com a solução reproduzida do modelo no CPLEX
  * Studio.
+ * <li><b>compactarArtefatos</b>: Se os arquivos de dados externos, dados internos e solução são compactados com gzip. O
+ * sufixo '.gz' é acrescentado ao nome. Os arquivos são gravados pelo <b>exportador</b> em segundo plano, de forma que a
+ * execução não aguarda o disco.
+ * <li><b>perfilarEstagios</b>: Se o {@link FacadeOPL} mede cada estágio da execução (tempo, CPU, heap, memória
+ * residente e garbage collector) e registra um relatório ao final, conforme {@link StageProfiler}. Com
+ * <b>perfilForcarGc</b>, força o garbage collector entre os estágios para medir a memória retida por cada um, ao custo
+ * de tornar a execução mais lenta.
  * </ul>
  *
  * @author Daniel Felix Ferber
@@ -91,6 +99,10 @@ public class ConfiguracaoOPL {
 		this.caminhoDadosExternosOpl = configuracao.caminhoDadosExternosOpl;
 		this.caminhoDadosInternosOpl = configuracao.caminhoDadosInternosOpl;
 		this.caminhoDadosSolucaoOpl = configuracao.caminhoDadosSolucaoOpl;
+		this.compactarArtefatos = configuracao.compactarArtefatos;
+		this.exportador = configuracao.exportador;
+		this.perfilarEstagios = configuracao.perfilarEstagios;
+		this.perfilForcarGc = configuracao.perfilForcarGc;
 	}
 
 	private String nome;
@@ -212,6 +224,34 @@ public class ConfiguracaoOPL {
 		return new File (caminhoBase, caminhoDadosSolucaoOpl.getPath());
 	}
 
+	/** Se os arquivos de dados externos, dados internos e solução são compactados com gzip. */
+	private boolean compactarArtefatos = false;
+	/** @return Se os arquivos de dados externos, dados internos e solução são compactados com gzip. */
+	public boolean getCompactarArtefatos() { return compactarArtefatos; }
+	/** @param compactar Se os arquivos de dados externos, dados internos e solução são compactados com gzip, acrescentando '.gz' ao nome. */
+	public ConfiguracaoOPL setCompactarArtefatos(boolean compactar) { this.compactarArtefatos = compactar; return this; }
+
+	/** Serviço que grava os arquivos em segundo plano (ou <code>null</code> para usar o serviço padrão). */
+	private ArtifactExporter exportador = null;
+	/** @return Serviço que grava os arquivos em segundo plano. */
+	public ArtifactExporter getExportador() { return exportador != null ? exportador : ArtifactExporter.getDefault(); }
+	/** @param exportador Serviço que grava os arquivos em segundo plano (ou <code>null</code> para usar o serviço padrão). */
+	public ConfiguracaoOPL setExportador(ArtifactExporter exportador) { this.exportador = exportador; return this; }
+
+	/** Se o {@link FacadeOPL} mede cada estágio da execução e registra um relatório ao final. */
+	private boolean perfilarEstagios = false;
+	/** @return Se o {@link FacadeOPL} mede cada estágio da execução e registra um relatório ao final. */
+	public boolean getPerfilarEstagios() { return perfilarEstagios; }
+	/** @param perfilar Se o {@link FacadeOPL} mede cada estágio da execução e registra um relatório ao final. */
+	public ConfiguracaoOPL setPerfilarEstagios(boolean perfilar) { this.perfilarEstagios = perfilar; return this; }
+
+	/** Se força o garbage collector entre os estágios medidos, para medir a memória retida por cada um. */
+	private boolean perfilForcarGc = false;
+	/** @return Se força o garbage collector entre os estágios medidos, para medir a memória retida por cada um. */
+	public boolean getPerfilForcarGc() { return perfilForcarGc; }
+	/** @param forcarGc Se força o garbage collector entre os estágios medidos, para medir a memória retida por cada um. */
+	public ConfiguracaoOPL setPerfilForcarGc(boolean forcarGc) { this.perfilForcarGc = forcarGc; return this; }
+
 	@Override
 	public int hashCode() { throw new UnsupportedMethodException(); }
 	@Override
@@ -36,36 +36,79 @@ public class CustomErrorHandler extends IloCustomOplErrorHandler {
 	private Logger logger;
 	private List<OplModelParseError> errosModeloOpl = new ArrayList<OplModelParseError>();
 	private boolean temErro = false;
+	/** Provedor do modelo, usado para traduzir a localização reportada pelo OPL para o modelo 'original'. */
+	private ProvedorModelo provedorModelo;
 
 	public CustomErrorHandler(IloOplFactory oplFactory, Logger logger) {
+		this(oplFactory, logger, null);
+	}
+
+	public CustomErrorHandler(IloOplFactory oplFactory, Logger logger, ProvedorModelo provedorModelo) {
 		super(oplFactory);
 		this.logger = logger;
+		this.provedorModelo = provedorModelo;
 	}
 
 	public boolean temErros() { return temErro; }
 
+	/**
+	 * Descarta os erros registrados e passa a usar o logger e o provedor indicados. Permite reaproveitar o error
+	 * handler (e a configuração OPL associada a ele) em outra execução, por exemplo, a partir do {@link ModelDefinitionPool}.
+	 */
+	public void reiniciar(Logger logger, ProvedorModelo provedorModelo) {
+		this.logger = logger;
+		this.provedorModelo = provedorModelo;
+		this.errosModeloOpl = new ArrayList<OplModelParseError>();
+		this.temErro = false;
+	}
+
 	public List<OplModelParseError> getParseErrors() { return Collections.unmodifiableList(errosModeloOpl); }
 
 	@Override
 	public boolean customHandleWarning(IloOplMessage message, IloOplLocation location) {
-		logger.warn(CustomErrorHandler.messagePattern, new Object[] { location.getSource(), location.getLine(), location.getColumn(), location.getEndLine(), location.getEndColumn(), message.getLocalized(), message.getMessageCatalogId() });
-		errosModeloOpl.add(new OplModelParseError(OplModelParseError.Level.WARNING, location.getSource(), location.getLine(), location.getColumn(), location.getEndLine(), location.getEndColumn(), message.getMessageCatalogId(), message.getLocalized()));
+		registrar(OplModelParseError.Level.WARNING, message, location);
 		return true;
 	}
 
 	@Override
 	public boolean customHandleError(IloOplMessage message, IloOplLocation location) {
-		logger.error(CustomErrorHandler.messagePattern, new Object[] { location.getSource(), location.getLine(), location.getColumn(), location.getEndLine(), location.getEndColumn(), message.getLocalized(), message.getMessageCatalogId() });
-		errosModeloOpl.add(new OplModelParseError(OplModelParseError.Level.ERROR, location.getSource(), location.getLine(), location.getColumn(), location.getEndLine(), location.getEndColumn(), message.getMessageCatalogId(), message.getLocalized()));
+		registrar(OplModelParseError.Level.ERROR, message, location);
 		temErro = true;
 		return true;
 	}
 
 	@Override
 	public boolean customHandleFatal(IloOplMessage message, IloOplLocation location) {
-		logger.error(CustomErrorHandler.messagePattern, new Object[] { location.getSource(), location.getLine(), location.getColumn(), location.getEndLine(), location.getEndColumn(), message.getLocalized(), message.getMessageCatalogId() });
-		errosModeloOpl.add(new OplModelParseError(OplModelParseError.Level.FATAL, location.getSource(), location.getLine(), location.getColumn(), location.getEndLine(), location.getEndColumn(), message.getMessageCatalogId(), message.getLocalized()));
+		registrar(OplModelParseError.Level.FATAL, message, location);
 		temErro = true;
 		return true;
 	}
+
+	/**
+	 * Registra a mensagem. Se a localização for do texto do modelo, traduz linha, coluna e arquivo para o modelo
+	 * 'original' através do {@link ProvedorModelo}.
+	 */
+	private void registrar(OplModelParseError.Level level, IloOplMessage message, IloOplLocation location) {
+		String source = location.getSource();
+		int line = location.getLine();
+		int column = location.getColumn();
+		int endLine = location.getEndLine();
+		int endColumn = location.getEndColumn();
+		ProvedorModelo p = this.provedorModelo;
+		if (p != null && p.getNome().equals(source)) {
+			source = p.getArquivo(location.getLine(), location.getColumn());
+			line = p.getLinha(location.getLine(), location.getColumn());
+			column = p.getColuna(location.getLine(), location.getColumn());
+			endLine = p.getLinha(location.getEndLine(), location.getEndColumn());
+			endColumn = p.getColuna(location.getEndLine(), location.getEndColumn());
+			if (source == null) source = location.getSource();
+		}
+		Object[] args = new Object[] { source, line, column, endLine, endColumn, message.getLocalized(), message.getMessageCatalogId() };
+		if (level == OplModelParseError.Level.WARNING) {
+			logger.warn(CustomErrorHandler.messagePattern, args);
+		} else {
+			logger.error(CustomErrorHandler.messagePattern, args);
+		}
+		errosModeloOpl.add(new OplModelParseError(level, source, line, column, endLine, endColumn, message.getMessageCatalogId(), message.getLocalized()));
+	}
 }
@@ -26,25 +26,28 @@ import ilog.opl.IloOplModelSource;
 import ilog.opl.IloOplSettings;
 import infra.exception.RichRuntimeException;
 import infra.exception.UnhandledException;
+import infra.exception.controlstate.design.UnsupportedException;
 import infra.exception.controlstate.unimplemented.UnimplementedConditionException;
 import infra.ilog.NoSolutionException;
 import infra.ilog.SolverCommand;
 import infra.ilog.cplex.CommandCplex;
 import infra.ilog.cplex.ConfigurationCplex;
+import infra.slf4j.Level;
 import infra.slf4j.LoggerFactory;
 import infra.slf4j.Meter;
 import infra.slf4j.MeterFactory;
-import infra.slf4j.Operation;
 import infra.slf4j.OperationFactory;
-import infra.slf4j.OperationWithMessage;
+import infra.slf4j.RegisteredOperation;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import org.slf4j.Logger;
 
@@ -77,20 +80,25 @@ public class FacadeOPL {
 	private final ProvedorModelo modeloProvider;
 	private final Collection<DataSource> dataSources;
 	private final Collection<DataSink> dataSinks;
-
-	private static final Operation ExecuteFacade = OperationFactory.getOperation("loadLibrary", "Execute facade.");
-	private static final Operation CreateSettings = OperationFactory.getOperation("createSettings", "Create OPL settings.");
-	private static final OperationWithMessage LoadModel = (OperationWithMessage) OperationFactory.getOperation("loadModel", "Load OPL model.");
-	private static final Operation ParseModel = OperationFactory.getOperation("parseModel", "Parse OPL model.");
-	private static final Operation CreateCplex = OperationFactory.getOperation("createCplex", "Create CPLEX solver.");
-	private static final Operation CreateModelCplex = OperationFactory.getOperation("createModelCplex", "Create model on CPLEX solver.");
-	private static final Operation DefineDataSources = OperationFactory.getOperation("defineDataSources", "Define data sources.");
-	private static final Operation DefineDataSinks = OperationFactory.getOperation("defineDataSinks", "Define data sinks.");
-	private static final OperationWithMessage RegisterDataSources = (OperationWithMessage) OperationFactory.getOperation("registerDataSources", "Register data sources.");
-	private static final OperationWithMessage ExportDataSinks = (OperationWithMessage) OperationFactory.getOperation("exportDataSinks", "Export data sinks.");
-	private static final Operation RealizeModelOnCplex = OperationFactory.getOperation("realizeModelCCplex", "Realize model on CPLEX.");
-	private static final Operation ExecuteSolver = OperationFactory.getOperation("executeSolver", "Execute solver.");
-	private static final Operation ExecutePosProcessing = OperationFactory.getOperation("executePosProcessing", "Execute pós-processing.");
+	/** Definições de modelo já compiladas, ou null para compilar o modelo a cada execução. */
+	private final ModelDefinitionPool modelDefinitionPool;
+	/** Resultados de execuções anteriores, ou null para sempre executar o solucionador. */
+	private CacheResultado cacheResultado;
+
+	private static final RegisteredOperation ExecuteFacade = OperationFactory.getOperation(FacadeOPL.class, "loadLibrary", "Execute facade.");
+	private static final RegisteredOperation CreateSettings = OperationFactory.getOperation(FacadeOPL.class, "createSettings", "Create OPL settings.");
+	private static final RegisteredOperation LoadModel = OperationFactory.getOperation(FacadeOPL.class, "loadModel", "Load OPL model.");
+	private static final RegisteredOperation ParseModel = OperationFactory.getOperation(FacadeOPL.class, "parseModel", "Parse OPL model.");
+	private static final RegisteredOperation CreateCplex = OperationFactory.getOperation(FacadeOPL.class, "createCplex", "Create CPLEX solver.");
+	private static final RegisteredOperation CreateModelCplex = OperationFactory.getOperation(FacadeOPL.class, "createModelCplex", "Create model on CPLEX solver.");
+	private static final RegisteredOperation DefineDataSources = OperationFactory.getOperation(FacadeOPL.class, "defineDataSources", "Define data sources.");
+	private static final RegisteredOperation DefineDataSinks = OperationFactory.getOperation(FacadeOPL.class, "defineDataSinks", "Define data sinks.");
+	private static final RegisteredOperation RegisterDataSources = OperationFactory.getOperation(FacadeOPL.class, "registerDataSources", "Register data sources.");
+	private static final RegisteredOperation ExportDataSinks = OperationFactory.getOperation(FacadeOPL.class, "exportDataSinks", "Export data sinks.");
+	private static final RegisteredOperation RealizeModelOnCplex = OperationFactory.getOperation(FacadeOPL.class, "realizeModelCCplex", "Realize model on CPLEX.");
+	private static final RegisteredOperation ExecuteSolver = OperationFactory.getOperation(FacadeOPL.class, "executeSolver", "Execute solver.");
+	private static final RegisteredOperation ExecutePosProcessing = OperationFactory.getOperation(FacadeOPL.class, "executePosProcessing", "Execute pós-processing.");
+	private static final RegisteredOperation ReplayResult = OperationFactory.getOperation(FacadeOPL.class, "replayResult", "Replay cached result.");
 
 	/* TODO trocar por um design mais adequado, sem usar motivos. */
 	public static enum MotivosExecucao {
@@ -109,6 +117,14 @@ public class FacadeOPL {
 	}
 
 	public FacadeOPL(ConfiguracaoOPL configuracaoOpl, ConfigurationCplex configuracaoCplex, ProvedorModelo modeloProvider, Collection<DataSource> dataSources, Collection<DataSink> dataSinks) {
+		this(configuracaoOpl, configuracaoCplex, modeloProvider, dataSources, dataSinks, null);
+	}
+
+	/**
+	 * @param modelDefinitionPool Pool de onde reaproveitar a definição de modelo já compilada por uma execução anterior,
+	 *            e para onde devolvê-la ao final. Se null, então o modelo é compilado a cada execução.
+	 */
+	public FacadeOPL(ConfiguracaoOPL configuracaoOpl, ConfigurationCplex configuracaoCplex, ProvedorModelo modeloProvider, Collection<DataSource> dataSources, Collection<DataSink> dataSinks, ModelDefinitionPool modelDefinitionPool) {
 		super();
 		Argument.notNull(configuracaoOpl);
 		Argument.notNull(modeloProvider);
@@ -127,6 +143,7 @@ public class FacadeOPL {
 		} else {
 			this.dataSinks = Collections.emptySet();
 		}
+		this.modelDefinitionPool = modelDefinitionPool;
 
 		this.logger = LoggerFactory.getLogger(LoggerFactory.getLogger("ilog.opl"), configuracaoOpl.getNome());
 		this.loggerMeter = LoggerFactory.getLogger(this.logger, "perf");
@@ -134,6 +151,17 @@ public class FacadeOPL {
 		this.loggerModelo = LoggerFactory.getLogger(this.logger, "model");
 	}
 
+	/**
+	 * @param cacheResultado Cache de onde reproduzir o resultado de uma execução anterior idêntica, em vez de executar o
+	 *            solucionador, e onde guardar o resultado desta execução. Se null, sempre executa o solucionador.
+	 */
+	public FacadeOPL setCacheResultado(CacheResultado cacheResultado) {
+		this.cacheResultado = cacheResultado;
+		return this;
+	}
+
+	public CacheResultado getCacheResultado() { return cacheResultado; }
+
 	protected static void assureDiretory(File file) throws IOException {
 		if (! file.exists()) {
 			if (! file.mkdirs()) {
@@ -142,40 +170,106 @@ public class FacadeOPL {
 		}
 	}
 
-	/* TODO run garbage collector after data source and data sink. */
+	/**
+	 * Perfil da última execução, se {@link ConfiguracaoOPL#getPerfilarEstagios()}.
+	 * O garbage collector entre os estágios é opcional, conforme {@link ConfiguracaoOPL#getPerfilForcarGc()}.
+	 */
+	private StageProfiler perfil = null;
+	/** @return Perfil da última execução, ou null se a configuração não pede perfil. */
+	public StageProfiler getPerfil() { return perfil; }
+
 	public void executar() throws NoSolutionException, OplSettingsException, OplModelException {
 		Meter op = null;
+		StageProfiler perfil = null;
+		if (configuracaoOpl.getPerfilarEstagios()) {
+			perfil = new StageProfiler(configuracaoOpl.getPerfilForcarGc());
+			this.perfil = perfil;
+		}
 
 		Meter allOp = MeterFactory.getMeter(loggerMeter, FacadeOPL.ExecuteFacade).start();
 		IloOplFactory oplFactory = null;
+		ModelDefinitionPool.Entry entrada = null;
+		IloOplModel oplModel = null;
+		SolverCommand comandoSolver = null;
+		boolean sucesso = false;
+		CacheResultado.Gravacao gravacao = null;
 		try {
-			oplFactory = loadLibrary();
-			CustomErrorHandler errorHandler = new CustomErrorHandler(oplFactory, loggerExecucao);
-			IloOplSettings 	oplSettings = createSettings(oplFactory, errorHandler);
-			IloOplModelSource oplModelSource = loadModel(oplFactory, errorHandler);
-			IloOplModelDefinition oplModelDefinition = parseModel(oplFactory, errorHandler, oplSettings, oplModelSource);
-			oplSettings = null;
-			SolverCommand comandoSolver = createSolver(oplFactory, errorHandler, oplModelDefinition);
-			IloOplModel oplModel;
+			String chaveResultado = null;
+			if (cacheResultado != null) {
+				estagio(perfil, FacadeOPL.ReplayResult.getName());
+				chaveResultado = keyResult();
+				if (chaveResultado != null && replayResult(chaveResultado)) {
+					allOp.put("cache", "hit").ok();
+					return;
+				}
+			}
+
+			String chave = null;
+			if (modelDefinitionPool != null) {
+				chave = keyModel();
+				entrada = modelDefinitionPool.lease(chave);
+			}
+			CustomErrorHandler errorHandler;
+			IloOplModelDefinition oplModelDefinition;
+			if (entrada != null) {
+				/* A definição já compilada dispensa carregar a biblioteca, criar a configuração e compilar o modelo. */
+				loggerExecucao.debug("Reaproveitar definição de modelo já compilada.");
+				oplFactory = entrada.getFactory();
+				errorHandler = entrada.getErrorHandler();
+				errorHandler.reiniciar(loggerExecucao, modeloProvider);
+				oplModelDefinition = entrada.getDefinition();
+			} else {
+				estagio(perfil, "loadLibrary");
+				oplFactory = loadLibrary();
+				errorHandler = new CustomErrorHandler(oplFactory, loggerExecucao, modeloProvider);
+				estagio(perfil, FacadeOPL.CreateSettings.getName());
+				IloOplSettings 	oplSettings = createSettings(oplFactory, errorHandler);
+				estagio(perfil, FacadeOPL.LoadModel.getName());
+				IloOplModelSource oplModelSource = loadModel(oplFactory, errorHandler);
+				estagio(perfil, FacadeOPL.ParseModel.getName());
+				oplModelDefinition = parseModel(oplFactory, errorHandler, oplSettings, oplModelSource);
+				if (chave != null) {
+					entrada = new ModelDefinitionPool.Entry(chave, oplFactory, errorHandler, oplSettings, oplModelDefinition);
+				}
+				oplSettings = null;
+			}
+			estagio(perfil, FacadeOPL.CreateCplex.getName());
+			comandoSolver = createSolver(oplFactory, errorHandler, oplModelDefinition);
 			if (comandoSolver instanceof CommandCplex) {
 				CommandCplex comandoCplex = (CommandCplex) comandoSolver;
+				estagio(perfil, FacadeOPL.CreateModelCplex.getName());
 				oplModel = createModelOnSolver(oplFactory, errorHandler, oplModelDefinition, comandoCplex);
 			} else {
 				throw new UnimplementedConditionException();
 			}
 			oplModelDefinition = null;
+			estagio(perfil, FacadeOPL.DefineDataSources.getName());
 			defineDataSources(oplModel);
+			estagio(perfil, FacadeOPL.DefineDataSinks.getName());
 			defineDataSinks(oplModel);
+			estagio(perfil, FacadeOPL.RegisterDataSources.getName());
 			registerDataSources(oplModel);
 			if (comandoSolver instanceof CommandCplex) {
 				CommandCplex comandoCplex = (CommandCplex) comandoSolver;
+				estagio(perfil, FacadeOPL.RealizeModelOnCplex.getName());
 				realizeModelOnSolver(oplFactory, errorHandler, oplModel, comandoCplex);
 			} else {
 				throw new UnimplementedConditionException();
 			}
+			estagio(perfil, FacadeOPL.ExecuteSolver.getName());
 			executeSolver(oplModel, comandoSolver);
+			estagio(perfil, FacadeOPL.ExecutePosProcessing.getName());
 			executePosProcessing(oplModel, errorHandler);
-			exportDataSinks(oplModel);
+			if (chaveResultado != null && isResultCacheable(comandoSolver)) {
+				gravacao = recordResult(chaveResultado);
+			}
+			estagio(perfil, FacadeOPL.ExportDataSinks.getName());
+			exportDataSinks(oplModel, gravacao);
+			sucesso = true;
+			if (gravacao != null) {
+				concludeRecording(gravacao);
+				gravacao = null;
+			}
 			allOp.ok();
 		} catch (NoSolutionException e) {
 			allOp.fail(e);
@@ -184,12 +278,139 @@ public class FacadeOPL {
 			allOp.fail(e);
 			throw RichRuntimeException.enrich(e, FacadeOPL.ExecuteFacade);
 		} finally {
-			if (oplFactory != null) {
+			if (perfil != null) {
+				perfil.concluir();
+				loggerMeter.info("Perfil da execução:\n{}", perfil.relatorio());
+			}
+			if (gravacao != null) {
+				gravacao.descartar();
+			}
+			if (entrada != null) {
+				/* A factory continua viva no pool; finaliza somente os objetos criados por esta execução. */
+				if (! endExecution(oplModel, comandoSolver)) sucesso = false;
+				if (sucesso) {
+					modelDefinitionPool.release(entrada);
+				} else {
+					modelDefinitionPool.discard(entrada);
+				}
+			} else if (oplFactory != null) {
 				oplFactory.end();
 			}
 		}
 	}
 
+	/** Conclui o estágio anterior e inicia o próximo no perfil, se existir. */
+	private static void estagio(StageProfiler perfil, String nome) {
+		if (perfil != null) perfil.estagio(nome);
+	}
+
+	/**
+	 * Chave da execução no {@link CacheResultado}.
+	 * @return A chave, ou null se o resultado desta execução não pode ser reaproveitado.
+	 */
+	protected String keyResult() {
+		try {
+			String chave = CacheResultado.chave(configuracaoOpl, configuracaoCplex, modeloProvider, dataSources, dataSinks);
+			if (chave == null) {
+				loggerExecucao.debug("Fontes ou consumidores de dados não permitem reaproveitar o resultado.");
+			}
+			return chave;
+		} catch (IOException e) {
+			throw RichRuntimeException.enrich(e).operation(LoadModel);
+		}
+	}
+
+	/**
+	 * REPRODUZIR.
+	 *
+	 * Entrega aos consumidores de dados o resultado de uma execução anterior idêntica.
+	 * @return false se não existe resultado guardado.
+	 */
+	protected boolean replayResult(String chave) {
+		Meter op = MeterFactory.getMeter(loggerMeter, FacadeOPL.ReplayResult).start();
+		try {
+			List<ReplayableDataSink> consumidores = new ArrayList<ReplayableDataSink>(dataSinks.size());
+			for (DataSink consumidor : this.dataSinks) {
+				consumidores.add((ReplayableDataSink) consumidor);
+			}
+			boolean reproduzido = cacheResultado.reproduzir(chave, consumidores);
+			if (reproduzido) {
+				loggerExecucao.info("Reproduzir resultado de execução anterior idêntica.");
+			}
+			op.put("hit", Boolean.toString(reproduzido)).ok();
+			return reproduzido;
+		} catch (Exception e) {
+			op.fail(e);
+			throw RichRuntimeException.enrich(e).operation(ReplayResult);
+		}
+	}
+
+	/**
+	 * Somente o resultado que o CPLEX concluiu por conta própria pode ser guardado. Um resultado interrompido por limite
+	 * de tempo, de iterações ou pelo delegate depende de quando foi interrompido.
+	 * @return Se o resultado da execução pode ser guardado no {@link CacheResultado}.
+	 */
+	protected boolean isResultCacheable(SolverCommand comandoSolver) {
+		if (! (comandoSolver instanceof CommandCplex)) return false;
+		try {
+			boolean otimo = IloCplex.Status.Optimal.equals(((CommandCplex) comandoSolver).getCplex().getStatus());
+			if (! otimo) {
+				loggerExecucao.debug("Resultado não é ótimo; não será guardado.");
+			}
+			return otimo;
+		} catch (IloException e) {
+			/* IloCplex.getStatus() is not known to actually throw IloException. */
+			throw new UnsupportedException(e);
+		}
+	}
+
+	/** Inicia a gravação do resultado; uma falha apenas impede que ele seja guardado. */
+	protected CacheResultado.Gravacao recordResult(String chave) {
+		try {
+			return cacheResultado.gravar(chave, dataSinks.size());
+		} catch (IOException e) {
+			loggerExecucao.warn("Falha ao guardar resultado.", e);
+			return null;
+		}
+	}
+
+	/** Conclui a gravação do resultado; uma falha apenas impede que ele seja guardado. */
+	protected void concludeRecording(CacheResultado.Gravacao gravacao) {
+		try {
+			gravacao.concluir();
+		} catch (IOException e) {
+			loggerExecucao.warn("Falha ao guardar resultado.", e);
+		}
+	}
+
+	/** Chave do modelo e da configuração no {@link ModelDefinitionPool}. */
+	protected String keyModel() {
+		try {
+			return ModelDefinitionPool.key(configuracaoOpl, modeloProvider);
+		} catch (IOException e) {
+			throw RichRuntimeException.enrich(e).operation(LoadModel);
+		}
+	}
+
+	/**
+	 * Finaliza o modelo e o solucionador criados por uma execução cuja factory será reaproveitada.
+	 * @return Se foi possível finalizar; caso contrário, a factory não deve ser reaproveitada.
+	 */
+	protected boolean endExecution(IloOplModel oplModel, SolverCommand comandoSolver) {
+		try {
+			if (oplModel != null) {
+				oplModel.end();
+			}
+			if (comandoSolver instanceof CommandCplex) {
+				((CommandCplex) comandoSolver).getCplex().end();
+			}
+			return true;
+		} catch (Exception e) {
+			loggerExecucao.warn("Falha ao finalizar modelo e solucionador.", e);
+			return false;
+		}
+	}
+
 	/**
 	 * SOLVER.
 	 *
@@ -240,6 +461,7 @@ public class FacadeOPL {
 			op.fail(e);
 			throw e;
 		} catch (Exception e) {
+			op.fail(e);
 			throw FacadeOPL.wrapPossibleSpuriousIloException(e);
 		}
 	}
@@ -334,15 +556,29 @@ public class FacadeOPL {
 	 * A leitura ocorre no futuro na próxima etapa, ou seja, ao gerar o modelo.
 	 */
 	protected void exportDataSinks(IloOplModel oplModel) {
+		exportDataSinks(oplModel, null);
+	}
+
+	/**
+	 * EXPORTAR
+	 *
+	 * @param gravacao Se não for null, também registra os dados de cada consumidor para o {@link CacheResultado}.
+	 */
+	protected void exportDataSinks(IloOplModel oplModel, CacheResultado.Gravacao gravacao) {
 		Meter op = MeterFactory.getMeter(loggerMeter, FacadeOPL.ExportDataSinks).start();
 		try {
 			for (DataSink consumidor : this.dataSinks) {
 				loggerExecucao.debug("Preparar consumidor '{}'.", consumidor.getNome());
 				consumidor.prepare(oplModel);
 			}
+			int indice = 0;
 			for (DataSink consumidor : this.dataSinks) {
 				loggerExecucao.debug("Exportar consumidor '{}'.", consumidor.getNome());
-				consumidor.consumeData(oplModel);
+				if (gravacao != null) {
+					((ReplayableDataSink) consumidor).consumeData(oplModel, gravacao.abrir(indice++));
+				} else {
+					consumidor.consumeData(oplModel);
+				}
 			}
 			for (DataSink consumidor : this.dataSinks) {
 				loggerExecucao.debug("Finalizar consumidor '{}'.", consumidor.getNome());
@@ -373,6 +609,7 @@ public class FacadeOPL {
 			op.fail(e);
 			throw e;
 		} catch (Exception e) {
+			op.fail(e);
 			FacadeOPL.throwPossibleOplModelException(errorHandler);
 			throw FacadeOPL.wrapPossibleSpuriousIloException(e);
 		}
@@ -405,6 +642,7 @@ public class FacadeOPL {
 			FacadeOPL.throwPossibleOplModelException(errorHandler);
 			op.ok();
 		} catch (Exception e) {
+			op.fail(e);
 			FacadeOPL.throwPossibleOplModelException(errorHandler);
 			throw FacadeOPL.wrapPossibleSpuriousIloException(e);
 		}
@@ -703,7 +941,7 @@ public class FacadeOPL {
 	/** Registra no log uma cópia do modelo. */
 	protected void logModelo(String textoModelo) {
 		if(! loggerModelo.isInfoEnabled()) return;
-		PrintStream ps = LoggerFactory.getInfoPrintStream(loggerModelo);
+		PrintStream ps = LoggerFactory.getStreamingPrintStream(loggerModelo, Level.INFO);
 		ps.println(textoModelo);
 		ps.close();
 	}
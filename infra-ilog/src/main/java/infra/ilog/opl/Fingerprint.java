@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.opl;
+
+import infra.exception.controlstate.bug.ImpossibleException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calcula uma impressão digital (SHA-1, em hexadecimal) de textos e números, para identificar conteúdos iguais sem
+ * compará-los por inteiro. Os valores são acumulados com {@link #add(String)} e {@link #add(long)}; cada valor é
+ * delimitado, de forma que sequências diferentes não produzam a mesma impressão.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class Fingerprint {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private final MessageDigest digest;
+
+	public Fingerprint() {
+		try {
+			this.digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			/* Toda JVM deve oferecer SHA-1. */
+			throw new ImpossibleException(e);
+		}
+	}
+
+	/** Acumula um texto; null é diferente de texto vazio. */
+	public Fingerprint add(String value) {
+		if (value == null) {
+			add(-1L);
+			return this;
+		}
+		try {
+			byte[] bytes = value.getBytes("UTF-8");
+			add(bytes.length);
+			digest.update(bytes);
+		} catch (UnsupportedEncodingException e) {
+			throw new ImpossibleException(e);
+		}
+		return this;
+	}
+
+	/** Acumula um número. */
+	public Fingerprint add(long value) {
+		for (int i = 56; i >= 0; i -= 8) {
+			digest.update((byte) (value >>> i));
+		}
+		return this;
+	}
+
+	/** Acumula bytes, sem delimitação. */
+	public Fingerprint add(byte[] bytes, int offset, int length) {
+		digest.update(bytes, offset, length);
+		return this;
+	}
+
+	/** Acumula todo o conteúdo do stream, seguido do seu tamanho. Não fecha o stream. */
+	public Fingerprint add(InputStream is) throws IOException {
+		byte[] buffer = new byte[8192];
+		long total = 0;
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+			digest.update(buffer, 0, n);
+			total += n;
+		}
+		add(total);
+		return this;
+	}
+
+	/** @return A impressão digital dos valores acumulados. A instância não deve ser usada depois. */
+	@Override
+	public String toString() {
+		byte[] hash = digest.digest();
+		char[] chars = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			chars[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+			chars[2 * i + 1] = HEX[hash[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+	/** @return A impressão digital de um único texto. */
+	public static String of(String value) {
+		return new Fingerprint().add(value).toString();
+	}
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.opl;
+
+import java.io.IOException;
+
+/**
+ * Fonte de dados cujo conteúdo pode ser resumido por uma {@link Fingerprint}, sem precisar de um modelo OPL. Permite ao
+ * {@link CacheResultado} reconhecer execuções com os mesmos dados.
+ *
+ * @author Daniel Felix Ferber
+ */
+public interface FingerprintableDataSource extends DataSource {
+	/**
+	 * Acumula o conteúdo da fonte na impressão digital.
+	 * @return false se o conteúdo não é conhecido; neste caso, o resultado da execução não pode ser reaproveitado.
+	 */
+	boolean addFingerprint(Fingerprint fingerprint) throws IOException;
+}
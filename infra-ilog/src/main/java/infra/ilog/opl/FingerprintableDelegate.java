@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.opl;
+
+import infra.ilog.cplex.Delegate;
+
+/**
+ * Delegate cujos parâmetros podem ser resumidos por uma {@link Fingerprint}. Sem isto, o {@link CacheResultado} não
+ * consegue distinguir dois delegates da mesma classe com parâmetros diferentes e não reaproveita execuções que usam
+ * delegate.
+ *
+ * @author Daniel Felix Ferber
+ */
+public interface FingerprintableDelegate extends Delegate {
+	/**
+	 * Acumula na impressão digital todos os parâmetros que influenciam quando o delegate interrompe a execução ou como
+	 * ele configura o CPLEX.
+	 */
+	void addFingerprint(Fingerprint fingerprint);
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.opl;
+
+import static infra.exception.Assert.Argument;
+import ilog.opl.IloOplFactory;
+import ilog.opl.IloOplModelDefinition;
+import ilog.opl.IloOplSettings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mantém definições de modelo OPL já compiladas ({@link IloOplModelDefinition}) para serem reaproveitadas por
+ * execuções seguintes do {@link FacadeOPL} com o mesmo modelo e a mesma configuração. Assim, estas execuções não
+ * precisam carregar a biblioteca, criar a configuração, ler e compilar o modelo novamente.
+ * <p>
+ * A definição pertence à {@link IloOplFactory} que a criou e somente é válida enquanto esta factory existir. Por isto,
+ * cada entrada guarda a factory, a configuração, o error handler e a definição, e a factory somente é finalizada
+ * ({@link IloOplFactory#end()}) quando a entrada é descartada: ao exceder a capacidade (descarta a usada há mais tempo),
+ * em {@link #evict(String)}, {@link #clear()} ou {@link #close()}. Quem cria o pool é responsável por chamar
+ * {@link #close()} ao final.
+ * <p>
+ * Uma entrada é emprestada com exclusividade por {@link #lease(String)} e precisa ser devolvida por
+ * {@link #release(Entry)} (se a execução terminou bem) ou {@link #discard(Entry)} (se o estado da factory é incerto).
+ * Enquanto emprestada, outra execução com a mesma chave não a encontra e compila sua própria definição.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class ModelDefinitionPool {
+	/** Número máximo de entradas ociosas. */
+	private int capacidade;
+	private boolean fechado = false;
+	private long acertos = 0;
+	private long falhas = 0;
+
+	/** Entradas ociosas em ordem de uso. Protegido pelo lock do pool. */
+	private final LinkedHashMap<String, Entry> entradas = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/**
+	 * Uma definição compilada, junto com os objetos OPL dos quais ela depende.
+	 */
+	public static class Entry {
+		private final String chave;
+		private final IloOplFactory factory;
+		private final CustomErrorHandler errorHandler;
+		private final IloOplSettings settings;
+		private final IloOplModelDefinition definition;
+
+		public Entry(String chave, IloOplFactory factory, CustomErrorHandler errorHandler, IloOplSettings settings, IloOplModelDefinition definition) {
+			Argument.notNull(chave);
+			Argument.notNull(factory);
+			this.chave = chave;
+			this.factory = factory;
+			this.errorHandler = errorHandler;
+			this.settings = settings;
+			this.definition = definition;
+		}
+
+		public String getChave() { return chave; }
+		public IloOplFactory getFactory() { return factory; }
+		public CustomErrorHandler getErrorHandler() { return errorHandler; }
+		public IloOplSettings getSettings() { return settings; }
+		public IloOplModelDefinition getDefinition() { return definition; }
+
+		/** Finaliza a factory, e com ela, todos os objetos OPL criados por ela. */
+		void end() {
+			factory.end();
+		}
+	}
+
+	public ModelDefinitionPool(int capacidade) {
+		Argument.check(capacidade >= 0);
+		this.capacidade = capacidade;
+	}
+
+	/**
+	 * Calcula a chave que identifica a definição compilada: o nome e o texto do modelo e as opções da configuração que
+	 * alteram a compilação.
+	 */
+	public static String key(ConfiguracaoOPL configuracao, ProvedorModelo provedor) throws IOException {
+		Fingerprint f = new Fingerprint();
+		f.add(provedor.getNome());
+		f.add(provedor.getConteudo());
+		f.add(configuracao.getModoDebug() ? 1 : 0);
+		f.add(configuracao.getUsarNomes() ? 1 : 0);
+		f.add(configuracao.getUsarValidacao() ? 1 : 0);
+		f.add(configuracao.temCaminhoTmp() ? configuracao.getCaminhoAbsolutoTmp().getPath() : "");
+		return f.toString();
+	}
+
+	/**
+	 * Empresta a entrada para a chave, que deixa de estar disponível até ser devolvida.
+	 * @return A entrada, ou null se não houver entrada ociosa para a chave.
+	 */
+	public synchronized Entry lease(String chave) {
+		Entry entrada = fechado ? null : entradas.remove(chave);
+		if (entrada == null) {
+			falhas++;
+		} else {
+			acertos++;
+		}
+		return entrada;
+	}
+
+	/**
+	 * Devolve uma entrada, emprestada ou nova, para ser reaproveitada. Se o pool já estiver fechado ou já existir uma
+	 * entrada ociosa para a mesma chave, então a entrada é descartada.
+	 */
+	public void release(Entry entrada) {
+		Argument.notNull(entrada);
+		List<Entry> descartadas = new ArrayList<Entry>();
+		synchronized (this) {
+			if (fechado || capacidade == 0 || entradas.containsKey(entrada.getChave())) {
+				descartadas.add(entrada);
+			} else {
+				entradas.put(entrada.getChave(), entrada);
+				ajustarTamanho(descartadas);
+			}
+		}
+		ModelDefinitionPool.end(descartadas);
+	}
+
+	/** Descarta uma entrada emprestada, finalizando sua factory. */
+	public void discard(Entry entrada) {
+		Argument.notNull(entrada);
+		entrada.end();
+	}
+
+	/** Descarta a entrada ociosa para a chave, se existir. */
+	public void evict(String chave) {
+		Entry entrada;
+		synchronized (this) {
+			entrada = entradas.remove(chave);
+		}
+		if (entrada != null) entrada.end();
+	}
+
+	/** Descarta todas as entradas ociosas. */
+	public void clear() {
+		List<Entry> descartadas;
+		synchronized (this) {
+			descartadas = new ArrayList<Entry>(entradas.values());
+			entradas.clear();
+		}
+		ModelDefinitionPool.end(descartadas);
+	}
+
+	/**
+	 * Descarta todas as entradas ociosas. Entradas emprestadas serão descartadas quando forem devolvidas.
+	 */
+	public void close() {
+		synchronized (this) {
+			fechado = true;
+		}
+		clear();
+	}
+
+	public void setCapacidade(int capacidade) {
+		Argument.check(capacidade >= 0);
+		List<Entry> descartadas = new ArrayList<Entry>();
+		synchronized (this) {
+			this.capacidade = capacidade;
+			ajustarTamanho(descartadas);
+		}
+		ModelDefinitionPool.end(descartadas);
+	}
+
+	private void ajustarTamanho(List<Entry> descartadas) {
+		Iterator<Map.Entry<String, Entry>> i = entradas.entrySet().iterator();
+		while (entradas.size() > capacidade && i.hasNext()) {
+			descartadas.add(i.next().getValue());
+			i.remove();
+		}
+	}
+
+	/** Finaliza as factories fora do lock, pois {@link IloOplFactory#end()} pode demorar. */
+	private static void end(List<Entry> descartadas) {
+		for (Entry entrada : descartadas) {
+			entrada.end();
+		}
+	}
+
+	public synchronized int getCapacidade() { return capacidade; }
+	public synchronized int getTamanho() { return entradas.size(); }
+	public synchronized boolean isFechado() { return fechado; }
+	/** @return Quantas vezes uma definição compilada foi reaproveitada. */
+	public synchronized long getAcertos() { return acertos; }
+	/** @return Quantas vezes não havia definição compilada ociosa. */
+	public synchronized long getFalhas() { return falhas; }
+}
@@ -37,4 +37,15 @@ public interface ProvedorModelo {
 	/** Traduz a linha/coluna do modelo 'definitivo' para o arquivo que define o modelo 'original' . */
 	String getArquivo(int linhaReportada, int colunaReportada);
 	ProvedorModelo getProvedor(String caminhoRelativo);
+
+	/**
+	 * Identifica a origem do modelo 'original', por exemplo o caminho do arquivo, de forma que dois provedores com a
+	 * mesma identidade forneçam o mesmo conteúdo. Null se o conteúdo não puder ser guardado em cache.
+	 */
+	String getIdentidade();
+	/**
+	 * Uma versão do conteúdo da origem, que muda sempre que o conteúdo mudar (por exemplo, data de modificação e tamanho
+	 * do arquivo, ou a impressão digital do conteúdo). Deve ser mais barato de obter do que o próprio conteúdo.
+	 */
+	String getVersao() throws IOException;
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.opl;
+
+import ilog.opl.IloOplModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Consumidor de dados cuja saída pode ser registrada e reproduzida depois, sem executar o modelo novamente. Permite ao
+ * {@link CacheResultado} entregar o resultado de uma execução anterior com o mesmo modelo e os mesmos dados.
+ *
+ * @author Daniel Felix Ferber
+ */
+public interface ReplayableDataSink extends DataSink {
+	/** Como {@link #consumeData(IloOplModel)}, mas também escreve uma cópia dos dados no registro. */
+	void consumeData(IloOplModel oplModel, OutputStream registro) throws IOException;
+
+	/** Entrega novamente os dados registrados por {@link #consumeData(IloOplModel, OutputStream)}. */
+	void replay(InputStream registro) throws IOException;
+
+	/** Acumula na impressão digital as opções que alteram os dados consumidos (por exemplo, filtros). */
+	void addFingerprint(Fingerprint fingerprint);
+}
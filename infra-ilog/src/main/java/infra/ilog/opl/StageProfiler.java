@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.opl;
+
+import static infra.exception.Assert.Argument;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mede cada estágio de uma execução do {@link FacadeOPL} e produz um relatório por execução. Serve para descobrir
+ * qual estágio consome memória demais para um determinado tamanho de dados.
+ * <p>
+ * Para cada estágio são registrados: tempo decorrido, tempo de CPU do processo, variação do heap, variação da memória
+ * residente do processo (RSS, que inclui a memória nativa do OPL e do CPLEX) e atividade do garbage collector. O tempo
+ * de CPU é do processo inteiro, pois o CPLEX resolve em threads nativas próprias; inclui também as demais threads da
+ * JVM, como o garbage collector.
+ * <p>
+ * Os estágios são sequenciais: {@link #estagio(String)} conclui o estágio anterior e inicia o próximo;
+ * {@link #concluir()} conclui o último. Opcionalmente, força o garbage collector antes e depois de cada estágio (fora
+ * do tempo medido), de forma que a variação do heap corresponda à memória que o estágio realmente reteve.
+ * <p>
+ * A memória residente somente é conhecida onde existir <code>/proc/self/status</code> (Linux); nos demais sistemas é
+ * reportada como -1. O tempo de CPU depende de <code>com.sun.management.OperatingSystemMXBean</code>; nas JVMs que
+ * não o oferecem é reportado como -1. Não é thread safe; cada execução usa sua própria instância.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class StageProfiler {
+	private static final File PROC_STATUS = new File("/proc/self/status");
+
+	private final boolean forcarGc;
+	private final MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+	private final OperatingSystemMXBean sistema = ManagementFactory.getOperatingSystemMXBean();
+	private final List<GarbageCollectorMXBean> coletores = ManagementFactory.getGarbageCollectorMXBeans();
+
+	private final List<Estagio> estagios = new ArrayList<Estagio>();
+	private Estagio atual = null;
+
+	/**
+	 * Medida de um estágio. Valores desconhecidos são -1.
+	 */
+	public static class Estagio {
+		private final String nome;
+		private long inicio;
+		private long cpuInicio;
+		private long heapInicio;
+		private long rssInicio;
+		private long gcQuantidadeInicio;
+		private long gcTempoInicio;
+
+		private long tempo;
+		private long tempoCpu = -1;
+		private long variacaoHeap;
+		private long heapFinal;
+		private long variacaoRss = -1;
+		private long gcQuantidade;
+		private long gcTempo;
+
+		Estagio(String nome) {
+			this.nome = nome;
+		}
+
+		public String getNome() { return nome; }
+		/** @return Tempo decorrido (nanosegundos). */
+		public long getTempo() { return tempo; }
+		/** @return Tempo de CPU do processo (nanosegundos), ou -1 se não suportado pela JVM. */
+		public long getTempoCpu() { return tempoCpu; }
+		/** @return Variação do heap utilizado (bytes). */
+		public long getVariacaoHeap() { return variacaoHeap; }
+		/** @return Heap utilizado ao final do estágio (bytes). */
+		public long getHeapFinal() { return heapFinal; }
+		/** @return Variação da memória residente do processo (bytes), ou -1 se não conhecida. */
+		public long getVariacaoRss() { return variacaoRss; }
+		/** @return Quantidade de coletas do garbage collector durante o estágio. */
+		public long getGcQuantidade() { return gcQuantidade; }
+		/** @return Tempo gasto pelo garbage collector durante o estágio (milisegundos). */
+		public long getGcTempo() { return gcTempo; }
+	}
+
+	/**
+	 * @param forcarGc Se força o garbage collector antes e depois de cada estágio, para medir a memória retida.
+	 */
+	public StageProfiler(boolean forcarGc) {
+		this.forcarGc = forcarGc;
+	}
+
+	/** Conclui o estágio anterior, se existir, e inicia um novo estágio. */
+	public void estagio(String nome) {
+		Argument.notNull(nome);
+		concluir();
+		if (forcarGc) coletar();
+		Estagio e = new Estagio(nome);
+		e.gcQuantidadeInicio = gcQuantidade();
+		e.gcTempoInicio = gcTempo();
+		e.heapInicio = memoria.getHeapMemoryUsage().getUsed();
+		e.rssInicio = StageProfiler.rss();
+		e.cpuInicio = cpu();
+		e.inicio = System.nanoTime();
+		atual = e;
+	}
+
+	/** Conclui o estágio atual, se existir. */
+	public void concluir() {
+		Estagio e = atual;
+		if (e == null) return;
+		atual = null;
+		e.tempo = System.nanoTime() - e.inicio;
+		long cpu = cpu();
+		if (cpu >= 0 && e.cpuInicio >= 0) e.tempoCpu = cpu - e.cpuInicio;
+		e.gcQuantidade = gcQuantidade() - e.gcQuantidadeInicio;
+		e.gcTempo = gcTempo() - e.gcTempoInicio;
+		if (forcarGc) coletar();
+		e.heapFinal = memoria.getHeapMemoryUsage().getUsed();
+		e.variacaoHeap = e.heapFinal - e.heapInicio;
+		long rss = StageProfiler.rss();
+		if (rss >= 0 && e.rssInicio >= 0) e.variacaoRss = rss - e.rssInicio;
+		estagios.add(e);
+	}
+
+	/** @return Estágios concluídos, na ordem em que foram executados. */
+	public List<Estagio> getEstagios() { return Collections.unmodifiableList(estagios); }
+
+	/** @return Relatório com uma linha por estágio. Tempos em milisegundos e memória em KiB. */
+	public String relatorio() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-22s %10s %10s %12s %12s %12s %6s %8s%n", "estagio", "tempo", "cpu", "heap", "heapFinal", "rss", "gc", "gcTempo"));
+		for (Estagio e : estagios) {
+			sb.append(String.format("%-22s %10d %10d %12d %12d %12d %6d %8d%n",
+					e.nome, e.tempo / 1000000, e.tempoCpu < 0 ? -1 : e.tempoCpu / 1000000,
+					e.variacaoHeap / 1024, e.heapFinal / 1024, e.variacaoRss < 0 ? -1 : e.variacaoRss / 1024,
+					e.gcQuantidade, e.gcTempo));
+		}
+		return sb.toString();
+	}
+
+	private void coletar() {
+		System.gc();
+		System.runFinalization();
+		System.gc();
+	}
+
+	/** @return Tempo de CPU de todas as threads do processo, inclusive as nativas (nanosegundos), ou -1. */
+	private long cpu() {
+		if (! (sistema instanceof com.sun.management.OperatingSystemMXBean)) return -1;
+		long cpu = ((com.sun.management.OperatingSystemMXBean) sistema).getProcessCpuTime();
+		return cpu < 0 ? -1 : cpu;
+	}
+
+	private long gcQuantidade() {
+		long total = 0;
+		for (GarbageCollectorMXBean c : coletores) {
+			long n = c.getCollectionCount();
+			if (n > 0) total += n;
+		}
+		return total;
+	}
+
+	private long gcTempo() {
+		long total = 0;
+		for (GarbageCollectorMXBean c : coletores) {
+			long t = c.getCollectionTime();
+			if (t > 0) total += t;
+		}
+		return total;
+	}
+
+	/** @return Memória residente do processo (bytes), ou -1 se não conhecida. */
+	static long rss() {
+		if (! PROC_STATUS.canRead()) return -1;
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(PROC_STATUS));
+			try {
+				String linha;
+				while ((linha = reader.readLine()) != null) {
+					if (linha.startsWith("VmRSS:")) {
+						String[] partes = linha.substring(6).trim().split("\\s+");
+						return Long.parseLong(partes[0]) * 1024;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			return -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+		return -1;
+	}
+}
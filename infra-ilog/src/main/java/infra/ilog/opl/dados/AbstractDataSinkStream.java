@@ -24,6 +24,7 @@ import ilog.opl.IloOplFactory;
 import ilog.opl.IloOplModel;
 import ilog.opl.IloOplSettings;
 import infra.ilog.opl.DataSink;
+import infra.ilog.opl.Fingerprint;
 
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -79,6 +80,18 @@ public abstract class AbstractDataSinkStream extends AbstractDataSink {
 		Poscondition.notNull(this.includePattern);
 	}
 
+	/**
+	 * Acumula na impressão digital os filtros que determinam quais elementos são exportados.
+	 */
+	public void addFingerprint(Fingerprint fingerprint) {
+		fingerprint.add(getClass().getName());
+		for (Pattern pattern : includePattern) fingerprint.add(pattern.pattern());
+		fingerprint.add("-");
+		for (Pattern pattern : excludePattern) fingerprint.add(pattern.pattern());
+		fingerprint.add("-");
+		for (Filtro f : filtro) fingerprint.add(f.name());
+	}
+
 	protected void exportarStream(IloOplModel oplModel, OutputStream os) {
 		Argument.notNull(oplModel, os);
 
@@ -17,15 +17,21 @@ package infra.ilog.opl.dados;
 
 import static infra.exception.Assert.Argument;
 import ilog.opl.IloOplModel;
+import infra.ilog.opl.ReplayableDataSink;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
+
 
 /**
  * Utiliza um arquivo como consumidor de dados para o OPL.
@@ -34,7 +40,7 @@ import java.util.regex.Pattern;
  * Ocorrerá uma {@link FileNotFoundException} caso o diretório do arquivo não puder ser criado.
  * O construtor não verifica se o arquivo existe, pois assume que ele poderá ser criado no futuro.
  */
-public class DataSinkFile extends AbstractDataSinkStream {
+public class DataSinkFile extends AbstractDataSinkStream implements ReplayableDataSink {
 	private final File caminhoArquivo;
 
 	public DataSinkFile(String nome, File caminhoArquivo, Collection<Pattern> includePattern, Collection<Pattern> excludePattern, EnumSet<Filtro> filtro) {
@@ -49,16 +55,40 @@ public class DataSinkFile extends AbstractDataSinkStream {
 
 	@Override
 	public void consumeData(IloOplModel oplModel) throws IOException {
-		File parentDir = caminhoArquivo.getParentFile();
-		if (! parentDir.exists()) {
-			/* Verifica se o diretório que hospedará o arquivo realmente foi criado. */
-			if (! parentDir.mkdirs() || ! parentDir.exists()) throw new FileNotFoundException(parentDir.getAbsolutePath());
-		}
-		FileOutputStream os = new FileOutputStream(caminhoArquivo);
+		FileOutputStream os = abrirArquivo();
 		try {
 			super.exportarStream(oplModel, os);
 		} finally {
 			os.close();
 		}
 	}
+
+	@Override
+	public void consumeData(IloOplModel oplModel, OutputStream registro) throws IOException {
+		FileOutputStream os = abrirArquivo();
+		try {
+			super.exportarStream(oplModel, new TeeOutputStream(os, registro));
+		} finally {
+			os.close();
+		}
+	}
+
+	@Override
+	public void replay(InputStream registro) throws IOException {
+		FileOutputStream os = abrirArquivo();
+		try {
+			IOUtils.copy(registro, os);
+		} finally {
+			os.close();
+		}
+	}
+
+	private FileOutputStream abrirArquivo() throws FileNotFoundException {
+		File parentDir = caminhoArquivo.getParentFile();
+		if (! parentDir.exists()) {
+			/* Verifica se o diretório que hospedará o arquivo realmente foi criado. */
+			if (! parentDir.mkdirs() || ! parentDir.exists()) throw new FileNotFoundException(parentDir.getAbsolutePath());
+		}
+		return new FileOutputStream(caminhoArquivo);
+	}
 }
@@ -17,19 +17,24 @@ package infra.ilog.opl.dados;
 
 import static infra.exception.Assert.Argument;
 import ilog.opl.IloOplModel;
+import infra.ilog.opl.ReplayableDataSink;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
+
 
 /**
  * Utiliza um stream como consumidor de dados para o OPL.
  * Não gerencia o ciclo de vida do stream, ou seja, mantém ele aberto após o uso.
  */
-public class DataSinkOutputStream extends AbstractDataSinkStream {
+public class DataSinkOutputStream extends AbstractDataSinkStream implements ReplayableDataSink {
 	private final OutputStream outputStream;
 
 	public DataSinkOutputStream(String nome, OutputStream os, Collection<Pattern> includePattern, Collection<Pattern> excludePattern, EnumSet<Filtro> filtro) {
@@ -46,4 +51,14 @@ public class DataSinkOutputStream extends AbstractDataSinkStream {
 	public void consumeData(IloOplModel oplModel) throws IOException {
 		super.exportarStream(oplModel, this.outputStream);
 	}
+
+	@Override
+	public void consumeData(IloOplModel oplModel, OutputStream registro) throws IOException {
+		super.exportarStream(oplModel, new TeeOutputStream(this.outputStream, registro));
+	}
+
+	@Override
+	public void replay(InputStream registro) throws IOException {
+		IOUtils.copy(registro, this.outputStream);
+	}
 }
@@ -17,14 +17,19 @@ package infra.ilog.opl.dados;
 
 import static infra.exception.Assert.Argument;
 import ilog.opl.IloOplModel;
+import infra.ilog.opl.ReplayableDataSink;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.io.output.WriterOutputStream;
 
 
@@ -33,7 +38,7 @@ import org.apache.commons.io.output.WriterOutputStream;
  * Esta é a única forma de obter os dados como String: através de um {@link StringBuilder} previamente criado
  * e que será utilizado depois para gerar a String.
  */
-public class DataSinkStringBuilder extends AbstractDataSinkStream {
+public class DataSinkStringBuilder extends AbstractDataSinkStream implements ReplayableDataSink {
 	private final StringBuilder stringBuilder;
 
 	public DataSinkStringBuilder(String nome, StringBuilder sb, Collection<Pattern> includePattern, Collection<Pattern> excludePattern, EnumSet<Filtro> filtro) {
@@ -53,4 +58,21 @@ public class DataSinkStringBuilder extends AbstractDataSinkStream {
 		super.exportarStream(oplModel, os);
 		stringBuilder.append(sw.getBuffer());
 	}
+
+	@Override
+	public void consumeData(IloOplModel oplModel, OutputStream registro) throws IOException {
+		StringWriter sw = new StringWriter();
+		OutputStream os = new WriterOutputStream(sw);
+		super.exportarStream(oplModel, new TeeOutputStream(os, registro));
+		os.flush();
+		stringBuilder.append(sw.getBuffer());
+	}
+
+	/** Os dados registrados são decodificados com o mesmo charset usado para exportá-los (o padrão da JVM). */
+	@Override
+	public void replay(InputStream registro) throws IOException {
+		StringWriter sw = new StringWriter();
+		IOUtils.copy(new InputStreamReader(registro), sw);
+		stringBuilder.append(sw.getBuffer());
+	}
 }
@@ -17,6 +17,8 @@ package infra.ilog.opl.dados;
 
 import static infra.exception.Assert.Argument;
 import ilog.opl.IloOplModel;
+import infra.ilog.opl.Fingerprint;
+import infra.ilog.opl.FingerprintableDataSource;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -30,7 +32,7 @@ import java.net.URL;
  * O construtor assume que o arquivo existe previamente, pois o classpath é
  * um repositório imutável e não tem como um arquivo ser adicionado no futuro.
  */
-public class DataSourceClasspath extends AbstractDataSourceStream {
+public class DataSourceClasspath extends AbstractDataSourceStream implements FingerprintableDataSource {
 	private final URL caminhoArquivo;
 
 	/**
@@ -52,4 +54,15 @@ public class DataSourceClasspath extends AbstractDataSourceStream {
 		super.agendarStream(oplModel, is);
 		super.agendarFechamentoStream(oplModel, is);
 	}
+
+	@Override
+	public boolean addFingerprint(Fingerprint fingerprint) throws IOException {
+		InputStream is = caminhoArquivo.openStream();
+		try {
+			fingerprint.add(is);
+		} finally {
+			is.close();
+		}
+		return true;
+	}
 }
@@ -18,6 +18,8 @@ package infra.ilog.opl.dados;
 import static infra.exception.Assert.Argument;
 import ilog.opl.IloOplModel;
 import infra.ilog.opl.DataSource;
+import infra.ilog.opl.Fingerprint;
+import infra.ilog.opl.FingerprintableDataSource;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -32,7 +34,7 @@ import java.io.IOException;
  * Ocorrerá uma {@link FileNotFoundException} caso o arquivo não exista neste momento.
  * O construtor não verifica se o arquivo existe, pois assume que ele poderá ser criado no futuro.
  */
-public class DataSourceFile extends AbstractDataSourceStream {
+public class DataSourceFile extends AbstractDataSourceStream implements FingerprintableDataSource {
 	private final File caminhoArquivo;
 
 	/**
@@ -56,4 +58,18 @@ public class DataSourceFile extends AbstractDataSourceStream {
 		super.agendarStream(oplModel, is);
 		super.agendarFechamentoStream(oplModel, is);
 	}
+
+	/**
+	 * Implementação do {@link FingerprintableDataSource}. Lê todo o conteúdo atual do arquivo.
+	 */
+	@Override
+	public boolean addFingerprint(Fingerprint fingerprint) throws IOException {
+		FileInputStream is = new FileInputStream(caminhoArquivo);
+		try {
+			fingerprint.add(is);
+		} finally {
+			is.close();
+		}
+		return true;
+	}
 }
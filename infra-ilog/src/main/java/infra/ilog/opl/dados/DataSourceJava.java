@@ -4,15 +4,38 @@ import ilog.opl.IloCustomOplDataSource;
 import ilog.opl.IloOplDataHandler;
 import ilog.opl.IloOplFactory;
 import ilog.opl.IloOplModel;
+import infra.ilog.opl.Fingerprint;
+import infra.ilog.opl.FingerprintableDataSource;
 
 import java.io.IOException;
 
 
-public abstract class DataSourceJava extends AbstractDataSource {
+public abstract class DataSourceJava extends AbstractDataSource implements FingerprintableDataSource {
+	/** Impressão digital dos dados, informada por quem cria a fonte, ou null se desconhecida. */
+	private String fingerprint;
+
 	public DataSourceJava(String nome) {
 		super(nome);
 	}
 
+	/**
+	 * Informa uma impressão digital (por exemplo, um hash ou uma versão) que identifica os dados que serão traduzidos
+	 * para o OPL. Sem ela, o resultado da execução não pode ser reaproveitado pelo {@link infra.ilog.opl.CacheResultado}.
+	 */
+	public DataSourceJava setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+		return this;
+	}
+
+	public String getFingerprint() { return fingerprint; }
+
+	@Override
+	public boolean addFingerprint(Fingerprint f) {
+		if (fingerprint == null) return false;
+		f.add(fingerprint);
+		return true;
+	}
+
 	@Override
 	public void produceData(IloOplModel oplModel) throws IOException {
 		IloOplFactory oplFactory = IloOplFactory.getOplFactoryFrom(oplModel);
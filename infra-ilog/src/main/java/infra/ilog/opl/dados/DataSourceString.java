@@ -18,13 +18,15 @@ package infra.ilog.opl.dados;
 import ilog.opl.IloOplDataSource;
 import ilog.opl.IloOplFactory;
 import ilog.opl.IloOplModel;
+import infra.ilog.opl.Fingerprint;
+import infra.ilog.opl.FingerprintableDataSource;
 
 import java.io.IOException;
 
 /**
  * Utiliza um texto como fonte de dados para o OPL.
  */
-public class DataSourceString extends AbstractDataSource {
+public class DataSourceString extends AbstractDataSource implements FingerprintableDataSource {
 	private final CharSequence dados;
 
 	/**
@@ -43,4 +45,10 @@ public class DataSourceString extends AbstractDataSource {
 		IloOplDataSource oplDataSource = oplFactory.createOplDataSourceFromString(dados.toString(), nome);
 		oplModel.addDataSource(oplDataSource);
 	}
+
+	@Override
+	public boolean addFingerprint(Fingerprint fingerprint) {
+		fingerprint.add(dados.toString());
+		return true;
+	}
 }
@@ -16,8 +16,15 @@
 package infra.ilog.opl.modelo;
 
 import infra.exception.controlstate.unimplemented.UnimplementedMethodException;
+import infra.ilog.opl.Fingerprint;
 import infra.ilog.opl.ProvedorModelo;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+
 import static infra.exception.Assert.Argument;
 
 public abstract class AbstractProvedorModelo implements ProvedorModelo {
@@ -43,4 +50,33 @@ public abstract class AbstractProvedorModelo implements ProvedorModelo {
 	public ProvedorModelo getProvedor(String caminhoRelativo) {
 		throw new UnimplementedMethodException();
 	}
+
+	/** Por padrão, o conteúdo não é guardado em cache. */
+	@Override
+	public String getIdentidade() { return null; }
+
+	/** Por padrão, a versão é a impressão digital do conteúdo, o que exige lê-lo. */
+	@Override
+	public String getVersao() throws IOException {
+		return "sha1:" + Fingerprint.of(getConteudo());
+	}
+
+	/** @return Versão de um arquivo, a partir da data de modificação e do tamanho. */
+	protected static String versaoArquivo(File arquivo) throws FileNotFoundException {
+		long modificacao = arquivo.lastModified();
+		if (modificacao == 0L) throw new FileNotFoundException(arquivo.getPath());
+		return "mtime:" + modificacao + ":" + arquivo.length();
+	}
+
+	/** @return O arquivo local correspondente a URL, ou null se a URL não for de um arquivo. */
+	protected static File arquivoLocal(URL url) {
+		if (! "file".equals(url.getProtocol())) return null;
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return new File(url.getPath());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
 }
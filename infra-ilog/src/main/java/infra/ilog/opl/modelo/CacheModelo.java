@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.opl.modelo;
+
+import infra.ilog.opl.ProvedorModelo;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static infra.exception.Assert.Argument;
+
+/**
+ * Cache, compartilhado por todo o processo, do texto 'definitivo' (e do mapa de linhas) de modelos montados a partir
+ * de vários provedores (por exemplo, um modelo com includes).
+ * <p>
+ * Cada entrada é identificada pela {@link ProvedorModelo#getIdentidade() identidade} do provedor raiz e guarda a
+ * {@link ProvedorModelo#getVersao() versão} de cada provedor lido para montar o texto. A entrada somente é reaproveitada
+ * se todas as versões continuam iguais; assim, uma alteração em qualquer arquivo do grafo de includes invalida a
+ * entrada. Quando o cache está cheio, descarta a entrada usada há mais tempo.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class CacheModelo {
+	/** Número máximo de entradas. */
+	private static int capacidade = 64;
+	private static volatile boolean habilitado = true;
+	private static final AtomicLong acertos = new AtomicLong(0);
+	private static final AtomicLong falhas = new AtomicLong(0);
+
+	/** Entradas em ordem de uso. Protegido pelo lock da classe. */
+	private static final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<String, Entrada>(16, 0.75f, true);
+
+	static final class Entrada {
+		final ModeloExpandido modelo;
+		final ProvedorModelo[] provedores;
+		final String[] versoes;
+
+		Entrada(ModeloExpandido modelo, ProvedorModelo[] provedores, String[] versoes) {
+			this.modelo = modelo;
+			this.provedores = provedores;
+			this.versoes = versoes;
+		}
+
+		/** @return Se todos os provedores continuam com a mesma versão. */
+		boolean valida() {
+			for (int i = 0; i < provedores.length; i++) {
+				try {
+					if (! versoes[i].equals(provedores[i].getVersao())) return false;
+				} catch (IOException e) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private CacheModelo() {
+		// Classe utilitária.
+	}
+
+	/**
+	 * @return O modelo guardado para a identidade, se todos os provedores lidos para montá-lo continuam com a mesma
+	 *         versão; caso contrário, null.
+	 */
+	public static ModeloExpandido obter(String identidade) {
+		if (identidade == null || ! CacheModelo.habilitado) return null;
+		Entrada entrada;
+		synchronized (CacheModelo.class) {
+			entrada = CacheModelo.entradas.get(identidade);
+		}
+		if (entrada != null && entrada.valida()) {
+			CacheModelo.acertos.incrementAndGet();
+			return entrada.modelo;
+		}
+		if (entrada != null) {
+			synchronized (CacheModelo.class) {
+				if (CacheModelo.entradas.get(identidade) == entrada) CacheModelo.entradas.remove(identidade);
+			}
+		}
+		CacheModelo.falhas.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Guarda o modelo montado para a identidade.
+	 * @param versoes A versão de cada provedor lido para montar o modelo, na mesma ordem de
+	 *            {@link ModeloExpandido#getProvedores()}, obtida antes de ler seu conteúdo.
+	 */
+	public static void guardar(String identidade, ModeloExpandido modelo, List<String> versoes) {
+		Argument.notNull(modelo);
+		List<ProvedorModelo> provedores = modelo.getProvedores();
+		Argument.check(provedores.size() == versoes.size());
+		if (identidade == null || ! CacheModelo.habilitado) return;
+		Entrada entrada = new Entrada(modelo, provedores.toArray(new ProvedorModelo[provedores.size()]), versoes.toArray(new String[versoes.size()]));
+		synchronized (CacheModelo.class) {
+			CacheModelo.entradas.put(identidade, entrada);
+			CacheModelo.ajustarTamanho();
+		}
+	}
+
+	private static void ajustarTamanho() {
+		Iterator<Map.Entry<String, Entrada>> i = CacheModelo.entradas.entrySet().iterator();
+		while (CacheModelo.entradas.size() > CacheModelo.capacidade && i.hasNext()) {
+			i.next();
+			i.remove();
+		}
+	}
+
+	/** Descarta todas as entradas. */
+	public static synchronized void limpar() {
+		CacheModelo.entradas.clear();
+	}
+
+	public static synchronized void setCapacidade(int capacidade) {
+		Argument.check(capacidade >= 0);
+		CacheModelo.capacidade = capacidade;
+		CacheModelo.ajustarTamanho();
+	}
+
+	public static synchronized int getCapacidade() { return CacheModelo.capacidade; }
+	public static synchronized int getTamanho() { return CacheModelo.entradas.size(); }
+
+	/** Desabilitar o cache também descarta as entradas existentes. */
+	public static void setHabilitado(boolean habilitado) {
+		CacheModelo.habilitado = habilitado;
+		if (! habilitado) CacheModelo.limpar();
+	}
+
+	public static boolean isHabilitado() { return CacheModelo.habilitado; }
+	/** @return Quantas vezes um texto válido foi encontrado. */
+	public static long getAcertos() { return CacheModelo.acertos.get(); }
+	/** @return Quantas vezes não havia texto válido. */
+	public static long getFalhas() { return CacheModelo.falhas.get(); }
+}
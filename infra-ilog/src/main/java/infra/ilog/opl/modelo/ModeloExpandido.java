@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.opl.modelo;
+
+import infra.ilog.opl.ProvedorModelo;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Texto 'definitivo' de um modelo montado a partir de vários provedores, junto com o mapa que traduz cada linha do
+ * texto 'definitivo' para o provedor e a linha do modelo 'original'.
+ * <p>
+ * O mapa é compacto: guarda somente os trechos de linhas consecutivas que vieram de linhas consecutivas do mesmo
+ * provedor. A tradução faz uma busca binária sobre o início dos trechos.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class ModeloExpandido {
+	private final String conteudo;
+	/** Provedores lidos para montar o texto, na ordem de leitura. */
+	private final ProvedorModelo[] provedores;
+	/** Linha do texto 'definitivo' (a partir de 1) onde começa cada trecho. */
+	private final int[] inicioTrecho;
+	/** Índice do provedor de cada trecho. */
+	private final int[] provedorTrecho;
+	/** Linha do modelo 'original' (a partir de 1) onde começa cada trecho. */
+	private final int[] linhaTrecho;
+
+	ModeloExpandido(String conteudo, ProvedorModelo[] provedores, int[] inicioTrecho, int[] provedorTrecho, int[] linhaTrecho) {
+		this.conteudo = conteudo;
+		this.provedores = provedores;
+		this.inicioTrecho = inicioTrecho;
+		this.provedorTrecho = provedorTrecho;
+		this.linhaTrecho = linhaTrecho;
+	}
+
+	public String getConteudo() { return conteudo; }
+	/** @return Provedores lidos para montar o texto, na ordem de leitura. */
+	public List<ProvedorModelo> getProvedores() { return Arrays.asList(provedores); }
+	/** @return Número de trechos do mapa. */
+	public int getTrechos() { return inicioTrecho.length; }
+
+	/** @return O trecho que contém a linha do texto 'definitivo', ou -1 se a linha não pertence a nenhum trecho. */
+	private int trecho(int linha) {
+		int i = Arrays.binarySearch(inicioTrecho, linha);
+		if (i < 0) i = -i - 2;
+		return i;
+	}
+
+	/** @return O provedor que originou a linha do texto 'definitivo', ou null se desconhecido. */
+	public ProvedorModelo getProvedor(int linha) {
+		int i = trecho(linha);
+		return i < 0 ? null : provedores[provedorTrecho[i]];
+	}
+
+	/** @return A linha do modelo 'original' que originou a linha do texto 'definitivo'. */
+	public int getLinha(int linha) {
+		int i = trecho(linha);
+		return i < 0 ? linha : linhaTrecho[i] + (linha - inicioTrecho[i]);
+	}
+
+	/** Constrói o mapa enquanto o texto é montado. */
+	static final class Construtor {
+		private int[] inicio = new int[16];
+		private int[] provedor = new int[16];
+		private int[] linhaOriginal = new int[16];
+		private int trechos = 0;
+		/** Última linha do texto 'definitivo' registrada. */
+		private int linha = 0;
+
+		/** Registra a próxima linha do texto 'definitivo'. */
+		void linha(int indiceProvedor, int linhaOriginal) {
+			linha++;
+			if (trechos > 0) {
+				int ultimo = trechos - 1;
+				if (provedor[ultimo] == indiceProvedor && this.linhaOriginal[ultimo] + (linha - inicio[ultimo]) == linhaOriginal) return;
+			}
+			if (trechos == inicio.length) {
+				inicio = Arrays.copyOf(inicio, trechos * 2);
+				provedor = Arrays.copyOf(provedor, trechos * 2);
+				this.linhaOriginal = Arrays.copyOf(this.linhaOriginal, trechos * 2);
+			}
+			inicio[trechos] = linha;
+			provedor[trechos] = indiceProvedor;
+			this.linhaOriginal[trechos] = linhaOriginal;
+			trechos++;
+		}
+
+		ModeloExpandido construir(String conteudo, List<ProvedorModelo> provedores) {
+			return new ModeloExpandido(conteudo, provedores.toArray(new ProvedorModelo[provedores.size()]),
+					Arrays.copyOf(inicio, trechos), Arrays.copyOf(provedor, trechos), Arrays.copyOf(linhaOriginal, trechos));
+		}
+	}
+}
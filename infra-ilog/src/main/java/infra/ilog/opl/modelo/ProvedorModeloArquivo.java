@@ -62,6 +62,16 @@ public class ProvedorModeloArquivo extends AbstractProvedorModelo {
 		}
 	}
 
+	@Override
+	public String getIdentidade() {
+		return "file:" + caminhoArquivo.getAbsolutePath();
+	}
+
+	@Override
+	public String getVersao() throws IOException {
+		return AbstractProvedorModelo.versaoArquivo(caminhoArquivo);
+	}
+
 	@Override
 	public ProvedorModelo getProvedor(String caminhoRelativo) {
 		return new ProvedorModeloArquivo(nome+":"+caminhoRelativo, new File(caminhoArquivo.getParentFile(), caminhoRelativo));
@@ -20,6 +20,7 @@ import static infra.exception.Assert.Invariant;
 import infra.exception.controlstate.bug.ImpossibleException;
 import infra.ilog.opl.ProvedorModelo;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -61,6 +62,19 @@ public class ProvedorModeloClasspath extends AbstractProvedorModelo {
 		}
 	}
 
+	@Override
+	public String getIdentidade() {
+		return "url:" + urlClasspath.toExternalForm();
+	}
+
+	/** Para arquivos locais, usa data de modificação e tamanho; dentro de jar, a impressão digital do conteúdo. */
+	@Override
+	public String getVersao() throws IOException {
+		File arquivo = AbstractProvedorModelo.arquivoLocal(urlClasspath);
+		if (arquivo != null) return AbstractProvedorModelo.versaoArquivo(arquivo);
+		return super.getVersao();
+	}
+
 	@Override
 	public ProvedorModelo getProvedor(String caminhoRelativo) {
 		try {
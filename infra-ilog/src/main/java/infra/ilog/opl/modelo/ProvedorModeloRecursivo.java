@@ -1,12 +1,12 @@
 /*
  * Copyright 2012 Daniel Felix Ferber
- *
+ * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
- *
+ * 
  *   http://www.apache.org/licenses/LICENSE-2.0
- *
+ * 
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -17,19 +17,29 @@ package infra.ilog.opl.modelo;
 
 import infra.ilog.opl.ProvedorModelo;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 import static infra.exception.Assert.Argument;
 
-
+/**
+ * Monta o modelo 'definitivo' substituindo cada linha <code>include "arquivo";</code> pelo conteúdo do provedor
+ * correspondente, recursivamente. Includes dentro de comentários são mantidos como estão.
+ * <p>
+ * A montagem percorre cada texto uma única vez, escreve as linhas sem alterá-las e registra um
+ * {@link ModeloExpandido mapa} de linhas. Assim, linha, coluna e arquivo reportados pelo OPL sobre o texto 'definitivo'
+ * são traduzidos para o arquivo e a linha do modelo 'original'. O texto e o mapa são reaproveitados pelo
+ * {@link CacheModelo} enquanto nenhum provedor mudar.
+ */
 public class ProvedorModeloRecursivo extends AbstractProvedorModelo {
+	/** Profundidade máxima de includes, para detectar includes circulares. */
+	private static final int PROFUNDIDADE_MAXIMA = 32;
+	private static final String INCLUDE = "include";
+
 	private final ProvedorModelo provedorRaiz;
+	/** Resultado da última montagem, usado para traduzir linhas. */
+	private volatile ModeloExpandido expandido = null;
 
 	public ProvedorModeloRecursivo(ProvedorModelo provedorRaiz) {
 		super(provedorRaiz.getNome());
@@ -38,106 +48,153 @@ public class ProvedorModeloRecursivo extends AbstractProvedorModelo {
 		this.provedorRaiz = provedorRaiz;
 	}
 
+	/**
+	 * Monta o texto, ou reaproveita o texto do {@link CacheModelo} se nenhum provedor do grafo de includes mudou desde
+	 * a última montagem.
+	 */
 	@Override
 	public String getConteudo() throws IOException {
-		String linhas = obterLinhasRecursivo(provedorRaiz);
-		return linhas;
+		return getModeloExpandido().getConteudo();
+	}
+
+	/** @return Texto 'definitivo' e mapa de linhas, montados ou obtidos do {@link CacheModelo}. */
+	public ModeloExpandido getModeloExpandido() throws IOException {
+		String identidade = getIdentidade();
+		ModeloExpandido modelo = CacheModelo.obter(identidade);
+		if (modelo == null) {
+			StringBuilder saida = new StringBuilder(4096);
+			List<String> versoes = new ArrayList<String>();
+			modelo = expandir(saida, versoes, true);
+			CacheModelo.guardar(identidade, modelo, versoes);
+		}
+		this.expandido = modelo;
+		return modelo;
+	}
+
+	/**
+	 * Escreve o texto 'definitivo' em <code>saida</code>, sem usar o cache.
+	 * @return O mapa de linhas; o texto não é guardado.
+	 */
+	public ModeloExpandido expandir(Appendable saida) throws IOException {
+		ModeloExpandido modelo = expandir(saida, null, false);
+		this.expandido = modelo;
+		return modelo;
+	}
+
+	private ModeloExpandido expandir(Appendable saida, List<String> versoes, boolean guardarTexto) throws IOException {
+		List<ProvedorModelo> provedores = new ArrayList<ProvedorModelo>();
+		ModeloExpandido.Construtor mapa = new ModeloExpandido.Construtor();
+		expandir(provedorRaiz, saida, mapa, provedores, versoes, 0);
+		return mapa.construir(guardarTexto ? saida.toString() : null, provedores);
+	}
+
+	/**
+	 * Escreve o texto do provedor, substituindo includes recursivamente.
+	 * @param versoes Se não for null, recebe a versão de cada provedor lido, obtida antes do conteúdo.
+	 */
+	protected void expandir(ProvedorModelo provedor, Appendable saida, ModeloExpandido.Construtor mapa, List<ProvedorModelo> provedores, List<String> versoes, int profundidade) throws IOException {
+		if (profundidade > PROFUNDIDADE_MAXIMA) throw new IOException(String.format("Include circular ou profundo demais, %s", provedor.getNome()));
+		if (versoes != null) versoes.add(provedor.getVersao());
+		String conteudo = provedor.getConteudo();
+		int indice = provedores.size();
+		provedores.add(provedor);
+
+		boolean comentario = false;
+		int contadorLinha = 0;
+		int inicio = 0;
+		int tamanho = conteudo.length();
+		while (inicio < tamanho) {
+			int fim = conteudo.indexOf('\n', inicio);
+			int proximo;
+			if (fim < 0) {
+				fim = tamanho;
+				proximo = tamanho;
+			} else {
+				proximo = fim + 1;
+			}
+			if (fim > inicio && conteudo.charAt(fim - 1) == '\r') fim--;
+			contadorLinha++;
+
+			int p = inicio;
+			while (p < fim && Character.isWhitespace(conteudo.charAt(p))) p++;
+			if (comentario || ! ProvedorModeloRecursivo.ehInclude(conteudo, p, fim)) {
+				/* Linha de código ou comentário, inclusive include comentado. */
+				saida.append(conteudo, inicio, fim).append('\n');
+				mapa.linha(indice, contadorLinha);
+				comentario = ProvedorModeloRecursivo.alternaComentario(comentario, conteudo, inicio, fim);
+			} else {
+				/* É uma linha que não está comentada e começa com "include". */
+				int start = conteudo.indexOf('"', p);
+				if (start == -1 || start >= fim) throw new IOException(String.format("Include inválido, %s, linha %d", provedor.getArquivo(contadorLinha, p - inicio), Integer.valueOf(provedor.getLinha(contadorLinha, p - inicio))));
+				start++;
+				int end = conteudo.indexOf('"', start);
+				if (end == -1 || end >= fim) throw new IOException(String.format("Include inválido, %s, linha %d", provedor.getArquivo(contadorLinha, start - inicio), Integer.valueOf(provedor.getLinha(contadorLinha, start - inicio))));
+				String caminhoRelativo = conteudo.substring(start, end);
+				expandir(provedor.getProvedor(caminhoRelativo), saida, mapa, provedores, versoes, profundidade + 1);
+			}
+			inicio = proximo;
+		}
+	}
+
+	private static boolean ehInclude(String conteudo, int p, int fim) {
+		int depois = p + INCLUDE.length();
+		if (depois > fim || ! conteudo.startsWith(INCLUDE, p)) return false;
+		if (depois == fim) return true;
+		char c = conteudo.charAt(depois);
+		return c == '"' || Character.isWhitespace(c);
+	}
+
+	@Override
+	public String getIdentidade() {
+		String identidade = provedorRaiz.getIdentidade();
+		return identidade == null ? null : "include:" + identidade;
 	}
 
 	@Override
 	public int getLinha(int linhaReportada, int colunaReportada) {
-		// TODO Auto-generated method stub
-		return 0;
+		ModeloExpandido modelo = this.expandido;
+		ProvedorModelo provedor = modelo == null ? null : modelo.getProvedor(linhaReportada);
+		if (provedor == null) return linhaReportada;
+		return provedor.getLinha(modelo.getLinha(linhaReportada), colunaReportada);
 	}
 
+	/** As linhas são copiadas sem alteração, logo a coluna é a mesma do provedor que originou a linha. */
 	@Override
 	public int getColuna(int linhaReportada, int colunaReportada) {
-		// TODO Auto-generated method stub
-		return 0;
+		ModeloExpandido modelo = this.expandido;
+		ProvedorModelo provedor = modelo == null ? null : modelo.getProvedor(linhaReportada);
+		if (provedor == null) return colunaReportada;
+		return provedor.getColuna(modelo.getLinha(linhaReportada), colunaReportada);
 	}
 
 	@Override
 	public String getArquivo(int linhaReportada, int colunaReportada) {
-		// TODO Auto-generated method stub
-		return null;
+		ModeloExpandido modelo = this.expandido;
+		ProvedorModelo provedor = modelo == null ? null : modelo.getProvedor(linhaReportada);
+		if (provedor == null) return provedorRaiz.getArquivo(linhaReportada, colunaReportada);
+		return provedor.getArquivo(modelo.getLinha(linhaReportada), colunaReportada);
 	}
 
 	@Override
 	public ProvedorModelo getProvedor(String caminhoRelativo) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@SuppressWarnings("boxing")
-	protected String obterLinhasRecursivo(ProvedorModelo provedor) throws IOException {
-		String conteudo = provedor.getConteudo();
-		boolean comentario = false;
-		int contadorLinha = 0;
-		StringBuilder resultado = new StringBuilder();
-		Scanner scanner = new Scanner(conteudo);
-		while (scanner.hasNextLine()) {
-			String linha = scanner.nextLine();
-			contadorLinha++;
-
-			/* Se é uma de comentário ou de código diferente de "include". */
-			String linha2 = linha.trim();
-			if (! linha2.startsWith("include")) {
-				if (comentario) {
-					resultado.append(String.format(" *%s:%3d* %s", provedor.getNome(), contadorLinha, linha));
-					resultado.append('\n');
-				} else {
-					resultado.append(String.format("/*%s:%3d*/%s", provedor.getNome(), contadorLinha, linha));
-					resultado.append('\n');
-				}
-				comentario = ProvedorModeloRecursivo.alternaComentario(comentario, linha);
-				continue;
-			}
-			/* Se é uma linha comentada com "include", então  continua coma próxima. */
-			if (comentario) {
-				comentario = ProvedorModeloRecursivo.alternaComentario(comentario, linha);
-				continue;
-			}
-			/* É uma linha que não está comentada e começa com "include". */
-			int start = linha2.indexOf('"');
-			if (start == -1) throw new IOException(String.format("Include inválido, %s, linha %d", provedor.getArquivo(contadorLinha, start), provedor.getLinha(contadorLinha, start)));
-			start++;
-			int end = linha2.indexOf('"', start);
-			if (end == -1) throw new IOException(String.format("Include inválido, %s, linha %d", provedor.getArquivo(contadorLinha, start), provedor.getLinha(contadorLinha, start)));
-			String caminhoRelativo = linha2.substring(start, end);
-			ProvedorModelo provedorRecursivo = provedor.getProvedor(caminhoRelativo);
-			String linhas3 = obterLinhasRecursivo(provedorRecursivo);
-			resultado.append(linhas3);
-			resultado.append('\n');
-		}
-		return resultado.toString();
+		return new ProvedorModeloRecursivo(provedorRaiz.getProvedor(caminhoRelativo));
 	}
 
-	protected static List<String> readLines(InputStream is) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        List<String> list = new ArrayList<String>();
-        String line = reader.readLine();
-        while (line != null) {
-            list.add(line);
-            line = reader.readLine();
-        }
-        return list;
-    }
-
-	protected static boolean alternaComentario(boolean ehComentario, String linha) {
-		int p = 0;
-		int l = linha.length();
+	/** @return Se o trecho entre <code>inicio</code> e <code>fim</code> termina dentro de um comentário. */
+	protected static boolean alternaComentario(boolean ehComentario, String texto, int inicio, int fim) {
+		int p = inicio;
 		boolean ehComentarioNoFim = ehComentario;
-		while (p < l) {
+		while (p < fim) {
 			if (ehComentarioNoFim) {
-				int pos = linha.indexOf("*/", p);
-				if (pos == -1) {
+				int pos = texto.indexOf("*/", p);
+				if (pos == -1 || pos + 2 > fim) {
 					break;
 				}
 				p = pos+2;
 				ehComentarioNoFim = false;
 			} else {
-				int pos = linha.indexOf("/*", p);
-				if (pos == -1) {
+				int pos = texto.indexOf("/*", p);
+				if (pos == -1 || pos + 2 > fim) {
 					break;
 				}
 				p = pos+2;
@@ -16,6 +16,7 @@
 package infra.ilog.opl.modelo;
 
 import infra.exception.controlstate.design.UnsupportedMethodException;
+import infra.ilog.opl.Fingerprint;
 import infra.ilog.opl.ProvedorModelo;
 
 import java.io.IOException;
@@ -29,6 +30,8 @@ import static infra.exception.Assert.Argument;
  */
 public class ProvedorModeloString extends AbstractProvedorModelo {
 	final String modelo;
+	/** Impressão digital do modelo, calculada somente se necessária. */
+	private String impressao = null;
 
 	public ProvedorModeloString(String nome, String modelo) {
 		super(nome);
@@ -47,6 +50,19 @@ public class ProvedorModeloString extends AbstractProvedorModelo {
 		return modelo;
 	}
 
+	/** A identidade é o próprio conteúdo, representado pela impressão digital. */
+	@Override
+	public String getIdentidade() {
+		if (impressao == null) impressao = Fingerprint.of(modelo);
+		return "string:" + impressao;
+	}
+
+	/** O conteúdo nunca muda. */
+	@Override
+	public String getVersao() {
+		return "";
+	}
+
 	@Override
 	public ProvedorModelo getProvedor(String caminhoRelativo) {
 		throw new UnsupportedMethodException();
@@ -18,6 +18,7 @@ package infra.ilog.opl.modelo;
 import infra.exception.controlstate.bug.ImpossibleException;
 import infra.ilog.opl.ProvedorModelo;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -57,6 +58,19 @@ public class ProvedorModeloURL extends AbstractProvedorModelo {
 		return url.getPath();
 	}
 
+	@Override
+	public String getIdentidade() {
+		return "url:" + url.toExternalForm();
+	}
+
+	/** Para arquivos locais, usa data de modificação e tamanho; para outras URLs, a impressão digital do conteúdo. */
+	@Override
+	public String getVersao() throws IOException {
+		File arquivo = AbstractProvedorModelo.arquivoLocal(url);
+		if (arquivo != null) return AbstractProvedorModelo.versaoArquivo(arquivo);
+		return super.getVersao();
+	}
+
 	@Override
 	public ProvedorModelo getProvedor(String caminhoRelativo) {
 		try {
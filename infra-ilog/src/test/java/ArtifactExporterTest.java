@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import infra.ilog.ArtifactExporter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArtifactExporterTest {
+	private File dir;
+	private ArtifactExporter exporter;
+
+	@Before
+	public void criar() throws IOException {
+		dir = File.createTempFile("export", "");
+		dir.delete();
+		dir.mkdirs();
+		exporter = new ArtifactExporter("teste");
+	}
+
+	@After
+	public void apagar() throws IOException, InterruptedException {
+		exporter.shutdown();
+		exporter.awaitTermination(10, TimeUnit.SECONDS);
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void exportarSnapshot() throws Exception {
+		ArtifactExporter.Snapshot snapshot = new ArtifactExporter.Snapshot();
+		snapshot.write("conteudo".getBytes("UTF-8"));
+		File file = new File(dir, "sub/dados.dat");
+		Future<File> future = exporter.export("data", file, snapshot, false);
+		Assert.assertEquals(file, future.get());
+		Assert.assertTrue(exporter.awaitCompletion(10, TimeUnit.SECONDS));
+		Assert.assertEquals("conteudo", FileUtils.readFileToString(file, "UTF-8"));
+		Assert.assertFalse(new File(dir, "sub/dados.dat.part").exists());
+		Assert.assertEquals(1, exporter.getExportedCount());
+		Assert.assertEquals(0, exporter.getPendingCount());
+		Assert.assertEquals(8, exporter.getBytesWritten());
+	}
+
+	@Test
+	public void exportarSnapshotCompactado() throws Exception {
+		ArtifactExporter.Snapshot snapshot = new ArtifactExporter.Snapshot();
+		for (int i = 0; i < 10000; i++) {
+			snapshot.write("linha de dados\n".getBytes("UTF-8"));
+		}
+		File file = new File(dir, "dados.dat");
+		File written = exporter.export("data", file, snapshot, true).get();
+		Assert.assertEquals(new File(dir, "dados.dat.gz"), written);
+		Assert.assertFalse(file.exists());
+		Assert.assertTrue(written.length() < snapshot.size());
+		Assert.assertEquals(snapshot.toString("UTF-8"), lerCompactado(written));
+	}
+
+	@Test
+	public void exportarArquivoTemporario() throws Exception {
+		File file = new File(dir, "modelo.lp");
+		File temporary = ArtifactExporter.temporary(file);
+		Assert.assertTrue(temporary.getName().endsWith(".lp"));
+		escrever(temporary, "minimize x;");
+		File written = exporter.export("model", temporary, file, true).get();
+		Assert.assertEquals("minimize x;", lerCompactado(written));
+		Assert.assertFalse(temporary.exists());
+
+		temporary = ArtifactExporter.temporary(file);
+		escrever(temporary, "maximize x;");
+		written = exporter.export("model", temporary, file, false).get();
+		Assert.assertEquals(file, written);
+		Assert.assertEquals("maximize x;", FileUtils.readFileToString(file, "UTF-8"));
+		Assert.assertFalse(temporary.exists());
+	}
+
+	@Test
+	public void falha() throws Exception {
+		File blocker = new File(dir, "arquivo");
+		escrever(blocker, "");
+		ArtifactExporter.Snapshot snapshot = new ArtifactExporter.Snapshot();
+		snapshot.write(1);
+		Future<File> future = exporter.export("data", new File(blocker, "dados.dat"), snapshot, false);
+		try {
+			future.get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+		Assert.assertTrue(exporter.awaitCompletion(10, TimeUnit.SECONDS));
+		Assert.assertEquals(1, exporter.getFailedCount());
+		Assert.assertEquals(0, exporter.getExportedCount());
+	}
+
+	@Test
+	public void aguardarExportacoes() throws Exception {
+		ArtifactExporter limitado = new ArtifactExporter("limitado", 1);
+		try {
+			ArtifactExporter.Exports exportacoes = new ArtifactExporter.Exports();
+			for (int i = 0; i < 20; i++) {
+				ArtifactExporter.Snapshot snapshot = new ArtifactExporter.Snapshot();
+				snapshot.write(new byte[100000]);
+				exportacoes.add(limitado.export("data", new File(dir, "dados" + i + ".dat"), snapshot, false));
+			}
+			Assert.assertEquals(20, exportacoes.size());
+			exportacoes.await();
+			Assert.assertEquals(0, exportacoes.size());
+			Assert.assertEquals(0, limitado.getPendingCount());
+			Assert.assertEquals(20, limitado.getExportedCount());
+			for (int i = 0; i < 20; i++) {
+				Assert.assertEquals(100000, new File(dir, "dados" + i + ".dat").length());
+			}
+		} finally {
+			limitado.shutdown();
+		}
+	}
+
+	@Test
+	public void recusarAposShutdown() throws Exception {
+		exporter.shutdown();
+		ArtifactExporter.Snapshot snapshot = new ArtifactExporter.Snapshot();
+		snapshot.write(1);
+		try {
+			exporter.export("data", new File(dir, "dados.dat"), snapshot, false);
+			Assert.fail();
+		} catch (RejectedExecutionException e) {
+			/* Esperado. */
+		}
+		Assert.assertEquals(0, exporter.getPendingCount());
+	}
+
+	private static void escrever(File file, String conteudo) throws IOException {
+		OutputStream os = new FileOutputStream(file);
+		try {
+			os.write(conteudo.getBytes("UTF-8"));
+		} finally {
+			os.close();
+		}
+	}
+
+	private static String lerCompactado(File file) throws IOException {
+		InputStream is = new GZIPInputStream(new FileInputStream(file));
+		try {
+			return IOUtils.toString(is, "UTF-8");
+		} finally {
+			is.close();
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import infra.ilog.opl.ProvedorModelo;
+import infra.ilog.opl.modelo.CacheModelo;
+import infra.ilog.opl.modelo.ProvedorModeloArquivo;
+import infra.ilog.opl.modelo.ProvedorModeloRecursivo;
+import infra.ilog.opl.modelo.ProvedorModeloString;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheModeloTest {
+	private File dir;
+	private File principal;
+	private File incluido;
+
+	private static void escrever(File arquivo, String conteudo, long modificacao) throws IOException {
+		OutputStream os = new FileOutputStream(arquivo);
+		try {
+			os.write(conteudo.getBytes("UTF-8"));
+		} finally {
+			os.close();
+		}
+		arquivo.setLastModified(modificacao);
+	}
+
+	@Before
+	public void criarArquivos() throws IOException {
+		CacheModelo.limpar();
+		dir = File.createTempFile("cache", "");
+		dir.delete();
+		dir.mkdirs();
+		principal = new File(dir, "principal.mod");
+		incluido = new File(dir, "incluido.mod");
+		escrever(principal, "int a = 1;\ninclude \"incluido.mod\";\n", 1000000L);
+		escrever(incluido, "int b = 2;\n", 1000000L);
+	}
+
+	@After
+	public void apagarArquivos() {
+		principal.delete();
+		incluido.delete();
+		dir.delete();
+		CacheModelo.limpar();
+	}
+
+	@Test
+	public void reaproveitaTexto() throws IOException {
+		ProvedorModelo provedor = new ProvedorModeloRecursivo(new ProvedorModeloArquivo("principal", principal));
+		long acertos = CacheModelo.getAcertos();
+		String primeiro = provedor.getConteudo();
+		Assert.assertTrue(primeiro.contains("int b = 2;"));
+		Assert.assertEquals(acertos, CacheModelo.getAcertos());
+
+		ProvedorModelo outro = new ProvedorModeloRecursivo(new ProvedorModeloArquivo("principal", principal));
+		Assert.assertSame(primeiro, outro.getConteudo());
+		Assert.assertEquals(acertos + 1, CacheModelo.getAcertos());
+	}
+
+	@Test
+	public void alteracaoNoIncludeInvalida() throws IOException {
+		ProvedorModelo provedor = new ProvedorModeloRecursivo(new ProvedorModeloArquivo("principal", principal));
+		provedor.getConteudo();
+		escrever(incluido, "int b = 3;\n", 2000000L);
+		String segundo = provedor.getConteudo();
+		Assert.assertTrue(segundo.contains("int b = 3;"));
+		Assert.assertEquals(1, CacheModelo.getTamanho());
+	}
+
+	@Test
+	public void capacidade() throws IOException {
+		int capacidade = CacheModelo.getCapacidade();
+		try {
+			CacheModelo.setCapacidade(2);
+			for (int i = 0; i < 4; i++) {
+				new ProvedorModeloRecursivo(new ProvedorModeloString("s", "int x = " + i + ";")).getConteudo();
+			}
+			Assert.assertEquals(2, CacheModelo.getTamanho());
+		} finally {
+			CacheModelo.setCapacidade(capacidade);
+		}
+	}
+}
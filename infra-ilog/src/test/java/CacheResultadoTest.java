@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import ilog.opl.IloOplDataHandler;
+import ilog.cplex.IloCplex;
+import ilog.opl.IloOplModel;
+import infra.ilog.cplex.ConfigurationCplex;
+import infra.ilog.cplex.StopPolicy;
+import infra.ilog.opl.CacheResultado;
+import infra.ilog.opl.ConfiguracaoOPL;
+import infra.ilog.opl.DataSink;
+import infra.ilog.opl.DataSource;
+import infra.ilog.opl.Fingerprint;
+import infra.ilog.opl.FingerprintableDelegate;
+import infra.ilog.opl.ReplayableDataSink;
+import infra.ilog.opl.dados.DataSinkFile;
+import infra.ilog.opl.dados.DataSinkJava;
+import infra.ilog.opl.dados.DataSinkStringBuilder;
+import infra.ilog.opl.dados.DataSourceJava;
+import infra.ilog.opl.dados.DataSourceString;
+import infra.ilog.opl.modelo.ProvedorModeloString;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheResultadoTest {
+	private File dir;
+	private ConfiguracaoOPL configuracaoOpl;
+	private ConfigurationCplex configuracaoCplex;
+
+	@Before
+	public void criar() throws IOException {
+		dir = File.createTempFile("resultado", "");
+		dir.delete();
+		dir.mkdirs();
+		configuracaoOpl = new ConfiguracaoOPL("teste", dir);
+		configuracaoCplex = new ConfigurationCplex("teste", dir);
+	}
+
+	@After
+	public void apagar() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	private String chave(String modelo, String dados, DataSink consumidor) throws IOException {
+		Collection<DataSource> fontes = Collections.<DataSource>singletonList(new DataSourceString("dados", dados));
+		return CacheResultado.chave(configuracaoOpl, configuracaoCplex, new ProvedorModeloString("modelo", modelo), fontes, Collections.singletonList(consumidor));
+	}
+
+	@Test
+	public void chaveDependeDoModeloEDosDados() throws IOException {
+		DataSink consumidor = new DataSinkStringBuilder("saida", new StringBuilder());
+		String k = chave("int a;", "a = 1;", consumidor);
+		Assert.assertNotNull(k);
+		Assert.assertEquals(k, chave("int a;", "a = 1;", consumidor));
+		Assert.assertFalse(k.equals(chave("int a;", "a = 2;", consumidor)));
+		Assert.assertFalse(k.equals(chave("int b;", "a = 1;", consumidor)));
+		configuracaoCplex.setSimplexLimiteDeTempo(Double.valueOf(10));
+		Assert.assertFalse(k.equals(chave("int a;", "a = 1;", consumidor)));
+	}
+
+	/** Delegate de teste cujo parâmetro entra na impressão digital. */
+	private static class DelegateLimite implements FingerprintableDelegate {
+		private final int limite;
+		DelegateLimite(int limite) { this.limite = limite; }
+		@Override
+		public boolean antesExecucao(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) { return numeroIteracao <= limite; }
+		@Override
+		public boolean depoisExecucao(IloCplex cplex, int numeroIteracao, ConfigurationCplex configuracao) { return true; }
+		@Override
+		public void addFingerprint(Fingerprint fingerprint) { fingerprint.add(limite); }
+	}
+
+	@Test
+	public void chaveDependeDoDelegate() throws IOException {
+		DataSink consumidor = new DataSinkStringBuilder("saida", new StringBuilder());
+		String k = chave("int a;", "a = 1;", consumidor);
+		configuracaoCplex.setDelegate(StopPolicy.mipGap(0.01));
+		Assert.assertNull(chave("int a;", "a = 1;", consumidor));
+		configuracaoCplex.setDelegate(new DelegateLimite(1));
+		String k1 = chave("int a;", "a = 1;", consumidor);
+		Assert.assertNotNull(k1);
+		Assert.assertFalse(k.equals(k1));
+		configuracaoCplex.setDelegate(new DelegateLimite(2));
+		Assert.assertFalse(k1.equals(chave("int a;", "a = 1;", consumidor)));
+	}
+
+	@Test
+	public void chaveNulaSemImpressaoDigital() throws IOException {
+		DataSourceJava fonte = new DataSourceJava("java") {
+			@Override
+			protected void translateToOpl(IloOplDataHandler dataHandler) {
+				// Não usado.
+			}
+		};
+		List<DataSink> consumidores = Collections.<DataSink>singletonList(new DataSinkStringBuilder("saida", new StringBuilder()));
+		Assert.assertNull(CacheResultado.chave(configuracaoOpl, configuracaoCplex, new ProvedorModeloString("modelo", "int a;"), Collections.<DataSource>singletonList(fonte), consumidores));
+		fonte.setFingerprint("versao-1");
+		Assert.assertNotNull(CacheResultado.chave(configuracaoOpl, configuracaoCplex, new ProvedorModeloString("modelo", "int a;"), Collections.<DataSource>singletonList(fonte), consumidores));
+		DataSink java = new DataSinkJava("java") {
+			@Override
+			protected void translateFromOpl(IloOplModel oplModel) {
+				// Não usado.
+			}
+		};
+		Assert.assertNull(CacheResultado.chave(configuracaoOpl, configuracaoCplex, new ProvedorModeloString("modelo", "int a;"), Collections.<DataSource>singletonList(fonte), Collections.singletonList(java)));
+	}
+
+	@Test
+	public void reproduzResultadoGravado() throws IOException {
+		CacheResultado cache = new CacheResultado(new File(dir, "cache"), 1000000);
+		Assert.assertFalse(cache.reproduzir("k", Collections.<ReplayableDataSink>emptyList()));
+
+		CacheResultado.Gravacao gravacao = cache.gravar("k", 2);
+		OutputStream os = gravacao.abrir(0);
+		os.write("x = 1;".getBytes("UTF-8"));
+		os = gravacao.abrir(1);
+		os.write("y = 2;".getBytes("UTF-8"));
+		Assert.assertFalse(cache.contem("k"));
+		gravacao.concluir();
+		Assert.assertTrue(cache.contem("k"));
+
+		StringBuilder sb = new StringBuilder();
+		File arquivo = new File(dir, "saida/y.dat");
+		List<ReplayableDataSink> consumidores = Arrays.<ReplayableDataSink>asList(new DataSinkStringBuilder("x", sb), new DataSinkFile("y", arquivo));
+		Assert.assertTrue(cache.reproduzir("k", consumidores));
+		Assert.assertEquals("x = 1;", sb.toString());
+		Assert.assertEquals("y = 2;", FileUtils.readFileToString(arquivo, "UTF-8"));
+		Assert.assertEquals(1, cache.getAcertos());
+		Assert.assertEquals(1, cache.getFalhas());
+	}
+
+	@Test
+	public void descartaGravacaoIncompletaEEntradasAntigas() throws IOException {
+		CacheResultado cache = new CacheResultado(new File(dir, "cache"), 10);
+		CacheResultado.Gravacao gravacao = cache.gravar("a", 1);
+		gravacao.abrir(0).write(new byte[6]);
+		gravacao.descartar();
+		Assert.assertFalse(cache.contem("a"));
+		Assert.assertEquals(0, cache.getTamanho());
+
+		gravacao = cache.gravar("a", 1);
+		gravacao.abrir(0).write(new byte[6]);
+		gravacao.concluir();
+		new File(cache.getDiretorio(), "a").setLastModified(System.currentTimeMillis() - 60000);
+		gravacao = cache.gravar("b", 1);
+		gravacao.abrir(0).write(new byte[6]);
+		gravacao.concluir();
+		Assert.assertFalse(cache.contem("a"));
+		Assert.assertTrue(cache.contem("b"));
+		Assert.assertEquals(6, cache.getTamanho());
+	}
+}
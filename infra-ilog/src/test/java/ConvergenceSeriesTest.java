@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import infra.ilog.cplex.ConvergenceSeries;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConvergenceSeriesTest {
+	@Test
+	public void registrar() {
+		ConvergenceSeries serie = new ConvergenceSeries();
+		serie.add(0.0, ConvergenceSeries.PRESOLVE, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+		serie.add(1.0, ConvergenceSeries.MIP, 10, 100.0, Double.NaN, 80.0, 0.2);
+		serie.add(2.0, ConvergenceSeries.MIP, 20, Double.NaN, Double.NaN, 85.0, Double.NaN);
+		Assert.assertEquals(3, serie.size());
+		Assert.assertEquals(20, serie.getIterations(2));
+		Assert.assertEquals(85.0, serie.getBestBound(2), 0.0);
+		Assert.assertEquals(100.0, serie.getLastObjective(), 0.0);
+		Assert.assertEquals(0.2, serie.getLastGap(), 0.0);
+	}
+
+	@Test
+	public void capacidadeLimitada() {
+		ConvergenceSeries serie = new ConvergenceSeries(100);
+		for (int i = 0; i < 10000; i++) {
+			serie.add(i, ConvergenceSeries.CONTINUOUS, i, i, 0, Double.NaN, Double.NaN);
+		}
+		Assert.assertTrue(serie.size() <= 100);
+		Assert.assertTrue(serie.size() >= 50);
+		/* Cobre toda a execução com resolução uniforme. */
+		Assert.assertEquals(0, serie.getIterations(0));
+		long passo = serie.getIterations(1) - serie.getIterations(0);
+		for (int i = 1; i < serie.size(); i++) {
+			Assert.assertEquals(passo, serie.getIterations(i) - serie.getIterations(i - 1));
+		}
+		Assert.assertTrue(serie.getIterations(serie.size() - 1) > 10000 - passo - 1);
+	}
+
+	@Test
+	public void csv() throws Exception {
+		ConvergenceSeries serie = new ConvergenceSeries();
+		serie.add(1.5, ConvergenceSeries.MIP, 10, 100.0, Double.NaN, 80.0, 0.2);
+		StringWriter writer = new StringWriter();
+		serie.writeCsv(writer);
+		Assert.assertEquals("time,phase,iterations,objective,infeasibility,bestBound,gap\n1.5,mip,10,100.0,,80.0,0.2\n", writer.toString());
+	}
+
+	@Test
+	public void binario() throws Exception {
+		ConvergenceSeries serie = new ConvergenceSeries();
+		serie.add(1.5, ConvergenceSeries.MIP, 10, 100.0, Double.NaN, 80.0, 0.2);
+		serie.add(2.5, ConvergenceSeries.CONTINUOUS, 20, 90.0, 0.5, Double.NaN, Double.NaN);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		serie.writeBinary(os);
+		ConvergenceSeries lida = ConvergenceSeries.readBinary(new ByteArrayInputStream(os.toByteArray()));
+		Assert.assertEquals(2, lida.size());
+		Assert.assertEquals(2.5, lida.getTime(1), 0.0);
+		Assert.assertEquals(ConvergenceSeries.CONTINUOUS, lida.getPhase(1));
+		Assert.assertEquals(0.5, lida.getInfeasibility(1), 0.0);
+		Assert.assertTrue(Double.isNaN(lida.getGap(1)));
+	}
+
+	@Test
+	public void binarioComFaseInvalida() throws Exception {
+		ConvergenceSeries serie = new ConvergenceSeries();
+		serie.add(1.5, ConvergenceSeries.MIP, 10, 100.0, Double.NaN, 80.0, 0.2);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		serie.writeBinary(os);
+		byte[] bytes = os.toByteArray();
+		/* Cabeçalho (magic e tamanho) e o tempo do primeiro ponto precedem a fase. */
+		for (byte fase : new byte[] { 3, -1 }) {
+			bytes[16] = fase;
+			try {
+				ConvergenceSeries.readBinary(new ByteArrayInputStream(bytes));
+				Assert.fail();
+			} catch (IOException e) {
+				// esperado
+			}
+		}
+	}
+
+	@Test
+	public void reservarRespeitaIntervalo() throws Exception {
+		ConvergenceSeries serie = new ConvergenceSeries(100, 0.05);
+		Assert.assertTrue(serie.reserve());
+		Assert.assertFalse(serie.reserve());
+		Thread.sleep(100);
+		Assert.assertTrue(serie.reserve());
+		Assert.assertFalse(serie.reserve());
+
+		ConvergenceSeries semIntervalo = new ConvergenceSeries(100, 0);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(semIntervalo.reserve());
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import ilog.opl.IloOplFactory;
+import infra.ilog.opl.ConfiguracaoOPL;
+import infra.ilog.opl.ModelDefinitionPool;
+import infra.ilog.opl.modelo.ProvedorModeloString;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ModelDefinitionPoolTest {
+	private static class Factory extends IloOplFactory {
+		int ended = 0;
+		@Override
+		public void end() {
+			ended++;
+		}
+	}
+
+	private static ModelDefinitionPool.Entry entrada(String chave) {
+		return new ModelDefinitionPool.Entry(chave, new Factory(), null, null, null);
+	}
+
+	private static int ended(ModelDefinitionPool.Entry entrada) {
+		return ((Factory) entrada.getFactory()).ended;
+	}
+
+	@Test
+	public void reaproveitaEntradaDevolvida() {
+		ModelDefinitionPool pool = new ModelDefinitionPool(2);
+		Assert.assertNull(pool.lease("a"));
+		ModelDefinitionPool.Entry a = entrada("a");
+		pool.release(a);
+		Assert.assertSame(a, pool.lease("a"));
+		/* Emprestada com exclusividade. */
+		Assert.assertNull(pool.lease("a"));
+		pool.release(a);
+		Assert.assertEquals(0, ended(a));
+		Assert.assertEquals(1, pool.getAcertos());
+		Assert.assertEquals(2, pool.getFalhas());
+	}
+
+	@Test
+	public void descartaUsadaHaMaisTempo() {
+		ModelDefinitionPool pool = new ModelDefinitionPool(2);
+		ModelDefinitionPool.Entry a = entrada("a");
+		ModelDefinitionPool.Entry b = entrada("b");
+		ModelDefinitionPool.Entry c = entrada("c");
+		pool.release(a);
+		pool.release(b);
+		pool.release(pool.lease("a"));
+		pool.release(c);
+		Assert.assertEquals(0, ended(a));
+		Assert.assertEquals(1, ended(b));
+		Assert.assertEquals(0, ended(c));
+		Assert.assertEquals(2, pool.getTamanho());
+		ModelDefinitionPool.Entry a2 = entrada("a");
+		pool.release(a2);
+		Assert.assertEquals(1, ended(a2));
+	}
+
+	@Test
+	public void fecharFinalizaFactories() {
+		ModelDefinitionPool pool = new ModelDefinitionPool(4);
+		ModelDefinitionPool.Entry a = entrada("a");
+		ModelDefinitionPool.Entry b = entrada("b");
+		pool.release(a);
+		pool.release(b);
+		ModelDefinitionPool.Entry emprestada = pool.lease("b");
+		pool.close();
+		Assert.assertEquals(1, ended(a));
+		Assert.assertEquals(0, ended(b));
+		Assert.assertNull(pool.lease("a"));
+		pool.release(emprestada);
+		Assert.assertEquals(1, ended(b));
+		Assert.assertEquals(0, pool.getTamanho());
+	}
+
+	@Test
+	public void chaveDependeDoModeloEDaConfiguracao() throws Exception {
+		ConfiguracaoOPL configuracao = new ConfiguracaoOPL("teste", new File(".").getAbsoluteFile());
+		String k1 = ModelDefinitionPool.key(configuracao, new ProvedorModeloString("m", "int a = 1;"));
+		Assert.assertEquals(k1, ModelDefinitionPool.key(configuracao, new ProvedorModeloString("m", "int a = 1;")));
+		Assert.assertFalse(k1.equals(ModelDefinitionPool.key(configuracao, new ProvedorModeloString("m", "int a = 2;"))));
+		configuracao.setUsarNomes(! configuracao.getUsarNomes());
+		Assert.assertFalse(k1.equals(ModelDefinitionPool.key(configuracao, new ProvedorModeloString("m", "int a = 1;"))));
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import infra.ilog.NoSolutionException;
+import infra.ilog.SolverCommand;
+import infra.ilog.cplex.ConfigurationCplex;
+import infra.ilog.cplex.Delegate;
+import infra.ilog.cplex.PortfolioSolverCommand;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PortfolioSolverCommandTest {
+	/** Solver falso que demora o tempo indicado e termina com a solução indicada. */
+	private static class FakeSolver implements SolverCommand {
+		final long duracao;
+		final boolean otimo;
+		final double objetivo;
+		final NoSolutionException.Reason semSolucao;
+		/** Objetivo da solução viável encontrada antes de ser cancelado, ou NaN. */
+		double incumbente = Double.NaN;
+		boolean erro = false;
+		volatile boolean interrompido = false;
+
+		FakeSolver(long duracao, boolean otimo, double objetivo) {
+			this(duracao, otimo, objetivo, null);
+		}
+
+		FakeSolver(long duracao, boolean otimo, double objetivo, NoSolutionException.Reason semSolucao) {
+			this.duracao = duracao;
+			this.otimo = otimo;
+			this.objetivo = objetivo;
+			this.semSolucao = semSolucao;
+		}
+
+		@Override
+		public void execute() throws NoSolutionException {
+			try {
+				Thread.sleep(duracao);
+			} catch (InterruptedException e) {
+				interrompido = true;
+				throw new NoSolutionException(NoSolutionException.Reason.INTERRUPTED);
+			}
+			if (erro) throw new AssertionError("falha grave");
+			if (semSolucao != null) throw new NoSolutionException(semSolucao);
+		}
+	}
+
+	private static class FakePortfolio extends PortfolioSolverCommand {
+		FakePortfolio(List<? extends SolverCommand> variants, AcceptancePolicy policy) {
+			super("teste", variants, policy);
+		}
+
+		@Override
+		protected void evaluate(Result result) {
+			FakeSolver solver = (FakeSolver) result.getCommand();
+			result.setSolution(true);
+			result.setOptimal(solver.otimo);
+			result.setObjective(solver.objetivo);
+		}
+
+		@Override
+		protected void evaluateIncumbent(Result result) {
+			FakeSolver solver = (FakeSolver) result.getCommand();
+			if (Double.isNaN(solver.incumbente)) return;
+			result.setSolution(true);
+			result.setObjective(solver.incumbente);
+		}
+	}
+
+	@Test
+	public void primeiroOtimoCancelaDemais() throws Exception {
+		FakeSolver otimo = new FakeSolver(200, true, 3);
+		FakeSolver viavel = new FakeSolver(10, false, 7);
+		FakeSolver lento = new FakeSolver(60000, true, 1);
+		PortfolioSolverCommand portfolio = new FakePortfolio(Arrays.asList(otimo, viavel, lento), PortfolioSolverCommand.firstOptimal(true));
+		long inicio = System.currentTimeMillis();
+		portfolio.execute();
+		Assert.assertTrue(System.currentTimeMillis() - inicio < 10000);
+		Assert.assertSame(otimo, portfolio.getWinner().getCommand());
+		Assert.assertEquals(0, portfolio.getWinner().getIndex());
+		Assert.assertEquals(2, portfolio.getResults().size());
+		Assert.assertTrue(portfolio.isCancelled());
+		/* execute() espera as variantes canceladas terminarem. */
+		Assert.assertTrue(lento.interrompido);
+	}
+
+	@Test
+	public void melhorDentroDoPrazo() throws Exception {
+		FakeSolver pior = new FakeSolver(10, false, 10);
+		FakeSolver melhor = new FakeSolver(50, false, 5);
+		FakeSolver lento = new FakeSolver(60000, true, 1);
+		PortfolioSolverCommand portfolio = new FakePortfolio(Arrays.asList(pior, melhor, lento), PortfolioSolverCommand.bestWithin(300, true));
+		portfolio.execute();
+		Assert.assertSame(melhor, portfolio.getWinner().getCommand());
+		Assert.assertEquals(5.0, portfolio.getWinner().getObjective(), 0.0);
+	}
+
+	@Test
+	public void maximizarEscolheMaiorObjetivo() throws Exception {
+		FakeSolver pior = new FakeSolver(10, false, 5);
+		FakeSolver melhor = new FakeSolver(20, false, 10);
+		PortfolioSolverCommand portfolio = new FakePortfolio(Arrays.asList(pior, melhor), PortfolioSolverCommand.firstOptimal(false));
+		portfolio.execute();
+		Assert.assertSame(melhor, portfolio.getWinner().getCommand());
+	}
+
+	@Test
+	public void nenhumaSolucao() throws Exception {
+		FakeSolver a = new FakeSolver(10, false, 0, NoSolutionException.Reason.INFEASIBLE);
+		FakeSolver b = new FakeSolver(20, false, 0, NoSolutionException.Reason.INFEASIBLE);
+		PortfolioSolverCommand portfolio = new FakePortfolio(Arrays.asList(a, b), PortfolioSolverCommand.firstSolution(true));
+		try {
+			portfolio.execute();
+			Assert.fail();
+		} catch (NoSolutionException e) {
+			Assert.assertEquals(NoSolutionException.Reason.INFEASIBLE, e.reason);
+		}
+		Assert.assertNull(portfolio.getWinner());
+	}
+
+	@Test
+	public void delegateRecusaIteracoesAposDecisao() throws Exception {
+		final List<ConfigurationCplex> criadas = new ArrayList<ConfigurationCplex>();
+		ConfigurationCplex c1 = new ConfigurationCplex("a", new File(".").getAbsoluteFile());
+		ConfigurationCplex c2 = new ConfigurationCplex("b", new File(".").getAbsoluteFile());
+		PortfolioSolverCommand portfolio = new PortfolioSolverCommand("teste", Arrays.asList(c1, c2), new PortfolioSolverCommand.VariantFactory() {
+			@Override
+			public SolverCommand create(ConfigurationCplex configuration) {
+				criadas.add(configuration);
+				return new FakeSolver(criadas.size() == 1 ? 10 : 60000, false, 1);
+			}
+		}, PortfolioSolverCommand.firstSolution(true));
+		Assert.assertEquals(2, criadas.size());
+		Assert.assertNull(c1.getDelegate());
+		Delegate delegate = criadas.get(1).getDelegate();
+		Assert.assertTrue(delegate.antesExecucao(null, 1, criadas.get(1)));
+		portfolio.execute();
+		Assert.assertEquals(0, portfolio.getWinner().getIndex());
+		Assert.assertFalse(delegate.antesExecucao(null, 2, criadas.get(1)));
+	}
+
+	@Test
+	public void prazoComparaIncumbentesCancelados() throws Exception {
+		FakeSolver a = new FakeSolver(60000, true, 1);
+		a.incumbente = 8;
+		FakeSolver b = new FakeSolver(60000, true, 1);
+		b.incumbente = 4;
+		FakeSolver c = new FakeSolver(60000, true, 1);
+		PortfolioSolverCommand portfolio = new FakePortfolio(Arrays.asList(a, b, c), PortfolioSolverCommand.bestWithin(200, true));
+		portfolio.execute();
+		Assert.assertSame(b, portfolio.getWinner().getCommand());
+		Assert.assertEquals(4.0, portfolio.getWinner().getObjective(), 0.0);
+		Assert.assertEquals(3, portfolio.getResults().size());
+	}
+
+	@Test
+	public void erroDeVarianteNaoBloqueia() throws Exception {
+		FakeSolver falha = new FakeSolver(10, false, 0);
+		falha.erro = true;
+		FakeSolver viavel = new FakeSolver(50, false, 7);
+		/* Sem limite de tempo: execute() espera todas as variantes terminarem. */
+		PortfolioSolverCommand portfolio = new FakePortfolio(Arrays.asList(falha, viavel), PortfolioSolverCommand.firstOptimal(true));
+		portfolio.execute();
+		Assert.assertSame(viavel, portfolio.getWinner().getCommand());
+		Assert.assertTrue(portfolio.getResults().get(0).getFailure() instanceof AssertionError);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import infra.ilog.opl.modelo.CacheModelo;
+import infra.ilog.opl.modelo.ModeloExpandido;
+import infra.ilog.opl.modelo.ProvedorModeloArquivo;
+import infra.ilog.opl.modelo.ProvedorModeloRecursivo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProvedorModeloRecursivoTest {
+	private File dir;
+	private File principal;
+	private File incluido;
+
+	private static void escrever(File arquivo, String conteudo) throws IOException {
+		OutputStream os = new FileOutputStream(arquivo);
+		try {
+			os.write(conteudo.getBytes("UTF-8"));
+		} finally {
+			os.close();
+		}
+	}
+
+	@Before
+	public void criarArquivos() throws IOException {
+		CacheModelo.limpar();
+		dir = File.createTempFile("recursivo", "");
+		dir.delete();
+		dir.mkdirs();
+		principal = new File(dir, "principal.mod");
+		incluido = new File(dir, "incluido.mod");
+		escrever(principal, "int a = 1;\r\n/* include \"nada.mod\";\r\n*/\r\n  include \"incluido.mod\";\r\nint includes = 2;\r\nint c = 3;");
+		escrever(incluido, "int b1 = 1;\nint b2 = 2;\n");
+	}
+
+	@After
+	public void apagarArquivos() {
+		principal.delete();
+		incluido.delete();
+		dir.delete();
+		CacheModelo.limpar();
+	}
+
+	@Test
+	public void expandeEMapeiaLinhas() throws IOException {
+		ProvedorModeloRecursivo provedor = new ProvedorModeloRecursivo(new ProvedorModeloArquivo("principal", principal));
+		ModeloExpandido modelo = provedor.getModeloExpandido();
+		Assert.assertEquals("int a = 1;\n/* include \"nada.mod\";\n*/\nint b1 = 1;\nint b2 = 2;\nint includes = 2;\nint c = 3;\n", modelo.getConteudo());
+		Assert.assertEquals(2, modelo.getProvedores().size());
+		Assert.assertEquals(3, modelo.getTrechos());
+
+		Assert.assertEquals(3, provedor.getLinha(3, 1));
+		Assert.assertEquals(principal.getAbsolutePath(), provedor.getArquivo(3, 1));
+		Assert.assertEquals(2, provedor.getLinha(5, 4));
+		Assert.assertEquals(4, provedor.getColuna(5, 4));
+		Assert.assertEquals(incluido.getAbsolutePath(), provedor.getArquivo(5, 4));
+		Assert.assertEquals(5, provedor.getLinha(6, 1));
+		Assert.assertEquals(6, provedor.getLinha(7, 1));
+		Assert.assertEquals(principal.getAbsolutePath(), provedor.getArquivo(7, 1));
+	}
+
+	@Test
+	public void expandeParaAppendable() throws IOException {
+		ProvedorModeloRecursivo provedor = new ProvedorModeloRecursivo(new ProvedorModeloArquivo("principal", principal));
+		StringBuilder sb = new StringBuilder();
+		ModeloExpandido modelo = provedor.expandir(sb);
+		Assert.assertNull(modelo.getConteudo());
+		Assert.assertEquals(provedor.getConteudo(), sb.toString());
+	}
+
+	@Test(expected = IOException.class)
+	public void includeCircular() throws IOException {
+		escrever(incluido, "include \"incluido.mod\";\n");
+		new ProvedorModeloRecursivo(new ProvedorModeloArquivo("principal", principal)).getConteudo();
+	}
+}
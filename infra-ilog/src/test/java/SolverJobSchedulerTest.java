@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import infra.ilog.NoSolutionException;
+import infra.ilog.SolverCommand;
+import infra.ilog.SolverJob;
+import infra.ilog.SolverJobScheduler;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SolverJobSchedulerTest {
+	private SolverJobScheduler scheduler;
+
+	/** Solver falso que espera ser liberado (ou interrompido), registrando quantos executam ao mesmo tempo. */
+	private static class FakeSolver implements SolverCommand {
+		static final AtomicInteger running = new AtomicInteger(0);
+		static final AtomicInteger maxRunning = new AtomicInteger(0);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<String> order;
+		final String name;
+
+		FakeSolver(String name, List<String> order) {
+			this.name = name;
+			this.order = order;
+		}
+
+		@Override
+		public void execute() throws NoSolutionException {
+			int n = running.incrementAndGet();
+			int max = maxRunning.get();
+			while (n > max && ! maxRunning.compareAndSet(max, n)) max = maxRunning.get();
+			if (order != null) order.add(name);
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new NoSolutionException(NoSolutionException.Reason.INTERRUPTED);
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	private static WeakReference<SolverJob> executarComPrazo(SolverJobScheduler scheduler) throws Exception {
+		FakeSolver solver = new FakeSolver("prazo", null);
+		solver.release.countDown();
+		SolverJob job = scheduler.submit(new SolverJob("prazo", solver, 0, System.currentTimeMillis() + 3600000L, 1));
+		Assert.assertTrue(job.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(SolverJob.State.SUCCEEDED, job.getState());
+		return new WeakReference<SolverJob>(job);
+	}
+
+	@Before
+	public void criar() {
+		FakeSolver.running.set(0);
+		FakeSolver.maxRunning.set(0);
+		scheduler = new SolverJobScheduler("teste", 2, 4);
+	}
+
+	@After
+	public void terminar() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void respeitaOrcamentoDeExecucoes() throws Exception {
+		List<FakeSolver> solvers = new ArrayList<FakeSolver>();
+		List<SolverJob> jobs = new ArrayList<SolverJob>();
+		for (int i = 0; i < 5; i++) {
+			FakeSolver solver = new FakeSolver("s" + i, null);
+			solvers.add(solver);
+			jobs.add(scheduler.submit(new SolverJob("s" + i, solver)));
+		}
+		solvers.get(0).started.await(5, TimeUnit.SECONDS);
+		solvers.get(1).started.await(5, TimeUnit.SECONDS);
+		Assert.assertEquals(2, scheduler.getRunningCount());
+		Assert.assertEquals(3, scheduler.getQueuedCount());
+		for (int i = 0; i < 5; i++) {
+			solvers.get(i).started.await(5, TimeUnit.SECONDS);
+			solvers.get(i).release.countDown();
+		}
+		for (SolverJob job : jobs) {
+			Assert.assertTrue(job.await(5, TimeUnit.SECONDS));
+			Assert.assertEquals(SolverJob.State.SUCCEEDED, job.getState());
+		}
+		Assert.assertEquals(2, FakeSolver.maxRunning.get());
+		Assert.assertEquals(5, scheduler.getSucceededCount());
+		Assert.assertTrue(scheduler.getMaxQueueWaitTime() > 0);
+	}
+
+	@Test
+	public void respeitaPrioridadeEOrcamentoDeThreads() throws Exception {
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		FakeSolver grande = new FakeSolver("grande", order);
+		scheduler.submit(new SolverJob("grande", grande, 0, SolverJob.NO_DEADLINE, 4));
+		grande.started.await(5, TimeUnit.SECONDS);
+		FakeSolver baixa = new FakeSolver("baixa", order);
+		FakeSolver alta = new FakeSolver("alta", order);
+		/* Cada job reserva todas as threads, então executam um após o outro, na ordem de prioridade. */
+		SolverJob jobBaixa = scheduler.submit(new SolverJob("baixa", baixa, 1, SolverJob.NO_DEADLINE, 4));
+		SolverJob jobAlta = scheduler.submit(new SolverJob("alta", alta, 5, SolverJob.NO_DEADLINE, 4));
+		/* Todas as threads estão reservadas para o primeiro. */
+		Assert.assertEquals(4, scheduler.getUsedThreads());
+		Assert.assertEquals(2, scheduler.getQueuedCount());
+		alta.release.countDown();
+		baixa.release.countDown();
+		grande.release.countDown();
+		jobAlta.await(5, TimeUnit.SECONDS);
+		jobBaixa.await(5, TimeUnit.SECONDS);
+		Assert.assertEquals("grande", order.get(0));
+		Assert.assertEquals("alta", order.get(1));
+	}
+
+	@Test
+	public void cancelaPorInterrupcao() throws Exception {
+		FakeSolver solver = new FakeSolver("s", null);
+		SolverJob job = scheduler.submit(new SolverJob("s", solver));
+		solver.started.await(5, TimeUnit.SECONDS);
+		Assert.assertTrue(job.cancel());
+		try {
+			job.await(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (CancellationException e) {
+			Assert.assertTrue(e.getCause() instanceof NoSolutionException);
+		}
+		Assert.assertEquals(SolverJob.State.CANCELLED, job.getState());
+		Assert.assertFalse(job.cancel());
+		Assert.assertEquals(1, scheduler.getCancelledCount());
+	}
+
+	@Test
+	public void expiraNaFilaENaExecucao() throws Exception {
+		FakeSolver primeiro = new FakeSolver("primeiro", null);
+		FakeSolver segundo = new FakeSolver("segundo", null);
+		long deadline = System.currentTimeMillis() + 200;
+		SolverJob job1 = scheduler.submit(new SolverJob("primeiro", primeiro, 0, deadline, 4));
+		SolverJob job2 = scheduler.submit(new SolverJob("segundo", segundo, 0, deadline, 1));
+		primeiro.started.await(5, TimeUnit.SECONDS);
+		Assert.assertEquals(SolverJob.State.QUEUED, job2.getState());
+		try {
+			job1.await(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (CancellationException e) {
+			// Esperado.
+		}
+		try {
+			job2.await(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (CancellationException e) {
+			// Esperado.
+		}
+		Assert.assertEquals(SolverJob.State.EXPIRED, job1.getState());
+		Assert.assertEquals(SolverJob.State.EXPIRED, job2.getState());
+		Assert.assertEquals(0, job2.getRunTime());
+		Assert.assertEquals(2, scheduler.getExpiredCount());
+	}
+
+	@Test
+	public void cancelaPrazoDeJobTerminado() throws Exception {
+		WeakReference<SolverJob> job = executarComPrazo(scheduler);
+		/* A tarefa do prazo foi cancelada e não retém mais o job até o prazo. */
+		for (int i = 0; i < 50 && job.get() != null; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		Assert.assertNull(job.get());
+		Assert.assertEquals(0, scheduler.getExpiredCount());
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import infra.ilog.opl.StageProfiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StageProfilerTest {
+	@Test
+	public void estagios() {
+		StageProfiler perfil = new StageProfiler(false);
+		perfil.estagio("primeiro");
+		perfil.estagio("segundo");
+		perfil.concluir();
+		perfil.concluir();
+		Assert.assertEquals(2, perfil.getEstagios().size());
+		Assert.assertEquals("primeiro", perfil.getEstagios().get(0).getNome());
+		Assert.assertEquals("segundo", perfil.getEstagios().get(1).getNome());
+		String relatorio = perfil.relatorio();
+		Assert.assertTrue(relatorio.contains("primeiro"));
+		Assert.assertTrue(relatorio.contains("segundo"));
+	}
+
+	@Test
+	public void tempo() throws InterruptedException {
+		StageProfiler perfil = new StageProfiler(false);
+		perfil.estagio("espera");
+		Thread.sleep(50);
+		perfil.concluir();
+		StageProfiler.Estagio e = perfil.getEstagios().get(0);
+		Assert.assertTrue(e.getTempo() >= 40000000L);
+	}
+
+	@Test
+	public void cpuDeOutrasThreads() throws InterruptedException {
+		StageProfiler perfil = new StageProfiler(false);
+		perfil.estagio("outraThread");
+		/* Simula o CPLEX: o trabalho ocorre em outra thread enquanto a thread do estágio apenas espera. */
+		Thread trabalho = new Thread() {
+			@Override
+			public void run() {
+				long fim = System.nanoTime() + 200000000L;
+				double x = 0;
+				while (System.nanoTime() < fim) {
+					x += Math.sqrt(x + 1);
+				}
+				if (x < 0) System.out.println(x);
+			}
+		};
+		trabalho.start();
+		trabalho.join();
+		perfil.concluir();
+		StageProfiler.Estagio e = perfil.getEstagios().get(0);
+		if (e.getTempoCpu() < 0) return;
+		Assert.assertTrue(e.getTempoCpu() >= 100000000L);
+	}
+
+	@Test
+	public void memoriaRetida() {
+		StageProfiler perfil = new StageProfiler(true);
+		List<byte[]> retido = new ArrayList<byte[]>();
+		perfil.estagio("alocar");
+		for (int i = 0; i < 32; i++) {
+			retido.add(new byte[1024 * 1024]);
+		}
+		perfil.concluir();
+		perfil.estagio("liberar");
+		retido.clear();
+		perfil.concluir();
+		Assert.assertTrue(perfil.getEstagios().get(0).getVariacaoHeap() > 16 * 1024 * 1024);
+		Assert.assertTrue(perfil.getEstagios().get(1).getVariacaoHeap() < -16 * 1024 * 1024);
+		Assert.assertTrue(perfil.getEstagios().get(0).getGcQuantidade() >= 0);
+	}
+}
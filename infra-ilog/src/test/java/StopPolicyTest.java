@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+import infra.ilog.cplex.ConfigurationCplex;
+import infra.ilog.cplex.Delegate;
+import infra.ilog.cplex.StopPolicy;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StopPolicyTest {
+	/** Simula o estado do CPLEX após cada iteração. */
+	private static class FakeCplex extends IloCplex {
+		Double objetivo = null;
+		Double gap = null;
+		Status status = Status.Feasible;
+
+		FakeCplex() throws IloException {
+			super();
+		}
+
+		@Override
+		public double getObjValue() throws IloException {
+			if (objetivo == null) throw new IloException("no solution");
+			return objetivo.doubleValue();
+		}
+
+		@Override
+		public double getMIPRelativeGap() throws IloException {
+			if (gap == null) throw new IloException("no solution");
+			return gap.doubleValue();
+		}
+
+		@Override
+		public boolean isMIP() { return true; }
+
+		@Override
+		public Status getStatus() throws IloException { return status; }
+	}
+
+	private final ConfigurationCplex configuracao = new ConfigurationCplex("teste", new File(".").getAbsoluteFile());
+
+	private static boolean iteracao(Delegate d, FakeCplex cplex, int n, ConfigurationCplex configuracao) {
+		return d.antesExecucao(cplex, n, configuracao) && d.depoisExecucao(cplex, n, configuracao);
+	}
+
+	@Test
+	public void estagnacaoPorIteracoes() throws IloException {
+		FakeCplex cplex = new FakeCplex();
+		StopPolicy policy = StopPolicy.stagnation(2, 0, 0.001);
+		cplex.objetivo = null;
+		Assert.assertTrue(iteracao(policy, cplex, 1, configuracao));
+		cplex.objetivo = Double.valueOf(100);
+		Assert.assertTrue(iteracao(policy, cplex, 2, configuracao));
+		cplex.objetivo = Double.valueOf(90);
+		Assert.assertTrue(iteracao(policy, cplex, 3, configuracao));
+		cplex.objetivo = Double.valueOf(89.99);
+		Assert.assertTrue(iteracao(policy, cplex, 4, configuracao));
+		Assert.assertNull(policy.getReason());
+		cplex.objetivo = Double.valueOf(89.98);
+		Assert.assertFalse(iteracao(policy, cplex, 5, configuracao));
+		Assert.assertEquals(StopPolicy.REASON_STAGNATION, policy.getReason());
+		Assert.assertFalse(policy.antesExecucao(cplex, 6, configuracao));
+
+		/* Uma nova execução recomeça do zero. */
+		Assert.assertTrue(iteracao(policy, cplex, 1, configuracao));
+		Assert.assertNull(policy.getReason());
+	}
+
+	@Test
+	public void estagnacaoPorTempo() throws Exception {
+		FakeCplex cplex = new FakeCplex();
+		StopPolicy policy = StopPolicy.stagnation(0, 0.05, 0.001);
+		cplex.objetivo = Double.valueOf(100);
+		Assert.assertTrue(iteracao(policy, cplex, 1, configuracao));
+		Assert.assertTrue(iteracao(policy, cplex, 2, configuracao));
+		Thread.sleep(80);
+		cplex.objetivo = Double.valueOf(50);
+		Assert.assertTrue(iteracao(policy, cplex, 3, configuracao));
+		Thread.sleep(80);
+		cplex.objetivo = Double.valueOf(49.999);
+		Assert.assertFalse(iteracao(policy, cplex, 4, configuracao));
+		Assert.assertEquals(StopPolicy.REASON_STAGNATION, policy.getReason());
+	}
+
+	@Test
+	public void orcamentoDeTempo() throws Exception {
+		FakeCplex cplex = new FakeCplex();
+		StopPolicy policy = StopPolicy.timeBudget(0.05);
+		Assert.assertTrue(iteracao(policy, cplex, 1, configuracao));
+		Thread.sleep(80);
+		Assert.assertFalse(policy.antesExecucao(cplex, 2, configuracao));
+		Assert.assertEquals(StopPolicy.REASON_TIME_BUDGET, policy.getReason());
+	}
+
+	@Test
+	public void gapEComposicao() throws IloException {
+		FakeCplex cplex = new FakeCplex();
+		StopPolicy policy = StopPolicy.anyOf(StopPolicy.timeBudget(3600), StopPolicy.mipGap(0.01));
+		Assert.assertTrue(iteracao(policy, cplex, 1, configuracao));
+		cplex.gap = Double.valueOf(0.05);
+		Assert.assertTrue(iteracao(policy, cplex, 2, configuracao));
+		cplex.gap = Double.valueOf(0.005);
+		Assert.assertFalse(iteracao(policy, cplex, 3, configuracao));
+		Assert.assertEquals(StopPolicy.REASON_MIP_GAP, policy.getReason());
+	}
+
+	@Test
+	public void otimo() throws IloException {
+		FakeCplex cplex = new FakeCplex();
+		StopPolicy policy = StopPolicy.timeBudget(3600);
+		cplex.status = IloCplex.Status.Optimal;
+		Assert.assertFalse(iteracao(policy, cplex, 1, configuracao));
+		Assert.assertEquals(StopPolicy.REASON_OPTIMAL, policy.getReason());
+	}
+}
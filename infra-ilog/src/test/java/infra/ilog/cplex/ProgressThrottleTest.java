@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.ilog.cplex;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProgressThrottleTest {
+
+	@Test
+	public void primeiraChamadaLiberada() {
+		ProgressThrottle throttle = new ProgressThrottle(3600);
+		Assert.assertTrue(throttle.liberado());
+		Assert.assertFalse(throttle.liberado());
+		Assert.assertFalse(throttle.liberado());
+	}
+
+	@Test
+	public void liberadoAposIntervalo() throws InterruptedException {
+		ProgressThrottle throttle = new ProgressThrottle(0.05);
+		Assert.assertTrue(throttle.liberado());
+		Assert.assertFalse(throttle.liberado());
+		Thread.sleep(100);
+		Assert.assertTrue(throttle.liberado());
+		Assert.assertFalse(throttle.liberado());
+	}
+
+	@Test
+	public void semIntervalo() {
+		ProgressThrottle throttle = new ProgressThrottle(0);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(throttle.liberado());
+		}
+	}
+
+	@Test
+	public void somenteUmaThreadPorIntervalo() throws InterruptedException {
+		final ProgressThrottle throttle = new ProgressThrottle(3600);
+		final AtomicInteger liberados = new AtomicInteger();
+		final CountDownLatch inicio = new CountDownLatch(1);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						inicio.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < 1000; j++) {
+						if (throttle.liberado()) liberados.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		inicio.countDown();
+		for (Thread thread : threads) thread.join();
+		Assert.assertEquals(1, liberados.get());
+	}
+
+	@Test
+	public void bufferReaproveitado() {
+		ProgressThrottle throttle = new ProgressThrottle(1);
+		StringBuilder sb = throttle.buffer();
+		sb.append("linha");
+		Assert.assertSame(sb, throttle.buffer());
+		Assert.assertEquals(0, throttle.buffer().length());
+	}
+}
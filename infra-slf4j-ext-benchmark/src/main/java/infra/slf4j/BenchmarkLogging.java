@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+
+/**
+ * Configures logback for benchmarks: all loggers at the given level, formatting events with a typical pattern into an
+ * output stream that discards everything. Formatting is kept so that enabled levels pay the realistic cost of
+ * rendering the message; only the I/O is removed.
+ *
+ * @author Daniel Felix Ferber
+ */
+final class BenchmarkLogging {
+	static final String PATTERN = "%d{HH:mm:ss.SSS} [%thread] %-5level %logger{36} %marker - %msg%n";
+
+	private BenchmarkLogging() {
+		// Utility class.
+	}
+
+	/**
+	 * @param level Logback level name for the root logger (TRACE, DEBUG, INFO, WARN, ERROR or OFF).
+	 */
+	static void configure(String level) {
+		LoggerContext context = (LoggerContext) org.slf4j.LoggerFactory.getILoggerFactory();
+		context.reset();
+
+		PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+		encoder.setContext(context);
+		encoder.setPattern(PATTERN);
+		encoder.start();
+
+		OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<ILoggingEvent>();
+		appender.setContext(context);
+		appender.setName("null");
+		appender.setEncoder(encoder);
+		appender.setOutputStream(new NullOutputStream());
+		appender.start();
+
+		ch.qos.logback.classic.Logger root = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+		root.setLevel(ch.qos.logback.classic.Level.toLevel(level));
+		root.addAppender(appender);
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for each number of threads, with the GC profiler, which also reports the allocation rate
+ * normalized per operation (<code>gc.alloc.rate.norm</code>). Results of each run are written as JSON into the result
+ * directory.
+ * <p>
+ * Arguments: include regular expression, comma separated number of threads and result directory. All are optional;
+ * the number of threads defaults to 1 and the number of available processors, also if empty.
+ * For other JMH options, run <code>org.openjdk.jmh.Main</code> directly.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class BenchmarkRunner {
+	private BenchmarkRunner() {
+		// Utility class.
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+		String threads = args.length > 1 && args[1].trim().length() > 0 ? args[1] : "1," + Runtime.getRuntime().availableProcessors();
+		File resultDir = new File(args.length > 2 ? args[2] : "build/jmh");
+		resultDir.mkdirs();
+
+		for (String t : threads.split(",")) {
+			int threadCount = Integer.parseInt(t.trim());
+			Options options = new OptionsBuilder()
+					.include(include)
+					.threads(threadCount)
+					.addProfiler(GCProfiler.class)
+					.resultFormat(ResultFormatType.JSON)
+					.result(new File(resultDir, "result-" + threadCount + "t.json").getPath())
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
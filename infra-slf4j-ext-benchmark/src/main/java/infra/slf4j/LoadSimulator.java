@@ -0,0 +1,408 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+
+/**
+ * Synthetic workload that measures the overhead of <code>infra.slf4j</code> instrumentation under concurrency.
+ * <p>
+ * Each of N threads repeatedly executes an operation tree of {@link Runnable}s, with <code>fanout</code> children
+ * down to <code>depth</code> levels; leaves do a fixed amount of CPU work. In the instrumented phase, every node is
+ * wrapped by a {@link MeterRunnable} with context entries, and every leaf is followed by a {@link Slf4JRunnable} that
+ * writes log messages. A fraction of the leaves fail with an exception, which propagates to the top and fails every
+ * meter on the way, as application code would. The same tree, with the same random decisions and the same CPU work, is
+ * executed without the wrappers as the no-op baseline.
+ * <p>
+ * Baseline and instrumented phases alternate for several rounds, each one with its own warm up, to spread drift of
+ * the machine between both. The report shows throughput and top level latency percentiles for each phase and the
+ * cost of the instrumentation: lost throughput and added latency per operation and per meter.
+ * <p>
+ * Only the slf4j API is used, so the simulator runs with whatever binding is in the classpath; build.xml has targets
+ * for logback and log4j, with the configurations in <code>config</code>. Options are given as
+ * <code>key=value</code> arguments; see {@link #DEFAULTS}.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class LoadSimulator {
+	private static final String[][] DEFAULTS = new String[][] {
+		{ "threads", "4", "number of worker threads" },
+		{ "rounds", "3", "number of baseline/instrumented round pairs" },
+		{ "warmup", "5", "warm up of each phase (seconds)" },
+		{ "duration", "10", "measurement of each phase (seconds)" },
+		{ "depth", "3", "levels of nested meters" },
+		{ "fanout", "2", "children of each nested meter" },
+		{ "context", "2", "context entries put on each meter" },
+		{ "logs", "2", "log messages written by each leaf (half info, half debug)" },
+		{ "work", "2000", "iterations of CPU work done by each leaf" },
+		{ "failure", "0.01", "probability that a leaf fails" },
+		{ "seed", "1", "seed of the random decisions of thread 0; thread i uses seed + i" },
+	};
+
+	private final int threads;
+	private final int rounds;
+	private final int warmup;
+	private final int duration;
+	private final int depth;
+	private final int fanout;
+	private final int contextEntries;
+	private final int logs;
+	private final int work;
+	private final double failure;
+	private final long seed;
+
+	private final Logger logger = LoggerFactory.getLogger("infra.slf4j.simulator");
+	private final String[] names;
+	private final String[] contextKeys;
+	private final String[] contextValues;
+	/** Combined result of the CPU work of all workers. Written to a volatile field, so the work is not optimized away. */
+	private volatile long sink = 0;
+
+	LoadSimulator(Properties options) {
+		threads = Integer.parseInt(options.getProperty("threads"));
+		rounds = Integer.parseInt(options.getProperty("rounds"));
+		warmup = Integer.parseInt(options.getProperty("warmup"));
+		duration = Integer.parseInt(options.getProperty("duration"));
+		depth = Integer.parseInt(options.getProperty("depth"));
+		fanout = Integer.parseInt(options.getProperty("fanout"));
+		contextEntries = Integer.parseInt(options.getProperty("context"));
+		logs = Integer.parseInt(options.getProperty("logs"));
+		work = Integer.parseInt(options.getProperty("work"));
+		failure = Double.parseDouble(options.getProperty("failure"));
+		seed = Long.parseLong(options.getProperty("seed"));
+		if (threads < 1 || depth < 1 || fanout < 1 || duration < 1) throw new IllegalArgumentException("threads, depth, fanout and duration must be positive");
+
+		names = new String[depth];
+		for (int i = 0; i < depth; i++) names[i] = "level" + i;
+		contextKeys = new String[contextEntries];
+		contextValues = new String[contextEntries];
+		for (int i = 0; i < contextEntries; i++) {
+			contextKeys[i] = "key" + i;
+			contextValues[i] = "value" + i;
+		}
+	}
+
+	// ========================================================================
+
+	/** Signals an injected failure; thrown at a leaf and caught by each meter on the way to the top. */
+	private static final class SimulatedFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		SimulatedFailure() {
+			super("simulated failure", null, false, false);
+		}
+	}
+
+	/**
+	 * Runs the wrapped task inside a {@link Meter} with the given context entries: ok if the task returns, fail if it
+	 * throws a runtime exception, which is rethrown.
+	 */
+	static final class MeterRunnable implements Runnable {
+		private final Logger logger;
+		private final String name;
+		private final String[] contextKeys;
+		private final String[] contextValues;
+		private final Runnable task;
+
+		MeterRunnable(Logger logger, String name, String[] contextKeys, String[] contextValues, Runnable task) {
+			this.logger = logger;
+			this.name = name;
+			this.contextKeys = contextKeys;
+			this.contextValues = contextValues;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			Meter meter = MeterFactory.getMeter(logger, name);
+			for (int i = 0; i < contextKeys.length; i++) {
+				meter.put(contextKeys[i], contextValues[i]);
+			}
+			meter.start();
+			try {
+				task.run();
+				meter.ok();
+			} catch (RuntimeException e) {
+				meter.fail(e);
+				throw e;
+			}
+		}
+	}
+
+	/** Runs the tasks in order. */
+	static final class SequenceRunnable implements Runnable {
+		private final Runnable[] tasks;
+
+		SequenceRunnable(Runnable... tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		public void run() {
+			for (Runnable task : tasks) {
+				task.run();
+			}
+		}
+	}
+
+	/** State owned by one worker thread. */
+	private final class Worker implements Runnable {
+		final boolean instrumented;
+		final Random random;
+		final CountDownLatch ready;
+		final CountDownLatch done;
+		volatile boolean measuring = false;
+		volatile boolean stopped = false;
+		final long[] histogram = new long[MeterStatistics.BUCKETS];
+		long operations = 0;
+		long failures = 0;
+		long totalTime = 0;
+		long maxTime = 0;
+		/** Result of the CPU work, published to {@link LoadSimulator#sink} when the phase ends. */
+		long sink = 0;
+		/** Operation tree, built once; instrumented or not. */
+		final Runnable operation;
+
+		Worker(boolean instrumented, long seed, CountDownLatch ready, CountDownLatch done) {
+			this.instrumented = instrumented;
+			this.random = new Random(seed);
+			this.ready = ready;
+			this.done = done;
+			this.operation = node(0);
+		}
+
+		/** Writes the log messages of a leaf, half info and half debug. */
+		private final class Slf4JRunnable implements Runnable {
+			private final String name;
+
+			Slf4JRunnable(String name) {
+				this.name = name;
+			}
+
+			@Override
+			public void run() {
+				for (int i = 0; i < logs; i++) {
+					if ((i & 1) == 0) {
+						logger.info("Leaf {} processed {} items.", name, Integer.valueOf(i));
+					} else {
+						logger.debug("Leaf {} intermediate value {}.", name, Long.valueOf(sink));
+					}
+				}
+			}
+		}
+
+		private Runnable node(int level) {
+			Runnable body;
+			if (level == depth - 1) {
+				Runnable leaf = new Runnable() {
+					@Override
+					public void run() {
+						leaf();
+					}
+				};
+				body = instrumented ? new SequenceRunnable(leaf, new Slf4JRunnable(names[level])) : leaf;
+			} else {
+				Runnable[] children = new Runnable[fanout];
+				for (int i = 0; i < fanout; i++) {
+					children[i] = node(level + 1);
+				}
+				body = new SequenceRunnable(children);
+			}
+			return instrumented ? new MeterRunnable(logger, names[level], contextKeys, contextValues, body) : body;
+		}
+
+		@Override
+		public void run() {
+			ready.countDown();
+			try {
+				while (! stopped) {
+					long start = System.nanoTime();
+					boolean ok;
+					try {
+						operation.run();
+						ok = true;
+					} catch (SimulatedFailure e) {
+						ok = false;
+					}
+					long time = System.nanoTime() - start;
+					if (measuring) {
+						operations++;
+						if (! ok) failures++;
+						totalTime += time;
+						if (time > maxTime) maxTime = time;
+						histogram[MeterStatistics.bucketIndex(time)]++;
+					}
+				}
+			} finally {
+				done.countDown();
+			}
+		}
+
+		/** CPU work and failure decision, identical in both phases. */
+		private void leaf() {
+			long x = sink;
+			for (int i = 0; i < work; i++) {
+				x = x * 6364136223846793005L + 1442695040888963407L;
+			}
+			sink = x;
+			if (failure > 0 && random.nextDouble() < failure) throw new SimulatedFailure();
+		}
+	}
+
+	/** Result of one phase. */
+	static final class PhaseResult {
+		final boolean instrumented;
+		final long[] histogram = new long[MeterStatistics.BUCKETS];
+		long operations;
+		long failures;
+		long totalTime;
+		long maxTime;
+		long elapsed;
+
+		PhaseResult(boolean instrumented) {
+			this.instrumented = instrumented;
+		}
+
+		void add(PhaseResult other) {
+			for (int i = 0; i < histogram.length; i++) histogram[i] += other.histogram[i];
+			operations += other.operations;
+			failures += other.failures;
+			totalTime += other.totalTime;
+			maxTime = Math.max(maxTime, other.maxTime);
+			elapsed += other.elapsed;
+		}
+
+		double throughput() {
+			return elapsed == 0 ? 0.0 : operations * 1000000000.0 / elapsed;
+		}
+
+		double meanTime() {
+			return operations == 0 ? 0.0 : (double) totalTime / operations;
+		}
+	}
+
+	PhaseResult runPhase(boolean instrumented, long phaseSeed) throws InterruptedException {
+		CountDownLatch ready = new CountDownLatch(threads);
+		CountDownLatch done = new CountDownLatch(threads);
+		List<Worker> workers = new ArrayList<Worker>(threads);
+		for (int i = 0; i < threads; i++) {
+			Worker worker = new Worker(instrumented, phaseSeed + i, ready, done);
+			workers.add(worker);
+			Thread thread = new Thread(worker, (instrumented ? "instrumented-" : "baseline-") + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		ready.await();
+		Thread.sleep(warmup * 1000L);
+		for (Worker worker : workers) worker.measuring = true;
+		long start = System.nanoTime();
+		Thread.sleep(duration * 1000L);
+		for (Worker worker : workers) worker.measuring = false;
+		long elapsed = System.nanoTime() - start;
+		for (Worker worker : workers) worker.stopped = true;
+		done.await();
+
+		PhaseResult result = new PhaseResult(instrumented);
+		long sink = 0;
+		for (Worker worker : workers) {
+			PhaseResult partial = new PhaseResult(instrumented);
+			System.arraycopy(worker.histogram, 0, partial.histogram, 0, partial.histogram.length);
+			partial.operations = worker.operations;
+			partial.failures = worker.failures;
+			partial.totalTime = worker.totalTime;
+			partial.maxTime = worker.maxTime;
+			result.add(partial);
+			sink ^= worker.sink;
+		}
+		result.elapsed = elapsed;
+		this.sink ^= sink;
+		return result;
+	}
+
+	void run() throws InterruptedException {
+		PhaseResult baseline = new PhaseResult(false);
+		PhaseResult instrumented = new PhaseResult(true);
+		for (int round = 0; round < rounds; round++) {
+			PhaseResult b = runPhase(false, seed);
+			PhaseResult i = runPhase(true, seed);
+			System.out.println(String.format(Locale.US, "round %d: baseline %.1f ops/s, instrumented %.1f ops/s", Integer.valueOf(round + 1), Double.valueOf(b.throughput()), Double.valueOf(i.throughput())));
+			baseline.add(b);
+			instrumented.add(i);
+		}
+		report(baseline, instrumented);
+	}
+
+	// ========================================================================
+
+	private void report(PhaseResult baseline, PhaseResult instrumented) {
+		int metersPerOperation = 0;
+		int nodes = 1;
+		for (int level = 0; level < depth; level++) {
+			metersPerOperation += nodes;
+			nodes *= fanout;
+		}
+		int leaves = nodes / fanout;
+
+		System.out.println();
+		System.out.println(String.format(Locale.US, "threads=%d depth=%d fanout=%d meters/op=%d logs/op=%d context=%d work=%d failure=%.4f binding=%s",
+				Integer.valueOf(threads), Integer.valueOf(depth), Integer.valueOf(fanout), Integer.valueOf(metersPerOperation), Integer.valueOf(leaves * logs),
+				Integer.valueOf(contextEntries), Integer.valueOf(work), Double.valueOf(failure), org.slf4j.LoggerFactory.getILoggerFactory().getClass().getName()));
+		System.out.println(String.format("%-13s %12s %10s %10s %10s %10s %10s %8s", "phase", "ops/s", "mean", "p50", "p90", "p99", "max", "failed"));
+		line(baseline);
+		line(instrumented);
+
+		double lost = baseline.throughput() == 0 ? 0.0 : 100.0 * (baseline.throughput() - instrumented.throughput()) / baseline.throughput();
+		double added = instrumented.meanTime() - baseline.meanTime();
+		System.out.println();
+		System.out.println(String.format(Locale.US, "throughput cost: %.2f%%", Double.valueOf(lost)));
+		System.out.println("latency cost:    " + time(added) + "/op, " + time(added / metersPerOperation) + "/meter");
+	}
+
+	private static void line(PhaseResult r) {
+		System.out.println(String.format(Locale.US, "%-13s %12.1f %10s %10s %10s %10s %10s %8d", r.instrumented ? "instrumented" : "baseline",
+				Double.valueOf(r.throughput()), time(r.meanTime()), time(MeterStatistics.percentile(r.histogram, 50)),
+				time(MeterStatistics.percentile(r.histogram, 90)), time(MeterStatistics.percentile(r.histogram, 99)), time(r.maxTime),
+				Long.valueOf(r.failures)));
+	}
+
+	private static String time(double nanoseconds) {
+		if (nanoseconds < 0) return "-" + Parser.bestUnit(-nanoseconds, Parser.TIME_UNITS, Parser.TIME_FACTORS);
+		return Parser.bestUnit(nanoseconds, Parser.TIME_UNITS, Parser.TIME_FACTORS);
+	}
+
+	// ========================================================================
+
+	public static void main(String[] args) throws InterruptedException {
+		Properties options = new Properties();
+		for (String[] option : DEFAULTS) options.setProperty(option[0], option[1]);
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0 || options.getProperty(arg.substring(0, equals)) == null) {
+				System.err.println("Usage: LoadSimulator [key=value]...");
+				for (String[] option : DEFAULTS) System.err.println(String.format("  %-10s %-6s %s", option[0], option[1], option[2]));
+				System.exit(1);
+			}
+			options.setProperty(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		new LoadSimulator(options).run();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+/**
+ * Throughput of redirecting text to a logger with {@link LoggerOutputStream}, which buffers all content until closed,
+ * compared to {@link StreamingLoggerOutputStream}, which writes one event per line. The content is made of lines of 80
+ * characters.
+ *
+ * @author Daniel Felix Ferber
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerOutputStreamBenchmark {
+	@Param({ "OFF", "INFO" })
+	public String level;
+
+	/** Content size (bytes). */
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+
+	private Logger logger;
+	private byte[] content;
+
+	@Setup
+	public void setup() {
+		BenchmarkLogging.configure(level);
+		logger = LoggerFactory.getLogger("benchmark.stream");
+		content = new byte[size];
+		Arrays.fill(content, (byte) 'x');
+		for (int i = 80; i < size; i += 81) {
+			content[i] = '\n';
+		}
+	}
+
+	@Benchmark
+	public OutputStream buffered() throws IOException {
+		OutputStream os = LoggerFactory.getInfoOutputStream(logger);
+		os.write(content);
+		os.close();
+		return os;
+	}
+
+	@Benchmark
+	public OutputStream streaming() throws IOException {
+		OutputStream os = LoggerFactory.getStreamingOutputStream(logger, Level.INFO, true, StreamingLoggerOutputStream.DEFAULT_CHUNK_SIZE, StreamingLoggerOutputStream.DEFAULT_MAX_SIZE);
+		os.write(content);
+		os.close();
+		return os;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+/**
+ * Cost of a complete {@link Meter} life cycle (create, start, ok or fail) for each logger level. All threads share the
+ * same meter name, and therefore the same {@link MeterStatistics}, so running with several threads measures
+ * contention on the statistics counters.
+ *
+ * @author Daniel Felix Ferber
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeterBenchmark {
+	@Param({ "OFF", "ERROR", "WARN", "INFO", "DEBUG", "TRACE" })
+	public String level;
+
+	private Logger logger;
+	private RegisteredOperation operation;
+	private RuntimeException exception;
+
+	@Setup
+	public void setup() {
+		BenchmarkLogging.configure(level);
+		logger = LoggerFactory.getLogger("benchmark.meter");
+		operation = OperationFactory.getOperation(MeterBenchmark.class, "registered", "Registered operation");
+		/* Pre-allocated: the benchmark measures the meter, not filling the stack trace. */
+		exception = new RuntimeException("benchmark");
+	}
+
+	@Benchmark
+	public MeterEvent startOk() {
+		return MeterFactory.getMeter(logger, "operation").start().ok();
+	}
+
+	@Benchmark
+	public MeterEvent startFail() {
+		return MeterFactory.getMeter(logger, "operation").start().fail(exception);
+	}
+
+	@Benchmark
+	public MeterEvent startOkWithContext() {
+		return MeterFactory.getMeter(logger, "operation").put("key", "value").start().ok("result", "done");
+	}
+
+	@Benchmark
+	public MeterEvent startOkNested() {
+		Meter outer = MeterFactory.getMeter(logger, "outer").start();
+		MeterFactory.getMeter(logger, "inner").start().ok();
+		return outer.ok();
+	}
+
+	@Benchmark
+	public MeterEvent startOkRegistered() {
+		return MeterFactory.getMeter(MeterBenchmark.class, operation).start().ok();
+	}
+}
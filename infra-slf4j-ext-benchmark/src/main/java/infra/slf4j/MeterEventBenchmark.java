@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of encoding and decoding a {@link MeterEvent} with {@link MeterEvent#writeToString(Parser, MeterEvent,
+ * StringBuilder)} and {@link MeterEvent#readFromString(Parser, MeterEvent, String)}. Each thread owns its parser,
+ * buffer and events, as the loggers do.
+ *
+ * @author Daniel Felix Ferber
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeterEventBenchmark {
+	private final Parser parser = new Parser();
+	private final StringBuilder buffer = new StringBuilder(512);
+	private final MeterEvent decoded = new MeterEvent();
+	private Meter event;
+	private String encoded;
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkLogging.configure("OFF");
+		event = MeterFactory.getMeter(LoggerFactory.getLogger("benchmark.event"), "operation");
+		event.setMessage("Benchmark operation %d", Integer.valueOf(1));
+		event.put("key1", "value1").put("key2", "a \"quoted\" value").start().ok();
+		MeterEvent.writeToString(parser, event, buffer);
+		encoded = buffer.toString();
+		MeterEvent.readFromString(parser, decoded, encoded);
+		buffer.setLength(0);
+		MeterEvent.writeToString(parser, decoded, buffer);
+		if (! encoded.equals(buffer.toString())) throw new IllegalStateException("round trip failed: " + encoded);
+	}
+
+	@Benchmark
+	public int write() {
+		buffer.setLength(0);
+		MeterEvent.writeToString(parser, event, buffer);
+		return buffer.length();
+	}
+
+	@Benchmark
+	public MeterEvent read() throws IOException {
+		MeterEvent.readFromString(parser, decoded, encoded);
+		return decoded;
+	}
+
+	@Benchmark
+	public MeterEvent roundTrip() throws IOException {
+		buffer.setLength(0);
+		MeterEvent.writeToString(parser, event, buffer);
+		MeterEvent.readFromString(parser, decoded, buffer.toString());
+		return decoded;
+	}
+}
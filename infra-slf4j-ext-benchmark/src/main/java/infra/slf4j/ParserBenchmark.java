@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the {@link Parser} primitives used to decode meter and watcher events, and of
+ * {@link Parser#bestUnit(double, String[], double[])} and {@link Parser#appendBestUnit(StringBuilder, double, String[], double[])},
+ * used to render every execution time in the log.
+ *
+ * @author Daniel Felix Ferber
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	/** Values for bestUnit, in nanoseconds: from nanoseconds to hours. */
+	@Param({ "850", "1234567", "98765432100", "7200000000000" })
+	public double nanoseconds;
+
+	private final Parser parser = new Parser();
+	private final StringBuilder buffer = new StringBuilder(128);
+
+	@Benchmark
+	public long readLong() throws IOException {
+		parser.reset("1234567890123");
+		return parser.readLong();
+	}
+
+	@Benchmark
+	public double readDouble() throws IOException {
+		parser.reset("12345.678");
+		return parser.readDouble();
+	}
+
+	@Benchmark
+	public String readIdentifierString() throws IOException {
+		parser.reset("infra.slf4j.operation;");
+		return parser.readIdentifierString();
+	}
+
+	@Benchmark
+	public String readQuotedString() throws IOException {
+		parser.reset("\"a message with \\\"quotes\\\" inside\"");
+		return parser.readQuotedString();
+	}
+
+	@Benchmark
+	public int writeQuotedString() {
+		buffer.setLength(0);
+		parser.writeQuotedString(buffer, "a message with \"quotes\" inside");
+		return buffer.length();
+	}
+
+	@Benchmark
+	public String bestUnit() {
+		return Parser.bestUnit(nanoseconds, Parser.TIME_UNITS, Parser.TIME_FACTORS);
+	}
+
+	@Benchmark
+	public int appendBestUnit() {
+		buffer.setLength(0);
+		Parser.appendBestUnit(buffer, nanoseconds, Parser.TIME_UNITS, Parser.TIME_FACTORS);
+		return buffer.length();
+	}
+}
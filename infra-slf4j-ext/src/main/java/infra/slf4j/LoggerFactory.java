@@ -140,4 +140,40 @@ public class LoggerFactory {
 		return LoggerOutputStream.getOutputStream(logger, Level.ERROR);
 	}
 
+	/**
+	 * Obtém um {@link PrintStream} cujo conteúdo será redirecionado para um logger à medida que é escrito, uma mensagem
+	 * por linha, sem acumular todo o conteúdo em memória. Adequado para conteúdos grandes, como soluções de modelos.
+	 * Utiliza os limites padrão de {@link StreamingLoggerOutputStream}.
+	 */
+	public static PrintStream getStreamingPrintStream(Logger logger, Level level) {
+		return new PrintStream(LoggerFactory.getStreamingOutputStream(logger, level, true, StreamingLoggerOutputStream.DEFAULT_CHUNK_SIZE, StreamingLoggerOutputStream.DEFAULT_MAX_SIZE));
+	}
+
+	/**
+	 * Obtém um {@link OutputStream} cujo conteúdo será redirecionado para um logger à medida que é escrito. Se a
+	 * prioridade não estiver habilitada, o conteúdo é descartado sem ser decodificado.
+	 *
+	 * @param linePerEvent Se verdadeiro, escreve uma mensagem por linha. Senão, agrupa linhas em blocos.
+	 * @param chunkSize Tamanho máximo de cada mensagem (caracteres).
+	 * @param maxSize Tamanho máximo de todo o conteúdo escrito no logger (caracteres).
+	 */
+	public static OutputStream getStreamingOutputStream(Logger logger, Level level, boolean linePerEvent, int chunkSize, long maxSize) {
+		if (! LoggerFactory.isEnabled(logger, level)) return new NullOutputStream();
+		return new StreamingLoggerOutputStream(logger, level, linePerEvent, chunkSize, maxSize);
+	}
+
+	private static boolean isEnabled(Logger logger, Level level) {
+		switch (level) {
+		case TRACE:
+			return logger.isTraceEnabled();
+		case DEBUG:
+			return logger.isDebugEnabled();
+		case INFO:
+			return logger.isInfoEnabled();
+		case WARN:
+			return logger.isWarnEnabled();
+		default:
+			return logger.isErrorEnabled();
+		}
+	}
 }
@@ -15,11 +15,8 @@
  */
 package infra.slf4j;
 
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
 import java.util.IllegalFormatException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.Marker;
@@ -33,10 +30,126 @@ public class Meter extends MeterEvent {
 
 	private final WatcherEvent watcherEvent;
 	/** Configuração padrão do parser usado para ler novamente a mensagem do log. */
-	private static final Parser parser = new Parser();
+	static final Parser parser = new Parser();
+
+	/** Meters of one thread. */
+	private static final class ThreadMeters {
+		/**
+		 * Meter started most recently on the thread, used to link a meter to its parent. Weakly referenced: a meter that
+		 * is never stopped is released once the application drops it, and {@link Meter#finalize()} reports it, instead
+		 * of remaining the parent of every later meter on the thread.
+		 */
+		private WeakReference<Meter> current;
+		/** Meter attached by {@link MeterScope}. Remains the parent of further meters even after it finishes. */
+		Meter scope;
+
+		/** @return The meter started most recently, or the scope if it was released. */
+		Meter current() {
+			Meter meter = current == null ? null : current.get();
+			return meter == null ? scope : meter;
+		}
+
+		void setCurrent(Meter meter) {
+			current = meter == null ? null : new WeakReference<Meter>(meter);
+		}
+	}
+
+	/**
+	 * Meters of each thread. The current meter may have been stopped meanwhile on another thread; {@link #running}
+	 * skips it.
+	 */
+	private static final ThreadLocal<ThreadMeters> threadMeters = new ThreadLocal<ThreadMeters>();
+	/**
+	 * Meter that was running on this thread when this meter started. The nearest one not stopped yet is restored when
+	 * this meter finishes. Kept after this meter finishes, so that a thread still referring to this meter finds its
+	 * way back to a running meter.
+	 */
+	private transient Meter previousMeter;
+	/** If trace output is produced for this meter, decided by {@link MeterSampling} on start. */
+	private transient boolean sampled = true;
+	/** If trace output is produced if this meter fails. */
+	private transient boolean sampledFailure = true;
+	/** Decision of a log filter about the trace events of this meter, or null if not decided yet. See {@link MeterMessage}. */
+	private transient volatile Boolean filterDecision = null;
+
+	/** @return Meter running on the current thread, or null. */
+	static Meter current() {
+		ThreadMeters meters = Meter.threadMeters.get();
+		return meters == null ? null : Meter.running(meters, meters.current());
+	}
+
+	/** @return The meter or its nearest previous meter that was not stopped yet, not going beyond the scope, or null. */
+	private static Meter running(ThreadMeters meters, Meter meter) {
+		while (meter != null && meter != meters.scope && meter.stopTime != 0) meter = meter.previousMeter;
+		return meter;
+	}
+
+	/** @return Meter started most recently on the current thread, even if stopped meanwhile, or null. */
+	static Meter threadCurrent() {
+		ThreadMeters meters = Meter.threadMeters.get();
+		return meters == null ? null : meters.current();
+	}
 
-	/** How many times each job has been executed. */
-	private static final ConcurrentMap<String, AtomicLong> meterCounter = new ConcurrentHashMap<String, AtomicLong>();
+	/** @return Meter attached to the current thread by {@link MeterScope}, or null. */
+	static Meter threadScope() {
+		ThreadMeters meters = Meter.threadMeters.get();
+		return meters == null ? null : meters.scope;
+	}
+
+	/**
+	 * Sets the meters of the current thread, as done by {@link MeterScope}.
+	 * @param current Meter started most recently, the parent of further meters.
+	 * @param scope Meter that remains the parent of further meters even after it finishes, or null.
+	 */
+	static void setCurrent(Meter current, Meter scope) {
+		if (current == null && scope == null) {
+			Meter.threadMeters.remove();
+		} else {
+			ThreadMeters meters = Meter.threadMeters.get();
+			if (meters == null) {
+				meters = new ThreadMeters();
+				Meter.threadMeters.set(meters);
+			}
+			meters.setCurrent(current);
+			meters.scope = scope;
+		}
+	}
+
+	/** Makes this meter the one running on the current thread. @return The previous meter still running, or null. */
+	private Meter push() {
+		ThreadMeters meters = Meter.threadMeters.get();
+		if (meters == null) {
+			meters = new ThreadMeters();
+			Meter.threadMeters.set(meters);
+		}
+		Meter parent = Meter.running(meters, meters.current());
+		meters.setCurrent(this);
+		return parent;
+	}
+
+	/**
+	 * Removes this meter from the current thread. Meters started after this one and not stopped yet are removed as
+	 * well, as they can no longer be the parent of further meters. If this meter is not running on the current thread
+	 * (it was started on another thread), only stopped meters are removed. The thread is released when no meter is
+	 * left.
+	 */
+	private void unwind() {
+		ThreadMeters meters = Meter.threadMeters.get();
+		if (meters == null) return;
+		Meter current = meters.current();
+		Meter meter = current;
+		while (meter != null && meter != this && meter != meters.scope) meter = meter.previousMeter;
+		if (meter == this && this != meters.scope) {
+			current = Meter.running(meters, this.previousMeter);
+		} else {
+			current = Meter.running(meters, current);
+		}
+		meters.setCurrent(current);
+		if (current == null) Meter.threadMeters.remove();
+	}
+
+	/** Statistics shared by all meters with the same name. Also counts how many times each job has been executed. */
+	private final MeterStatistics statistics;
 
 	//    private static AtomicLong depthContextCounter = new AtomicLong(0);
 	//    private static ThreadLocal<Long> threadDepthContext = new ThreadLocal<Long>() {
@@ -52,13 +165,20 @@ public class Meter extends MeterEvent {
 	public static final Marker FAIL_MARKER = MarkerFactory.getMarker("METER_FAIL");
 	public static final Marker FAIL_WATCH_MARKER = MarkerFactory.getMarker("WATCHER_FAIL");
 	public static final Marker FINALIZED_MARKER = MarkerFactory.getMarker("METER_FINALIZED");
+	/** Marker of the readable debug message on start; its argument is a {@link MeterMessage}. */
+	public static final Marker DEBUG_MARKER = MarkerFactory.getMarker("METER_DEBUG");
 
 	public Meter(Logger logger, String name) {
+		this(logger, name, MeterStatistics.getStatistics(name));
+	}
+
+	/** Creates a meter whose statistics were already resolved, see {@link RegisteredOperation}. */
+	Meter(Logger logger, String name, MeterStatistics statistics) {
 		this.name = name;
 		this.logger = logger;
 		this.uuid = MeterFactory.getuuid();
-		Meter.meterCounter.putIfAbsent(name, new AtomicLong(0));
-		this.counter = Meter.meterCounter.get(name).incrementAndGet();
+		this.statistics = statistics;
+		this.counter = this.statistics.created();
 		this.watcherEvent = new WatcherEvent();
 		this.watcherEvent.name = this.name;
 		this.watcherEvent.counter = this.counter;
@@ -67,6 +187,15 @@ public class Meter extends MeterEvent {
 
 	public Logger getLogger() { return logger; }
 
+	/** @return If trace output is produced for this meter, according to the {@link MeterSampling} of its name. */
+	public boolean isSampled() { return sampled; }
+
+	Boolean getFilterDecision() { return filterDecision; }
+	void setFilterDecision(boolean accepted) { this.filterDecision = Boolean.valueOf(accepted); }
+
+	/** @return Statistics shared by all meters with the same name. */
+	public MeterStatistics getStatistics() { return statistics; }
+
 	public Meter setMessage(String message, Object... args) {
 		try {
 			this.message = String.format(message, args);
@@ -77,13 +206,13 @@ public class Meter extends MeterEvent {
 	}
 
 	public Meter put(String name) {
-		if (context == null) this.context = new HashMap<String, String>();
+		if (context == null) this.context = new MeterContext();
 		context.put(name, null);
 		return this;
 	}
 
 	public Meter put(String name, String value) {
-		if (context == null) this.context = new HashMap<String, String>();
+		if (context == null) this.context = new MeterContext();
 		context.put(name, value);
 		return this;
 	}
@@ -134,22 +263,32 @@ public class Meter extends MeterEvent {
 			this.threadStartId = currentThread.getId();
 			this.threadStartName = currentThread.getName();
 
+			Meter parent = push();
+			if (parent != null) {
+				this.parentName = parent.name;
+				this.parentCounter = parent.counter;
+				this.rootName = parent.rootName != null ? parent.rootName : parent.name;
+				this.rootCounter = parent.rootName != null ? parent.rootCounter : parent.counter;
+			}
+			this.previousMeter = parent;
+
 			if (logger.isDebugEnabled()) {
-				StringBuilder buffer = new StringBuilder();
-				MeterEvent.readableString(this, buffer);
-				logger.debug("START: " + buffer.toString());
+				logger.debug(Meter.DEBUG_MARKER, "START: {}", new MeterMessage(this, true));
 			}
 			if (logger.isTraceEnabled()) {
-				StringBuilder buffer = new StringBuilder();
-				MeterEvent.writeToString(Meter.parser, this, buffer);
-				logger.trace(Meter.START_MARKER,"START: " + buffer.toString());
-
-				watcherEvent.update();
-				buffer = new StringBuilder();
-				WatcherEvent.writeToString(Meter.parser, this.watcherEvent, buffer);
-				logger.trace(Meter.START_WATCH_MARKER, "WATCH: " + buffer.toString());
+				MeterSampling.Sampler sampler = statistics.sampler();
+				this.sampled = sampler.sample(this.counter);
+				this.sampledFailure = this.sampled || sampler.alwaysFailures();
+				if (this.sampled) {
+					logger.trace(Meter.START_MARKER, "START: {}", new MeterMessage(this));
+
+					watcherEvent.update();
+					logger.trace(Meter.START_WATCH_MARKER, "WATCH: {}", new MeterMessage(this, this.watcherEvent));
+					statistics.watched(this.watcherEvent);
+				}
 			}
 			startTime = System.nanoTime();
+			statistics.started();
 		} catch (Throwable t) {
 			logger.error("Excetion thrown in Meter", t);
 		}
@@ -178,10 +317,12 @@ public class Meter extends MeterEvent {
 			if (startTime == 0) logger.error("Inconsistent Meter ok()", new Exception("Meter.stop(...): startTime == 0"));
 			if (name != null) put(name, value);
 			success = true;
+			statistics.ok(startTime == 0 ? 0 : stopTime - startTime);
 
 			Thread currentThread = Thread.currentThread();
 			this.threadStopId = currentThread.getId();
 			this.threadStopName = currentThread.getName();
+			unwind();
 
 			if (logger.isInfoEnabled()) {
 				StringBuilder buffer = new StringBuilder();
@@ -189,16 +330,14 @@ public class Meter extends MeterEvent {
 				logger.info("OK: " + buffer.toString());
 			}
 
-			if (logger.isTraceEnabled()) {
-				StringBuilder buffer = new StringBuilder();
-				MeterEvent.writeToString(Meter.parser, this, buffer);
-				logger.trace(Meter.OK_MARKER, "OK: " + buffer.toString());
+			if (this.sampled && logger.isTraceEnabled()) {
+				logger.trace(Meter.OK_MARKER, "OK: {}", new MeterMessage(this));
 
 				watcherEvent.update();
-				buffer = new StringBuilder();
-				WatcherEvent.writeToString(Meter.parser, this.watcherEvent, buffer);
-				logger.trace(Meter.OK_WATCH_MARKER, "WATCH: " + buffer.toString());
+				logger.trace(Meter.OK_WATCH_MARKER, "WATCH: {}", new MeterMessage(this, this.watcherEvent));
+				statistics.watched(this.watcherEvent);
 			}
+			notifyListeners();
 		} catch (Throwable t) {
 			logger.error("Excetion thrown in Meter", t);
 		}
@@ -237,38 +376,48 @@ public class Meter extends MeterEvent {
 			if (stopTime != 0) logger.error("Inconsistent Meter", new Exception("Meter.stop(...): stopTime != 0"));
 			stopTime = System.nanoTime();
 			if (startTime == 0) logger.error("Inconsistent Meter", new Exception("Meter.stop(...): startTime == 0"));
-			if (name != null) context.put(name, value);
+			if (name != null) put(name, value);
 			if (throwable != null) {
 				exceptionClass = throwable.getClass().getName();
 				exceptionMessage = throwable.getLocalizedMessage();
 			}
 			success = false;
+			statistics.failed(startTime == 0 ? 0 : stopTime - startTime);
 
 			Thread currentThread = Thread.currentThread();
 			this.threadStopId = currentThread.getId();
 			this.threadStopName = currentThread.getName();
+			unwind();
 
 			if (logger.isWarnEnabled()) {
 				StringBuilder buffer = new StringBuilder();
 				MeterEvent.readableString(this, buffer);
 				logger.warn("FAIL: " + buffer.toString());
 			}
-			if (logger.isTraceEnabled()) {
-				StringBuilder buffer = new StringBuilder();
-				MeterEvent.writeToString(Meter.parser, this, buffer);
-				logger.trace(Meter.FAIL_MARKER, "FAIL: " + buffer.toString());
+			if (this.sampledFailure && logger.isTraceEnabled()) {
+				logger.trace(Meter.FAIL_MARKER, "FAIL: {}", new MeterMessage(this));
 
 				watcherEvent.update();
-				buffer = new StringBuilder();
-				WatcherEvent.writeToString(Meter.parser, this.watcherEvent, buffer);
-				logger.trace(Meter.FAIL_WATCH_MARKER, "WATCH: " + buffer.toString());
+				logger.trace(Meter.FAIL_WATCH_MARKER, "WATCH: {}", new MeterMessage(this, this.watcherEvent));
+				statistics.watched(this.watcherEvent);
 			}
+			notifyListeners();
 		} catch (Throwable t) {
 			logger.error("Excetion thrown in Meter", t);
 		}
 		return this;
 	}
 
+	private void notifyListeners() {
+		for (MeterListener listener : MeterFactory.getListeners()) {
+			try {
+				listener.meterStopped(this);
+			} catch (RuntimeException e) {
+				logger.error("Excetion thrown in MeterListener", e);
+			}
+		}
+	}
+
 	@Override
 	protected void finalize() throws Throwable {
 		if (stopTime == 0) {
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Context entries of a {@link MeterEvent}. Keys and values are kept interleaved in a single array, in insertion order,
+ * without entry objects. Lookups are a linear scan, which is faster than hashing for the handful of entries a meter
+ * usually carries; the array grows if more entries are added.
+ * <p>
+ * Serialization of meters uses the indexed accessors ({@link #keyAt(int)}, {@link #valueAt(int)}), which do not
+ * allocate. The {@link Map} view is complete, but its iterator creates one entry per call to <code>next()</code>.
+ * {@link #clear()} keeps the array, so an instance may be reused, as done when decoding events.
+ * <p>
+ * Null keys are not allowed; null values mean a key without value. Not thread safe.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class MeterContext extends AbstractMap<String, String> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Initial capacity, in entries. */
+	static final int INITIAL_CAPACITY = 4;
+
+	/** Keys at even positions, values at odd positions. */
+	private String[] entries;
+	private int size = 0;
+
+	public MeterContext() {
+		this.entries = new String[INITIAL_CAPACITY * 2];
+	}
+
+	public MeterContext(Map<String, String> map) {
+		this.entries = new String[Math.max(INITIAL_CAPACITY, map.size()) * 2];
+		putAll(map);
+	}
+
+	/** @return Position of the key, or -1 if not present. */
+	public int indexOf(Object key) {
+		if (key == null) return -1;
+		final String[] e = this.entries;
+		final int length = size * 2;
+		/* Identity first: keys are usually the same string literals. */
+		for (int i = 0; i < length; i += 2) {
+			if (e[i] == key) return i >> 1;
+		}
+		for (int i = 0; i < length; i += 2) {
+			if (e[i].equals(key)) return i >> 1;
+		}
+		return -1;
+	}
+
+	/** @return Key at the position, in insertion order. */
+	public String keyAt(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(Integer.toString(index));
+		return entries[index * 2];
+	}
+
+	/** @return Value at the position, in insertion order; may be null. */
+	public String valueAt(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(Integer.toString(index));
+		return entries[index * 2 + 1];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public String get(Object key) {
+		int index = indexOf(key);
+		return index < 0 ? null : entries[index * 2 + 1];
+	}
+
+	/** Replaces the value of an existing key, keeping its position, or appends a new entry. */
+	@Override
+	public String put(String key, String value) {
+		if (key == null) throw new NullPointerException("key");
+		int index = indexOf(key);
+		if (index >= 0) {
+			String previous = entries[index * 2 + 1];
+			entries[index * 2 + 1] = value;
+			return previous;
+		}
+		if (size * 2 == entries.length) {
+			String[] newEntries = new String[entries.length * 2];
+			System.arraycopy(entries, 0, newEntries, 0, entries.length);
+			entries = newEntries;
+		}
+		entries[size * 2] = key;
+		entries[size * 2 + 1] = value;
+		size++;
+		return null;
+	}
+
+	@Override
+	public String remove(Object key) {
+		int index = indexOf(key);
+		if (index < 0) return null;
+		String previous = entries[index * 2 + 1];
+		removeAt(index);
+		return previous;
+	}
+
+	void removeAt(int index) {
+		int moved = (size - index - 1) * 2;
+		if (moved > 0) System.arraycopy(entries, index * 2 + 2, entries, index * 2, moved);
+		size--;
+		entries[size * 2] = null;
+		entries[size * 2 + 1] = null;
+	}
+
+	/** Removes all entries and keeps the array for reuse. */
+	@Override
+	public void clear() {
+		for (int i = 0; i < size * 2; i++) entries[i] = null;
+		size = 0;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new Iterator<Map.Entry<String, String>>() {
+					private int next = 0;
+					private int last = -1;
+
+					@Override
+					public boolean hasNext() {
+						return next < size;
+					}
+
+					@Override
+					public Map.Entry<String, String> next() {
+						if (next >= size) throw new NoSuchElementException();
+						last = next++;
+						return new SimpleImmutableEntry<String, String>(entries[last * 2], entries[last * 2 + 1]);
+					}
+
+					@Override
+					public void remove() {
+						if (last < 0) throw new IllegalStateException();
+						removeAt(last);
+						next = last;
+						last = -1;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
@@ -0,0 +1,518 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compares two runs of the same application, recorded as meter logs or as span files, and reports how the execution
+ * time of each operation changed.
+ * <p>
+ * Each run is a list of files or directories (searched recursively). Two formats are recognized, line by line:
+ * <ul>
+ * <li>log lines with an encoded meter event, as written by {@link Meter} at <code>TRACE</code> level
+ * (<code>OK: (...)</code> and <code>FAIL: (...)</code>);
+ * <li>OTLP/JSON lines written by {@link MeterSpanExporter}.
+ * </ul>
+ * Files ending in <code>.gz</code> are decompressed. Other lines are ignored.
+ * <p>
+ * Operations are aligned by their position in the nesting hierarchy (the names of all parent meters followed by the
+ * meter name, separated by <code>/</code>), or only by meter name with <code>-byName</code>. For each operation, the
+ * report shows count, failures, median and 95th percentile of both runs, and the relative change of median and 95th
+ * percentile with a bootstrap confidence interval. Resamples are computed in parallel. An operation is flagged
+ * <code>SLOWER</code> (or <code>FASTER</code>) when the whole confidence interval of either change is above (or
+ * below) the threshold.
+ * <p>
+ * The exit status is 2 if any operation got slower, so the tool may be used in a build.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class MeterDiff {
+	private static final String USAGE = "Usage: MeterDiff [-byName] [-threshold percent] [-confidence level] [-resamples n] [-minCount n] [-threads n] [-seed n] <baseline file or dir>[,...] <candidate file or dir>[,...]";
+	private static final double[] QUANTILES = new double[] { 0.5, 0.95 };
+	private static final int RESAMPLES_PER_TASK = 250;
+	private static final int MAX_DEPTH = 64;
+
+	boolean byName = false;
+	double threshold = 5.0;
+	double confidence = 0.95;
+	int resamples = 2000;
+	int minCount = 10;
+	int threads = Runtime.getRuntime().availableProcessors();
+	long seed = 1;
+
+	// ========================================================================
+
+	/** One finished meter read from a run. */
+	static final class Sample {
+		final String key;
+		final String parentKey;
+		final String name;
+		final long duration;
+		final boolean success;
+
+		Sample(String key, String parentKey, String name, long duration, boolean success) {
+			this.key = key;
+			this.parentKey = parentKey;
+			this.name = name;
+			this.duration = duration;
+			this.success = success;
+		}
+	}
+
+	/** Execution times of one operation in one run. */
+	static final class Durations {
+		long[] values = new long[16];
+		int count = 0;
+		int failures = 0;
+
+		void add(long value, boolean success) {
+			if (count == values.length) values = Arrays.copyOf(values, count * 2);
+			values[count++] = value;
+			if (! success) failures++;
+		}
+
+		long[] sorted() {
+			long[] sorted = Arrays.copyOf(values, count);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+	}
+
+	/** Comparison of one operation. */
+	static final class Comparison {
+		final String operation;
+		final Durations baseline;
+		final Durations candidate;
+		final long[] baselineQuantiles = new long[QUANTILES.length];
+		final long[] candidateQuantiles = new long[QUANTILES.length];
+		final double[] change = new double[QUANTILES.length];
+		final double[] lower = new double[QUANTILES.length];
+		final double[] upper = new double[QUANTILES.length];
+		String flag = "";
+
+		Comparison(String operation, Durations baseline, Durations candidate) {
+			this.operation = operation;
+			this.baseline = baseline;
+			this.candidate = candidate;
+			Arrays.fill(change, Double.NaN);
+			Arrays.fill(lower, Double.NaN);
+			Arrays.fill(upper, Double.NaN);
+		}
+	}
+
+	// ========================================================================
+
+	/** Reads all samples of a run. */
+	List<Sample> read(String paths) throws IOException {
+		List<Sample> samples = new ArrayList<Sample>();
+		Parser parser = new Parser();
+		MeterEvent event = new MeterEvent();
+		for (String path : paths.split(",")) {
+			File file = new File(path);
+			if (! file.exists()) throw new IOException("not found: " + path);
+			readFile(file, samples, parser, event);
+		}
+		return samples;
+	}
+
+	private void readFile(File file, List<Sample> samples, Parser parser, MeterEvent event) throws IOException {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children == null) return;
+			Arrays.sort(children);
+			for (File child : children) {
+				readFile(child, samples, parser, event);
+			}
+			return;
+		}
+		InputStream is = new FileInputStream(file);
+		try {
+			if (file.getName().endsWith(".gz")) is = new GZIPInputStream(is);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("{") && line.indexOf("\"resourceSpans\"") >= 0) {
+					MeterDiff.readSpans(line, samples);
+				} else {
+					MeterDiff.readLogLine(line, samples, parser, event);
+				}
+			}
+		} finally {
+			is.close();
+		}
+	}
+
+	static void readLogLine(String line, List<Sample> samples, Parser parser, MeterEvent event) {
+		boolean success;
+		int start = line.indexOf("OK: (");
+		if (start >= 0) {
+			success = true;
+			start += 4;
+		} else {
+			start = line.indexOf("FAIL: (");
+			if (start < 0) return;
+			success = false;
+			start += 6;
+		}
+		try {
+			MeterEvent.readFromString(parser, event, line.substring(start));
+		} catch (IOException e) {
+			/* Não é um evento codificado, por exemplo a forma legível da mensagem. */
+			return;
+		} catch (RuntimeException e) {
+			return;
+		}
+		if (event.getName() == null || event.getStartTime() == 0 || event.getStopTime() == 0) return;
+		String uuid = event.getUuid() == null ? "" : event.getUuid();
+		String key = uuid + '|' + event.getName() + '|' + event.getCount();
+		String parentKey = event.getParentName() == null ? null : uuid + '|' + event.getParentName() + '|' + event.getParentCounter();
+		samples.add(new Sample(key, parentKey, event.getName(), event.getStopTime() - event.getStartTime(), success));
+	}
+
+	/** Reads the spans of one OTLP/JSON line. Relies on the field order written by {@link MeterSpanExporter}. */
+	static void readSpans(String line, List<Sample> samples) {
+		final String spanStart = "{\"traceId\":\"";
+		int position = line.indexOf(spanStart);
+		while (position >= 0) {
+			int next = line.indexOf(spanStart, position + spanStart.length());
+			int end = next < 0 ? line.length() : next;
+			String traceId = MeterDiff.field(line, "\"traceId\":\"", position, end, '"');
+			String spanId = MeterDiff.field(line, "\"spanId\":\"", position, end, '"');
+			String parentId = MeterDiff.field(line, "\"parentSpanId\":\"", position, end, '"');
+			String startTime = MeterDiff.field(line, "\"startTimeUnixNano\":\"", position, end, '"');
+			String stopTime = MeterDiff.field(line, "\"endTimeUnixNano\":\"", position, end, '"');
+			int nameIndex = line.indexOf("\"name\":\"", position);
+			int statusIndex = line.lastIndexOf("\"status\":{\"code\":", end);
+			if (traceId != null && spanId != null && startTime != null && stopTime != null && nameIndex >= 0 && nameIndex < end) {
+				String name = MeterDiff.jsonString(line, nameIndex + 7);
+				boolean success = statusIndex < position || line.charAt(statusIndex + 17) != '2';
+				long duration = Long.parseLong(stopTime) - Long.parseLong(startTime);
+				samples.add(new Sample(traceId + spanId, parentId == null ? null : traceId + parentId, name, duration, success));
+			}
+			position = next;
+		}
+	}
+
+	private static String field(String line, String prefix, int from, int to, char terminator) {
+		int index = line.indexOf(prefix, from);
+		if (index < 0 || index >= to) return null;
+		int start = index + prefix.length();
+		int end = line.indexOf(terminator, start);
+		return end < 0 ? null : line.substring(start, end);
+	}
+
+	/** Decodes the JSON string that starts at the quote in the given position. */
+	static String jsonString(String line, int quote) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = quote + 1; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') break;
+			if (c == '\\' && i + 1 < line.length()) {
+				char escaped = line.charAt(++i);
+				switch (escaped) {
+				case 'n': sb.append('\n'); break;
+				case 'r': sb.append('\r'); break;
+				case 't': sb.append('\t'); break;
+				case 'u':
+					sb.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+					i += 4;
+					break;
+				default: sb.append(escaped);
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	// ========================================================================
+
+	/** Groups the execution times of a run by operation. */
+	Map<String, Durations> group(List<Sample> samples) {
+		Map<String, Sample> byKey = new HashMap<String, Sample>(samples.size() * 2);
+		for (Sample s : samples) {
+			byKey.put(s.key, s);
+		}
+		Map<String, String> paths = new HashMap<String, String>();
+		Map<String, Durations> operations = new TreeMap<String, Durations>();
+		for (Sample s : samples) {
+			String operation = byName ? s.name : MeterDiff.path(s, byKey, paths);
+			Durations d = operations.get(operation);
+			if (d == null) {
+				d = new Durations();
+				operations.put(operation, d);
+			}
+			d.add(s.duration, s.success);
+		}
+		return operations;
+	}
+
+	private static String path(Sample sample, Map<String, Sample> byKey, Map<String, String> paths) {
+		String cached = paths.get(sample.key);
+		if (cached != null) return cached;
+		List<String> names = new ArrayList<String>();
+		Sample current = sample;
+		String prefix = null;
+		while (current != null && names.size() < MAX_DEPTH) {
+			String known = paths.get(current.key);
+			if (known != null) {
+				prefix = known;
+				break;
+			}
+			names.add(current.name);
+			current = current.parentKey == null ? null : byKey.get(current.parentKey);
+		}
+		Collections.reverse(names);
+		StringBuilder sb = new StringBuilder();
+		if (prefix != null) sb.append(prefix);
+		for (String name : names) {
+			if (sb.length() > 0) sb.append('/');
+			sb.append(name);
+		}
+		String path = sb.toString();
+		paths.put(sample.key, path);
+		return path;
+	}
+
+	// ========================================================================
+
+	/** @return Quantile of sorted values, by nearest rank. */
+	static long quantile(long[] sorted, double q) {
+		int rank = (int) Math.ceil(q * sorted.length);
+		if (rank < 1) rank = 1;
+		return sorted[rank - 1];
+	}
+
+	/**
+	 * Computes resamples of the relative change of each quantile. A resample of n values is drawn as n random
+	 * positions of the sorted values; its quantiles are found by counting positions, without sorting.
+	 *
+	 * @return For each resample, the change of each quantile (candidate / baseline - 1).
+	 */
+	static double[][] resample(long[] baseline, long[] candidate, int count, long seed) {
+		Random random = new Random(seed);
+		int[] baselineCounts = new int[baseline.length];
+		int[] candidateCounts = new int[candidate.length];
+		long[] b = new long[QUANTILES.length];
+		long[] c = new long[QUANTILES.length];
+		double[][] result = new double[count][QUANTILES.length];
+		for (int r = 0; r < count; r++) {
+			MeterDiff.resampleQuantiles(baseline, baselineCounts, random, b);
+			MeterDiff.resampleQuantiles(candidate, candidateCounts, random, c);
+			for (int q = 0; q < QUANTILES.length; q++) {
+				result[r][q] = b[q] == 0 ? Double.NaN : (double) c[q] / b[q] - 1.0;
+			}
+		}
+		return result;
+	}
+
+	private static void resampleQuantiles(long[] sorted, int[] counts, Random random, long[] quantiles) {
+		int n = sorted.length;
+		Arrays.fill(counts, 0);
+		for (int i = 0; i < n; i++) {
+			counts[random.nextInt(n)]++;
+		}
+		int q = 0;
+		int rank = Math.max(1, (int) Math.ceil(QUANTILES[q] * n));
+		int accumulated = 0;
+		for (int i = 0; i < n && q < QUANTILES.length; i++) {
+			accumulated += counts[i];
+			while (q < QUANTILES.length && accumulated >= rank) {
+				quantiles[q++] = sorted[i];
+				if (q < QUANTILES.length) rank = Math.max(1, (int) Math.ceil(QUANTILES[q] * n));
+			}
+		}
+	}
+
+	List<Comparison> compare(Map<String, Durations> baseline, Map<String, Durations> candidate) throws InterruptedException, ExecutionException {
+		List<Comparison> comparisons = new ArrayList<Comparison>();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			List<List<Future<double[][]>>> futures = new ArrayList<List<Future<double[][]>>>();
+			List<String> operations = new ArrayList<String>(baseline.keySet());
+			for (String operation : candidate.keySet()) {
+				if (! baseline.containsKey(operation)) operations.add(operation);
+			}
+			Collections.sort(operations);
+			long taskSeed = seed;
+			for (String operation : operations) {
+				Durations b = baseline.get(operation);
+				Durations c = candidate.get(operation);
+				Comparison comparison = new Comparison(operation, b, c);
+				comparisons.add(comparison);
+				List<Future<double[][]>> operationFutures = new ArrayList<Future<double[][]>>();
+				futures.add(operationFutures);
+				if (b == null || c == null) continue;
+				final long[] sortedBaseline = b.sorted();
+				final long[] sortedCandidate = c.sorted();
+				for (int q = 0; q < QUANTILES.length; q++) {
+					comparison.baselineQuantiles[q] = MeterDiff.quantile(sortedBaseline, QUANTILES[q]);
+					comparison.candidateQuantiles[q] = MeterDiff.quantile(sortedCandidate, QUANTILES[q]);
+					if (comparison.baselineQuantiles[q] > 0) {
+						comparison.change[q] = (double) comparison.candidateQuantiles[q] / comparison.baselineQuantiles[q] - 1.0;
+					}
+				}
+				if (b.count < minCount || c.count < minCount) continue;
+				for (int done = 0; done < resamples; done += RESAMPLES_PER_TASK) {
+					final int count = Math.min(RESAMPLES_PER_TASK, resamples - done);
+					final long s = taskSeed++;
+					operationFutures.add(pool.submit(new Callable<double[][]>() {
+						@Override
+						public double[][] call() {
+							return MeterDiff.resample(sortedBaseline, sortedCandidate, count, s);
+						}
+					}));
+				}
+			}
+			for (int i = 0; i < comparisons.size(); i++) {
+				List<Future<double[][]>> operationFutures = futures.get(i);
+				if (operationFutures.isEmpty()) continue;
+				List<double[]> all = new ArrayList<double[]>(resamples);
+				for (Future<double[][]> future : operationFutures) {
+					all.addAll(Arrays.asList(future.get()));
+				}
+				interval(comparisons.get(i), all);
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return comparisons;
+	}
+
+	private void interval(Comparison comparison, List<double[]> resampled) {
+		double alpha = (1.0 - confidence) / 2.0;
+		double limit = threshold / 100.0;
+		for (int q = 0; q < QUANTILES.length; q++) {
+			double[] values = new double[resampled.size()];
+			int n = 0;
+			for (double[] r : resampled) {
+				if (! Double.isNaN(r[q])) values[n++] = r[q];
+			}
+			if (n == 0) continue;
+			Arrays.sort(values, 0, n);
+			comparison.lower[q] = values[Math.max(0, (int) Math.floor(alpha * n))];
+			comparison.upper[q] = values[Math.min(n - 1, (int) Math.ceil((1.0 - alpha) * n) - 1)];
+			if (comparison.lower[q] > limit) {
+				comparison.flag = "SLOWER";
+			} else if (comparison.upper[q] < -limit && comparison.flag.length() == 0) {
+				comparison.flag = "FASTER";
+			}
+		}
+	}
+
+	// ========================================================================
+
+	/** @return True if any operation got slower. */
+	boolean report(List<Comparison> comparisons, PrintStream out) {
+		out.println(String.format("%-60s %7s %7s %5s %5s %9s %9s %24s %9s %9s %24s %s", "operation", "n(A)", "n(B)", "f(A)", "f(B)",
+				"p50(A)", "p50(B)", "p50 change [CI]", "p95(A)", "p95(B)", "p95 change [CI]", ""));
+		boolean slower = false;
+		List<String> summary = new ArrayList<String>();
+		for (Comparison c : comparisons) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%-60s %7d %7d %5d %5d", c.operation,
+					Integer.valueOf(c.baseline == null ? 0 : c.baseline.count), Integer.valueOf(c.candidate == null ? 0 : c.candidate.count),
+					Integer.valueOf(c.baseline == null ? 0 : c.baseline.failures), Integer.valueOf(c.candidate == null ? 0 : c.candidate.failures)));
+			for (int q = 0; q < QUANTILES.length; q++) {
+				sb.append(String.format(" %9s %9s %24s", c.baseline == null ? "-" : MeterDiff.time(c.baselineQuantiles[q]),
+						c.candidate == null ? "-" : MeterDiff.time(c.candidateQuantiles[q]), MeterDiff.change(c, q)));
+			}
+			sb.append(' ').append(c.flag);
+			out.println(sb.toString());
+			if (c.flag.length() > 0) {
+				for (int q = QUANTILES.length - 1; q >= 0; q--) {
+					if (Double.isNaN(c.lower[q])) continue;
+					if (("SLOWER".equals(c.flag) && c.lower[q] > threshold / 100.0) || ("FASTER".equals(c.flag) && c.upper[q] < -threshold / 100.0)) {
+						summary.add(String.format(Locale.US, "%s got %.1f%% %s at p%d (%.0f%% CI %+.1f%%..%+.1f%%)", c.operation,
+								Double.valueOf(Math.abs(c.change[q]) * 100.0), "SLOWER".equals(c.flag) ? "slower" : "faster",
+								Integer.valueOf((int) Math.round(QUANTILES[q] * 100)), Double.valueOf(confidence * 100.0),
+								Double.valueOf(c.lower[q] * 100.0), Double.valueOf(c.upper[q] * 100.0)));
+						break;
+					}
+				}
+			}
+			if ("SLOWER".equals(c.flag)) slower = true;
+		}
+		if (! summary.isEmpty()) {
+			out.println();
+			for (String s : summary) out.println(s);
+		}
+		return slower;
+	}
+
+	private static String change(Comparison c, int q) {
+		if (Double.isNaN(c.change[q])) return "-";
+		if (Double.isNaN(c.lower[q])) return String.format(Locale.US, "%+.1f%%", Double.valueOf(c.change[q] * 100.0));
+		return String.format(Locale.US, "%+.1f%% [%+.1f..%+.1f]", Double.valueOf(c.change[q] * 100.0), Double.valueOf(c.lower[q] * 100.0), Double.valueOf(c.upper[q] * 100.0));
+	}
+
+	private static String time(long nanoseconds) {
+		return Parser.bestUnit(nanoseconds, Parser.TIME_UNITS, Parser.TIME_FACTORS);
+	}
+
+	// ========================================================================
+
+	public static void main(String[] args) throws Exception {
+		MeterDiff diff = new MeterDiff();
+		List<String> runs = new ArrayList<String>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if ("-byName".equals(arg)) diff.byName = true;
+				else if ("-threshold".equals(arg)) diff.threshold = Double.parseDouble(args[++i]);
+				else if ("-confidence".equals(arg)) diff.confidence = Double.parseDouble(args[++i]);
+				else if ("-resamples".equals(arg)) diff.resamples = Integer.parseInt(args[++i]);
+				else if ("-minCount".equals(arg)) diff.minCount = Integer.parseInt(args[++i]);
+				else if ("-threads".equals(arg)) diff.threads = Integer.parseInt(args[++i]);
+				else if ("-seed".equals(arg)) diff.seed = Long.parseLong(args[++i]);
+				else if (arg.startsWith("-")) throw new IllegalArgumentException(arg);
+				else runs.add(arg);
+			}
+			if (runs.size() != 2 || diff.confidence <= 0 || diff.confidence >= 1 || diff.resamples < 1) throw new IllegalArgumentException();
+		} catch (RuntimeException e) {
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		Map<String, Durations> baseline = diff.group(diff.read(runs.get(0)));
+		Map<String, Durations> candidate = diff.group(diff.read(runs.get(1)));
+		boolean slower = diff.report(diff.compare(baseline, candidate), System.out);
+		System.exit(slower ? 2 : 0);
+	}
+}
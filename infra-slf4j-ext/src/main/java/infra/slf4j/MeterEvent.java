@@ -18,8 +18,6 @@ package infra.slf4j;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -44,6 +42,7 @@ public class MeterEvent implements Serializable {
 	private static final String CONTEXT = "ctx";
 	private static final String THREAD = "th";
 	private static final String DEPTH = "d";
+	private static final String PARENT = "p";
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.AUTO)
@@ -100,12 +99,21 @@ public class MeterEvent implements Serializable {
 	protected long depthCount;
 	protected long depthContext;
 
+	/** Name and counter of the meter that was running on the same thread when this job started (the caller). */
+	@Column(nullable = true, length = 300)
+	protected String parentName;
+	protected long parentCounter;
+	/** Name and counter of the outermost meter of the tree this job belongs to. */
+	@Column(nullable = true, length = 300)
+	protected String rootName;
+	protected long rootCounter;
+
 	@ElementCollection
 	@MapKeyColumn(name="chave", length=100)
 	@Column(name="valor", length=100)
 	@CollectionTable(name="contexto_meter", joinColumns=@JoinColumn(name="meterevent_ref"))
 	protected Map<String, String> context;
-	public Map<String, String> getContext() { return Collections.unmodifiableMap(context); }
+	public Map<String, String> getContext() { return context == null ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(context); }
 
 	public String getName() { return name; }
 	public String getMessage() { return message; }
@@ -120,6 +128,45 @@ public class MeterEvent implements Serializable {
 
 	public boolean isSuccess() { return success; }
 
+	public String getUuid() { return uuid; }
+	public long getThreadStartId() { return threadStartId; }
+	public long getThreadStopId() { return threadStopId; }
+	public String getThreadStartName() { return threadStartName; }
+	public String getThreadStopName() { return threadStopName; }
+
+	public String getParentName() { return parentName; }
+	public long getParentCounter() { return parentCounter; }
+	public String getRootName() { return rootName; }
+	public long getRootCounter() { return rootCounter; }
+
+	/** @return Copy of the fields of this event, not affected by later changes to this event. */
+	MeterEvent copy() {
+		MeterEvent e = new MeterEvent();
+		e.name = name;
+		e.counter = counter;
+		e.uuid = uuid;
+		e.createTime = createTime;
+		e.startTime = startTime;
+		e.stopTime = stopTime;
+		e.message = message;
+		e.exceptionClass = exceptionClass;
+		e.exceptionMessage = exceptionMessage;
+		e.success = success;
+		e.threadStartId = threadStartId;
+		e.threadStopId = threadStopId;
+		e.threadStartName = threadStartName;
+		e.threadStopName = threadStopName;
+		e.threadDepth = threadDepth;
+		e.depthCount = depthCount;
+		e.depthContext = depthContext;
+		e.parentName = parentName;
+		e.parentCounter = parentCounter;
+		e.rootName = rootName;
+		e.rootCounter = rootCounter;
+		e.context = context == null ? null : new MeterContext(context);
+		return e;
+	}
+
 	public static void readableString(MeterEvent meter, StringBuilder buffer) {
 		if (meter.message != null) {
 			buffer.append(meter.message);
@@ -129,7 +176,7 @@ public class MeterEvent implements Serializable {
 		if (meter.startTime > 0 && meter.stopTime > 0) {
 			buffer.append(" ");
 			long duration = meter.stopTime - meter.startTime;
-			buffer.append(Parser.bestUnit(duration, Parser.TIME_UNITS, Parser.TIME_FACTORS));
+			Parser.appendBestUnit(buffer, duration, Parser.TIME_UNITS, Parser.TIME_FACTORS);
 		}
 	}
 
@@ -174,6 +221,23 @@ public class MeterEvent implements Serializable {
 			buffer.append(e.depthCount);
 		}
 
+		/* parent, root */
+		if (e.parentName != null) {
+			buffer.append(p.PROPERTY_SEPARATOR);
+			buffer.append(p.PROPERTY_SPACE);
+			buffer.append(MeterEvent.PARENT);
+			buffer.append(p.PROPERTY_EQUALS);
+			buffer.append(e.parentName);
+			buffer.append(p.PROPERTY_DIV);
+			buffer.append(e.parentCounter);
+			if (e.rootName != null) {
+				buffer.append(p.PROPERTY_DIV);
+				buffer.append(e.rootName);
+				buffer.append(p.PROPERTY_DIV);
+				buffer.append(e.rootCounter);
+			}
+		}
+
 		if (e.threadStartId != 0) {
 			buffer.append(p.PROPERTY_SEPARATOR);
 			buffer.append(p.PROPERTY_SPACE);
@@ -222,49 +286,32 @@ public class MeterEvent implements Serializable {
 
 		/* context */
 		Map<String, String> globalContext = MeterFactory.getContext();
-		if ((e.context != null && ! e.context.isEmpty()) || (globalContext != null && ! globalContext.isEmpty())) {
+		boolean hasContext = e.context != null && ! e.context.isEmpty();
+		boolean hasGlobalContext = globalContext != null && ! globalContext.isEmpty();
+		if (hasContext || hasGlobalContext) {
 			buffer.append(p.PROPERTY_SEPARATOR);
 			buffer.append(p.PROPERTY_SPACE);
 			buffer.append(MeterEvent.CONTEXT);
 			buffer.append(p.PROPERTY_EQUALS);
 			buffer.append(p.MAP_OPEN);
 			boolean primeiro = true;
-			if (e.context != null && ! e.context.isEmpty()) {
-				Iterator<Entry<String, String>> i = e.context.entrySet().iterator();
-				while (i.hasNext()) {
-					Entry<String, String> entry = i.next();
-					if (primeiro) {
-						primeiro = false;
-					} else {
-						buffer.append(p.MAP_SEPARATOR);
-						buffer.append(p.MAP_SPACE);
+			if (hasContext) {
+				if (e.context instanceof MeterContext) {
+					MeterContext c = (MeterContext) e.context;
+					for (int i = 0; i < c.size(); i++) {
+						primeiro = writeEntry(p, buffer, primeiro, c.keyAt(i), c.valueAt(i));
 					}
-					buffer.append(entry.getKey());
-					if (entry.getValue() != null) {
-						buffer.append(p.MAP_EQUAL);
-						p.writeQuotedString(buffer,entry.getValue());
+				} else {
+					for (Entry<String, String> entry : e.context.entrySet()) {
+						primeiro = writeEntry(p, buffer, primeiro, entry.getKey(), entry.getValue());
 					}
 				}
 			}
-			if (globalContext != null && ! globalContext.isEmpty()) {
-				Iterator<Entry<String, String>> i = globalContext.entrySet().iterator();
-				while (i.hasNext()) {
-					Entry<String, String> entry = i.next();
-					// não imprime valor pois contexto local tem preferência sobre o global.
-					if (primeiro) {
-						primeiro = false;
-					} else {
-						buffer.append(p.MAP_SEPARATOR);
-						buffer.append(p.MAP_SPACE);
-					}
-					if (e.context.containsKey(entry.getKey())) continue;
-					buffer.append(entry.getKey());
-					if (entry.getValue() != null) {
-						buffer.append(p.MAP_EQUAL);
-						buffer.append(p.STRING_DELIM);
-						buffer.append(entry.getValue().toString());
-						buffer.append(p.STRING_DELIM);
-					}
+			if (hasGlobalContext) {
+				for (Entry<String, String> entry : globalContext.entrySet()) {
+					/* Não imprime a entrada global se existir no contexto local, pois este tem preferência. */
+					if (hasContext && e.context.containsKey(entry.getKey())) continue;
+					primeiro = writeEntry(p, buffer, primeiro, entry.getKey(), entry.getValue());
 				}
 			}
 			buffer.append(p.MAP_CLOSE);
@@ -272,6 +319,19 @@ public class MeterEvent implements Serializable {
 		buffer.append(p.DATA_CLOSE);
 	}
 
+	private static boolean writeEntry(Parser p, StringBuilder buffer, boolean primeiro, String key, String value) {
+		if (! primeiro) {
+			buffer.append(p.MAP_SEPARATOR);
+			buffer.append(p.MAP_SPACE);
+		}
+		buffer.append(key);
+		if (value != null) {
+			buffer.append(p.MAP_EQUAL);
+			p.writeQuotedString(buffer, value);
+		}
+		return false;
+	}
+
 	public static void readFromString(Parser p, MeterEvent e, String encodedData) throws IOException {
 		/* Reseta todos os atributos. */
 		e.name = null;
@@ -280,9 +340,18 @@ public class MeterEvent implements Serializable {
 		e.createTime = e.startTime = e.stopTime = 0;
 		e.exceptionClass = null;
 		e.exceptionMessage = null;
-		e.context = null;
+		/* Reaproveita o contexto já existente. */
+		if (e.context instanceof MeterContext) {
+			e.context.clear();
+		} else {
+			e.context = null;
+		}
+		e.parentName = e.rootName = null;
+		e.parentCounter = e.rootCounter = 0;
 
 		p.reset(encodedData);
+		/* Os delimitadores escritos por writeToString são opcionais. */
+		p.readOptionalOperator(p.DATA_OPEN);
 
 		/* O nome é obrigatório. */
 		e.name = p.readIdentifierString();
@@ -310,6 +379,15 @@ public class MeterEvent implements Serializable {
 					p.readOperator(p.PROPERTY_DIV);
 					e.threadStopName = p.readQuotedString();
 				}
+			} else if (MeterEvent.PARENT.equals(propertyName)) {
+				e.parentName = p.readIdentifierString();
+				p.readOperator(p.PROPERTY_DIV);
+				e.parentCounter = p.readLong();
+				if (p.readOptionalOperator(p.PROPERTY_DIV)) {
+					e.rootName = p.readIdentifierString();
+					p.readOperator(p.PROPERTY_DIV);
+					e.rootCounter = p.readLong();
+				}
 			} else if (MeterEvent.DEPTH.equals(propertyName)) {
 				e.depthContext = p.readLong();
 				p.readOperator(p.PROPERTY_DIV);
@@ -328,9 +406,9 @@ public class MeterEvent implements Serializable {
 					}
 				}
 			} else if (MeterEvent.CONTEXT.equals(propertyName)) {
-				e.context = new HashMap<String, String>();
-				p.readOperator('[');
-				if (! p.readOptionalOperator(']')) {
+				if (e.context == null) e.context = new MeterContext();
+				p.readOperator(p.MAP_OPEN);
+				if (! p.readOptionalOperator(p.MAP_CLOSE)) {
 					do {
 						String key = p.readIdentifierString();
 						String value = null;
@@ -374,8 +452,9 @@ public class MeterEvent implements Serializable {
 			return false;
 		}
 		MeterEvent other = (MeterEvent) obj;
-		if (context == null) {
-			if (other.context != null) {
+		/* Contexto ausente equivale a contexto vazio. */
+		if (context == null || context.isEmpty()) {
+			if (other.context != null && ! other.context.isEmpty()) {
 				return false;
 			}
 		} else if (!context.equals(other.context)) {
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Decorators that propagate the {@link MeterScope} of the thread that submits work to the thread that executes it.
+ * <ul>
+ * <li>{@link #wrap(Runnable)} and {@link #wrap(Callable)} capture the scope when called.
+ * <li>{@link #executor(Executor)} and {@link #executorService(ExecutorService)} capture the scope when each task is
+ * submitted. Use them for thread pools, for asynchronous frameworks that accept an {@link Executor}, and for
+ * executors that start one thread per task (including virtual threads).
+ * <li>{@link #threadFactory(ThreadFactory)} captures the scope when each thread is created. Use it for threads
+ * dedicated to one job; pooled threads would keep the scope of the task that created them.
+ * </ul>
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class MeterExecutors {
+	private MeterExecutors() {
+		// Utility class.
+	}
+
+	/** @return Runnable that executes the task within the scope of the current thread. */
+	public static Runnable wrap(Runnable task) {
+		if (task == null) throw new NullPointerException();
+		return new ScopedRunnable(MeterScope.capture(), task);
+	}
+
+	/** @return Callable that executes the task within the scope of the current thread. */
+	public static <V> Callable<V> wrap(Callable<V> task) {
+		if (task == null) throw new NullPointerException();
+		return new ScopedCallable<V>(MeterScope.capture(), task);
+	}
+
+	/** @return Executor that executes each task within the scope of the thread that submitted it. */
+	public static Executor executor(final Executor executor) {
+		if (executor == null) throw new NullPointerException();
+		if (executor instanceof ExecutorService) return MeterExecutors.executorService((ExecutorService) executor);
+		return new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				executor.execute(MeterExecutors.wrap(command));
+			}
+		};
+	}
+
+	/** @return Executor service that executes each task within the scope of the thread that submitted it. */
+	public static ExecutorService executorService(ExecutorService executor) {
+		if (executor == null) throw new NullPointerException();
+		if (executor instanceof ScopedExecutorService) return executor;
+		return new ScopedExecutorService(executor);
+	}
+
+	/** @return Thread factory whose threads run within the scope of the thread that created them. */
+	public static ThreadFactory threadFactory(final ThreadFactory factory) {
+		if (factory == null) throw new NullPointerException();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return factory.newThread(MeterExecutors.wrap(r));
+			}
+		};
+	}
+
+	// ========================================================================
+
+	private static final class ScopedRunnable implements Runnable {
+		private final MeterScope scope;
+		private final Runnable task;
+
+		ScopedRunnable(MeterScope scope, Runnable task) {
+			this.scope = scope;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			MeterScope previous = scope.attach();
+			try {
+				task.run();
+			} finally {
+				previous.attach();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return task.toString();
+		}
+	}
+
+	private static final class ScopedCallable<V> implements Callable<V> {
+		private final MeterScope scope;
+		private final Callable<V> task;
+
+		ScopedCallable(MeterScope scope, Callable<V> task) {
+			this.scope = scope;
+			this.task = task;
+		}
+
+		@Override
+		public V call() throws Exception {
+			MeterScope previous = scope.attach();
+			try {
+				return task.call();
+			} finally {
+				previous.attach();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return task.toString();
+		}
+	}
+
+	private static final class ScopedExecutorService implements ExecutorService {
+		private final ExecutorService executor;
+
+		ScopedExecutorService(ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		private static <T> List<Callable<T>> wrapAll(Collection<? extends Callable<T>> tasks) {
+			List<Callable<T>> wrapped = new ArrayList<Callable<T>>(tasks.size());
+			for (Callable<T> task : tasks) {
+				wrapped.add(MeterExecutors.wrap(task));
+			}
+			return wrapped;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			executor.execute(MeterExecutors.wrap(command));
+		}
+
+		@Override
+		public <T> Future<T> submit(Callable<T> task) {
+			return executor.submit(MeterExecutors.wrap(task));
+		}
+
+		@Override
+		public <T> Future<T> submit(Runnable task, T result) {
+			return executor.submit(MeterExecutors.wrap(task), result);
+		}
+
+		@Override
+		public Future<?> submit(Runnable task) {
+			return executor.submit(MeterExecutors.wrap(task));
+		}
+
+		@Override
+		public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+			return executor.invokeAll(ScopedExecutorService.wrapAll(tasks));
+		}
+
+		@Override
+		public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+			return executor.invokeAll(ScopedExecutorService.wrapAll(tasks), timeout, unit);
+		}
+
+		@Override
+		public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+			return executor.invokeAny(ScopedExecutorService.wrapAll(tasks));
+		}
+
+		@Override
+		public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			return executor.invokeAny(ScopedExecutorService.wrapAll(tasks), timeout, unit);
+		}
+
+		@Override
+		public void shutdown() {
+			executor.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return executor.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return executor.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return executor.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return executor.awaitTermination(timeout, unit);
+		}
+	}
+}
@@ -15,16 +15,23 @@
  */
 package infra.slf4j;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class MeterFactory {
-	private static final Map<String, String> context = new TreeMap<String, String>();
+	/** Global context. Copied on each change, so meters may write it on any thread while it is changed. */
+	private static volatile Map<String, String> context = Collections.unmodifiableMap(new TreeMap<String, String>());
 	private static final UUID uuid = UUID.randomUUID();
+	private static final List<MeterListener> listeners = new CopyOnWriteArrayList<MeterListener>();
+	/** Sampling policies by meter name prefix. */
+	private static final MeterSampling.Rules sampling = new MeterSampling.Rules();
 	//	private static WatcherEvent watcherEvent = new WatcherEvent();
 
 	public static Meter getMeter(String name) {
@@ -46,6 +53,14 @@ public class MeterFactory {
 	}
 
 	public static Meter getMeter(Class<?> clazz, Operation operation) {
+		if (operation instanceof RegisteredOperation) {
+			RegisteredOperation registered = (RegisteredOperation) operation;
+			if (registered.getOwner() == clazz) {
+				Meter meter = new Meter(registered.getLogger(), registered.getMeterName(), registered.getStatistics());
+				if (registered.getMessage() != null) meter.setMessage(registered.getMessage());
+				return meter;
+			}
+		}
 		String instanceName = clazz.getName()+"."+operation.getName();
 		Meter meter = new Meter(LoggerFactory.getLogger(clazz), instanceName);
 		if (OperationWithMessage.class.isAssignableFrom(operation.getClass())) {
@@ -55,6 +70,13 @@ public class MeterFactory {
 	}
 
 	public static Meter getMeter(Logger logger, Operation operation) {
+		if (operation instanceof RegisteredOperation) {
+			RegisteredOperation.Binding binding = ((RegisteredOperation) operation).bind(logger);
+			Meter meter = new Meter(logger, binding.meterName, binding.statistics);
+			String message = ((RegisteredOperation) operation).getMessage();
+			if (message != null) meter.setMessage(message);
+			return meter;
+		}
 		String instanceName = logger.getName()+"."+operation.getName();
 		Meter meter = new Meter(logger, instanceName);
 		if (OperationWithMessage.class.isAssignableFrom(operation.getClass())) {
@@ -64,21 +86,61 @@ public class MeterFactory {
 	}
 
 	public static void put(String name) {
-		MeterFactory.context.put(name, null);
+		MeterFactory.put(name, null);
 	}
 
-	public static void put(String name, String value) {
-		MeterFactory.context.put(name, value);
+	public static synchronized void put(String name, String value) {
+		Map<String, String> newContext = new TreeMap<String, String>(MeterFactory.context);
+		newContext.put(name, value);
+		MeterFactory.context = Collections.unmodifiableMap(newContext);
 	}
 
-	public static void remove(String name) {
-		MeterFactory.context.remove(name);
+	public static synchronized void remove(String name) {
+		if (! MeterFactory.context.containsKey(name)) return;
+		Map<String, String> newContext = new TreeMap<String, String>(MeterFactory.context);
+		newContext.remove(name);
+		MeterFactory.context = Collections.unmodifiableMap(newContext);
 	}
 
 	static Map<String, String> getContext() {
 		return MeterFactory.context;
 	}
 
+	/**
+	 * Sets the sampling policy for trace output of a meter name and of the names below it (separated by '.'). The most
+	 * specific policy applies.
+	 * @param name Meter name prefix; empty for all meters.
+	 */
+	public static void setSampling(String name, MeterSampling policy) {
+		MeterFactory.sampling.put(name, policy);
+	}
+
+	/** Removes the sampling policy set for the meter name prefix, if any. */
+	public static void removeSampling(String name) {
+		MeterFactory.sampling.remove(name);
+	}
+
+	/** Removes all sampling policies: all meters are sampled. */
+	public static void clearSampling() {
+		MeterFactory.sampling.clear();
+	}
+
+	static MeterSampling.Rules getSampling() {
+		return MeterFactory.sampling;
+	}
+
+	public static void addListener(MeterListener listener) {
+		MeterFactory.listeners.add(listener);
+	}
+
+	public static void removeListener(MeterListener listener) {
+		MeterFactory.listeners.remove(listener);
+	}
+
+	static List<MeterListener> getListeners() {
+		return MeterFactory.listeners;
+	}
+
 	public static String getuuid() {
 		return MeterFactory.uuid.toString().replace('-', '.');
 	}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+/**
+ * Receives every {@link MeterEvent} as soon as its meter finishes, either successfully or with failure, regardless of
+ * the logger level. Listeners are registered with {@link MeterFactory#addListener(MeterListener)}.
+ * <p>
+ * Listeners are called on the thread that finished the meter and must return quickly. The event must not be changed.
+ *
+ * @author Daniel Felix Ferber
+ */
+public interface MeterListener {
+	void meterStopped(MeterEvent event);
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+/**
+ * Argument of the messages logged by {@link Meter} with its markers. It carries a copy of the {@link MeterEvent} or
+ * the {@link WatcherEvent}, so an appender or encoder that recognizes the markers may read the structured fields
+ * directly. The text is built only if the message is formatted, and only once: the encoding of
+ * {@link MeterEvent#writeToString} for the trace markers, or the readable text for {@link Meter#DEBUG_MARKER}.
+ * <p>
+ * The copy is taken on the first access to the event or to the text, so messages rejected by a log filter are never
+ * copied. Logback accesses the argument while the logging call still runs (asynchronous appenders format the
+ * message before queueing the event), so appenders see the state of the meter at that moment, not later updates of
+ * the running meter or of the shared watcher.
+ * <p>
+ * A log filter should decide from {@link #getName()} and {@link #getCounter()}, which do not copy. A filter that
+ * samples the events should decide once per meter: it records its decision with {@link #setFilterDecision(boolean)}
+ * on the first event and reads it with {@link #getFilterDecision()} on the later events of the same meter, so that
+ * a meter is either logged completely or not at all.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class MeterMessage {
+	/** Live meter or watcher, copied on first access. */
+	private final MeterEvent meterOrigin;
+	private final WatcherEvent watcherOrigin;
+	/** Meter that logged the message, or null if unknown. Keeps the filter decision. */
+	private final Meter source;
+	/** If the text is the readable form instead of the encoding. */
+	private final boolean readable;
+	private volatile MeterEvent meterEvent = null;
+	private volatile WatcherEvent watcherEvent = null;
+	private String text = null;
+
+	MeterMessage(MeterEvent meterEvent) {
+		this(meterEvent, false);
+	}
+
+	MeterMessage(MeterEvent meterEvent, boolean readable) {
+		this.meterOrigin = meterEvent;
+		this.watcherOrigin = null;
+		this.source = meterEvent instanceof Meter ? (Meter) meterEvent : null;
+		this.readable = readable;
+	}
+
+	MeterMessage(WatcherEvent watcherEvent) {
+		this(null, watcherEvent);
+	}
+
+	MeterMessage(Meter source, WatcherEvent watcherEvent) {
+		this.meterOrigin = null;
+		this.watcherOrigin = watcherEvent;
+		this.source = source;
+		this.readable = false;
+	}
+
+	/** @return Name of the meter or watcher. Does not copy the event. */
+	public String getName() {
+		return meterOrigin != null ? meterOrigin.getName() : watcherOrigin.getName();
+	}
+
+	/** @return Counter of the meter or watcher. Does not copy the event. */
+	public long getCounter() {
+		return meterOrigin != null ? meterOrigin.getCount() : watcherOrigin.getCounter();
+	}
+
+	/** @return Copy of the meter, or null if the message carries a watcher snapshot. */
+	public MeterEvent getMeterEvent() {
+		if (meterOrigin == null) return null;
+		MeterEvent e = meterEvent;
+		if (e == null) e = meterEvent = meterOrigin.copy();
+		return e;
+	}
+
+	/** @return The watcher snapshot, or null if the message carries a meter. */
+	public WatcherEvent getWatcherEvent() {
+		if (watcherOrigin == null) return null;
+		WatcherEvent w = watcherEvent;
+		if (w == null) w = watcherEvent = watcherOrigin.copy();
+		return w;
+	}
+
+	/**
+	 * @return Decision recorded by a log filter for an earlier event of the same meter, or null if not decided yet or
+	 *         if the meter is unknown.
+	 */
+	public Boolean getFilterDecision() {
+		return source == null ? null : source.getFilterDecision();
+	}
+
+	/** Records the decision of a log filter for all events of the same meter. Ignored if the meter is unknown. */
+	public void setFilterDecision(boolean accepted) {
+		if (source != null) source.setFilterDecision(accepted);
+	}
+
+	/**
+	 * @return The encoding written by {@link MeterEvent#writeToString} or {@link WatcherEvent#writeToString}, or the
+	 *         text of {@link MeterEvent#readableString} for a readable message.
+	 */
+	@Override
+	public String toString() {
+		String t = text;
+		if (t == null) {
+			StringBuilder buffer = new StringBuilder(256);
+			if (meterOrigin == null) {
+				WatcherEvent.writeToString(Meter.parser, getWatcherEvent(), buffer);
+			} else if (readable) {
+				MeterEvent.readableString(getMeterEvent(), buffer);
+			} else {
+				MeterEvent.writeToString(Meter.parser, getMeterEvent(), buffer);
+			}
+			t = text = buffer.toString();
+		}
+		return t;
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sampling policy for the trace output of {@link Meter}s, set per meter name with
+ * {@link MeterFactory#setSampling(String, MeterSampling)}.
+ * <p>
+ * The decision is taken once, when the meter starts. A meter that is not sampled does not log its trace events nor
+ * takes watcher snapshots, but still logs at other levels, updates {@link MeterStatistics} and notifies
+ * {@link MeterListener}s, so statistics remain exact. A meter is sampled if it is the first of each N meters (by
+ * counter) and if the token bucket of its name admits it. Failures may be always logged, even if the meter was not
+ * sampled.
+ * <p>
+ * {@link Rules} and {@link Sampler} implement the resolution by name prefix and the sampling decision. They are public
+ * so that log filters with their own rules use the same implementation.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class MeterSampling {
+	private final int oneIn;
+	private final double perSecond;
+	private final boolean alwaysFailures;
+
+	/**
+	 * @param oneIn Samples one meter in N; 1 samples all meters, 0 none.
+	 * @param perSecond Maximum sampled meters per second for each name, or 0 for no limit.
+	 * @param alwaysFailures If failures are logged at trace level even if the meter was not sampled.
+	 */
+	public MeterSampling(int oneIn, double perSecond, boolean alwaysFailures) {
+		if (oneIn < 0) throw new IllegalArgumentException("oneIn: " + oneIn);
+		if (perSecond < 0.0) throw new IllegalArgumentException("perSecond: " + perSecond);
+		this.oneIn = oneIn;
+		this.perSecond = perSecond;
+		this.alwaysFailures = alwaysFailures;
+	}
+
+	public int getOneIn() { return oneIn; }
+	public double getPerSecond() { return perSecond; }
+	public boolean isAlwaysFailures() { return alwaysFailures; }
+
+	@Override
+	public String toString() {
+		return "1/" + oneIn + (perSecond > 0.0 ? " " + perSecond + "/s" : "") + (alwaysFailures ? " failures" : "");
+	}
+
+	/**
+	 * Policies by meter name prefix. A policy applies to a meter name and to all names below it (separated by '.'); the
+	 * most specific policy wins. Each change increments a version, so that {@link Sampler}s resolved before the change
+	 * are resolved again.
+	 */
+	public static final class Rules {
+		private final ConcurrentMap<String, MeterSampling> policies = new ConcurrentHashMap<String, MeterSampling>();
+		private volatile int version = 0;
+
+		/** @param name Meter name prefix; empty for all meters. */
+		public synchronized void put(String name, MeterSampling policy) {
+			if (name == null || policy == null) throw new IllegalArgumentException();
+			policies.put(name, policy);
+			version++;
+		}
+
+		/** Removes the policy set for the meter name prefix, if any. */
+		public synchronized void remove(String name) {
+			if (policies.remove(name) != null) version++;
+		}
+
+		public synchronized void clear() {
+			policies.clear();
+			version++;
+		}
+
+		public boolean isEmpty() { return policies.isEmpty(); }
+
+		/** @return Policies by meter name prefix, ordered by prefix. */
+		public Map<String, MeterSampling> getPolicies() {
+			return Collections.unmodifiableMap(new TreeMap<String, MeterSampling>(policies));
+		}
+
+		/** @return The most specific policy for the meter name, or null. */
+		public MeterSampling get(String name) {
+			if (policies.isEmpty()) return null;
+			String prefix = name;
+			while (true) {
+				MeterSampling policy = policies.get(prefix);
+				if (policy != null) return policy;
+				if (prefix.length() == 0) return null;
+				int dot = prefix.lastIndexOf('.');
+				prefix = dot < 0 ? "" : prefix.substring(0, dot);
+			}
+		}
+
+		/**
+		 * @param sampler Sampler resolved before for the name, or null.
+		 * @return The given sampler if the policies did not change since it was resolved, otherwise a new sampler.
+		 */
+		public Sampler sampler(Sampler sampler, String name) {
+			/* A versão é lida antes de resolver: uma alteração concorrente força nova resolução na próxima chamada. */
+			int v = this.version;
+			if (sampler != null && sampler.version == v) return sampler;
+			return new Sampler(v, get(name));
+		}
+	}
+
+	/** Applies a policy to one meter name. Kept by the {@link MeterStatistics} of the name. */
+	public static final class Sampler {
+		/** Version of the {@link Rules} this sampler was resolved from. */
+		final int version;
+		/** Policy, or null if no rule applies to the name. */
+		private final MeterSampling sampling;
+		private final TokenBucket bucket;
+
+		Sampler(int version, MeterSampling sampling) {
+			this.version = version;
+			this.sampling = sampling;
+			this.bucket = sampling != null && sampling.perSecond > 0.0 ? new TokenBucket(sampling.perSecond, Math.max(1, (int) sampling.perSecond)) : null;
+		}
+
+		/** @return Policy, or null if no rule applies to the name. */
+		public MeterSampling getSampling() { return sampling; }
+
+		/**
+		 * Decides about one meter. Must be called once per meter, as each call that passes the one in N test takes a
+		 * token from the bucket of the name.
+		 */
+		public boolean sample(long counter) {
+			if (sampling == null) return true;
+			if (sampling.oneIn == 0) return false;
+			if (sampling.oneIn > 1 && (counter - 1) % sampling.oneIn != 0) return false;
+			return bucket == null || bucket.tryAcquire();
+		}
+
+		public boolean alwaysFailures() {
+			return sampling == null || sampling.alwaysFailures;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+/**
+ * Carries the meter running on one thread to another thread, so that meters started by the other thread are linked to
+ * it as their parent (see {@link MeterEvent#getParentName()} and {@link MeterEvent#getRootName()}).
+ * <p>
+ * Capture the scope on the thread that hands over the work and attach it on the thread that executes the work:
+ *
+ * <pre>
+ * final MeterScope scope = MeterScope.capture();
+ * executor.execute(new Runnable() {
+ * 	public void run() {
+ * 		MeterScope previous = scope.attach();
+ * 		try {
+ * 			...
+ * 		} finally {
+ * 			previous.attach();
+ * 		}
+ * 	}
+ * });
+ * </pre>
+ *
+ * {@link MeterExecutors} does this automatically for tasks, executors and thread factories. The global context of
+ * {@link MeterFactory} is shared by all threads and needs no propagation.
+ * <p>
+ * Attaching a scope does not make the captured meter finish on the other thread; it is only the parent of meters
+ * started there. Instances are immutable and may be attached on any number of threads, at the same time.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class MeterScope {
+	/** Scope without meter. */
+	public static final MeterScope EMPTY = new MeterScope(null, null, null);
+
+	private final Meter meter;
+	/** Meters of the thread set by {@link #attach()}; see {@link Meter#setCurrent(Meter, Meter)}. */
+	private final Meter current;
+	private final Meter scope;
+
+	private MeterScope(Meter meter, Meter current, Meter scope) {
+		this.meter = meter;
+		this.current = current;
+		this.scope = scope;
+	}
+
+	/** @return The scope of the current thread: the meter started most recently and not finished yet, if any. */
+	public static MeterScope capture() {
+		Meter current = Meter.current();
+		return current == null ? MeterScope.EMPTY : new MeterScope(current, current, current);
+	}
+
+	/**
+	 * Makes this scope the scope of the current thread.
+	 *
+	 * @return The previous scope of the current thread, to be attached again when the work is done. Attaching it
+	 *         restores the meters of the thread exactly as they were, so that a meter still running on the thread
+	 *         finishes there as usual.
+	 */
+	public MeterScope attach() {
+		Meter previousCurrent = Meter.threadCurrent();
+		Meter previousScope = Meter.threadScope();
+		MeterScope previous = previousCurrent == null && previousScope == null ? MeterScope.EMPTY : new MeterScope(Meter.current(), previousCurrent, previousScope);
+		Meter.setCurrent(current, scope);
+		return previous;
+	}
+
+	/** @return The captured meter, or null if no meter was running. */
+	public Meter getMeter() {
+		return meter;
+	}
+
+	@Override
+	public String toString() {
+		return meter == null ? "MeterScope[]" : "MeterScope[" + meter.getName() + ":" + meter.getCount() + "]";
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+
+/**
+ * Writes every finished {@link MeterEvent} as an OpenTelemetry span into local files, using the OTLP/JSON encoding
+ * (one <code>ExportTraceServiceRequest</code> per line), so that meter trees can be loaded into standard trace viewers
+ * without a network collector.
+ * <p>
+ * Events are queued by the thread that finishes the meter and are written in batches by a single background daemon
+ * thread. If the queue is full, events are discarded and counted ({@link #getDroppedCount()}). Files are compressed
+ * with gzip and are rolled after a given number of uncompressed bytes. Only the newest files are kept.
+ * <p>
+ * A gzip file is complete only after it was closed. Therefore, {@link #start()} registers a shutdown hook that calls
+ * {@link #stop()}, so that pending events are written and the current file is closed when the JVM exits normally.
+ * <p>
+ * Span ids are derived from the process uuid, meter name and counter, so parent and root links are resolved without
+ * keeping state about running meters. Times are converted from {@link System#nanoTime()} to epoch using an offset
+ * measured when the exporter is created.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class MeterSpanExporter implements MeterListener {
+	private static final Logger logger = LoggerFactory.getLogger(MeterSpanExporter.class);
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final File directory;
+	private final String prefix;
+	private final String serviceName;
+	private final int batchSize;
+	private final long batchDelayMillis;
+	private final long maxFileBytes;
+	private final int maxFiles;
+
+	private final BlockingQueue<MeterEvent> queue;
+	private final AtomicLong droppedCount = new AtomicLong(0);
+	private final AtomicLong exportedCount = new AtomicLong(0);
+	/** Difference between epoch (nanoseconds) and {@link System#nanoTime()}. */
+	private final long epochOffset;
+
+	private Thread thread;
+	private Thread shutdownHook;
+	private volatile boolean running;
+
+	/* Estado do arquivo atual, acessado apenas pela thread de exportação. */
+	private Writer writer;
+	private long writtenBytes;
+	private int fileSequence;
+	private final List<File> files = new ArrayList<File>();
+
+	/**
+	 * @param directory Directory where span files are written.
+	 * @param serviceName Value for the <code>service.name</code> resource attribute; also used as file prefix.
+	 */
+	public MeterSpanExporter(File directory, String serviceName) {
+		this(directory, serviceName, 10000, 512, 1000, 16L * 1024 * 1024, 10);
+	}
+
+	/**
+	 * @param directory Directory where span files are written.
+	 * @param serviceName Value for the <code>service.name</code> resource attribute; also used as file prefix.
+	 * @param queueCapacity Maximum number of events waiting to be written.
+	 * @param batchSize Maximum number of spans per batch (line).
+	 * @param batchDelayMillis Maximum time an event waits for other events to fill the batch.
+	 * @param maxFileBytes Uncompressed size after which a new file is started.
+	 * @param maxFiles How many files are kept; older files are deleted.
+	 */
+	public MeterSpanExporter(File directory, String serviceName, int queueCapacity, int batchSize, long batchDelayMillis, long maxFileBytes, int maxFiles) {
+		if (directory == null || serviceName == null) throw new IllegalArgumentException();
+		if (queueCapacity < 1 || batchSize < 1 || batchDelayMillis < 0 || maxFileBytes < 1 || maxFiles < 1) throw new IllegalArgumentException();
+		this.directory = directory;
+		this.serviceName = serviceName;
+		this.prefix = serviceName.replaceAll("[^A-Za-z0-9._-]", "_");
+		this.batchSize = batchSize;
+		this.batchDelayMillis = batchDelayMillis;
+		this.maxFileBytes = maxFileBytes;
+		this.maxFiles = maxFiles;
+		this.queue = new ArrayBlockingQueue<MeterEvent>(queueCapacity);
+		this.epochOffset = System.currentTimeMillis() * 1000000L - System.nanoTime();
+	}
+
+	/** Starts the background thread, registers the exporter as {@link MeterListener} and registers the shutdown hook. */
+	public synchronized MeterSpanExporter start() {
+		if (thread != null) return this;
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				MeterSpanExporter.this.loop();
+			}
+		}, "MeterSpanExporter");
+		thread.setDaemon(true);
+		thread.start();
+		shutdownHook = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				MeterSpanExporter.this.stop();
+			}
+		}, "MeterSpanExporter-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		MeterFactory.addListener(this);
+		return this;
+	}
+
+	/** Unregisters the exporter, writes pending events and closes the current file. */
+	public synchronized void stop() {
+		if (thread == null) return;
+		MeterFactory.removeListener(this);
+		if (Thread.currentThread() != shutdownHook) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				/* A JVM já está terminando; o hook chamará stop() novamente, sem efeito. */
+			}
+		}
+		shutdownHook = null;
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	@Override
+	public void meterStopped(MeterEvent event) {
+		/* A cópia é feita na thread que parou o meter; o meter e seu contexto ainda podem ser alterados depois. */
+		if (! queue.offer(event.copy())) {
+			droppedCount.incrementAndGet();
+		}
+	}
+
+	/** @return How many events were discarded because the queue was full. */
+	public long getDroppedCount() { return droppedCount.get(); }
+	/** @return How many spans were written. */
+	public long getExportedCount() { return exportedCount.get(); }
+
+	// ========================================================================
+
+	private void loop() {
+		List<MeterEvent> batch = new ArrayList<MeterEvent>(batchSize);
+		StringBuilder sb = new StringBuilder(64 * 1024);
+		try {
+			while (running || ! queue.isEmpty()) {
+				try {
+					MeterEvent first = queue.poll(batchDelayMillis, TimeUnit.MILLISECONDS);
+					if (first == null) continue;
+					batch.add(first);
+					long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchDelayMillis);
+					while (batch.size() < batchSize) {
+						long remaining = deadline - System.nanoTime();
+						MeterEvent next = remaining > 0 && running ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+						if (next == null) break;
+						batch.add(next);
+					}
+				} catch (InterruptedException e) {
+					/* Interrompido por stop(): escreve o que sobrou na fila. */
+					queue.drainTo(batch);
+				}
+				if (batch.isEmpty()) continue;
+				try {
+					sb.setLength(0);
+					writeRequest(sb, batch);
+					sb.append('\n');
+					writeLine(sb);
+					exportedCount.addAndGet(batch.size());
+				} catch (IOException e) {
+					logger.warn("Failed to write meter spans.", e);
+					closeFile();
+				}
+				batch.clear();
+			}
+		} finally {
+			closeFile();
+		}
+	}
+
+	private void writeLine(StringBuilder sb) throws IOException {
+		if (writer != null && writtenBytes >= maxFileBytes) {
+			closeFile();
+		}
+		if (writer == null) {
+			openFile();
+		}
+		writer.append(sb);
+		writer.flush();
+		writtenBytes += sb.length();
+	}
+
+	private void openFile() throws IOException {
+		if (! directory.exists() && ! directory.mkdirs()) {
+			throw new IOException(String.format("Failed to create directory '%s'.", directory.getAbsolutePath()));
+		}
+		String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+		File file = new File(directory, String.format("%s-%s-%04d.otlp.json.gz", prefix, timestamp, Integer.valueOf(fileSequence++)));
+		OutputStream os = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024), 64 * 1024);
+		writer = new OutputStreamWriter(os, "UTF-8");
+		writtenBytes = 0;
+		files.add(file);
+		while (files.size() > maxFiles) {
+			File oldest = files.remove(0);
+			if (! oldest.delete()) {
+				logger.warn("Failed to delete old span file {}.", oldest.getAbsolutePath());
+			}
+		}
+	}
+
+	private void closeFile() {
+		if (writer == null) return;
+		try {
+			writer.close();
+		} catch (IOException e) {
+			logger.warn("Failed to close span file.", e);
+		}
+		writer = null;
+	}
+
+	// ========================================================================
+
+	/** Encodes the batch as an OTLP/JSON <code>ExportTraceServiceRequest</code>. */
+	void writeRequest(StringBuilder sb, List<MeterEvent> batch) {
+		sb.append("{\"resourceSpans\":[{\"resource\":{\"attributes\":[");
+		attribute(sb, "service.name", serviceName);
+		sb.append("]},\"scopeSpans\":[{\"scope\":{\"name\":\"infra.slf4j\"},\"spans\":[");
+		boolean first = true;
+		for (MeterEvent e : batch) {
+			if (first) first = false; else sb.append(',');
+			writeSpan(sb, e);
+		}
+		sb.append("]}]}]}");
+	}
+
+	void writeSpan(StringBuilder sb, MeterEvent e) {
+		String uuid = e.getUuid() == null ? "" : e.getUuid();
+		String rootName = e.getRootName() != null ? e.getRootName() : e.getName();
+		long rootCounter = e.getRootName() != null ? e.getRootCounter() : e.getCount();
+
+		sb.append("{\"traceId\":\"");
+		hex(sb, hash(0x9E3779B97F4A7C15L, uuid, rootName, rootCounter));
+		hex(sb, hash(0xC2B2AE3D27D4EB4FL, uuid, rootName, rootCounter));
+		sb.append("\",\"spanId\":\"");
+		hex(sb, hash(0L, uuid, e.getName(), e.getCount()));
+		sb.append('"');
+		if (e.getParentName() != null) {
+			sb.append(",\"parentSpanId\":\"");
+			hex(sb, hash(0L, uuid, e.getParentName(), e.getParentCounter()));
+			sb.append('"');
+		}
+		sb.append(",\"name\":");
+		string(sb, e.getName());
+		sb.append(",\"kind\":1");
+		long start = e.getStartTime() != 0 ? e.getStartTime() : e.getCreateTime();
+		long stop = e.getStopTime() != 0 ? e.getStopTime() : start;
+		sb.append(",\"startTimeUnixNano\":\"").append(start + epochOffset).append('"');
+		sb.append(",\"endTimeUnixNano\":\"").append(stop + epochOffset).append('"');
+
+		sb.append(",\"attributes\":[");
+		attribute(sb, "meter.counter", e.getCount());
+		if (e.getMessage() != null) {
+			sb.append(',');
+			attribute(sb, "meter.message", e.getMessage());
+		}
+		if (e.getStartTime() != 0) {
+			sb.append(',');
+			attribute(sb, "meter.wait_ns", e.getStartTime() - e.getCreateTime());
+		}
+		if (e.getThreadStartName() != null) {
+			sb.append(',');
+			attribute(sb, "thread.id", e.getThreadStartId());
+			sb.append(',');
+			attribute(sb, "thread.name", e.getThreadStartName());
+		}
+		Map<String, String> context = e.context;
+		if (context != null) {
+			for (Entry<String, String> entry : context.entrySet()) {
+				sb.append(',');
+				attribute(sb, entry.getKey(), entry.getValue() == null ? "" : entry.getValue());
+			}
+		}
+		sb.append(']');
+
+		if (! e.isSuccess() && e.getExceptionClass() != null) {
+			sb.append(",\"events\":[{\"timeUnixNano\":\"").append(stop + epochOffset).append("\",\"name\":\"exception\",\"attributes\":[");
+			attribute(sb, "exception.type", e.getExceptionClass());
+			if (e.getExceptionMessage() != null) {
+				sb.append(',');
+				attribute(sb, "exception.message", e.getExceptionMessage());
+			}
+			sb.append("]}]");
+		}
+
+		sb.append(",\"status\":{");
+		if (e.isSuccess()) {
+			sb.append("\"code\":1");
+		} else {
+			sb.append("\"code\":2");
+			String message = e.getExceptionMessage() != null ? e.getExceptionMessage() : e.getExceptionClass();
+			if (message != null) {
+				sb.append(",\"message\":");
+				string(sb, message);
+			}
+		}
+		sb.append("}}");
+	}
+
+	private static void attribute(StringBuilder sb, String key, String value) {
+		sb.append("{\"key\":");
+		string(sb, key);
+		sb.append(",\"value\":{\"stringValue\":");
+		string(sb, value);
+		sb.append("}}");
+	}
+
+	private static void attribute(StringBuilder sb, String key, long value) {
+		sb.append("{\"key\":");
+		string(sb, key);
+		sb.append(",\"value\":{\"intValue\":\"").append(value).append("\"}}");
+	}
+
+	static void string(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					sb.append("\\u00");
+					sb.append(HEX[c >> 4]).append(HEX[c & 0xF]);
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+
+	private static void hex(StringBuilder sb, long value) {
+		for (int shift = 60; shift >= 0; shift -= 4) {
+			sb.append(HEX[(int) (value >>> shift) & 0xF]);
+		}
+	}
+
+	/** FNV-1a 64 bits of uuid, name and counter, mixed with a seed. Never returns zero, which is an invalid id. */
+	static long hash(long seed, String uuid, String name, long counter) {
+		long h = 0xcbf29ce484222325L ^ seed;
+		h = hash(h, uuid);
+		h = (h ^ ':') * 0x100000001b3L;
+		h = hash(h, name);
+		for (int i = 0; i < 8; i++) {
+			h = (h ^ ((counter >>> (i * 8)) & 0xFF)) * 0x100000001b3L;
+		}
+		return h == 0 ? 1 : h;
+	}
+
+	private static long hash(long h, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return "MeterSpanExporter:" + directory.getAbsolutePath() + ":" + serviceName;
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregated statistics of all {@link Meter}s that share the same name.
+ * <p>
+ * Statistics are updated by the {@link Meter} itself, regardless of the logger level, and may be read at any time by
+ * other threads. Execution times are kept in a histogram with 4 sub buckets per power of two (nanoseconds), so
+ * percentiles have a relative error of at most 12.5%.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class MeterStatistics {
+	/** Statistics for each meter name. */
+	private static final ConcurrentMap<String, MeterStatistics> statistics = new ConcurrentHashMap<String, MeterStatistics>();
+
+	private static final int SUB_BUCKET_BITS = 2;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Number of histogram buckets required to represent any positive long value. */
+	static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	/** An arbitrary ID for the job. */
+	private final String name;
+	/** When the statistics were created. */
+	private final long createTime = System.nanoTime();
+
+	/** How many meters were created. Also used to assign the counter of each meter. */
+	private final AtomicLong createCount = new AtomicLong(0);
+	private final AtomicLong startCount = new AtomicLong(0);
+	private final AtomicLong okCount = new AtomicLong(0);
+	private final AtomicLong failCount = new AtomicLong(0);
+	/** Sum of execution time of all finished meters (nanoseconds). */
+	private final AtomicLong totalTime = new AtomicLong(0);
+	/** Longest execution time of all finished meters (nanoseconds). */
+	private final AtomicLong maxTime = new AtomicLong(0);
+	/** Histogram of execution time of all finished meters. */
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	/** How many trace events of meters with this name were accepted by a sampling rule. */
+	private final AtomicLong traceAcceptedCount = new AtomicLong(0);
+	/** How many trace events of meters with this name were rejected by a sampling rule. */
+	private final AtomicLong traceRejectedCount = new AtomicLong(0);
+
+	/** Copy of the most recent snapshot of the virtual machine taken by a meter with this name. */
+	private volatile WatcherEvent lastWatcherEvent;
+	/** Sampling policy for this name, resolved again when policies change. */
+	private volatile MeterSampling.Sampler sampler = new MeterSampling.Sampler(-1, null);
+
+	protected MeterStatistics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Obtains the statistics for the meter name, creating it if necessary.
+	 */
+	public static MeterStatistics getStatistics(String name) {
+		MeterStatistics s = MeterStatistics.statistics.get(name);
+		if (s != null) return s;
+		MeterStatistics newStatistics = new MeterStatistics(name);
+		s = MeterStatistics.statistics.putIfAbsent(name, newStatistics);
+		if (s != null) return s;
+		MeterStatisticsExporter.statisticsCreated(newStatistics);
+		return newStatistics;
+	}
+
+	/** @return Statistics of all meter names known so far, ordered by name. */
+	public static List<MeterStatistics> getAllStatistics() {
+		List<MeterStatistics> list = new ArrayList<MeterStatistics>(MeterStatistics.statistics.values());
+		Collections.sort(list, new Comparator<MeterStatistics>() {
+			@Override
+			public int compare(MeterStatistics o1, MeterStatistics o2) {
+				return o1.name.compareTo(o2.name);
+			}
+		});
+		return list;
+	}
+
+	// ========================================================================
+
+	long created() {
+		return createCount.incrementAndGet();
+	}
+
+	void started() {
+		startCount.incrementAndGet();
+	}
+
+	void ok(long executionTime) {
+		okCount.incrementAndGet();
+		record(executionTime);
+	}
+
+	void failed(long executionTime) {
+		failCount.incrementAndGet();
+		record(executionTime);
+	}
+
+	/**
+	 * Records the decision of a sampling rule about a trace event of a meter with this name. Called by log filters
+	 * that implement such rules.
+	 */
+	public void traceDecided(boolean accepted) {
+		if (accepted) {
+			traceAcceptedCount.incrementAndGet();
+		} else {
+			traceRejectedCount.incrementAndGet();
+		}
+	}
+
+	MeterSampling.Sampler sampler() {
+		MeterSampling.Sampler s = this.sampler;
+		MeterSampling.Sampler current = MeterFactory.getSampling().sampler(s, name);
+		if (current != s) this.sampler = current;
+		return current;
+	}
+
+	void watched(WatcherEvent watcherEvent) {
+		/* O meter reutiliza o mesmo WatcherEvent a cada snapshot. */
+		this.lastWatcherEvent = watcherEvent.copy();
+	}
+
+	private void record(long executionTime) {
+		if (executionTime < 0) executionTime = 0;
+		totalTime.addAndGet(executionTime);
+		histogram.incrementAndGet(MeterStatistics.bucketIndex(executionTime));
+		long max = maxTime.get();
+		while (executionTime > max) {
+			if (maxTime.compareAndSet(max, executionTime)) break;
+			max = maxTime.get();
+		}
+	}
+
+	/** @return Histogram bucket that contains the value. Values below zero are assigned to the first bucket. */
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) return value < 0 ? 0 : (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/** @return Smallest value assigned to the histogram bucket. */
+	static long bucketLowerBound(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/** @return Value that represents all values assigned to the histogram bucket (its middle point). */
+	static long bucketValue(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return bucketLowerBound(index) + width / 2;
+	}
+
+	/** Estimates a percentile from histogram counts. */
+	static long percentile(long[] counts, double percentile) {
+		int index = MeterStatistics.percentileIndex(counts, percentile);
+		return index < 0 ? 0 : MeterStatistics.bucketValue(index);
+	}
+
+	/** @return Index of the bucket that contains the percentile, or -1 if the histogram is empty. */
+	static int percentileIndex(long[] counts, double percentile) {
+		long total = 0;
+		for (long c : counts) total += c;
+		if (total == 0) return -1;
+		long rank = (long) Math.ceil(percentile / 100.0 * total);
+		if (rank < 1) rank = 1;
+		long accumulated = 0;
+		for (int i = 0; i < counts.length; i++) {
+			accumulated += counts[i];
+			if (accumulated >= rank) return i;
+		}
+		return counts.length - 1;
+	}
+
+	// ========================================================================
+
+	public String getName() { return name; }
+	public long getCreateCount() { return createCount.get(); }
+	public long getStartCount() { return startCount.get(); }
+	public long getOkCount() { return okCount.get(); }
+	public long getFailCount() { return failCount.get(); }
+	/** @return Number of meters that finished, either successfully or with failure. */
+	public long getFinishCount() { return okCount.get() + failCount.get(); }
+	/** @return Number of meters that were started and did not finish yet. */
+	public long getActiveCount() { return Math.max(0, startCount.get() - getFinishCount()); }
+	/** @return Sum of execution time of all finished meters (nanoseconds). */
+	public long getTotalTime() { return totalTime.get(); }
+	/** @return Longest execution time of all finished meters (nanoseconds). */
+	public long getMaxTime() { return maxTime.get(); }
+	/** @return Mean execution time of all finished meters (nanoseconds). */
+	public long getMeanTime() {
+		long count = getFinishCount();
+		return count == 0 ? 0 : totalTime.get() / count;
+	}
+	/** @return Finished meters per second, since the first meter with this name was created. */
+	public double getRate() {
+		long elapsed = System.nanoTime() - createTime;
+		if (elapsed <= 0) return 0.0;
+		return getFinishCount() * 1000000000.0 / elapsed;
+	}
+	/** @return Estimated execution time (nanoseconds) for the percentile (0 to 100). */
+	public long getPercentile(double percentile) {
+		return MeterStatistics.percentile(getHistogram(), percentile);
+	}
+	/** @return Copy of the histogram of execution times. */
+	public long[] getHistogram() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram.get(i);
+		}
+		return counts;
+	}
+	/** @return How many trace events were accepted by a sampling rule. */
+	public long getTraceAcceptedCount() { return traceAcceptedCount.get(); }
+	/** @return How many trace events were rejected by a sampling rule. */
+	public long getTraceRejectedCount() { return traceRejectedCount.get(); }
+	/** @return Copy of the most recent snapshot of the virtual machine taken by a meter with this name, or null if none. */
+	public WatcherEvent getLastWatcherEvent() {
+		WatcherEvent w = lastWatcherEvent;
+		return w == null ? null : w.copy();
+	}
+
+	@Override
+	public String toString() {
+		return name + ":" + getFinishCount();
+	}
+}
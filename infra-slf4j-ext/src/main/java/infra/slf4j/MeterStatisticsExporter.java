@@ -0,0 +1,240 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Publishes {@link MeterStatistics} for monitoring agents.
+ * <ul>
+ * <li>{@link #installJmx()} registers one dynamic MBean per meter name, as
+ * <code>infra.slf4j:type=Meter,name="..."</code>. Names that appear later are registered as soon as the first meter
+ * is created.
+ * <li>{@link #startHttp(int)} starts a HTTP server, bound to the loopback interface only, that renders all statistics
+ * in the Prometheus text format at <code>/metrics</code>.
+ * </ul>
+ * Both are optional and disabled by default.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class MeterStatisticsExporter {
+	public static final String METRICS_PATH = "/metrics";
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private static final double[] QUANTILES = new double[] { 0.5, 0.9, 0.95, 0.99 };
+
+	private static MBeanServer mbeanServer = null;
+	private static HttpServer httpServer = null;
+
+	private MeterStatisticsExporter() {
+		// Utility class.
+	}
+
+	// ========================================================================
+
+	/** Registers all known and future meter statistics on the platform MBean server. */
+	public static synchronized void installJmx() {
+		if (MeterStatisticsExporter.mbeanServer != null) return;
+		MeterStatisticsExporter.mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (MeterStatistics s : MeterStatistics.getAllStatistics()) {
+			MeterStatisticsExporter.register(s);
+		}
+	}
+
+	/** Unregisters all meter statistics from the platform MBean server. */
+	public static synchronized void uninstallJmx() {
+		MBeanServer server = MeterStatisticsExporter.mbeanServer;
+		if (server == null) return;
+		MeterStatisticsExporter.mbeanServer = null;
+		for (MeterStatistics s : MeterStatistics.getAllStatistics()) {
+			try {
+				ObjectName objectName = MeterStatisticsMBean.objectName(s.getName());
+				if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+			} catch (JMException e) {
+				LoggerFactory.getLogger(MeterStatisticsExporter.class).warn("Failed to unregister meter MBean.", e);
+			}
+		}
+	}
+
+	/** Called by {@link MeterStatistics} when statistics for a new meter name are created. */
+	static synchronized void statisticsCreated(MeterStatistics statistics) {
+		if (MeterStatisticsExporter.mbeanServer == null) return;
+		MeterStatisticsExporter.register(statistics);
+	}
+
+	private static void register(MeterStatistics statistics) {
+		try {
+			MeterStatisticsMBean mbean = new MeterStatisticsMBean(statistics);
+			if (! MeterStatisticsExporter.mbeanServer.isRegistered(mbean.getObjectName())) {
+				MeterStatisticsExporter.mbeanServer.registerMBean(mbean, mbean.getObjectName());
+			}
+		} catch (JMException e) {
+			LoggerFactory.getLogger(MeterStatisticsExporter.class).warn("Failed to register meter MBean.", e);
+		}
+	}
+
+	// ========================================================================
+
+	/**
+	 * Starts the HTTP endpoint on the loopback interface. Does nothing if already started.
+	 * @param port TCP port, or 0 to choose any free port.
+	 * @return The port the endpoint is listening on.
+	 */
+	public static synchronized int startHttp(int port) throws IOException {
+		if (MeterStatisticsExporter.httpServer != null) return MeterStatisticsExporter.httpServer.getAddress().getPort();
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 0);
+		server.createContext(METRICS_PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if (! "GET".equals(exchange.getRequestMethod())) {
+						exchange.sendResponseHeaders(405, -1);
+						return;
+					}
+					StringBuilder sb = new StringBuilder(4096);
+					MeterStatisticsExporter.writePrometheus(sb);
+					byte[] body = sb.toString().getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream os = exchange.getResponseBody();
+					os.write(body);
+					os.close();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		MeterStatisticsExporter.httpServer = server;
+		return server.getAddress().getPort();
+	}
+
+	/** Stops the HTTP endpoint, if started. */
+	public static synchronized void stopHttp() {
+		if (MeterStatisticsExporter.httpServer == null) return;
+		MeterStatisticsExporter.httpServer.stop(0);
+		MeterStatisticsExporter.httpServer = null;
+	}
+
+	// ========================================================================
+
+	/** Renders all meter statistics in the Prometheus text exposition format. Times are reported in seconds. */
+	public static void writePrometheus(StringBuilder sb) {
+		List<MeterStatistics> all = MeterStatistics.getAllStatistics();
+
+		sb.append("# HELP infra_meter_total Finished meters.\n");
+		sb.append("# TYPE infra_meter_total counter\n");
+		for (MeterStatistics s : all) {
+			sample(sb, "infra_meter_total", s.getName(), "result", "ok", s.getOkCount());
+			sample(sb, "infra_meter_total", s.getName(), "result", "fail", s.getFailCount());
+		}
+
+		sb.append("# HELP infra_meter_trace_total Trace events decided by sampling rules.\n");
+		sb.append("# TYPE infra_meter_trace_total counter\n");
+		for (MeterStatistics s : all) {
+			if (s.getTraceAcceptedCount() == 0 && s.getTraceRejectedCount() == 0) continue;
+			sample(sb, "infra_meter_trace_total", s.getName(), "decision", "accepted", s.getTraceAcceptedCount());
+			sample(sb, "infra_meter_trace_total", s.getName(), "decision", "rejected", s.getTraceRejectedCount());
+		}
+
+		sb.append("# HELP infra_meter_active Meters started and not finished yet.\n");
+		sb.append("# TYPE infra_meter_active gauge\n");
+		for (MeterStatistics s : all) {
+			sample(sb, "infra_meter_active", s.getName(), null, null, s.getActiveCount());
+		}
+
+		sb.append("# HELP infra_meter_seconds Execution time of finished meters.\n");
+		sb.append("# TYPE infra_meter_seconds summary\n");
+		for (MeterStatistics s : all) {
+			long[] histogram = s.getHistogram();
+			for (double q : QUANTILES) {
+				sample(sb, "infra_meter_seconds", s.getName(), "quantile", Double.toString(q), seconds(MeterStatistics.percentile(histogram, q * 100.0)));
+			}
+			sample(sb, "infra_meter_seconds_sum", s.getName(), null, null, seconds(s.getTotalTime()));
+			sample(sb, "infra_meter_seconds_count", s.getName(), null, null, s.getFinishCount());
+		}
+
+		sb.append("# HELP infra_meter_watcher Latest virtual machine snapshot taken by meters.\n");
+		sb.append("# TYPE infra_meter_watcher gauge\n");
+		for (MeterStatistics s : all) {
+			WatcherEvent w = s.getLastWatcherEvent();
+			if (w == null) continue;
+			sample(sb, "infra_meter_watcher", s.getName(), "field", "heap_used_bytes", w.getHeap_used());
+			sample(sb, "infra_meter_watcher", s.getName(), "field", "heap_commited_bytes", w.getHeap_commited());
+			sample(sb, "infra_meter_watcher", s.getName(), "field", "nonheap_used_bytes", w.getNonHeap_used());
+			sample(sb, "infra_meter_watcher", s.getName(), "field", "nonheap_commited_bytes", w.getNonHeap_commited());
+			sample(sb, "infra_meter_watcher", s.getName(), "field", "used_memory_bytes", w.getusedMemory());
+			sample(sb, "infra_meter_watcher", s.getName(), "field", "gc_count", w.getGarbageCollector_count());
+			sample(sb, "infra_meter_watcher", s.getName(), "field", "gc_seconds", w.getGarbageCollector_time() / 1000.0);
+			sample(sb, "infra_meter_watcher", s.getName(), "field", "system_load", w.getSystemLoad());
+		}
+	}
+
+	private static double seconds(long nanoseconds) {
+		return nanoseconds / 1000000000.0;
+	}
+
+	private static void sample(StringBuilder sb, String metric, String name, String label, String labelValue, long value) {
+		labels(sb, metric, name, label, labelValue);
+		sb.append(value).append('\n');
+	}
+
+	private static void sample(StringBuilder sb, String metric, String name, String label, String labelValue, double value) {
+		labels(sb, metric, name, label, labelValue);
+		if (Double.isNaN(value)) {
+			sb.append("NaN");
+		} else if (Double.isInfinite(value)) {
+			sb.append(value > 0 ? "+Inf" : "-Inf");
+		} else {
+			sb.append(Double.toString(value));
+		}
+		sb.append('\n');
+	}
+
+	private static void labels(StringBuilder sb, String metric, String name, String label, String labelValue) {
+		sb.append(metric).append("{name=\"");
+		escape(sb, name);
+		sb.append('"');
+		if (label != null) {
+			sb.append(',').append(label).append("=\"");
+			escape(sb, labelValue);
+			sb.append('"');
+		}
+		sb.append("} ");
+	}
+
+	private static void escape(StringBuilder sb, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\') sb.append("\\\\");
+			else if (c == '"') sb.append("\\\"");
+			else if (c == '\n') sb.append("\\n");
+			else sb.append(c);
+		}
+	}
+}
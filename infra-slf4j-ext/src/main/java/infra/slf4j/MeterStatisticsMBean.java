@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Dynamic MBean that publishes the {@link MeterStatistics} of one meter name and the latest {@link WatcherEvent}
+ * snapshot taken by a meter with this name. All attributes are read only.
+ *
+ * @author Daniel Felix Ferber
+ */
+class MeterStatisticsMBean implements DynamicMBean {
+	public static final String DOMAIN = "infra.slf4j";
+
+	private static final String[] ATTRIBUTES = new String[] {
+		"Name", "CreateCount", "StartCount", "OkCount", "FailCount", "ActiveCount",
+		"TotalTime", "MeanTime", "MaxTime", "Rate",
+		"Percentile50", "Percentile90", "Percentile95", "Percentile99",
+		"TraceAcceptedCount", "TraceRejectedCount",
+		"WatcherTime", "HeapUsed", "HeapCommited", "NonHeapUsed", "NonHeapCommited",
+		"UsedMemory", "MaxMemory", "GarbageCollectorCount", "GarbageCollectorTime", "SystemLoad",
+	};
+
+	private static final MBeanInfo info = MeterStatisticsMBean.createInfo();
+
+	private final MeterStatistics statistics;
+	private final ObjectName objectName;
+
+	MeterStatisticsMBean(MeterStatistics statistics) throws MalformedObjectNameException {
+		this.statistics = statistics;
+		this.objectName = MeterStatisticsMBean.objectName(statistics.getName());
+	}
+
+	static ObjectName objectName(String meterName) throws MalformedObjectNameException {
+		return new ObjectName(DOMAIN + ":type=Meter,name=" + ObjectName.quote(meterName));
+	}
+
+	ObjectName getObjectName() { return objectName; }
+
+	private static MBeanInfo createInfo() {
+		MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[ATTRIBUTES.length];
+		for (int i = 0; i < ATTRIBUTES.length; i++) {
+			String name = ATTRIBUTES[i];
+			String type;
+			if ("Name".equals(name)) {
+				type = String.class.getName();
+			} else if ("Rate".equals(name) || "SystemLoad".equals(name)) {
+				type = Double.class.getName();
+			} else {
+				type = Long.class.getName();
+			}
+			attributes[i] = new MBeanAttributeInfo(name, type, name, true, false, false);
+		}
+		return new MBeanInfo(MeterStatisticsMBean.class.getName(), "Statistics of meters that share the same name. Times are in nanoseconds.", attributes,
+				new MBeanConstructorInfo[0], new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		MeterStatistics s = statistics;
+		if ("Name".equals(attribute)) return s.getName();
+		if ("CreateCount".equals(attribute)) return Long.valueOf(s.getCreateCount());
+		if ("StartCount".equals(attribute)) return Long.valueOf(s.getStartCount());
+		if ("OkCount".equals(attribute)) return Long.valueOf(s.getOkCount());
+		if ("FailCount".equals(attribute)) return Long.valueOf(s.getFailCount());
+		if ("ActiveCount".equals(attribute)) return Long.valueOf(s.getActiveCount());
+		if ("TotalTime".equals(attribute)) return Long.valueOf(s.getTotalTime());
+		if ("MeanTime".equals(attribute)) return Long.valueOf(s.getMeanTime());
+		if ("MaxTime".equals(attribute)) return Long.valueOf(s.getMaxTime());
+		if ("Rate".equals(attribute)) return Double.valueOf(s.getRate());
+		if ("Percentile50".equals(attribute)) return Long.valueOf(s.getPercentile(50));
+		if ("Percentile90".equals(attribute)) return Long.valueOf(s.getPercentile(90));
+		if ("Percentile95".equals(attribute)) return Long.valueOf(s.getPercentile(95));
+		if ("Percentile99".equals(attribute)) return Long.valueOf(s.getPercentile(99));
+		if ("TraceAcceptedCount".equals(attribute)) return Long.valueOf(s.getTraceAcceptedCount());
+		if ("TraceRejectedCount".equals(attribute)) return Long.valueOf(s.getTraceRejectedCount());
+
+		WatcherEvent w = s.getLastWatcherEvent();
+		if ("WatcherTime".equals(attribute)) return w == null ? null : Long.valueOf(w.getTime());
+		if ("HeapUsed".equals(attribute)) return w == null ? null : Long.valueOf(w.getHeap_used());
+		if ("HeapCommited".equals(attribute)) return w == null ? null : Long.valueOf(w.getHeap_commited());
+		if ("NonHeapUsed".equals(attribute)) return w == null ? null : Long.valueOf(w.getNonHeap_used());
+		if ("NonHeapCommited".equals(attribute)) return w == null ? null : Long.valueOf(w.getNonHeap_commited());
+		if ("UsedMemory".equals(attribute)) return w == null ? null : Long.valueOf(w.getusedMemory());
+		if ("MaxMemory".equals(attribute)) return w == null ? null : Long.valueOf(w.getRuntime_maxMemory());
+		if ("GarbageCollectorCount".equals(attribute)) return w == null ? null : Long.valueOf(w.getGarbageCollector_count());
+		if ("GarbageCollectorTime".equals(attribute)) return w == null ? null : Long.valueOf(w.getGarbageCollector_time());
+		if ("SystemLoad".equals(attribute)) return w == null ? null : Double.valueOf(w.getSystemLoad());
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (AttributeNotFoundException e) {
+				// Ignora atributos desconhecidos, conforme contrato do DynamicMBean.
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("read only: " + attribute.getName());
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName), "No operations: " + actionName);
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		return MeterStatisticsMBean.info;
+	}
+}
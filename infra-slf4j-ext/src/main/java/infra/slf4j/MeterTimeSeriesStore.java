@@ -0,0 +1,530 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * Embedded time series store that keeps, for each meter name, aggregates of finished meters (count, failures, sum of
+ * execution time and a histogram with one bucket per power of two nanoseconds).
+ * <p>
+ * Each name and {@link Tier} is kept in its own memory mapped ring file. Every event is added to all tiers, so the
+ * coarser tiers (1 minute, 1 hour) are always up to date and survive after the finer tier (1 second) was overwritten.
+ * With the default tiers, a name takes about 20MB of disk and keeps 6 hours at 1 second, 30 days at 1 minute and 2
+ * years at 1 hour. Files are created sparse, so unused slots do not take disk space on most file systems.
+ * <p>
+ * Register with {@link MeterFactory#addListener(MeterListener)} to record all meters, or call
+ * {@link #record(String, long, long, boolean)} directly. Queries choose the finest tier that still covers the
+ * requested range.
+ * <p>
+ * The files of a name are created on first use. As creating and mapping them is slow, the thread that finishes the
+ * first meter of a name only queues the event; a background daemon thread creates the files and records it. Further
+ * events of the name are recorded directly. At most <code>maxNames</code> names are kept, so that the disk and address
+ * space taken by the store are bounded ({@link #getBytesPerName()} each); events of further names are discarded and
+ * counted ({@link #getDroppedCount()}). {@link #close()} records queued events, writes all changes and unmaps the files.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class MeterTimeSeriesStore implements MeterListener {
+	private static final Logger logger = LoggerFactory.getLogger(MeterTimeSeriesStore.class);
+
+	private static final int MAGIC = 0x4D545353; // "MTSS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	/** One bucket per power of two, the same as the histogram of {@link MeterStatistics} without sub buckets. */
+	static final int BUCKETS = MeterStatistics.BUCKETS / MeterStatistics.SUB_BUCKETS;
+	/* Slot: período (long), quantidade (int), falhas (int), soma (long), buckets (int[]). */
+	private static final int SLOT_PERIOD = 0;
+	private static final int SLOT_COUNT = 8;
+	private static final int SLOT_FAIL = 12;
+	private static final int SLOT_SUM = 16;
+	private static final int SLOT_BUCKETS = 24;
+	private static final int SLOT_SIZE = SLOT_BUCKETS + BUCKETS * 4;
+
+	/** Resolution and retention of one level of the store. */
+	public static final class Tier {
+		public static final Tier SECOND = new Tier("1s", 1, 6 * 60 * 60);
+		public static final Tier MINUTE = new Tier("1m", 60, 30 * 24 * 60);
+		public static final Tier HOUR = new Tier("1h", 60 * 60, 2 * 365 * 24);
+
+		private final String suffix;
+		private final int resolution;
+		private final int slots;
+
+		/**
+		 * @param suffix Suffix of the file name; must be unique among the tiers of a store.
+		 * @param resolution Seconds aggregated in one slot.
+		 * @param slots How many slots are kept.
+		 */
+		public Tier(String suffix, int resolution, int slots) {
+			if (suffix == null || resolution < 1 || slots < 1) throw new IllegalArgumentException();
+			this.suffix = suffix;
+			this.resolution = resolution;
+			this.slots = slots;
+		}
+
+		public String getSuffix() { return suffix; }
+		/** @return Seconds aggregated in one slot. */
+		public int getResolution() { return resolution; }
+		public int getSlots() { return slots; }
+		/** @return Seconds covered by the tier. */
+		public long getRetention() { return (long) resolution * slots; }
+	}
+
+	/** Aggregate of one slot. Times are in nanoseconds; the timestamp is in epoch milliseconds. */
+	public static final class Sample {
+		private final long timestamp;
+		private final int resolution;
+		private final long count;
+		private final long failCount;
+		private final long sum;
+		private final long[] histogram;
+
+		Sample(long timestamp, int resolution, long count, long failCount, long sum, long[] histogram) {
+			this.timestamp = timestamp;
+			this.resolution = resolution;
+			this.count = count;
+			this.failCount = failCount;
+			this.sum = sum;
+			this.histogram = histogram;
+		}
+
+		/** @return Start of the slot, epoch milliseconds. */
+		public long getTimestamp() { return timestamp; }
+		/** @return Seconds aggregated in the slot. */
+		public int getResolution() { return resolution; }
+		public long getCount() { return count; }
+		public long getFailCount() { return failCount; }
+		/** @return Sum of execution time (nanoseconds). */
+		public long getSum() { return sum; }
+		public long getMeanTime() { return count == 0 ? 0 : sum / count; }
+		/** @return Finished meters per second within the slot. */
+		public double getRate() { return (double) count / resolution; }
+		/** @return Estimated execution time (nanoseconds) for the percentile (0 to 100) within the slot. */
+		public long getPercentile(double percentile) { return MeterTimeSeriesStore.percentile(histogram, percentile); }
+		public long[] getHistogram() { return histogram.clone(); }
+	}
+
+	/** Ring file of one name and tier. Access is synchronized on the instance. */
+	private static final class Series {
+		private final Tier tier;
+		private MappedByteBuffer buffer;
+
+		Series(File file, Tier tier) throws IOException {
+			this.tier = tier;
+			long size = MeterTimeSeriesStore.fileSize(tier);
+			if (size > Integer.MAX_VALUE) throw new IOException("tier too large: " + tier.suffix);
+			boolean exists = file.exists() && file.length() == size;
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				if (! exists) raf.setLength(0);
+				raf.setLength(size);
+				this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			} finally {
+				/* O mapeamento continua válido depois de fechar o arquivo. */
+				raf.close();
+			}
+			if (! exists || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != tier.resolution
+					|| buffer.getInt(12) != tier.slots || buffer.getInt(16) != BUCKETS) {
+				if (exists) {
+					MeterTimeSeriesStore.logger.warn("Incompatible time series file {}, discarding contents.", file.getAbsolutePath());
+					for (int i = 0; i < size; i += 8) buffer.putLong(i, 0);
+				}
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, tier.resolution);
+				buffer.putInt(12, tier.slots);
+				buffer.putInt(16, BUCKETS);
+			}
+		}
+
+		synchronized void add(long epochSeconds, long count, long failCount, long sum, int bucket) {
+			if (buffer == null) return;
+			long period = epochSeconds / tier.resolution;
+			int offset = HEADER_SIZE + (int) (period % tier.slots) * SLOT_SIZE;
+			if (buffer.getLong(offset + SLOT_PERIOD) != period + 1) {
+				/* Slot contém período antigo (ou nenhum): reinicia. Períodos são gravados com +1 para distinguir de slot vazio. */
+				for (int i = SLOT_COUNT; i < SLOT_SIZE; i += 4) buffer.putInt(offset + i, 0);
+				buffer.putLong(offset + SLOT_PERIOD, period + 1);
+			}
+			buffer.putInt(offset + SLOT_COUNT, buffer.getInt(offset + SLOT_COUNT) + (int) count);
+			buffer.putInt(offset + SLOT_FAIL, buffer.getInt(offset + SLOT_FAIL) + (int) failCount);
+			buffer.putLong(offset + SLOT_SUM, buffer.getLong(offset + SLOT_SUM) + sum);
+			int b = offset + SLOT_BUCKETS + bucket * 4;
+			buffer.putInt(b, buffer.getInt(b) + (int) count);
+		}
+
+		synchronized void read(long fromSeconds, long toSeconds, List<Sample> result) {
+			if (buffer == null) return;
+			long firstPeriod = fromSeconds / tier.resolution;
+			long lastPeriod = toSeconds / tier.resolution;
+			if (lastPeriod - firstPeriod >= tier.slots) firstPeriod = lastPeriod - tier.slots + 1;
+			for (long period = firstPeriod; period <= lastPeriod; period++) {
+				int offset = HEADER_SIZE + (int) (period % tier.slots) * SLOT_SIZE;
+				if (buffer.getLong(offset + SLOT_PERIOD) != period + 1) continue;
+				long[] histogram = new long[BUCKETS];
+				for (int i = 0; i < BUCKETS; i++) {
+					histogram[i] = buffer.getInt(offset + SLOT_BUCKETS + i * 4) & 0xFFFFFFFFL;
+				}
+				result.add(new Sample(period * tier.resolution * 1000L, tier.resolution,
+						buffer.getInt(offset + SLOT_COUNT) & 0xFFFFFFFFL, buffer.getInt(offset + SLOT_FAIL) & 0xFFFFFFFFL,
+						buffer.getLong(offset + SLOT_SUM), histogram));
+			}
+		}
+
+		synchronized void force() {
+			if (buffer != null) buffer.force();
+		}
+
+		synchronized void close() {
+			if (buffer == null) return;
+			buffer.force();
+			MeterTimeSeriesStore.unmap(buffer);
+			buffer = null;
+		}
+	}
+
+	/** Event waiting for the files of its name to be created. */
+	private static final class Pending {
+		final String name;
+		final long timestamp;
+		final long executionTime;
+		final boolean success;
+
+		Pending(String name, long timestamp, long executionTime, boolean success) {
+			this.name = name;
+			this.timestamp = timestamp;
+			this.executionTime = executionTime;
+			this.success = success;
+		}
+	}
+
+	/** Default maximum number of names. */
+	public static final int DEFAULT_MAX_NAMES = 256;
+	/** Default maximum number of events waiting for the files of their name to be created. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+	private final File directory;
+	private final Tier[] tiers;
+	private final int maxNames;
+	/** Series of each name, one per tier, in the same order as {@link #tiers}. */
+	private final ConcurrentMap<String, Series[]> series = new ConcurrentHashMap<String, Series[]>();
+	private final BlockingQueue<Pending> queue;
+	private final AtomicLong droppedCount = new AtomicLong(0);
+
+	/** Creates the files of new names; started on the first new name. Guarded by this. */
+	private Thread thread;
+	/** Set by {@link #close()}: no more events are queued. */
+	private volatile boolean closed;
+	/** Set by {@link #close()} after queued events were recorded: files are unmapped. Guarded by this. */
+	private boolean released;
+
+	/** Store with the default tiers (1 second, 1 minute, 1 hour). */
+	public MeterTimeSeriesStore(File directory) {
+		this(directory, DEFAULT_MAX_NAMES, Tier.SECOND, Tier.MINUTE, Tier.HOUR);
+	}
+
+	/** @param tiers Tiers ordered from the finest to the coarsest resolution. */
+	public MeterTimeSeriesStore(File directory, Tier... tiers) {
+		this(directory, DEFAULT_MAX_NAMES, tiers);
+	}
+
+	/**
+	 * @param maxNames Maximum number of names kept by the store.
+	 * @param tiers Tiers ordered from the finest to the coarsest resolution.
+	 */
+	public MeterTimeSeriesStore(File directory, int maxNames, Tier... tiers) {
+		if (directory == null || maxNames < 1 || tiers.length == 0) throw new IllegalArgumentException();
+		for (int i = 1; i < tiers.length; i++) {
+			if (tiers[i].resolution < tiers[i - 1].resolution) throw new IllegalArgumentException("tiers must be ordered by resolution");
+		}
+		for (Tier tier : tiers) {
+			if (MeterTimeSeriesStore.fileSize(tier) > Integer.MAX_VALUE) throw new IllegalArgumentException("tier too large: " + tier.suffix);
+		}
+		this.directory = directory;
+		this.tiers = tiers.clone();
+		this.maxNames = maxNames;
+		this.queue = new ArrayBlockingQueue<Pending>(DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/** Records the event directly if the files of its name exist, otherwise queues it for the background thread. */
+	@Override
+	public void meterStopped(MeterEvent event) {
+		long executionTime = event.getStartTime() == 0 ? 0 : event.getStopTime() - event.getStartTime();
+		long timestamp = System.currentTimeMillis();
+		Series[] s = series.get(event.getName());
+		if (s != null) {
+			add(s, timestamp, executionTime, event.isSuccess());
+			return;
+		}
+		if (closed || ! queue.offer(new Pending(event.getName(), timestamp, executionTime, event.isSuccess()))) {
+			droppedCount.incrementAndGet();
+			return;
+		}
+		startThread();
+	}
+
+	/**
+	 * Adds one finished execution to all tiers. Creates the files of the name on the calling thread, if required.
+	 * @param timestamp When the execution finished, epoch milliseconds.
+	 * @param executionTime Nanoseconds.
+	 */
+	public void record(String name, long timestamp, long executionTime, boolean success) {
+		Series[] s = getSeries(name, true);
+		if (s == null) {
+			droppedCount.incrementAndGet();
+			return;
+		}
+		add(s, timestamp, executionTime, success);
+	}
+
+	private static void add(Series[] s, long timestamp, long executionTime, boolean success) {
+		if (executionTime < 0) executionTime = 0;
+		int bucket = MeterStatistics.bucketIndex(executionTime) / MeterStatistics.SUB_BUCKETS;
+		long seconds = timestamp / 1000;
+		for (Series t : s) {
+			t.add(seconds, 1, success ? 0 : 1, executionTime, bucket);
+		}
+	}
+
+	/**
+	 * Samples of the range, from the finest tier that covers the whole range.
+	 * @param from Epoch milliseconds, inclusive.
+	 * @param to Epoch milliseconds, inclusive.
+	 * @return Samples ordered by time. Slots without executions are omitted.
+	 */
+	public List<Sample> range(String name, long from, long to) {
+		return range(name, from, to, chooseTier(from));
+	}
+
+	/** Samples of the range, from the given tier. */
+	public List<Sample> range(String name, long from, long to, Tier tier) {
+		int index = -1;
+		for (int i = 0; i < tiers.length; i++) {
+			if (tiers[i] == tier) index = i;
+		}
+		if (index < 0) throw new IllegalArgumentException("unknown tier");
+		Series[] s = getSeries(name, false);
+		if (s == null || from > to) return Collections.emptyList();
+		List<Sample> result = new ArrayList<Sample>();
+		s[index].read(from / 1000, to / 1000, result);
+		return result;
+	}
+
+	/** @return Finished meters per second over the range. */
+	public double rate(String name, long from, long to) {
+		long count = 0;
+		for (Sample sample : range(name, from, to)) count += sample.count;
+		double seconds = (to - from + 1) / 1000.0;
+		return seconds <= 0 ? 0.0 : count / seconds;
+	}
+
+	/** @return Estimated execution time (nanoseconds) for the percentile (0 to 100) over the whole range. */
+	public long percentile(String name, long from, long to, double percentile) {
+		long[] histogram = new long[BUCKETS];
+		for (Sample sample : range(name, from, to)) {
+			for (int i = 0; i < BUCKETS; i++) histogram[i] += sample.histogram[i];
+		}
+		return MeterTimeSeriesStore.percentile(histogram, percentile);
+	}
+
+	/** @return Names recorded or queried since the store was created. */
+	public List<String> getNames() {
+		List<String> names = new ArrayList<String>(series.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	/** Writes all changes to disk. */
+	public void flush() {
+		for (Series[] s : series.values()) {
+			for (Series t : s) t.force();
+		}
+	}
+
+	/**
+	 * Records queued events, writes all changes to disk and unmaps the files. Further events are discarded; queries
+	 * return no samples.
+	 */
+	public void close() {
+		Thread t;
+		synchronized (this) {
+			closed = true;
+			t = thread;
+			thread = null;
+		}
+		if (t != null) {
+			/* Sem interromper: o mapeamento do arquivo falha se a thread for interrompida. */
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		drain();
+		synchronized (this) {
+			released = true;
+			for (Series[] s : series.values()) {
+				for (Series t2 : s) t2.close();
+			}
+			series.clear();
+		}
+	}
+
+	/** @return Events discarded because the queue was full, the maximum number of names was reached or the store was closed. */
+	public long getDroppedCount() { return droppedCount.get(); }
+
+	/** @return Disk (and address space) taken by the files of one name (bytes). */
+	public long getBytesPerName() {
+		long size = 0;
+		for (Tier tier : tiers) size += MeterTimeSeriesStore.fileSize(tier);
+		return size;
+	}
+
+	// ========================================================================
+
+	private Tier chooseTier(long from) {
+		long age = (System.currentTimeMillis() - from) / 1000;
+		for (Tier tier : tiers) {
+			if (age < tier.getRetention()) return tier;
+		}
+		return tiers[tiers.length - 1];
+	}
+
+	private synchronized void startThread() {
+		if (thread != null || closed) return;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				MeterTimeSeriesStore.this.loop();
+			}
+		}, "MeterTimeSeriesStore");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void loop() {
+		while (! closed) {
+			try {
+				Pending p = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (p != null) record(p.name, p.timestamp, p.executionTime, p.success);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void drain() {
+		Pending p;
+		while ((p = queue.poll()) != null) {
+			record(p.name, p.timestamp, p.executionTime, p.success);
+		}
+	}
+
+	private Series[] getSeries(String name, boolean create) {
+		Series[] s = series.get(name);
+		if (s != null) return s;
+		synchronized (this) {
+			s = series.get(name);
+			if (s != null) return s;
+			if (released || series.size() >= maxNames) return null;
+			String fileName = MeterTimeSeriesStore.fileName(name);
+			if (! create && ! new File(directory, fileName + "." + tiers[0].suffix + ".ts").exists()) return null;
+			try {
+				if (! directory.exists() && ! directory.mkdirs()) {
+					throw new IOException(String.format("Failed to create directory '%s'.", directory.getAbsolutePath()));
+				}
+				s = new Series[tiers.length];
+				for (int i = 0; i < tiers.length; i++) {
+					s[i] = new Series(new File(directory, fileName + "." + tiers[i].suffix + ".ts"), tiers[i]);
+				}
+			} catch (IOException e) {
+				logger.warn("Failed to open time series for {}.", name, e);
+				return null;
+			}
+			series.put(name, s);
+			return s;
+		}
+	}
+
+	private static long fileSize(Tier tier) {
+		return HEADER_SIZE + (long) tier.slots * SLOT_SIZE;
+	}
+
+	/**
+	 * Releases the mapping without waiting for the garbage collector, so that the file may be deleted or mapped again.
+	 * Uses the internal cleaner of the JVM, if accessible; otherwise, the mapping is released when collected.
+	 */
+	static void unmap(MappedByteBuffer buffer) {
+		try {
+			/* Java 9 e posterior. */
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		} catch (Exception e) {
+			/* Tenta a forma do Java 8 e anteriores. */
+		}
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+		} catch (Exception e) {
+			/* Liberado pelo coletor de lixo. */
+		}
+	}
+
+	static String fileName(String name) {
+		String fileName = name.replaceAll("[^A-Za-z0-9._-]", "_");
+		if (fileName.equals(name)) return fileName;
+		return fileName + "-" + Integer.toHexString(name.hashCode());
+	}
+
+	/** Same estimate as {@link MeterStatistics#percentile}, over the power of two buckets of the store. */
+	static long percentile(long[] histogram, double percentile) {
+		int index = MeterStatistics.percentileIndex(histogram, percentile);
+		return index < 0 ? 0 : bucketValue(index);
+	}
+
+	/** @return Middle point of the power of two bucket. */
+	private static long bucketValue(int index) {
+		long lower = MeterStatistics.bucketLowerBound(index * MeterStatistics.SUB_BUCKETS);
+		if (index == BUCKETS - 1) return lower;
+		long upper = MeterStatistics.bucketLowerBound((index + 1) * MeterStatistics.SUB_BUCKETS);
+		return lower + (upper - lower) / 2;
+	}
+}
@@ -8,4 +8,9 @@ public class OperationFactory {
 	public static Operation getOperation(String name, String message) {
 		return new BasicOperation(name, message);
 	}
+
+	/** Obtains the operation interned by {@link OperationRegistry} for the owner class. */
+	public static RegisteredOperation getOperation(Class<?> owner, String name, String message) {
+		return OperationRegistry.register(owner, name, message);
+	}
 }
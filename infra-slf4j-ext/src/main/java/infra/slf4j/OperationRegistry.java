@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+
+/**
+ * Interns operations by owner class and name, assigning each pair a dense integer id at registration.
+ * <p>
+ * Operations are intended to be registered once, at class initialization, typically as static fields:
+ * <pre>
+ * private static final RegisteredOperation Execute = OperationFactory.getOperation(MyClass.class, "execute", "Execute.");
+ * </pre>
+ * Registering the same pair again returns the same instance.
+ * <p>
+ * Meters obtained by a logger other than the owner class are named after the logger. The name and
+ * {@link MeterStatistics} are resolved once per logger and operation and kept in a table per logger, indexed by the
+ * operation id.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class OperationRegistry {
+	private static final ConcurrentMap<String, RegisteredOperation> operations = new ConcurrentHashMap<String, RegisteredOperation>();
+	/** Operations indexed by id. Replaced by a larger copy when full; slots are never changed after assigned. */
+	private static volatile RegisteredOperation[] byId = new RegisteredOperation[64];
+	private static int size = 0;
+	/** Bindings of each logger, indexed by operation id. */
+	private static final ConcurrentMap<Logger, Bindings> bindings = new ConcurrentHashMap<Logger, Bindings>();
+
+	private static final class Bindings {
+		/** Replaced by a larger copy when an operation registered later is bound; slots are never changed after assigned. */
+		volatile RegisteredOperation.Binding[] byId = new RegisteredOperation.Binding[OperationRegistry.size()];
+	}
+
+	private OperationRegistry() {
+		// Utility class.
+	}
+
+	/**
+	 * Registers the operation for the owner class, or returns the operation already registered.
+	 * The message is ignored if the operation is already registered.
+	 */
+	public static RegisteredOperation register(Class<?> owner, String name, String message) {
+		if (owner == null || name == null) throw new IllegalArgumentException();
+		String key = owner.getName() + "." + name;
+		RegisteredOperation operation = OperationRegistry.operations.get(key);
+		if (operation != null) return operation;
+		synchronized (OperationRegistry.class) {
+			operation = OperationRegistry.operations.get(key);
+			if (operation != null) return operation;
+			operation = new RegisteredOperation(size, owner, name, message);
+			RegisteredOperation[] array = OperationRegistry.byId;
+			if (size == array.length) {
+				RegisteredOperation[] larger = new RegisteredOperation[array.length * 2];
+				System.arraycopy(array, 0, larger, 0, array.length);
+				array = larger;
+			}
+			array[size++] = operation;
+			OperationRegistry.byId = array;
+			OperationRegistry.operations.put(key, operation);
+			return operation;
+		}
+	}
+
+	/** @return The operation with the id. */
+	public static RegisteredOperation get(int id) {
+		RegisteredOperation[] array = OperationRegistry.byId;
+		if (id < 0 || id >= array.length || array[id] == null) throw new IndexOutOfBoundsException(Integer.toString(id));
+		return array[id];
+	}
+
+	/** @return Statistics of meters of the operation with the id, obtained by the owner class. */
+	public static MeterStatistics getStatistics(int id) {
+		return OperationRegistry.get(id).getStatistics();
+	}
+
+	/** @return Meter name and statistics for meters of the operation obtained by the logger. */
+	static RegisteredOperation.Binding bind(Logger logger, RegisteredOperation operation) {
+		Bindings b = OperationRegistry.bindings.get(logger);
+		if (b == null) {
+			Bindings created = new Bindings();
+			b = OperationRegistry.bindings.putIfAbsent(logger, created);
+			if (b == null) b = created;
+		}
+		int id = operation.getId();
+		RegisteredOperation.Binding[] array = b.byId;
+		if (id < array.length && array[id] != null) return array[id];
+		synchronized (b) {
+			array = b.byId;
+			if (id >= array.length) array = Arrays.copyOf(array, Math.max(id + 1, OperationRegistry.size()));
+			RegisteredOperation.Binding binding = array[id];
+			if (binding == null) {
+				binding = new RegisteredOperation.Binding(logger, logger.getName() + "." + operation.getName());
+				array[id] = binding;
+			}
+			b.byId = array;
+			return binding;
+		}
+	}
+
+	/** @return Number of registered operations; ids range from 0 to size - 1. */
+	public static synchronized int size() {
+		return size;
+	}
+}
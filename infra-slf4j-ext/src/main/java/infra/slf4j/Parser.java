@@ -17,6 +17,11 @@ package infra.slf4j;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
 
 
 public class Parser {
@@ -40,6 +45,38 @@ public class Parser {
 	public char DATA_CLOSE = ')';
 	public static final double[] TIME_FACTORS = new double[] {1000.0, 1000.0, 1000.0, 60.0, 60.0};
 	public static final String[] TIME_UNITS = new String[] {"ns", "us", "ms", "s", "m", "h"};
+	private static final long[] POWERS_OF_TEN = new long[] {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L};
+	/** Largest scaled value that is still represented exactly as a double. */
+	private static final double MAX_FIXED_POINT = 1L << 52;
+	/** Locale and decimal separator used by the last fixed point formatting. */
+	private static volatile Object[] decimalSeparator = new Object[] {null, null};
+	/**
+	 * <code>Locale.getDefault(Locale.Category)</code> and <code>Locale.Category.FORMAT</code>, resolved by reflection
+	 * because they do not exist before Java 7; null on older runtimes.
+	 */
+	private static final Method LOCALE_GET_DEFAULT;
+	private static final Object LOCALE_CATEGORY_FORMAT;
+	static {
+		Method getDefault = null;
+		Object format = null;
+		try {
+			Class<?> category = Class.forName("java.util.Locale$Category");
+			format = category.getField("FORMAT").get(null);
+			getDefault = Locale.class.getMethod("getDefault", category);
+		} catch (Exception e) {
+			/* Java 6: há um único locale padrão. */
+			getDefault = null;
+			format = null;
+		}
+		LOCALE_GET_DEFAULT = getDefault;
+		LOCALE_CATEGORY_FORMAT = format;
+	}
+	private static final ThreadLocal<StringBuilder> charBufferBuilder = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(32);
+		}
+	};
 	private static String STRING_DELIM_QUOTED_STR;
 	private static String STRING_DELIM_STR;
 
@@ -79,7 +116,7 @@ public class Parser {
 					sb.append(c);
 				}
 				start++;
-				end = start+1;
+				end = start;
 			} else {
 				end++;
 			}
@@ -228,6 +265,16 @@ public class Parser {
 	}
 
 	public static String bestUnit(double value, String[] timeUnits, double[] timeFactors) {
+		StringBuilder sb = new StringBuilder(12);
+		Parser.appendBestUnit(sb, value, timeUnits, timeFactors);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the value converted to the most readable unit, with one decimal digit. Produces the same text as
+	 * {@link #bestUnit(double, String[], double[])}, but without creating a {@link java.util.Formatter}.
+	 */
+	public static void appendBestUnit(StringBuilder sb, double value, String[] timeUnits, double[] timeFactors) {
 		int last = timeUnits.length-1;
 		int index = 0;
 		double limit = timeFactors[index] * 1.1;
@@ -237,6 +284,77 @@ public class Parser {
 			limit = timeFactors[index] * 1.1;
 			index++;
 		}
-		return String.format("%.1f%s", modifiedValue, timeUnits[index]);
+		Parser.appendFixedPoint(sb, modifiedValue, 1);
+		sb.append(timeUnits[index]);
+	}
+
+	/** Same as {@link #appendBestUnit(StringBuilder, double, String[], double[])}, for a {@link CharBuffer}. */
+	public static void appendBestUnit(CharBuffer cb, double value, String[] timeUnits, double[] timeFactors) {
+		StringBuilder sb = Parser.charBufferBuilder.get();
+		sb.setLength(0);
+		Parser.appendBestUnit(sb, value, timeUnits, timeFactors);
+		cb.append(sb);
+	}
+
+	/**
+	 * Appends the value with a fixed number of decimal digits, rounded half up, with the decimal separator of the
+	 * default format locale, as {@link String#format(String, Object...)}. Produces the same text as <code>String.format("%.Nf", value)</code>, but with fixed point
+	 * arithmetic. Values that can not be represented exactly as fixed point, and locales that do not use ASCII digits,
+	 * fall back to {@link String#format(String, Object...)}.
+	 *
+	 * @param fractionDigits Number of decimal digits, from 0 to 6.
+	 */
+	public static void appendFixedPoint(StringBuilder sb, double value, int fractionDigits) {
+		if (fractionDigits < 0 || fractionDigits >= POWERS_OF_TEN.length) throw new IllegalArgumentException("fractionDigits");
+		long scale = POWERS_OF_TEN[fractionDigits];
+		double magnitude = Math.abs(value);
+		double scaled = magnitude * scale;
+		char separator = Parser.decimalSeparator();
+		if (separator == 0 || ! (scaled < MAX_FIXED_POINT)) {
+			/* NaN, infinito, valores muito grandes ou locale sem dígitos ASCII. */
+			sb.append(String.format("%." + fractionDigits + "f", Double.valueOf(value)));
+			return;
+		}
+		long rounded = (long) Math.floor(scaled + 0.5);
+		double tie = scaled - Math.floor(scaled) - 0.5;
+		double tolerance = Math.max(1e-6, 8 * Math.ulp(scaled));
+		if (tie < tolerance && tie > -tolerance) {
+			/*
+			 * Muito próximo do meio entre dois valores: o Formatter arredonda a representação decimal do double, que
+			 * pode diferir do resultado da multiplicação em ponto flutuante.
+			 */
+			rounded = new BigDecimal(Double.toString(magnitude)).movePointRight(fractionDigits).setScale(0, BigDecimal.ROUND_HALF_UP).longValue();
+		}
+		if (Double.doubleToRawLongBits(value) < 0) sb.append('-');
+		sb.append(rounded / scale);
+		if (fractionDigits > 0) {
+			sb.append(separator);
+			long fraction = rounded % scale;
+			for (long p = scale / 10; p > fraction && p > 1; p /= 10) {
+				sb.append('0');
+			}
+			sb.append(fraction);
+		}
+	}
+
+	/** @return Decimal separator of the default format locale, or zero if the locale does not use ASCII digits. */
+	private static char decimalSeparator() {
+		Locale locale = Parser.formatLocale();
+		Object[] cached = Parser.decimalSeparator;
+		if (cached[0] == locale) return ((Character) cached[1]).charValue();
+		DecimalFormatSymbols symbols = new DecimalFormatSymbols(locale);
+		char separator = symbols.getZeroDigit() == '0' ? symbols.getDecimalSeparator() : 0;
+		Parser.decimalSeparator = new Object[] {locale, Character.valueOf(separator)};
+		return separator;
+	}
+
+	/** @return Default locale for formatting, as used by {@link String#format(String, Object...)}. */
+	static Locale formatLocale() {
+		if (LOCALE_GET_DEFAULT == null) return Locale.getDefault();
+		try {
+			return (Locale) LOCALE_GET_DEFAULT.invoke(null, LOCALE_CATEGORY_FORMAT);
+		} catch (Exception e) {
+			return Locale.getDefault();
+		}
 	}
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import org.slf4j.Logger;
+
+/**
+ * {@link Operation} interned by {@link OperationRegistry}. It has a dense integer id and keeps the meter name, logger
+ * and {@link MeterStatistics} resolved once, so that {@link MeterFactory} does not concatenate nor hash names when
+ * creating meters for this operation.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class RegisteredOperation extends BasicOperation {
+	private final int id;
+	private final Class<?> owner;
+	/** Meter name when the meter is obtained by the owner class. */
+	private final String meterName;
+	private final Logger logger;
+	private volatile MeterStatistics statistics;
+
+	/** Meter name and statistics for meters of this operation obtained by one logger. */
+	static final class Binding {
+		final Logger logger;
+		final String meterName;
+		final MeterStatistics statistics;
+
+		Binding(Logger logger, String meterName) {
+			this.logger = logger;
+			this.meterName = meterName;
+			this.statistics = MeterStatistics.getStatistics(meterName);
+		}
+	}
+
+	RegisteredOperation(int id, Class<?> owner, String name, String message) {
+		super(name, message);
+		this.id = id;
+		this.owner = owner;
+		this.meterName = owner.getName() + "." + name;
+		this.logger = LoggerFactory.getLogger(owner);
+	}
+
+	/** @return Dense id, from 0 to {@link OperationRegistry#size()} - 1. */
+	public int getId() { return id; }
+	public Class<?> getOwner() { return owner; }
+	public String getMeterName() { return meterName; }
+	public Logger getLogger() { return logger; }
+
+	/** @return Statistics of meters obtained by the owner class. */
+	public MeterStatistics getStatistics() {
+		MeterStatistics s = statistics;
+		if (s == null) {
+			s = MeterStatistics.getStatistics(meterName);
+			statistics = s;
+		}
+		return s;
+	}
+
+	/** @return Meter name and statistics for meters obtained by the logger, cached by {@link OperationRegistry}. */
+	Binding bind(Logger logger) {
+		return OperationRegistry.bind(logger, this);
+	}
+
+	@Override
+	public String toString() {
+		return meterName;
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import org.slf4j.Logger;
+
+/**
+ * Outputstream que escreve seu conteúdo para um logger à medida que é escrito, sem acumular todo o conteúdo em memória
+ * como o {@link LoggerOutputStream}. Para obter instâncias, utilize
+ * {@link LoggerFactory#getStreamingPrintStream(Logger, Level)} ou
+ * {@link LoggerFactory#getStreamingOutputStream(Logger, Level, boolean, int, long)}.
+ * <p>
+ * Os bytes são decodificados incrementalmente por um único {@link CharsetDecoder}, reutilizado durante toda a vida do
+ * stream. O conteúdo é escrito no logger:
+ * <ul>
+ * <li>uma mensagem por linha, se <code>linePerEvent</code>; linhas maiores que <code>chunkSize</code> são divididas
+ * em várias mensagens;
+ * <li>ou em blocos de até <code>chunkSize</code> caracteres, divididos preferencialmente no fim de uma linha.
+ * </ul>
+ * Linhas ou blocos em branco não geram mensagens. Após escrever <code>maxSize</code> caracteres, o restante do conteúdo é descartado e uma mensagem de truncamento é
+ * escrita no logger. O conteúdo descartado continua sendo decodificado, apenas para contar seus caracteres. A memória
+ * utilizada nunca ultrapassa o tamanho dos buffers, aproximadamente <code>chunkSize</code> caracteres mais alguns
+ * kilobytes.
+ * <p>
+ * Instâncias não são thread safe, assim como o {@link LoggerOutputStream}.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class StreamingLoggerOutputStream extends OutputStream {
+	/** Tamanho padrão de cada mensagem (caracteres). */
+	public static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+	/** Tamanho padrão máximo de todo o conteúdo (caracteres). */
+	public static final long DEFAULT_MAX_SIZE = 16L * 1024 * 1024;
+
+	private static final int BYTE_BUFFER_SIZE = 4 * 1024;
+
+	/** Logger para onde será escrito o conteúdo. */
+	protected final Logger logger;
+	private final Level level;
+	private final boolean linePerEvent;
+	private final int chunkSize;
+	private final long maxSize;
+
+	private final CharsetDecoder decoder;
+	private final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+	private final CharBuffer chars = CharBuffer.allocate(BYTE_BUFFER_SIZE);
+	/** Conteúdo ainda não escrito no logger; nunca maior que chunkSize. */
+	private final StringBuilder pending;
+
+	/** Quantidade de caracteres já escritos no logger. */
+	private long writtenChars = 0;
+	/** Quantidade de caracteres descartados após atingir o tamanho máximo. */
+	private long discardedChars = 0;
+	private boolean truncated = false;
+	private boolean closed = false;
+
+	/**
+	 * @param logger Logger que receberá o conteúdo.
+	 * @param level Prioridade das mensagens.
+	 * @param linePerEvent Se verdadeiro, escreve uma mensagem por linha. Senão, agrupa linhas em blocos.
+	 * @param chunkSize Tamanho máximo de cada mensagem (caracteres).
+	 * @param maxSize Tamanho máximo de todo o conteúdo escrito no logger (caracteres).
+	 */
+	public StreamingLoggerOutputStream(Logger logger, Level level, boolean linePerEvent, int chunkSize, long maxSize) {
+		this(logger, level, linePerEvent, chunkSize, maxSize, Charset.defaultCharset());
+	}
+
+	public StreamingLoggerOutputStream(Logger logger, Level level, boolean linePerEvent, int chunkSize, long maxSize, Charset charset) {
+		super();
+		if (logger == null || level == null || charset == null) throw new IllegalArgumentException();
+		if (chunkSize < 1 || maxSize < 0) throw new IllegalArgumentException();
+		this.logger = logger;
+		this.level = level;
+		this.linePerEvent = linePerEvent;
+		this.chunkSize = chunkSize;
+		this.maxSize = maxSize;
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.pending = new StringBuilder(Math.min(chunkSize, DEFAULT_CHUNK_SIZE));
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (closed) throw new IOException("closed");
+		if (! bytes.hasRemaining()) decode(false);
+		bytes.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) throw new IOException("closed");
+		while (len > 0) {
+			if (! bytes.hasRemaining()) decode(false);
+			int n = Math.min(len, bytes.remaining());
+			bytes.put(b, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/** Decodifica os bytes acumulados. Não escreve linhas incompletas no logger. */
+	@Override
+	public void flush() throws IOException {
+		if (closed || truncated) return;
+		decode(false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		decode(true);
+		chars.clear();
+		decoder.flush(chars);
+		chars.flip();
+		consume();
+		if (! truncated) {
+			int length = pending.length();
+			if (length > 0 && pending.charAt(length - 1) == '\n') pending.setLength(--length);
+			if (length > 0) {
+				emit(pending);
+			}
+		}
+		if (truncated) {
+			writeToLogger(String.format("[truncated after %d characters; %d more characters discarded]", Long.valueOf(writtenChars), Long.valueOf(discardedChars)));
+		}
+		pending.setLength(0);
+		pending.trimToSize();
+		decoder.reset();
+		closed = true;
+		super.close();
+	}
+
+	private void decode(boolean endOfInput) {
+		bytes.flip();
+		while (true) {
+			chars.clear();
+			CoderResult result = decoder.decode(bytes, chars, endOfInput);
+			chars.flip();
+			consume();
+			if (result.isUnderflow()) break;
+		}
+		/* Mantém bytes de um caractere incompleto para a próxima decodificação. */
+		bytes.compact();
+	}
+
+	/** Processa os caracteres decodificados, escrevendo no logger cada linha ou bloco completo. */
+	private void consume() {
+		while (chars.hasRemaining() && ! truncated) {
+			char c = chars.get();
+			if (c == '\n') {
+				if (linePerEvent) {
+					int length = pending.length();
+					if (length > 0 && pending.charAt(length - 1) == '\r') pending.setLength(length - 1);
+					emit(pending);
+					continue;
+				}
+			}
+			pending.append(c);
+			if (pending.length() >= chunkSize) {
+				if (linePerEvent) {
+					emit(pending);
+				} else {
+					emitChunk();
+				}
+			}
+		}
+		if (truncated) {
+			discardedChars += chars.remaining();
+			chars.position(chars.limit());
+		}
+	}
+
+	/** Escreve no logger o bloco até a última quebra de linha, ou o bloco inteiro se não houver quebra de linha. */
+	private void emitChunk() {
+		int end = pending.lastIndexOf("\n");
+		if (end <= 0) {
+			emit(pending);
+			return;
+		}
+		String chunk = pending.substring(0, end);
+		pending.delete(0, end + 1);
+		emit(chunk);
+	}
+
+	private void emit(CharSequence message) {
+		if (isBlank(message)) {
+			/* Linhas em branco não geram eventos vazios. */
+			if (message == pending) pending.setLength(0);
+			return;
+		}
+		if (writtenChars + message.length() > maxSize) {
+			int allowed = (int) Math.max(0, maxSize - writtenChars);
+			if (allowed > 0) {
+				writeToLogger(message.subSequence(0, allowed).toString());
+				writtenChars += allowed;
+			}
+			discardedChars += message.length() - allowed;
+			/* O restante de um bloco parcial também é descartado. */
+			if (message != pending) discardedChars += pending.length();
+			pending.setLength(0);
+			truncated = true;
+		} else {
+			writeToLogger(message.toString());
+			writtenChars += message.length();
+		}
+		if (message == pending) pending.setLength(0);
+	}
+
+	private static boolean isBlank(CharSequence message) {
+		for (int i = 0; i < message.length(); i++) {
+			if (! Character.isWhitespace(message.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	/** Escreve a mensagem no logger de acordo com a prioridade. */
+	protected void writeToLogger(String message) {
+		switch (level) {
+		case TRACE:
+			logger.trace(message);
+			break;
+		case DEBUG:
+			logger.debug(message);
+			break;
+		case INFO:
+			logger.info(message);
+			break;
+		case WARN:
+			logger.warn(message);
+			break;
+		case ERROR:
+			logger.error(message);
+			break;
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/** @return Quantidade de caracteres já escritos no logger. */
+	public long getWrittenChars() { return writtenChars; }
+	/** @return Quantidade de caracteres descartados após atingir o tamanho máximo. */
+	public long getDiscardedChars() { return discardedChars; }
+	/** @return Se o conteúdo ultrapassou o tamanho máximo. */
+	public boolean isTruncated() { return truncated; }
+}
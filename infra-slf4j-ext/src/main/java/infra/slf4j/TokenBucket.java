@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limiter that admits at most a given number of events per second, allowing short bursts. Implemented as a
+ * generic cell rate algorithm over a single atomic value: each admitted event advances a theoretical arrival time by
+ * one interval, and an event is refused if that time would be further in the future than the burst allows. There are
+ * no locks and no background thread.
+ *
+ * @author Daniel Felix Ferber
+ */
+public final class TokenBucket {
+	private final double perSecond;
+	private final long interval;
+	private final long tolerance;
+	/** Theoretical arrival time of the next event (nanoseconds, as {@link System#nanoTime()}). */
+	private final AtomicLong arrival = new AtomicLong(System.nanoTime());
+
+	/**
+	 * @param perSecond Events admitted per second, on average. Must be positive.
+	 * @param burst How many events may be admitted at once after an idle period. At least 1.
+	 */
+	public TokenBucket(double perSecond, int burst) {
+		if (! (perSecond > 0.0)) throw new IllegalArgumentException("perSecond: " + perSecond);
+		if (burst < 1) throw new IllegalArgumentException("burst: " + burst);
+		this.perSecond = perSecond;
+		this.interval = Math.max(1L, (long) (1000000000.0 / perSecond));
+		this.tolerance = this.interval * burst;
+	}
+
+	/** @return True if the event is admitted; the caller should then proceed. */
+	public boolean tryAcquire() {
+		long now = System.nanoTime();
+		while (true) {
+			long current = arrival.get();
+			long next = (current - now > 0 ? current : now) + interval;
+			if (next - now > tolerance) return false;
+			if (arrival.compareAndSet(current, next)) return true;
+		}
+	}
+
+	/** @return Events admitted per second, on average. */
+	public double getPerSecond() { return perSecond; }
+	/** @return How many events may be admitted at once. */
+	public int getBurst() { return (int) (tolerance / interval); }
+
+	@Override
+	public String toString() {
+		return perSecond + "/s";
+	}
+}
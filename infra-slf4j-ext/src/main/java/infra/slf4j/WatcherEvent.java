@@ -202,12 +202,41 @@ public class WatcherEvent {
 
 	public static void readableString(WatcherEvent watcher, StringBuilder buffer) {
 		if (watcher.runtime_freeMemory > 0 || watcher.runtime_maxMemory > 0 || watcher.runtime_totalMemory > 0) {
-			buffer.append(Parser.bestUnit(watcher.runtime_freeMemory, WatcherEvent.MEMORY_UNITS, WatcherEvent.MEMORY_FACTORS));
+			Parser.appendBestUnit(buffer, watcher.runtime_freeMemory, WatcherEvent.MEMORY_UNITS, WatcherEvent.MEMORY_FACTORS);
 			buffer.append('/');
-			buffer.append(Parser.bestUnit(watcher.runtime_totalMemory, WatcherEvent.MEMORY_UNITS, WatcherEvent.MEMORY_FACTORS));
+			Parser.appendBestUnit(buffer, watcher.runtime_totalMemory, WatcherEvent.MEMORY_UNITS, WatcherEvent.MEMORY_FACTORS);
 			buffer.append('/');
-			buffer.append(Parser.bestUnit(watcher.runtime_maxMemory, WatcherEvent.MEMORY_UNITS, WatcherEvent.MEMORY_FACTORS));
-		}
+			Parser.appendBestUnit(buffer, watcher.runtime_maxMemory, WatcherEvent.MEMORY_UNITS, WatcherEvent.MEMORY_FACTORS);
+		}
+	}
+
+	/** @return Copy of the fields of this event, not affected by later updates of this event. */
+	WatcherEvent copy() {
+		WatcherEvent e = new WatcherEvent();
+		e.name = name;
+		e.counter = counter;
+		e.uuid = uuid;
+		e.time = time;
+		e.heap_commited = heap_commited;
+		e.heap_init = heap_init;
+		e.heap_max = heap_max;
+		e.heap_used = heap_used;
+		e.nonHeap_commited = nonHeap_commited;
+		e.nonHeap_init = nonHeap_init;
+		e.nonHeap_max = nonHeap_max;
+		e.nonHeap_used = nonHeap_used;
+		e.objectPendingFinalizationCount = objectPendingFinalizationCount;
+		e.classLoading_loaded = classLoading_loaded;
+		e.classLoading_total = classLoading_total;
+		e.classLoading_unloaded = classLoading_unloaded;
+		e.compilationTime = compilationTime;
+		e.garbageCollector_count = garbageCollector_count;
+		e.garbageCollector_time = garbageCollector_time;
+		e.systemLoad = systemLoad;
+		e.runtime_freeMemory = runtime_freeMemory;
+		e.runtime_maxMemory = runtime_maxMemory;
+		e.runtime_totalMemory = runtime_totalMemory;
+		return e;
 	}
 
 	protected void update() {
@@ -226,7 +255,7 @@ public class WatcherEvent {
 		heap_max = heapUsage.getMax();
 		heap_used = heapUsage.getUsed();
 
-		MemoryUsage nonHeapUsage = memory.getHeapMemoryUsage();
+		MemoryUsage nonHeapUsage = memory.getNonHeapMemoryUsage();
 		nonHeap_commited = nonHeapUsage.getCommitted();
 		nonHeap_init = nonHeapUsage.getInit();
 		nonHeap_max = nonHeapUsage.getMax();
@@ -410,8 +439,13 @@ public class WatcherEvent {
 		e.garbageCollector_count = 0;
 		e.garbageCollector_time = 0;
 		e.systemLoad = 0;
+		e.runtime_freeMemory = 0;
+		e.runtime_maxMemory = 0;
+		e.runtime_totalMemory = 0;
 
 		p.reset(encodedData);
+		/* Os delimitadores escritos por writeToString são opcionais. */
+		p.readOptionalOperator(p.DATA_OPEN);
 
 		/* O nome é obrigatório. */
 		e.name = p.readIdentifierString();
@@ -432,7 +466,7 @@ public class WatcherEvent {
 				p.readOperator(p.PROPERTY_DIV);
 				e.runtime_totalMemory = p.readLong();
 				p.readOperator(p.PROPERTY_DIV);
-				e.runtime_totalMemory = p.readLong();
+				e.runtime_maxMemory = p.readLong();
 			} else if (WatcherEvent.HEAP.equals(propertyName)) {
 				e.heap_commited = p.readLong();
 				p.readOperator(p.PROPERTY_DIV);
@@ -463,6 +497,8 @@ public class WatcherEvent {
 				e.garbageCollector_count = p.readLong();
 				p.readOperator(p.PROPERTY_DIV);
 				e.garbageCollector_time = p.readLong();
+			} else if (WatcherEvent.SYSTEM_LOAD.equals(propertyName)) {
+				e.systemLoad = p.readDouble();
 			} else {
 				// property desconhecida, ignora
 			}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MeterContextTest {
+	MeterContext c;
+	Parser p;
+	StringBuilder sb;
+
+	@Before
+	public void pre() {
+		c = new MeterContext();
+		p = new Parser();
+		sb = new StringBuilder();
+	}
+
+	@After
+	public void pos() {
+		c = null;
+		p = null;
+		sb = null;
+		MeterFactory.remove("global1");
+		MeterFactory.remove("global2");
+	}
+
+	@Test
+	public void putGetRemove() {
+		Assert.assertTrue(c.isEmpty());
+		Assert.assertNull(c.put("a", "1"));
+		Assert.assertNull(c.put("b", null));
+		Assert.assertEquals("1", c.put("a", "2"));
+		Assert.assertEquals(2, c.size());
+		Assert.assertEquals("2", c.get("a"));
+		Assert.assertNull(c.get("b"));
+		Assert.assertTrue(c.containsKey("b"));
+		Assert.assertFalse(c.containsKey("c"));
+		Assert.assertFalse(c.containsKey(null));
+		Assert.assertEquals("2", c.remove("a"));
+		Assert.assertNull(c.remove("a"));
+		Assert.assertEquals(1, c.size());
+		Assert.assertEquals("b", c.keyAt(0));
+	}
+
+	@Test
+	public void insertionOrderAndGrowth() {
+		for (int i = 0; i < 20; i++) {
+			c.put("k" + i, "v" + i);
+		}
+		Assert.assertEquals(20, c.size());
+		for (int i = 0; i < 20; i++) {
+			Assert.assertEquals("k" + i, c.keyAt(i));
+			Assert.assertEquals("v" + i, c.valueAt(i));
+		}
+		c.remove("k0");
+		Assert.assertEquals("k1", c.keyAt(0));
+		Assert.assertEquals("v19", c.get("k19"));
+	}
+
+	@Test
+	public void mapContract() {
+		c.put("a", "1");
+		c.put("b", "2");
+		Map<String, String> m = new HashMap<String, String>();
+		m.put("b", "2");
+		m.put("a", "1");
+		Assert.assertEquals(m, c);
+		Assert.assertEquals(c, m);
+		Assert.assertEquals(m.hashCode(), c.hashCode());
+
+		Iterator<Map.Entry<String, String>> i = c.entrySet().iterator();
+		Assert.assertEquals("a", i.next().getKey());
+		i.remove();
+		Assert.assertEquals("b", i.next().getKey());
+		Assert.assertFalse(i.hasNext());
+		Assert.assertEquals(1, c.size());
+	}
+
+	@Test
+	public void clearKeepsInstanceUsable() {
+		c.put("a", "1");
+		c.clear();
+		Assert.assertTrue(c.isEmpty());
+		Assert.assertNull(c.get("a"));
+		c.put("b", "2");
+		Assert.assertEquals("b", c.keyAt(0));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void keyAtOutOfBounds() {
+		c.put("a", "1");
+		c.keyAt(1);
+	}
+
+	@Test
+	public void meterRoundTrip() throws IOException {
+		Meter m = new Meter(LoggerFactory.getLogger("test"), "test.meter");
+		m.put("a", "1").put("b").put("c", "with \"quotes\"");
+
+		MeterEvent.writeToString(p, m, sb);
+		Assert.assertTrue(sb.toString(), sb.toString().contains("ctx=[a:\"1\", b, c:\"with \\\"quotes\\\"\"]"));
+
+		MeterEvent e = new MeterEvent();
+		MeterEvent.readFromString(p, e, sb.toString());
+		Assert.assertEquals(m.getContext(), e.getContext());
+
+		/* O contexto é reaproveitado ao ler outro evento. */
+		Map<String, String> previous = e.context;
+		MeterEvent.readFromString(p, e, "(other)");
+		Assert.assertSame(previous, e.context);
+		Assert.assertTrue(e.getContext().isEmpty());
+	}
+
+	@Test
+	public void globalContextWithoutLocalContext() {
+		MeterFactory.put("global1", "g");
+		MeterFactory.put("global2");
+		Meter m = new Meter(LoggerFactory.getLogger("test"), "test.meter");
+		MeterEvent.writeToString(p, m, sb);
+		Assert.assertTrue(sb.toString(), sb.toString().contains("ctx=[global1:\"g\", global2]"));
+	}
+
+	@Test
+	public void localContextHidesGlobalContext() {
+		MeterFactory.put("global1", "g");
+		MeterFactory.put("global2");
+		Meter m = new Meter(LoggerFactory.getLogger("test"), "test.meter");
+		m.put("global1", "local");
+		MeterEvent.writeToString(p, m, sb);
+		Assert.assertTrue(sb.toString(), sb.toString().contains("ctx=[global1:\"local\", global2]"));
+	}
+
+	@Test
+	public void failWithContextEntryAndNoContext() {
+		Meter m = new Meter(LoggerFactory.getLogger("test"), "test.meter");
+		m.start();
+		m.fail(new IllegalStateException(), "reason", "test");
+		Assert.assertEquals("test", m.getContext().get("reason"));
+	}
+}
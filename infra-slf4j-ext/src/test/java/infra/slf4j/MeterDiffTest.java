@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MeterDiffTest {
+	MeterDiff diff;
+	List<MeterDiff.Sample> samples;
+
+	@Before
+	public void pre() {
+		diff = new MeterDiff();
+		samples = new ArrayList<MeterDiff.Sample>();
+	}
+
+	@After
+	public void pos() {
+		diff = null;
+		samples = null;
+	}
+
+	private String logLine(String prefix, String name, long counter, String parentName, long parentCounter, long duration) {
+		MeterEvent e = new MeterEvent();
+		e.name = name;
+		e.counter = counter;
+		e.uuid = "u1";
+		e.parentName = parentName;
+		e.parentCounter = parentCounter;
+		e.createTime = 1000;
+		e.startTime = 1000;
+		e.stopTime = 1000 + duration;
+		StringBuilder sb = new StringBuilder("12:00:00.000 TRACE a.b - ").append(prefix);
+		MeterEvent.writeToString(new Parser(), e, sb);
+		return sb.toString();
+	}
+
+	@Test
+	public void testLogLines() {
+		Parser p = new Parser();
+		MeterEvent e = new MeterEvent();
+		MeterDiff.readLogLine(logLine("OK: ", "root", 1, null, 0, 100), samples, p, e);
+		MeterDiff.readLogLine(logLine("FAIL: ", "child", 1, "root", 1, 40), samples, p, e);
+		MeterDiff.readLogLine("12:00:00.000 INFO a.b - OK: child 40ns", samples, p, e);
+		MeterDiff.readLogLine("unrelated", samples, p, e);
+		Assert.assertEquals(2, samples.size());
+
+		Map<String, MeterDiff.Durations> operations = diff.group(samples);
+		Assert.assertEquals(2, operations.size());
+		Assert.assertEquals(100, operations.get("root").values[0]);
+		Assert.assertEquals(40, operations.get("root/child").values[0]);
+		Assert.assertEquals(1, operations.get("root/child").failures);
+
+		diff.byName = true;
+		Assert.assertNotNull(diff.group(samples).get("child"));
+	}
+
+	@Test
+	public void testSpans() {
+		String line = "{\"resourceSpans\":[{\"resource\":{\"attributes\":[]},\"scopeSpans\":[{\"scope\":{\"name\":\"infra.slf4j\"},\"spans\":["
+				+ "{\"traceId\":\"01\",\"spanId\":\"a\",\"name\":\"root\",\"kind\":1,\"startTimeUnixNano\":\"10\",\"endTimeUnixNano\":\"110\",\"attributes\":[],\"status\":{\"code\":1}},"
+				+ "{\"traceId\":\"01\",\"spanId\":\"b\",\"parentSpanId\":\"a\",\"name\":\"a\\\"b\",\"kind\":1,\"startTimeUnixNano\":\"20\",\"endTimeUnixNano\":\"50\",\"attributes\":[],"
+				+ "\"events\":[{\"timeUnixNano\":\"50\",\"name\":\"exception\",\"attributes\":[]}],\"status\":{\"code\":2}}]}]}]}";
+		MeterDiff.readSpans(line, samples);
+		Assert.assertEquals(2, samples.size());
+		Assert.assertEquals("root", samples.get(0).name);
+		Assert.assertEquals(100, samples.get(0).duration);
+		Assert.assertTrue(samples.get(0).success);
+		Assert.assertEquals("a\"b", samples.get(1).name);
+		Assert.assertEquals(30, samples.get(1).duration);
+		Assert.assertFalse(samples.get(1).success);
+		Assert.assertNotNull(diff.group(samples).get("root/a\"b"));
+	}
+
+	@Test
+	public void testResample() {
+		long[] sorted = new long[100];
+		for (int i = 0; i < sorted.length; i++) sorted[i] = i + 1;
+		Assert.assertEquals(50, MeterDiff.quantile(sorted, 0.5));
+		Assert.assertEquals(95, MeterDiff.quantile(sorted, 0.95));
+
+		long[] doubled = new long[100];
+		for (int i = 0; i < doubled.length; i++) doubled[i] = 2 * (i + 1);
+		double[][] same = MeterDiff.resample(sorted, sorted, 10, 1);
+		double[][] slower = MeterDiff.resample(sorted, doubled, 10, 1);
+		for (int r = 0; r < 10; r++) {
+			Assert.assertTrue(slower[r][0] > 0.3);
+			Assert.assertFalse(Double.isNaN(same[r][1]));
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MeterExecutorsTest {
+	ExecutorService pool;
+
+	@Before
+	public void pre() {
+		pool = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void pos() throws InterruptedException {
+		pool.shutdown();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+		pool = null;
+	}
+
+	private static Callable<Meter> childMeter() {
+		return new Callable<Meter>() {
+			@Override
+			public Meter call() {
+				Meter child = MeterFactory.getMeter("test.child").start();
+				child.ok();
+				return child;
+			}
+		};
+	}
+
+	@Test
+	public void withoutScopeChildHasNoParent() throws Exception {
+		Meter parent = MeterFactory.getMeter("test.parent").start();
+		Meter child = pool.submit(childMeter()).get();
+		parent.ok();
+		Assert.assertNull(child.getParentName());
+	}
+
+	@Test
+	public void executorServicePropagatesScope() throws Exception {
+		ExecutorService scoped = MeterExecutors.executorService(pool);
+		Meter parent = MeterFactory.getMeter("test.parent").start();
+		Meter child = scoped.submit(childMeter()).get();
+		parent.ok();
+		Assert.assertEquals(parent.getName(), child.getParentName());
+		Assert.assertEquals(parent.getCount(), child.getParentCounter());
+		Assert.assertEquals(parent.getName(), child.getRootName());
+
+		/* A thread do pool volta ao escopo anterior depois da tarefa. */
+		Assert.assertNull(pool.submit(new Callable<Meter>() {
+			@Override
+			public Meter call() {
+				return Meter.current();
+			}
+		}).get());
+	}
+
+	@Test
+	public void threadFactoryPropagatesScope() throws Exception {
+		Meter parent = MeterFactory.getMeter("test.parent").start();
+		final Meter[] child = new Meter[1];
+		Thread thread = MeterExecutors.threadFactory(Executors.defaultThreadFactory()).newThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					child[0] = childMeter().call();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		thread.start();
+		thread.join();
+		parent.ok();
+		Assert.assertEquals(parent.getName(), child[0].getParentName());
+	}
+
+	@Test
+	public void attachRestoresPreviousScope() {
+		Meter parent = MeterFactory.getMeter("test.parent").start();
+		MeterScope scope = MeterScope.capture();
+		Assert.assertSame(parent, scope.getMeter());
+		parent.ok();
+		Assert.assertNull(Meter.current());
+
+		MeterScope previous = scope.attach();
+		Assert.assertSame(parent, Meter.current());
+		previous.attach();
+		Assert.assertNull(Meter.current());
+		Assert.assertSame(MeterScope.EMPTY, MeterScope.capture());
+	}
+
+	@Test
+	public void sameThreadRestoresRunningMeter() {
+		Meter outer = MeterFactory.getMeter("test.outer").start();
+		/* Executa na própria thread, como CallerRunsPolicy ou um executor direto. */
+		MeterExecutors.wrap(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					childMeter().call();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}).run();
+		Meter after = MeterFactory.getMeter("test.after").start();
+		after.ok();
+		Assert.assertEquals(outer.getName(), after.getParentName());
+		Assert.assertEquals(outer.getCount(), after.getParentCounter());
+
+		/* Depois que o medidor externo termina, ele não é mais pai de novos medidores. */
+		outer.ok();
+		Meter later = MeterFactory.getMeter("test.later").start();
+		later.ok();
+		Assert.assertNull(later.getParentName());
+		Assert.assertNull(Meter.current());
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+
+public class MeterSamplingTest {
+	/** Logger with all levels enabled that counts trace events by marker. */
+	static class CountingLogger implements InvocationHandler {
+		int start = 0;
+		int ok = 0;
+		int fail = 0;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getName().startsWith("is")) return Boolean.TRUE;
+			if ("getName".equals(method.getName())) return "sampling";
+			if ("trace".equals(method.getName()) && args.length > 0 && args[0] instanceof Marker) {
+				if (args[0] == Meter.START_MARKER) start++;
+				if (args[0] == Meter.OK_MARKER) ok++;
+				if (args[0] == Meter.FAIL_MARKER) fail++;
+			}
+			return null;
+		}
+	}
+
+	CountingLogger counting;
+	Logger logger;
+
+	@Before
+	public void pre() {
+		counting = new CountingLogger();
+		logger = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] { Logger.class }, counting);
+	}
+
+	@After
+	public void pos() {
+		MeterFactory.clearSampling();
+		/* Todos os medidores iniciados pelos testes terminaram. */
+		Assert.assertNull(Meter.current());
+	}
+
+	@Test
+	public void testRules() {
+		MeterSampling.Rules rules = new MeterSampling.Rules();
+		MeterSampling ab = new MeterSampling(2, 0.0, false);
+		rules.put("a.b", ab);
+		Assert.assertSame(ab, rules.get("a.b.c"));
+		Assert.assertNull(rules.get("a.bc"));
+		MeterSampling.Sampler sampler = rules.sampler(null, "a.b.c");
+		Assert.assertSame(ab, sampler.getSampling());
+		Assert.assertSame(sampler, rules.sampler(sampler, "a.b.c"));
+		Assert.assertTrue(sampler.sample(1));
+		Assert.assertFalse(sampler.sample(2));
+
+		rules.remove("a.b");
+		MeterSampling.Sampler resolved = rules.sampler(sampler, "a.b.c");
+		Assert.assertNotSame(sampler, resolved);
+		Assert.assertNull(resolved.getSampling());
+		Assert.assertTrue(resolved.sample(2));
+	}
+
+	@Test
+	public void testWithoutPolicy() {
+		for (int i = 0; i < 3; i++) {
+			Meter m = new Meter(logger, "sampling.none").start();
+			Assert.assertTrue(m.isSampled());
+			m.ok();
+		}
+		Assert.assertEquals(3, counting.start);
+		Assert.assertEquals(3, counting.ok);
+	}
+
+	@Test
+	public void testOneIn() {
+		MeterFactory.setSampling("sampling.one", new MeterSampling(3, 0.0, false));
+		MeterStatistics s = MeterStatistics.getStatistics("sampling.one.a");
+		long ok = s.getOkCount();
+		for (int i = 0; i < 6; i++) {
+			new Meter(logger, "sampling.one.a").start().ok();
+		}
+		Assert.assertEquals(2, counting.start);
+		Assert.assertEquals(2, counting.ok);
+		Assert.assertEquals(6, s.getOkCount() - ok);
+	}
+
+	@Test
+	public void testAlwaysFailures() {
+		MeterFactory.setSampling("sampling.fail", new MeterSampling(0, 0.0, true));
+		for (int i = 0; i < 4; i++) {
+			Meter m = new Meter(logger, "sampling.fail").start();
+			Assert.assertFalse(m.isSampled());
+			if (i % 2 == 0) m.ok();
+			else m.fail(null);
+		}
+		Assert.assertEquals(0, counting.start);
+		Assert.assertEquals(0, counting.ok);
+		Assert.assertEquals(2, counting.fail);
+	}
+
+	@Test
+	public void testPerSecond() {
+		MeterFactory.setSampling("", new MeterSampling(1, 5.0, false));
+		int sampled = 0;
+		for (int i = 0; i < 100; i++) {
+			Meter m = new Meter(logger, "sampling.rate").start();
+			if (m.isSampled()) sampled++;
+			m.ok();
+		}
+		Assert.assertTrue(sampled >= 5 && sampled < 20);
+		Assert.assertEquals(sampled, counting.ok);
+
+		MeterFactory.removeSampling("");
+		Meter m = new Meter(logger, "sampling.rate").start();
+		Assert.assertTrue(m.isSampled());
+		m.ok();
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MeterSpanExporterTest {
+	File directory;
+
+	@Before
+	public void pre() throws IOException {
+		directory = File.createTempFile("spans", "");
+		Assert.assertTrue(directory.delete());
+		Assert.assertTrue(directory.mkdir());
+	}
+
+	@After
+	public void pos() {
+		File[] files = directory.listFiles();
+		if (files != null) for (File file : files) file.delete();
+		directory.delete();
+	}
+
+	private List<String> readLines() throws IOException {
+		File[] files = directory.listFiles();
+		Arrays.sort(files);
+		List<String> lines = new ArrayList<String>();
+		for (File file : files) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) lines.add(line);
+			} finally {
+				reader.close();
+			}
+		}
+		return lines;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		MeterSpanExporter exporter = new MeterSpanExporter(directory, "test service", 100, 10, 10, 1024 * 1024, 10).start();
+		Meter parent = MeterFactory.getMeter("test.span.parent").start();
+		Meter child = MeterFactory.getMeter("test.span.child").put("k", "v\"1").start();
+		child.ok();
+		parent.fail(new IllegalStateException("falhou"));
+		exporter.stop();
+
+		Assert.assertEquals(2, exporter.getExportedCount());
+		Assert.assertEquals(0, exporter.getDroppedCount());
+		StringBuilder all = new StringBuilder();
+		for (String line : readLines()) {
+			Assert.assertTrue(line.startsWith("{\"resourceSpans\":"));
+			all.append(line);
+		}
+		String spans = all.toString();
+		Assert.assertTrue(spans.contains("\"stringValue\":\"test service\""));
+		Assert.assertTrue(spans.contains("\"name\":\"test.span.child\""));
+		Assert.assertTrue(spans.contains("{\"key\":\"k\",\"value\":{\"stringValue\":\"v\\\"1\"}}"));
+		Assert.assertTrue(spans.contains("\"exception.type\",\"value\":{\"stringValue\":\"java.lang.IllegalStateException\"}"));
+
+		StringBuilder parentId = new StringBuilder();
+		parentId.append(",\"parentSpanId\":\"");
+		long id = MeterSpanExporter.hash(0L, parent.getUuid(), parent.getName(), parent.getCount());
+		for (int shift = 60; shift >= 0; shift -= 4) parentId.append("0123456789abcdef".charAt((int) (id >>> shift) & 0xF));
+		Assert.assertTrue(spans.contains(parentId.toString()));
+	}
+
+	@Test
+	public void testRotation() throws IOException, InterruptedException {
+		MeterSpanExporter exporter = new MeterSpanExporter(directory, "rotation", 100, 1, 0, 1, 2).start();
+		for (int i = 0; i < 5; i++) {
+			MeterFactory.getMeter("test.span.rotation").start().ok();
+			/* Uma linha por arquivo. */
+			for (int j = 0; j < 500 && exporter.getExportedCount() <= i; j++) Thread.sleep(10);
+		}
+		exporter.stop();
+		Assert.assertEquals(5, exporter.getExportedCount());
+		Assert.assertEquals(2, directory.listFiles().length);
+		Assert.assertEquals(2, readLines().size());
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MeterStatisticsExporterTest {
+
+	@Test
+	public void testJmx() throws Exception {
+		MeterFactory.getMeter("exporter.jmx").start().ok();
+		MeterStatisticsExporter.installJmx();
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = MeterStatisticsMBean.objectName("exporter.jmx");
+			Assert.assertTrue(server.isRegistered(objectName));
+			Assert.assertEquals("exporter.jmx", server.getAttribute(objectName, "Name"));
+			Assert.assertEquals(Long.valueOf(1), server.getAttribute(objectName, "OkCount"));
+
+			/* Nomes que aparecem depois também são registrados. */
+			MeterFactory.getMeter("exporter.jmx.later").start().fail(null);
+			Assert.assertEquals(Long.valueOf(1), server.getAttribute(MeterStatisticsMBean.objectName("exporter.jmx.later"), "FailCount"));
+
+			try {
+				server.getAttribute(objectName, "Unknown");
+				Assert.fail();
+			} catch (AttributeNotFoundException e) {
+				// esperado
+			}
+			try {
+				server.invoke(objectName, "reset", new Object[0], new String[0]);
+				Assert.fail();
+			} catch (ReflectionException e) {
+				Assert.assertTrue(e.getTargetException() instanceof NoSuchMethodException);
+			}
+		} finally {
+			MeterStatisticsExporter.uninstallJmx();
+		}
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(MeterStatisticsMBean.objectName("exporter.jmx")));
+	}
+
+	@Test
+	public void testPrometheus() {
+		MeterFactory.getMeter("exporter.prom").start().ok();
+		MeterFactory.getMeter("exporter.prom").start().ok();
+		MeterFactory.getMeter("exporter.prom").start().fail(null);
+		MeterFactory.getMeter("exporter.\"quoted\"").start().ok();
+		StringBuilder sb = new StringBuilder();
+		MeterStatisticsExporter.writePrometheus(sb);
+		String text = sb.toString();
+		Assert.assertTrue(text, text.contains("# TYPE infra_meter_total counter\n"));
+		Assert.assertTrue(text, text.contains("infra_meter_total{name=\"exporter.prom\",result=\"ok\"} 2\n"));
+		Assert.assertTrue(text, text.contains("infra_meter_total{name=\"exporter.prom\",result=\"fail\"} 1\n"));
+		Assert.assertTrue(text, text.contains("infra_meter_seconds_count{name=\"exporter.prom\"} 3\n"));
+		Assert.assertTrue(text, text.contains("infra_meter_active{name=\"exporter.prom\"} 0\n"));
+		Assert.assertTrue(text, text.contains("infra_meter_total{name=\"exporter.\\\"quoted\\\"\",result=\"ok\"} 1\n"));
+	}
+
+	@Test
+	public void testHttp() throws IOException {
+		MeterFactory.getMeter("exporter.http").start().ok();
+		int port = MeterStatisticsExporter.startHttp(0);
+		try {
+			Assert.assertEquals(port, MeterStatisticsExporter.startHttp(0));
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + MeterStatisticsExporter.METRICS_PATH).openConnection();
+			Assert.assertEquals(200, connection.getResponseCode());
+			Assert.assertTrue(connection.getContentType().startsWith("text/plain"));
+			String body = read(connection.getInputStream());
+			Assert.assertTrue(body, body.contains("infra_meter_total{name=\"exporter.http\",result=\"ok\"} 1\n"));
+
+			connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + MeterStatisticsExporter.METRICS_PATH).openConnection();
+			connection.setRequestMethod("POST");
+			Assert.assertEquals(405, connection.getResponseCode());
+		} finally {
+			MeterStatisticsExporter.stopHttp();
+		}
+	}
+
+	@Test
+	public void testWatcherEventIsCopy() {
+		MeterStatistics s = MeterStatistics.getStatistics("exporter.watcher");
+		WatcherEvent w = new WatcherEvent();
+		w.heap_used = 1;
+		s.watched(w);
+		w.heap_used = 2;
+		WatcherEvent last = s.getLastWatcherEvent();
+		Assert.assertEquals(1, last.getHeap_used());
+		last.heap_used = 3;
+		Assert.assertEquals(1, s.getLastWatcherEvent().getHeap_used());
+	}
+
+	private static String read(InputStream is) throws IOException {
+		try {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int n;
+			while ((n = is.read(buffer)) > 0) os.write(buffer, 0, n);
+			return os.toString("UTF-8");
+		} finally {
+			is.close();
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+
+public class MeterTest {
+	@After
+	public void pos() {
+		Meter.setCurrent(null, null);
+	}
+
+	@Test
+	public void testMessageIsCopy() {
+		final List<MeterMessage> messages = new ArrayList<MeterMessage>();
+		Logger logger = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] { Logger.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().startsWith("is")) return Boolean.TRUE;
+				if ("getName".equals(method.getName())) return "copy";
+				if ("trace".equals(method.getName()) && args.length == 3 && args[0] instanceof Marker) messages.add((MeterMessage) args[2]);
+				return null;
+			}
+		});
+		Meter meter = new Meter(logger, "test.copy").put("a", "1").start();
+		MeterMessage start = messages.get(0);
+		String text = start.toString();
+		meter.put("b", "2").ok();
+
+		Assert.assertNotSame(meter, start.getMeterEvent());
+		Assert.assertEquals(0, start.getMeterEvent().getStopTime());
+		Assert.assertEquals(1, start.getMeterEvent().getContext().size());
+		Assert.assertEquals(text, new MeterMessage(start.getMeterEvent()).toString());
+		Assert.assertNotSame(messages.get(1).getWatcherEvent(), messages.get(3).getWatcherEvent());
+		Assert.assertTrue(messages.get(2).getMeterEvent().isSuccess());
+		Assert.assertEquals(2, messages.get(2).getMeterEvent().getContext().size());
+	}
+
+	@Test
+	public void testNesting() {
+		Meter a = MeterFactory.getMeter("test.a").start();
+		Meter b = MeterFactory.getMeter("test.b").start();
+		Assert.assertEquals(a.getName(), b.getParentName());
+		Assert.assertSame(b, Meter.current());
+		b.ok();
+		Assert.assertSame(a, Meter.current());
+		Meter c = MeterFactory.getMeter("test.c").start();
+		Assert.assertEquals(a.getName(), c.getParentName());
+		c.ok();
+		a.ok();
+		Assert.assertNull(Meter.current());
+	}
+
+	@Test
+	public void testStopOutOfOrder() {
+		Meter a = MeterFactory.getMeter("test.a").start();
+		Meter b = MeterFactory.getMeter("test.b").start();
+		/* Terminar a antes de b remove ambos da thread. */
+		a.ok();
+		Assert.assertNull(Meter.current());
+		Meter c = MeterFactory.getMeter("test.c").start();
+		Assert.assertNull(c.getParentName());
+		/* b já não está na thread; terminá-lo não altera o meter corrente. */
+		b.ok();
+		Assert.assertSame(c, Meter.current());
+		c.ok();
+		Assert.assertNull(Meter.current());
+	}
+
+	@Test
+	public void testNeverStopped() {
+		Meter a = MeterFactory.getMeter("test.a").start();
+		Meter b = MeterFactory.getMeter("test.b").start();
+		Assert.assertEquals(a.getName(), b.getParentName());
+		/* b nunca termina; terminar a remove ambos. */
+		a.ok();
+		Assert.assertNull(Meter.current());
+		Meter c = MeterFactory.getMeter("test.c").start();
+		Assert.assertNull(c.getParentName());
+		c.ok();
+		b.ok();
+		Assert.assertNull(Meter.current());
+	}
+
+	@Test
+	public void testStoppedOnOtherThread() throws InterruptedException {
+		Meter a = MeterFactory.getMeter("test.a").start();
+		final Meter b = MeterFactory.getMeter("test.b").start();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				b.ok();
+			}
+		});
+		thread.start();
+		thread.join();
+		/* A thread original ignora o meter que terminou na outra thread. */
+		Assert.assertSame(a, Meter.current());
+		Meter c = MeterFactory.getMeter("test.c").start();
+		Assert.assertEquals(a.getName(), c.getParentName());
+		c.ok();
+		a.ok();
+		Assert.assertNull(Meter.current());
+	}
+
+	private static void startForgotten() {
+		MeterFactory.getMeter("test.forgotten").start();
+	}
+
+	@Test
+	public void testForgottenMeterIsReleased() throws InterruptedException {
+		MeterStatistics s = MeterStatistics.getStatistics("test.forgotten");
+		long failed = s.getFailCount();
+		startForgotten();
+		/* O meter nunca parado não é retido pela thread: é coletado e reportado como falha. */
+		for (int i = 0; i < 50 && s.getFailCount() == failed; i++) {
+			System.gc();
+			System.runFinalization();
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(failed + 1, s.getFailCount());
+		Assert.assertNull(Meter.current());
+		Meter next = MeterFactory.getMeter("test.next").start();
+		next.ok();
+		Assert.assertNull(next.getParentName());
+	}
+
+	@Test
+	public void testDebugMessageIsReadable() {
+		final List<Object[]> debug = new ArrayList<Object[]>();
+		Logger logger = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] { Logger.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("isDebugEnabled".equals(method.getName())) return Boolean.TRUE;
+				if (method.getName().startsWith("is")) return Boolean.FALSE;
+				if ("getName".equals(method.getName())) return "debug";
+				if ("debug".equals(method.getName())) debug.add(args);
+				return null;
+			}
+		});
+		Meter meter = new Meter(logger, "test.debug").put("a", "1").start();
+		Assert.assertEquals(1, debug.size());
+		Assert.assertSame(Meter.DEBUG_MARKER, debug.get(0)[0]);
+		MeterMessage message = (MeterMessage) debug.get(0)[2];
+		Assert.assertEquals("test.debug", message.getName());
+		Assert.assertEquals(meter.getCount(), message.getCounter());
+		StringBuilder expected = new StringBuilder();
+		MeterEvent.readableString(meter, expected);
+		Assert.assertEquals(expected.toString(), message.toString());
+		meter.ok();
+	}
+}
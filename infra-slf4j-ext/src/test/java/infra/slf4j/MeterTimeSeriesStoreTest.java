@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MeterTimeSeriesStoreTest {
+	static final MeterTimeSeriesStore.Tier FINE = new MeterTimeSeriesStore.Tier("1s", 1, 60);
+	static final MeterTimeSeriesStore.Tier COARSE = new MeterTimeSeriesStore.Tier("1m", 60, 60);
+
+	File directory;
+
+	@Before
+	public void pre() throws IOException {
+		directory = File.createTempFile("series", "");
+		Assert.assertTrue(directory.delete());
+		Assert.assertTrue(directory.mkdir());
+	}
+
+	@After
+	public void pos() {
+		File[] files = directory.listFiles();
+		if (files != null) for (File file : files) file.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testWriteReadBack() {
+		long now = System.currentTimeMillis() / 1000 * 1000;
+		MeterTimeSeriesStore store = new MeterTimeSeriesStore(directory, 10, FINE, COARSE);
+		store.record("a", now, 1000, true);
+		store.record("a", now + 500, 3000, false);
+		store.record("a", now + 1000, 2000, true);
+		Assert.assertEquals(2 * (32 + 60 * (24 + MeterTimeSeriesStore.BUCKETS * 4)), store.getBytesPerName());
+		store.close();
+		Assert.assertTrue(store.range("a", now, now + 1000, FINE).isEmpty());
+
+		store = new MeterTimeSeriesStore(directory, 10, FINE, COARSE);
+		List<MeterTimeSeriesStore.Sample> fine = store.range("a", now, now + 1999, FINE);
+		Assert.assertEquals(2, fine.size());
+		Assert.assertEquals(now, fine.get(0).getTimestamp());
+		Assert.assertEquals(2, fine.get(0).getCount());
+		Assert.assertEquals(1, fine.get(0).getFailCount());
+		Assert.assertEquals(4000, fine.get(0).getSum());
+		Assert.assertEquals(1, fine.get(1).getCount());
+
+		long total = 0;
+		for (MeterTimeSeriesStore.Sample sample : store.range("a", now, now + 1999, COARSE)) total += sample.getCount();
+		Assert.assertEquals(3, total);
+		Assert.assertTrue(store.range("b", now, now + 1999, FINE).isEmpty());
+		store.close();
+	}
+
+	@Test
+	public void testMeterStopped() {
+		MeterTimeSeriesStore store = new MeterTimeSeriesStore(directory, 10, FINE, COARSE);
+		for (int i = 0; i < 5; i++) {
+			store.meterStopped(MeterFactory.getMeter("test.series").start().ok());
+		}
+		/* close() grava os eventos ainda na fila. */
+		store.close();
+		Assert.assertEquals(0, store.getDroppedCount());
+
+		store = new MeterTimeSeriesStore(directory, 10, FINE, COARSE);
+		long now = System.currentTimeMillis();
+		long total = 0;
+		for (MeterTimeSeriesStore.Sample sample : store.range("test.series", now - 60000, now, COARSE)) total += sample.getCount();
+		Assert.assertEquals(5, total);
+		store.close();
+	}
+
+	@Test
+	public void testMaxNames() {
+		long now = System.currentTimeMillis();
+		MeterTimeSeriesStore store = new MeterTimeSeriesStore(directory, 2, FINE);
+		store.record("a", now, 1, true);
+		store.record("b", now, 1, true);
+		store.record("c", now, 1, true);
+		Assert.assertEquals(2, store.getNames().size());
+		Assert.assertEquals(1, store.getDroppedCount());
+		Assert.assertFalse(new File(directory, "c.1s.ts").exists());
+		store.close();
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+public class OperationRegistryTest {
+
+	/** Logger that only answers its own name; one distinct instance per call. */
+	static Logger logger(final String name) {
+		return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] { Logger.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("getName".equals(method.getName())) return name;
+				if ("equals".equals(method.getName())) return Boolean.valueOf(proxy == args[0]);
+				if ("hashCode".equals(method.getName())) return Integer.valueOf(System.identityHashCode(proxy));
+				if (method.getName().startsWith("is")) return Boolean.FALSE;
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void testRegister() {
+		RegisteredOperation a = OperationRegistry.register(OperationRegistryTest.class, "register.a", "Operation A.");
+		Assert.assertSame(a, OperationRegistry.register(OperationRegistryTest.class, "register.a", "Other message."));
+		Assert.assertSame(a, OperationFactory.getOperation(OperationRegistryTest.class, "register.a", null));
+		Assert.assertEquals("Operation A.", a.getMessage());
+		Assert.assertEquals(OperationRegistryTest.class.getName() + ".register.a", a.getMeterName());
+
+		RegisteredOperation b = OperationRegistry.register(OperationRegistryTest.class, "register.b", null);
+		RegisteredOperation c = OperationRegistry.register(MeterTest.class, "register.a", null);
+		Assert.assertNotSame(a, b);
+		Assert.assertNotSame(a, c);
+		Assert.assertTrue(a.getId() != b.getId() && a.getId() != c.getId());
+	}
+
+	@Test
+	public void testIdStability() {
+		RegisteredOperation first = OperationRegistry.register(OperationRegistryTest.class, "stable.0", null);
+		List<RegisteredOperation> all = new ArrayList<RegisteredOperation>();
+		all.add(first);
+		/* Registra o suficiente para ampliar a tabela de ids. */
+		for (int i = 1; i < 200; i++) {
+			all.add(OperationRegistry.register(OperationRegistryTest.class, "stable." + i, null));
+		}
+		for (int i = 1; i < all.size(); i++) {
+			Assert.assertEquals(all.get(i - 1).getId() + 1, all.get(i).getId());
+		}
+		for (RegisteredOperation operation : all) {
+			Assert.assertSame(operation, OperationRegistry.get(operation.getId()));
+			Assert.assertSame(operation.getStatistics(), OperationRegistry.getStatistics(operation.getId()));
+		}
+		Assert.assertTrue(OperationRegistry.size() > all.get(all.size() - 1).getId());
+		try {
+			OperationRegistry.get(OperationRegistry.size());
+			Assert.fail();
+		} catch (IndexOutOfBoundsException e) {
+			// esperado
+		}
+	}
+
+	@Test
+	public void testBindPerLogger() {
+		RegisteredOperation operation = OperationRegistry.register(OperationRegistryTest.class, "bind", null);
+		Logger x = logger("registry.x");
+		Logger y = logger("registry.y");
+		RegisteredOperation.Binding bx = operation.bind(x);
+		RegisteredOperation.Binding by = operation.bind(y);
+		Assert.assertEquals("registry.x.bind", bx.meterName);
+		Assert.assertEquals("registry.y.bind", by.meterName);
+		/* Alternar entre loggers não descarta as associações já resolvidas. */
+		Assert.assertSame(bx, operation.bind(x));
+		Assert.assertSame(by, operation.bind(y));
+		Assert.assertSame(MeterStatistics.getStatistics("registry.x.bind"), bx.statistics);
+
+		/* Operação registrada depois da primeira associação do logger. */
+		RegisteredOperation later = OperationRegistry.register(OperationRegistryTest.class, "bind.later", null);
+		Assert.assertEquals("registry.x.bind.later", later.bind(x).meterName);
+		Assert.assertSame(bx, operation.bind(x));
+	}
+
+	@Test
+	public void testConcurrentLookups() throws Exception {
+		final RegisteredOperation operation = OperationRegistry.register(OperationRegistryTest.class, "concurrent", null);
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		final Logger[] loggers = { logger("registry.concurrent0"), logger("registry.concurrent1"), logger("registry.concurrent2") };
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int t = 0; t < threads; t++) {
+				final Logger logger = loggers[t % loggers.length];
+				results.add(pool.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						start.await();
+						RegisteredOperation.Binding first = operation.bind(logger);
+						for (int i = 0; i < 10000; i++) {
+							if (operation.bind(logger) != first) return Boolean.FALSE;
+						}
+						Meter meter = MeterFactory.getMeter(logger, operation);
+						return Boolean.valueOf(meter.getName().equals(logger.getName() + ".concurrent") && meter.getStatistics() == first.statistics);
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Boolean> result : results) {
+				Assert.assertTrue(result.get().booleanValue());
+			}
+		} finally {
+			pool.shutdown();
+		}
+		Assert.assertSame(operation.bind(loggers[0]), operation.bind(loggers[0]));
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.lang.reflect.Method;
+import java.nio.CharBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParserTest {
+	Locale defaultLocale;
+	StringBuilder sb;
+
+	@Before
+	public void pre() {
+		defaultLocale = Locale.getDefault();
+		sb = new StringBuilder();
+	}
+
+	@After
+	public void pos() {
+		Locale.setDefault(defaultLocale);
+		sb = null;
+	}
+
+	private void assertFixedPoint(double value, int fractionDigits) {
+		sb.setLength(0);
+		Parser.appendFixedPoint(sb, value, fractionDigits);
+		Assert.assertEquals(Double.toString(value), String.format("%." + fractionDigits + "f", Double.valueOf(value)), sb.toString());
+	}
+
+	@Test
+	public void fixedPointSpecialValues() {
+		Locale.setDefault(Locale.US);
+		double[] values = new double[] {0.0, -0.0, 0.05, 0.15, 0.25, 0.35, 0.45, 1.45, 2.675, 9.95, 9.96, 99.95, -0.04, -1.25,
+				0.049999999999999996, 1e15, 1e17, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE};
+		for (double value : values) {
+			for (int digits = 0; digits <= 3; digits++) {
+				assertFixedPoint(value, digits);
+			}
+		}
+	}
+
+	@Test
+	public void fixedPointRandomValues() {
+		Random random = new Random(1);
+		for (Locale locale : new Locale[] {Locale.US, new Locale("pt", "BR"), Locale.GERMANY}) {
+			Locale.setDefault(locale);
+			for (int i = 0; i < 100000; i++) {
+				double value = random.nextDouble() * Math.pow(10, random.nextInt(12)) * (random.nextBoolean() ? 1 : -1);
+				assertFixedPoint(value, 1);
+				assertFixedPoint(Math.rint(value * 100) / 100, 1);
+				assertFixedPoint(value, random.nextInt(7));
+			}
+		}
+	}
+
+	/**
+	 * Sets the default locale of a category with <code>Locale.setDefault(Locale.Category, Locale)</code>.
+	 * @return False on Java 6, where locale categories do not exist.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static boolean setDefault(String category, Locale locale) throws Exception {
+		Class<?> categoryClass;
+		try {
+			categoryClass = Class.forName("java.util.Locale$Category");
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+		Method setDefault = Locale.class.getMethod("setDefault", categoryClass, Locale.class);
+		setDefault.invoke(null, Enum.valueOf((Class) categoryClass, category), locale);
+		return true;
+	}
+
+	@Test
+	public void fixedPointUsesFormatLocale() throws Exception {
+		Locale.setDefault(Locale.US);
+		if (! setDefault("FORMAT", Locale.GERMANY)) return;
+		setDefault("DISPLAY", Locale.US);
+		Assert.assertEquals(Locale.GERMANY, Parser.formatLocale());
+		assertFixedPoint(1.5, 2);
+		Assert.assertEquals("1,50", sb.toString());
+
+		setDefault("FORMAT", Locale.US);
+		setDefault("DISPLAY", Locale.GERMANY);
+		assertFixedPoint(1.5, 2);
+		Assert.assertEquals("1.50", sb.toString());
+	}
+
+	@Test
+	public void bestUnitSameAsFormat() {
+		Locale.setDefault(new Locale("pt", "BR"));
+		Random random = new Random(2);
+		for (int i = 0; i < 100000; i++) {
+			double value = random.nextLong() >>> random.nextInt(64);
+			String expected = oldBestUnit(value, Parser.TIME_UNITS, Parser.TIME_FACTORS);
+			Assert.assertEquals(expected, Parser.bestUnit(value, Parser.TIME_UNITS, Parser.TIME_FACTORS));
+		}
+		Assert.assertEquals("1,5ms", Parser.bestUnit(1500000, Parser.TIME_UNITS, Parser.TIME_FACTORS));
+	}
+
+	@Test
+	public void bestUnitIntoCharBuffer() {
+		Locale.setDefault(Locale.US);
+		CharBuffer cb = CharBuffer.allocate(32);
+		cb.put('[');
+		Parser.appendBestUnit(cb, 2500, Parser.TIME_UNITS, Parser.TIME_FACTORS);
+		cb.put(']');
+		cb.flip();
+		Assert.assertEquals("[2.5us]", cb.toString());
+	}
+
+	/** Implementação original, com String.format, usada como referência. */
+	private static String oldBestUnit(double value, String[] timeUnits, double[] timeFactors) {
+		int last = timeUnits.length-1;
+		int index = 0;
+		double limit = timeFactors[index] * 1.1;
+		double modifiedValue = value;
+		while (index != last && modifiedValue > limit) {
+			modifiedValue /= timeFactors[index];
+			limit = timeFactors[index] * 1.1;
+			index++;
+		}
+		return String.format("%.1f%s", modifiedValue, timeUnits[index]);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.slf4j;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+public class StreamingLoggerOutputStreamTest {
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static class Captured extends StreamingLoggerOutputStream {
+		final List<String> messages = new ArrayList<String>();
+
+		Captured(boolean linePerEvent, int chunkSize, long maxSize) {
+			super(NOPLogger.NOP_LOGGER, Level.INFO, linePerEvent, chunkSize, maxSize, UTF8);
+		}
+
+		@Override
+		protected void writeToLogger(String message) {
+			messages.add(message);
+		}
+	}
+
+	@Test
+	public void testLinePerEvent() throws IOException {
+		Captured out = new Captured(true, 4, 1000);
+		out.write("a\nbb\r\nabcdefghij\nccc".getBytes(UTF8));
+		out.close();
+		Assert.assertEquals(Arrays.asList("a", "bb", "abcd", "efgh", "ij", "ccc"), out.messages);
+		Assert.assertFalse(out.isTruncated());
+	}
+
+	@Test
+	public void testChunks() throws IOException {
+		Captured out = new Captured(false, 8, 1000);
+		out.write("1234\n5678\n90\n".getBytes(UTF8));
+		out.close();
+		/* O bloco é dividido na última quebra de linha; a quebra de linha final é omitida. */
+		Assert.assertEquals(Arrays.asList("1234", "5678\n90"), out.messages);
+		Assert.assertEquals(11, out.getWrittenChars());
+	}
+
+	@Test
+	public void testBlankLines() throws IOException {
+		Captured out = new Captured(true, 4, 1000);
+		out.write("\na\n\r\n  \t\nb\n\n".getBytes(UTF8));
+		out.close();
+		Assert.assertEquals(Arrays.asList("a", "b"), out.messages);
+		Assert.assertEquals(2, out.getWrittenChars());
+
+		out = new Captured(false, 4, 1000);
+		out.write("\n \n\n\n\n\n".getBytes(UTF8));
+		out.close();
+		Assert.assertTrue(out.messages.isEmpty());
+	}
+
+	@Test
+	public void testTruncation() throws IOException {
+		Captured out = new Captured(true, 100, 10);
+		out.write("0123456789abcdef\nghij\n".getBytes(UTF8));
+		out.flush();
+		Assert.assertTrue(out.isTruncated());
+		out.write('x');
+		out.write("yz".getBytes(UTF8));
+		out.close();
+		Assert.assertEquals(10, out.getWrittenChars());
+		Assert.assertEquals(6 + 5 + 3, out.getDiscardedChars());
+		Assert.assertEquals(Arrays.asList("0123456789", "[truncated after 10 characters; 14 more characters discarded]"), out.messages);
+	}
+
+	@Test
+	public void testTruncationCountsCharacters() throws IOException {
+		Captured out = new Captured(true, 100, 2);
+		out.write("açãé\nçç".getBytes(UTF8));
+		out.close();
+		Assert.assertEquals(Arrays.asList("aç", "[truncated after 2 characters; 4 more characters discarded]"), out.messages);
+	}
+
+	@Test
+	public void testMultiByteSplitAcrossWrites() throws IOException {
+		Captured out = new Captured(true, 100, 1000);
+		byte[] bytes = "ação\n€".getBytes(UTF8);
+		for (byte b : bytes) {
+			out.write(b);
+			out.flush();
+		}
+		out.close();
+		Assert.assertEquals(Arrays.asList("ação", "€"), out.messages);
+	}
+
+	@Test
+	public void testFlushAndClose() throws IOException {
+		Captured out = new Captured(true, 100, 1000);
+		out.write("abc".getBytes(UTF8));
+		out.flush();
+		/* Flush não escreve linhas incompletas. */
+		Assert.assertTrue(out.messages.isEmpty());
+		out.close();
+		out.close();
+		Assert.assertEquals(Arrays.asList("abc"), out.messages);
+		try {
+			out.write('x');
+			Assert.fail();
+		} catch (IOException e) {
+			// esperado
+		}
+	}
+}
@@ -29,6 +29,7 @@ import org.slf4j.bridge.SLF4JBridgeHandler;
 
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.turbo.TurboFilter;
 import ch.qos.logback.core.joran.spi.JoranException;
 import ch.qos.logback.core.status.Status;
 
@@ -126,6 +127,8 @@ public class LogbackService {
 				}
 			}
 
+			LogbackService.installMeterFilter(lc);
+
 			LogbackService.usingClasspath = false;
 			LogbackService.usingSystemProperty = false;
 			LogbackService.usingExternalFile = true;
@@ -169,9 +172,28 @@ public class LogbackService {
 				LogbackService.usingClasspath = true;
 			}
 
+			if (LoggerFactory.getILoggerFactory() instanceof LoggerContext) {
+				LogbackService.installMeterFilter((LoggerContext) LoggerFactory.getILoggerFactory());
+			}
+
 			LogbackService.installed = true;
 		} finally {
 			LogbackService.lockInstalacao.unlock();
 		}
 	}
+
+	/**
+	 * Registers the {@link MeterTurboFilter}, unless the configuration already declares one. The filter is neutral
+	 * while there are no sampling rules.
+	 */
+	private static void installMeterFilter(LoggerContext lc) {
+		for (TurboFilter filter : lc.getTurboFilterList()) {
+			if (filter instanceof MeterTurboFilter) return;
+		}
+		MeterTurboFilter filter = new MeterTurboFilter();
+		filter.setName("meter");
+		filter.setContext(lc);
+		filter.start();
+		lc.addTurboFilter(filter);
+	}
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.logback;
+
+import infra.slf4j.Meter;
+import infra.slf4j.MeterEvent;
+import infra.slf4j.MeterMessage;
+import infra.slf4j.WatcherEvent;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+/**
+ * Logback encoder that writes one JSON object per line.
+ * <p>
+ * Events logged by {@link Meter} with the <code>*_MARKER</code> markers carry a {@link MeterMessage} argument. For
+ * these events, the fields of the {@link MeterEvent} or {@link WatcherEvent} are written directly as JSON members,
+ * without formatting the message, so the encoded text of the meter is never built. Other events are written with
+ * time, level, logger, thread, formatted message and exception.
+ * <p>
+ * The JSON text and the UTF-8 bytes are built on buffers that are reused for all events. As other logback encoders,
+ * the instance is not thread safe and relies on the appender lock.
+ * <p>
+ * Example:
+ * <pre>
+ * &lt;appender name="METER" class="ch.qos.logback.core.FileAppender"&gt;
+ *   &lt;file&gt;meter.json&lt;/file&gt;
+ *   &lt;encoder class="infra.logback.MeterEncoder"/&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ *
+ * @author Daniel Felix Ferber
+ */
+public class MeterEncoder extends EncoderBase<ILoggingEvent> {
+	private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+	private final StringBuilder text = new StringBuilder(512);
+	private byte[] bytes = new byte[1024];
+	private boolean immediateFlush = true;
+
+	/** @return If the output stream is flushed after each event. The default is true. */
+	public boolean isImmediateFlush() { return immediateFlush; }
+	/** @param immediateFlush If the output stream is flushed after each event. */
+	public void setImmediateFlush(boolean immediateFlush) { this.immediateFlush = immediateFlush; }
+
+	@Override
+	public void doEncode(ILoggingEvent event) throws IOException {
+		text.setLength(0);
+		text.append("{\"time\":").append(event.getTimeStamp());
+		member("level", event.getLevel().toString());
+		member("logger", event.getLoggerName());
+		member("thread", event.getThreadName());
+
+		MeterMessage meterMessage = MeterEncoder.meterMessage(event);
+		if (meterMessage != null) {
+			member("event", event.getMarker().getName());
+			if (meterMessage.getMeterEvent() != null) {
+				writeMeter(meterMessage.getMeterEvent());
+			} else {
+				writeWatcher(meterMessage.getWatcherEvent());
+			}
+		} else {
+			member("message", event.getFormattedMessage());
+			IThrowableProxy throwable = event.getThrowableProxy();
+			if (throwable != null) {
+				member("exceptionClass", throwable.getClassName());
+				member("exceptionMessage", throwable.getMessage());
+			}
+		}
+		text.append("}\n");
+
+		int length = encode();
+		outputStream.write(bytes, 0, length);
+		if (immediateFlush) outputStream.flush();
+		if (text.length() > MAX_RETAINED_BUFFER) {
+			text.setLength(0);
+			text.trimToSize();
+			bytes = new byte[1024];
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		outputStream.flush();
+	}
+
+	/** @return The meter argument, if the event was logged by {@link Meter} with one of its markers. */
+	static MeterMessage meterMessage(ILoggingEvent event) {
+		Marker marker = event.getMarker();
+		if (marker == null) return null;
+		Object[] arguments = event.getArgumentArray();
+		if (arguments == null || arguments.length != 1 || ! (arguments[0] instanceof MeterMessage)) return null;
+		if (marker.contains(Meter.START_MARKER) || marker.contains(Meter.OK_MARKER) || marker.contains(Meter.FAIL_MARKER)
+				|| marker.contains(Meter.START_WATCH_MARKER) || marker.contains(Meter.OK_WATCH_MARKER) || marker.contains(Meter.FAIL_WATCH_MARKER)) {
+			return (MeterMessage) arguments[0];
+		}
+		return null;
+	}
+
+	// ========================================================================
+
+	private void writeMeter(MeterEvent e) {
+		member("name", e.getName());
+		member("counter", e.getCount());
+		member("uuid", e.getUuid());
+		member("message", e.getMessage());
+		member("createTime", e.getCreateTime());
+		if (e.getStartTime() != 0) {
+			member("startTime", e.getStartTime());
+			member("threadStartId", e.getThreadStartId());
+			member("threadStartName", e.getThreadStartName());
+		}
+		if (e.getStopTime() != 0) {
+			member("stopTime", e.getStopTime());
+			member("executionTime", e.getExecutionTime());
+			member("success", e.isSuccess());
+			member("threadStopId", e.getThreadStopId());
+			member("threadStopName", e.getThreadStopName());
+			member("exceptionClass", e.getExceptionClass());
+			member("exceptionMessage", e.getExceptionMessage());
+		}
+		if (e.getParentName() != null) {
+			member("parentName", e.getParentName());
+			member("parentCounter", e.getParentCounter());
+			member("rootName", e.getRootName());
+			member("rootCounter", e.getRootCounter());
+		}
+		Map<String, String> context = e.getContext();
+		if (! context.isEmpty()) {
+			text.append(",\"context\":{");
+			boolean first = true;
+			for (Map.Entry<String, String> entry : context.entrySet()) {
+				if (! first) text.append(',');
+				first = false;
+				string(entry.getKey());
+				text.append(':');
+				string(entry.getValue());
+			}
+			text.append('}');
+		}
+	}
+
+	private void writeWatcher(WatcherEvent w) {
+		member("name", w.getName());
+		member("counter", w.getCounter());
+		member("uuid", w.getUuid());
+		member("watcherTime", w.getTime());
+		member("heapUsed", w.getHeap_used());
+		member("heapCommited", w.getHeap_commited());
+		member("heapMax", w.getHeap_max());
+		member("nonHeapUsed", w.getNonHeap_used());
+		member("nonHeapCommited", w.getNonHeap_commited());
+		member("nonHeapMax", w.getNonHeap_max());
+		member("objectPendingFinalizationCount", w.getObjectPendingFinalizationCount());
+		member("classLoadingLoaded", w.getClassLoading_loaded());
+		member("classLoadingTotal", w.getClassLoading_total());
+		member("classLoadingUnloaded", w.getClassLoading_unloaded());
+		member("compilationTime", w.getCompilationTime());
+		member("garbageCollectorCount", w.getGarbageCollector_count());
+		member("garbageCollectorTime", w.getGarbageCollector_time());
+		member("systemLoad", w.getSystemLoad());
+		member("freeMemory", w.getRuntime_freeMemory());
+		member("maxMemory", w.getRuntime_maxMemory());
+		member("totalMemory", w.getRuntime_totalMemory());
+	}
+
+	// ========================================================================
+
+	private void member(String name, String value) {
+		if (value == null) return;
+		text.append(",\"").append(name).append("\":");
+		string(value);
+	}
+
+	private void member(String name, long value) {
+		text.append(",\"").append(name).append("\":").append(value);
+	}
+
+	private void member(String name, boolean value) {
+		text.append(",\"").append(name).append("\":").append(value);
+	}
+
+	private void member(String name, double value) {
+		text.append(",\"").append(name).append("\":");
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			text.append("null");
+		} else {
+			text.append(value);
+		}
+	}
+
+	private void string(String value) {
+		if (value == null) {
+			text.append("null");
+			return;
+		}
+		text.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': text.append("\\\""); break;
+			case '\\': text.append("\\\\"); break;
+			case '\n': text.append("\\n"); break;
+			case '\r': text.append("\\r"); break;
+			case '\t': text.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					text.append("\\u00");
+					text.append(Character.forDigit(c >> 4, 16));
+					text.append(Character.forDigit(c & 0xF, 16));
+				} else {
+					text.append(c);
+				}
+			}
+		}
+		text.append('"');
+	}
+
+	/** Encodes the text as UTF-8 into the reusable byte buffer. Unpaired surrogates are written as '?'. */
+	private int encode() {
+		int length = text.length();
+		if (bytes.length < length * 3) bytes = new byte[Math.max(length * 3, bytes.length * 2)];
+		byte[] b = bytes;
+		int n = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				b[n++] = (byte) c;
+			} else if (c < 0x800) {
+				b[n++] = (byte) (0xC0 | (c >> 6));
+				b[n++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, text.charAt(++i));
+				b[n++] = (byte) (0xF0 | (cp >> 18));
+				b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				b[n++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				b[n++] = (byte) '?';
+			} else {
+				b[n++] = (byte) (0xE0 | (c >> 12));
+				b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				b[n++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return n;
+	}
+}
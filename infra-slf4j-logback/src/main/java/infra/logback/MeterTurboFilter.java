@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.logback;
+
+import infra.slf4j.Meter;
+import infra.slf4j.MeterMessage;
+import infra.slf4j.MeterSampling;
+import infra.slf4j.MeterStatistics;
+import infra.slf4j.TokenBucket;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Turbo filter that samples the trace and debug events logged by {@link Meter} with its markers, according to rules
+ * per meter name. Events are rejected before logback creates the logging event and before the {@link MeterMessage}
+ * copies the meter or is formatted. Each decision is recorded once per meter in the {@link MeterStatistics} of the
+ * meter name.
+ * <p>
+ * A rule applies to a meter name and to all names below it (separated by '.'); the most specific rule wins. A rule
+ * keeps one meter in N, chosen by the meter counter. It may also limit the meters per second of the name with a
+ * {@link TokenBucket}. The decision is taken on the first event of a meter and recorded in its
+ * {@link MeterMessage}, so all events of the same meter share it. Rules and decisions are implemented by
+ * {@link MeterSampling.Rules} and {@link MeterSampling.Sampler}. Without rules, the filter is neutral for all events.
+ * <p>
+ * Rules are shared by all instances and may be changed at any time with {@link #setRule(String, int, double)}, or in
+ * the logback configuration:
+ * <pre>
+ * &lt;turboFilter class="infra.logback.MeterTurboFilter"&gt;
+ *   &lt;rule&gt;infra.ilog=10&lt;/rule&gt;
+ *   &lt;rule&gt;infra.ilog.cplex=1/50&lt;/rule&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ * {@link LogbackService} registers one instance on install and after each reconfiguration.
+ *
+ * @author Daniel Felix Ferber
+ */
+public class MeterTurboFilter extends TurboFilter {
+	/** Rules by meter name prefix. */
+	private static final MeterSampling.Rules rules = new MeterSampling.Rules();
+	/** Sampler of each meter name seen so far; resolved again after rules change. */
+	private static final ConcurrentMap<String, MeterSampling.Sampler> samplers = new ConcurrentHashMap<String, MeterSampling.Sampler>();
+
+	// ========================================================================
+
+	/**
+	 * Sets the sampling rule for a meter name and the names below it.
+	 * @param name Meter name prefix; empty for all meters.
+	 * @param oneIn Keeps one meter in N; 1 keeps all meters, 0 rejects all.
+	 * @param perSecond Maximum traced meters per second for the name, or 0 for no limit.
+	 */
+	public static void setRule(String name, int oneIn, double perSecond) {
+		if (name == null) throw new IllegalArgumentException("name");
+		MeterTurboFilter.rules.put(name, new MeterSampling(oneIn, perSecond, false));
+	}
+
+	/** Removes the sampling rule for a meter name, if any. */
+	public static void removeRule(String name) {
+		MeterTurboFilter.rules.remove(name);
+	}
+
+	/** Removes all sampling rules. */
+	public static void clearRules() {
+		MeterTurboFilter.rules.clear();
+	}
+
+	/** @return Description of all rules, as <code>oneIn[/perSecond]</code>, by meter name prefix. */
+	public static Map<String, String> getRules() {
+		Map<String, String> result = new TreeMap<String, String>();
+		for (Map.Entry<String, MeterSampling> entry : MeterTurboFilter.rules.getPolicies().entrySet()) {
+			MeterSampling policy = entry.getValue();
+			result.put(entry.getKey(), policy.getPerSecond() > 0.0 ? policy.getOneIn() + "/" + policy.getPerSecond() : Integer.toString(policy.getOneIn()));
+		}
+		return result;
+	}
+
+	/**
+	 * Sets a rule written as <code>name=oneIn[/perSecond]</code>. Called by the logback configurator for each
+	 * <code>&lt;rule&gt;</code> element.
+	 */
+	public void addRule(String rule) {
+		int equals = rule.indexOf('=');
+		try {
+			if (equals < 0) throw new IllegalArgumentException();
+			String name = rule.substring(0, equals).trim();
+			String value = rule.substring(equals + 1).trim();
+			int slash = value.indexOf('/');
+			if (slash < 0) {
+				MeterTurboFilter.setRule(name, Integer.parseInt(value), 0.0);
+			} else {
+				MeterTurboFilter.setRule(name, Integer.parseInt(value.substring(0, slash).trim()), Double.parseDouble(value.substring(slash + 1).trim()));
+			}
+		} catch (IllegalArgumentException e) {
+			addError("Invalid meter rule, expected name=oneIn[/perSecond]: " + rule);
+		}
+	}
+
+	static MeterSampling.Sampler resolve(String name) {
+		MeterSampling.Sampler cached = MeterTurboFilter.samplers.get(name);
+		MeterSampling.Sampler sampler = MeterTurboFilter.rules.sampler(cached, name);
+		if (sampler != cached) MeterTurboFilter.samplers.put(name, sampler);
+		return sampler;
+	}
+
+	// ========================================================================
+
+	@Override
+	public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+		if (marker == null || level == null || level.levelInt > Level.DEBUG_INT) return FilterReply.NEUTRAL;
+		if (MeterTurboFilter.rules.isEmpty()) return FilterReply.NEUTRAL;
+		if (params == null || params.length != 1 || ! (params[0] instanceof MeterMessage)) return FilterReply.NEUTRAL;
+
+		MeterMessage message = (MeterMessage) params[0];
+		Boolean decision = message.getFilterDecision();
+		if (decision != null) return decision.booleanValue() ? FilterReply.NEUTRAL : FilterReply.DENY;
+
+		/* Nome e contador são lidos sem copiar o medidor; a cópia só ocorre se o evento for aceito e formatado. */
+		String name = message.getName();
+		if (name == null) return FilterReply.NEUTRAL;
+		MeterSampling.Sampler sampler = MeterTurboFilter.resolve(name);
+		if (sampler.getSampling() == null) return FilterReply.NEUTRAL;
+		/* Decide uma única vez por medidor: o token bucket é consumido e a decisão é contada apenas no primeiro evento. */
+		boolean accepted = sampler.sample(message.getCounter());
+		message.setFilterDecision(accepted);
+		MeterStatistics.getStatistics(name).traceDecided(accepted);
+		return accepted ? FilterReply.NEUTRAL : FilterReply.DENY;
+	}
+}
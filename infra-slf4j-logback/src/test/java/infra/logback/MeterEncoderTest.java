@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.logback;
+
+import infra.slf4j.Meter;
+import infra.slf4j.MeterFactory;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+
+/*
+ * Tests the JSON encoder for meter events:
+ * - Meter markers are written from the structured fields.
+ * - Other events are written with the formatted message.
+ */
+public class MeterEncoderTest {
+	ByteArrayOutputStream bytes;
+	OutputStreamAppender<ILoggingEvent> appender;
+	Logger logger;
+
+	@Before
+	public void pre() {
+		LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+		MeterEncoder encoder = new MeterEncoder();
+		encoder.setContext(lc);
+		encoder.start();
+		bytes = new ByteArrayOutputStream();
+		appender = new OutputStreamAppender<ILoggingEvent>();
+		appender.setContext(lc);
+		appender.setEncoder(encoder);
+		appender.setOutputStream(bytes);
+		appender.start();
+		logger = lc.getLogger("meter.encoder");
+		logger.setLevel(Level.TRACE);
+		logger.setAdditive(false);
+		logger.addAppender(appender);
+	}
+
+	@After
+	public void pos() {
+		logger.detachAppender(appender);
+		appender.stop();
+	}
+
+	private String[] lines() throws Exception {
+		return bytes.toString("UTF-8").split("\n");
+	}
+
+	@Test
+	public void testMeter() throws Exception {
+		Meter m = MeterFactory.getMeter("meter.encoder").put("k", "v\"1").start();
+		m.ok();
+		String[] lines = lines();
+		int meterLines = 0;
+		for (String line : lines) {
+			Assert.assertTrue(line.startsWith("{\"time\":"));
+			Assert.assertTrue(line.endsWith("}"));
+			if (line.contains("\"event\":\"METER_OK\"")) {
+				meterLines++;
+				Assert.assertTrue(line.contains("\"name\":\"meter.encoder\""));
+				Assert.assertTrue(line.contains("\"success\":true"));
+				Assert.assertTrue(line.contains("\"context\":{\"k\":\"v\\\"1\"}"));
+			}
+		}
+		Assert.assertEquals(1, meterLines);
+	}
+
+	@Test
+	public void testPlainEvent() throws Exception {
+		logger.info("a {} c", "b");
+		String[] lines = lines();
+		Assert.assertEquals(1, lines.length);
+		Assert.assertTrue(lines[0].contains("\"level\":\"INFO\""));
+		Assert.assertTrue(lines[0].contains("\"message\":\"a b c\""));
+	}
+}
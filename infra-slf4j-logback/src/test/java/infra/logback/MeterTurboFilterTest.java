@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 Daniel Felix Ferber
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package infra.logback;
+
+import infra.slf4j.Meter;
+import infra.slf4j.MeterFactory;
+import infra.slf4j.MeterStatistics;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/*
+ * Tests the turbo filter for meter events:
+ * - Without rules, all events pass.
+ * - One in N keeps all events of the same meters.
+ * - Debug events of the meter are sampled with the same decision.
+ * - Decisions are counted once per meter in the meter statistics.
+ */
+public class MeterTurboFilterTest {
+	static class Appender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+		public int okCount = 0;
+		public int debugCount = 0;
+
+		@Override
+		protected void append(ILoggingEvent eventObject) {
+			if (eventObject.getMarker() == Meter.OK_MARKER) okCount++;
+			if (eventObject.getMarker() == Meter.DEBUG_MARKER) debugCount++;
+		}
+	}
+
+	LoggerContext lc;
+	MeterTurboFilter filter;
+	Appender appender;
+	Logger logger;
+
+	@Before
+	public void pre() {
+		lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+		filter = new MeterTurboFilter();
+		filter.setContext(lc);
+		filter.start();
+		lc.addTurboFilter(filter);
+		appender = new Appender();
+		appender.setContext(lc);
+		appender.start();
+		logger = lc.getLogger("meter.filter");
+		logger.setLevel(Level.TRACE);
+		logger.setAdditive(false);
+		logger.addAppender(appender);
+	}
+
+	@After
+	public void pos() {
+		MeterTurboFilter.clearRules();
+		lc.getTurboFilterList().remove(filter);
+		logger.detachAppender(appender);
+	}
+
+	@Test
+	public void testWithoutRules() {
+		for (int i = 0; i < 4; i++) {
+			MeterFactory.getMeter("meter.filter.none").start().ok();
+		}
+		Assert.assertEquals(4, appender.okCount);
+		Assert.assertEquals(4, appender.debugCount);
+	}
+
+	@Test
+	public void testOneIn() {
+		MeterTurboFilter.setRule("meter.filter", 2, 0.0);
+		MeterStatistics s = MeterStatistics.getStatistics("meter.filter.sampled");
+		long accepted = s.getTraceAcceptedCount();
+		long rejected = s.getTraceRejectedCount();
+		for (int i = 0; i < 4; i++) {
+			MeterFactory.getMeter("meter.filter.sampled").start().ok();
+		}
+		Assert.assertEquals(2, appender.okCount);
+		Assert.assertEquals(2, appender.debugCount);
+		/* A decisão é contada uma vez por medidor, não a cada evento de debug ou trace. */
+		Assert.assertEquals(2, s.getTraceAcceptedCount() - accepted);
+		Assert.assertEquals(2, s.getTraceRejectedCount() - rejected);
+	}
+
+	@Test
+	public void testRules() {
+		filter.addRule("a.b = 3/10");
+		filter.addRule("invalid");
+		Assert.assertEquals("3/10.0", MeterTurboFilter.getRules().get("a.b"));
+		Assert.assertEquals(1, MeterTurboFilter.getRules().size());
+		Assert.assertSame(MeterTurboFilter.resolve("a.b").getSampling(), MeterTurboFilter.resolve("a.b.c").getSampling());
+		MeterTurboFilter.setRule("a.b.c", 0, 0.0);
+		Assert.assertEquals(0, MeterTurboFilter.resolve("a.b.c.d").getSampling().getOneIn());
+		MeterTurboFilter.removeRule("a.b.c");
+		Assert.assertEquals(3, MeterTurboFilter.resolve("a.b.c.d").getSampling().getOneIn());
+		Assert.assertNull(MeterTurboFilter.resolve("x").getSampling());
+	}
+
+	@Test
+	public void testPerSecondOncePerMeter() {
+		MeterTurboFilter.setRule("meter.filter", 1, 1.0);
+		MeterStatistics s = MeterStatistics.getStatistics("meter.filter.budget");
+		long accepted = s.getTraceAcceptedCount();
+		for (int i = 0; i < 4; i++) {
+			MeterFactory.getMeter("meter.filter.budget").start().ok();
+		}
+		/* O único token é consumido no início do primeiro medidor; todos os seus eventos são mantidos. */
+		Assert.assertEquals(1, appender.okCount);
+		Assert.assertEquals(1, s.getTraceAcceptedCount() - accepted);
+	}
+}